@@ -0,0 +1,187 @@
+package DAO;
+
+import DTO.EmailOutboxJob;
+import mylib.DBUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ========================================================================================================
+ * DAO: EmailOutboxDAO - BẢNG Email_Outbox (HÀNG ĐỢI EMAIL BỀN VỮNG)
+ * ========================================================================================================
+ *
+ * TRẠNG THÁI: PENDING -> SENDING -> SENT
+ *                          |-> PENDING (lỗi, chờ next_attempt_at) ... -> DEAD (hết số lần thử)
+ *
+ * - SENDING có locked_until: worker chết giữa chừng => hết hạn lease, worker khác nhận lại
+ * - dedup_key UNIQUE: cùng 1 vé / 1 người nhận chỉ có 1 email
+ * - Claim bằng READPAST: nhiều worker (hoặc nhiều instance Tomcat) không giành cùng 1 dòng
+ */
+public class EmailOutboxDAO {
+
+    /**
+     * Tạo bảng + index nếu chưa có (project chưa có migration script riêng).
+     */
+    public void ensureTable() throws SQLException, ClassNotFoundException {
+        String sql = "IF OBJECT_ID('dbo.Email_Outbox', 'U') IS NULL "
+                + "BEGIN "
+                + "CREATE TABLE dbo.Email_Outbox ("
+                + " outbox_id BIGINT IDENTITY(1,1) PRIMARY KEY,"
+                + " dedup_key NVARCHAR(300) NOT NULL,"
+                + " recipient NVARCHAR(255) NOT NULL,"
+                + " subject NVARCHAR(500) NOT NULL,"
+                + " html_body NVARCHAR(MAX) NOT NULL,"
+                + " qr_content NVARCHAR(MAX) NULL,"
+                + " image_cid NVARCHAR(100) NULL,"
+                + " status VARCHAR(20) NOT NULL DEFAULT 'PENDING',"
+                + " attempts INT NOT NULL DEFAULT 0,"
+                + " next_attempt_at DATETIME2 NOT NULL DEFAULT SYSDATETIME(),"
+                + " locked_until DATETIME2 NULL,"
+                + " last_error NVARCHAR(1000) NULL,"
+                + " created_at DATETIME2 NOT NULL DEFAULT SYSDATETIME(),"
+                + " sent_at DATETIME2 NULL,"
+                + " CONSTRAINT UQ_Email_Outbox_dedup UNIQUE (dedup_key)"
+                + "); "
+                + "CREATE INDEX IX_Email_Outbox_status_next ON dbo.Email_Outbox (status, next_attempt_at); "
+                + "END";
+
+        try ( Connection conn = DBUtils.getConnection();  Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    /**
+     * Thêm 1 email vào outbox. Trả về outbox_id, hoặc -1 nếu dedup_key đã tồn tại.
+     */
+    public long insert(EmailOutboxJob job) throws SQLException, ClassNotFoundException {
+        String sql = "INSERT INTO Email_Outbox (dedup_key, recipient, subject, html_body, qr_content, image_cid) "
+                + "OUTPUT INSERTED.outbox_id "
+                + "SELECT ?, ?, ?, ?, ?, ? "
+                + "WHERE NOT EXISTS (SELECT 1 FROM Email_Outbox WITH (UPDLOCK, HOLDLOCK) WHERE dedup_key = ?)";
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, job.getDedupKey());
+            ps.setString(2, job.getRecipient());
+            ps.setString(3, job.getSubject());
+            ps.setString(4, job.getHtmlBody());
+            ps.setString(5, job.getQrContent());
+            ps.setString(6, job.getImageCid());
+            ps.setString(7, job.getDedupKey());
+            try ( ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        } catch (SQLException e) {
+            // 2 request cùng dedup_key chen nhau => vi phạm UNIQUE = trùng
+            if (e.getErrorCode() == 2627 || e.getErrorCode() == 2601) {
+                return -1;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Nhận tối đa limit email đến hạn gửi (kể cả SENDING hết lease), chuyển
+     * sang SENDING + tăng attempts trong cùng 1 câu UPDATE.
+     */
+    public List<EmailOutboxJob> claimBatch(int limit, int leaseSeconds) throws SQLException, ClassNotFoundException {
+        String sql = "WITH due AS ("
+                + " SELECT TOP (?) * FROM Email_Outbox WITH (ROWLOCK, UPDLOCK, READPAST)"
+                + " WHERE (status = 'PENDING' AND next_attempt_at <= SYSDATETIME())"
+                + "    OR (status = 'SENDING' AND locked_until < SYSDATETIME())"
+                + " ORDER BY next_attempt_at"
+                + ") "
+                + "UPDATE due SET status = 'SENDING', attempts = attempts + 1,"
+                + " locked_until = DATEADD(SECOND, ?, SYSDATETIME()) "
+                + "OUTPUT INSERTED.outbox_id, INSERTED.dedup_key, INSERTED.recipient, INSERTED.subject,"
+                + " INSERTED.html_body, INSERTED.qr_content, INSERTED.image_cid, INSERTED.attempts,"
+                + " DATEDIFF(SECOND, INSERTED.created_at, SYSDATETIME()) AS queued_sec";
+
+        List<EmailOutboxJob> jobs = new ArrayList<>();
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            ps.setInt(2, leaseSeconds);
+            try ( ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    EmailOutboxJob j = new EmailOutboxJob();
+                    j.setOutboxId(rs.getLong("outbox_id"));
+                    j.setDedupKey(rs.getString("dedup_key"));
+                    j.setRecipient(rs.getString("recipient"));
+                    j.setSubject(rs.getString("subject"));
+                    j.setHtmlBody(rs.getString("html_body"));
+                    j.setQrContent(rs.getString("qr_content"));
+                    j.setImageCid(rs.getString("image_cid"));
+                    j.setAttempts(rs.getInt("attempts"));
+                    j.setQueuedMs(rs.getLong("queued_sec") * 1000L);
+                    jobs.add(j);
+                }
+            }
+        }
+        return jobs;
+    }
+
+    public boolean markSent(long outboxId) throws SQLException, ClassNotFoundException {
+        String sql = "UPDATE Email_Outbox SET status = 'SENT', sent_at = SYSDATETIME(),"
+                + " locked_until = NULL, last_error = NULL WHERE outbox_id = ?";
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, outboxId);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Gửi lỗi, còn lượt thử: quay về PENDING, thử lại sau delaySeconds.
+     */
+    public boolean markRetry(long outboxId, String error, int delaySeconds) throws SQLException, ClassNotFoundException {
+        String sql = "UPDATE Email_Outbox SET status = 'PENDING', locked_until = NULL, last_error = ?,"
+                + " next_attempt_at = DATEADD(SECOND, ?, SYSDATETIME()) WHERE outbox_id = ?";
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, truncate(error));
+            ps.setInt(2, delaySeconds);
+            ps.setLong(3, outboxId);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Hết lượt thử: DEAD (dead-letter), giữ lại để admin xem last_error / gửi lại tay.
+     */
+    public boolean markDead(long outboxId, String error) throws SQLException, ClassNotFoundException {
+        String sql = "UPDATE Email_Outbox SET status = 'DEAD', locked_until = NULL, last_error = ?"
+                + " WHERE outbox_id = ?";
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, truncate(error));
+            ps.setLong(2, outboxId);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Số dòng theo status (PENDING / SENDING / DEAD) cho metrics. Không đếm SENT.
+     */
+    public Map<String, Integer> countOpenByStatus() throws SQLException, ClassNotFoundException {
+        String sql = "SELECT status, COUNT(*) AS cnt FROM Email_Outbox WITH (NOLOCK) "
+                + "WHERE status <> 'SENT' GROUP BY status";
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql);  ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                counts.put(rs.getString("status"), rs.getInt("cnt"));
+            }
+        }
+        return counts;
+    }
+
+    private static String truncate(String s) {
+        if (s == null) {
+            return null;
+        }
+        return s.length() > 1000 ? s.substring(0, 1000) : s;
+    }
+}
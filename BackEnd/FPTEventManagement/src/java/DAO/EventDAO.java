@@ -3,7 +3,9 @@ package DAO;
 import DTO.CategoryTicket;
 import DTO.Event;
 import DTO.EventDetailDto;
+import DTO.EventListQuery;
 import mylib.DBUtils;
+import service.AreaScheduleIndex;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -43,6 +45,92 @@ public class EventDAO {
         return list;
     }
 
+    // ================== LIST EVENTS (LỌC + KEYSET PAGINATION) ==================
+    /**
+     * Index cho danh sách event theo thời gian: ORDER BY start_time, event_id
+     * đi thẳng theo index, cursor (start_time, event_id) là 1 lần seek.
+     */
+    public void ensureListingIndex() throws SQLException, ClassNotFoundException {
+        String sql = "IF NOT EXISTS (SELECT 1 FROM sys.indexes "
+                + "WHERE name = 'IX_Event_start_time_id' AND object_id = OBJECT_ID('dbo.Event')) "
+                + "CREATE INDEX IX_Event_start_time_id ON dbo.Event (start_time, event_id) INCLUDE (status, area_id)";
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.execute();
+        }
+    }
+
+    /**
+     * 1 trang event OPEN/CLOSED theo (start_time, event_id) tăng dần. Chỉ thêm
+     * điều kiện cho filter có giá trị => SQL gọn, dùng được index. Lấy tối đa
+     * limit dòng (caller truyền limit + 1 để biết còn trang sau).
+     */
+    public List<Event> findEvents(EventListQuery query) throws SQLException, ClassNotFoundException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT TOP (?) e.event_id, e.title, e.description, e.start_time, e.end_time, "
+                + "       e.max_seats, e.status, e.created_by, e.created_at, e.banner_url, "
+                + "       e.area_id, va.area_name, va.floor, "
+                + "       v.venue_id, v.venue_name, v.location "
+                + "FROM   [FPTEventManagement].[dbo].[Event] e "
+                + "LEFT JOIN [FPTEventManagement].[dbo].[Venue_Area] va ON e.area_id = va.area_id "
+                + "LEFT JOIN [FPTEventManagement].[dbo].[Venue]      v  ON va.venue_id = v.venue_id ");
+        List<Object> params = new ArrayList<>();
+        params.add(query.getLimit());
+
+        if (query.getStatus() != null) {
+            sql.append("WHERE  e.status = ? ");
+            params.add(query.getStatus());
+        } else {
+            sql.append("WHERE  e.status IN ('OPEN', 'CLOSED') ");
+        }
+        if (query.getAreaId() != null) {
+            sql.append("AND e.area_id = ? ");
+            params.add(query.getAreaId());
+        }
+        if (query.getVenueId() != null) {
+            sql.append("AND va.venue_id = ? ");
+            params.add(query.getVenueId());
+        }
+        if (query.getFrom() != null) {
+            sql.append("AND e.start_time >= ? ");
+            params.add(query.getFrom());
+        }
+        if (query.getTo() != null) {
+            sql.append("AND e.start_time < ? ");
+            params.add(query.getTo());
+        }
+        if (query.getQ() != null) {
+            sql.append("AND e.title LIKE ? ESCAPE '\\' ");
+            params.add("%" + escapeLike(query.getQ()) + "%");
+        }
+        if (query.getAfterStartTime() != null && query.getAfterEventId() != null) {
+            // (start_time, event_id) > (?, ?) viết dạng seek được
+            sql.append("AND (e.start_time > ? OR (e.start_time = ? AND e.event_id > ?)) ");
+            params.add(query.getAfterStartTime());
+            params.add(query.getAfterStartTime());
+            params.add(query.getAfterEventId());
+        }
+        sql.append("ORDER BY e.start_time ASC, e.event_id ASC");
+
+        List<Event> list = new ArrayList<>();
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try ( ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapRowWithLocation(rs));
+                }
+            }
+        }
+        return list;
+    }
+
+    // Ký tự đặc biệt của LIKE trong từ khoá tìm kiếm => tìm đúng chữ
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_").replace("[", "\\[");
+    }
+
     // ================== EVENT DETAIL (JOIN Venue_Area + Venue) ==================
     public EventDetailDto getEventDetail(int eventId) throws SQLException, ClassNotFoundException {
         EventDetailDto detail = null;
@@ -330,6 +418,8 @@ public class EventDAO {
             }
 
             conn.commit();
+            // Đọc lại lịch khu vực của event (status vừa đổi)
+            AreaScheduleIndex.refresh(eventId);
             return true;
 
         } catch (SQLException ex) {
@@ -2,6 +2,7 @@ package DAO;
 
 import DTO.EventRequest;
 import mylib.DBUtils;
+import service.AreaScheduleIndex;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -180,6 +181,10 @@ public class EventRequestDAO {
      * newStartBuffer = startTime - 1h newEndBuffer = endTime + 1h => Nếu tồn
      * tại event cũ thỏa: existing.start_time < newEndBuffer
      *       AND existing.end_time > newStartBuffer => COI LÀ TRÙNG (conflict = true)
+     *
+     * Dùng cho APPROVE (đường ghi) => luôn đọc DB, không dùng AreaScheduleIndex
+     * (index chỉ thấy ghi từ node khác sau mỗi lần nạp lại). Kiểm tra chốt nằm
+     * trong transaction của approveRequestAndCreateEvent.
      */
     public boolean hasAreaConflict(int areaId, Timestamp startTime, Timestamp endTime) {
         if (startTime == null || endTime == null) {
@@ -250,6 +255,13 @@ public class EventRequestDAO {
             conn = DBUtils.getConnection();
             conn.setAutoCommit(false); // bắt đầu transaction
 
+            // 0) Khoá dòng Venue_Area (UPDLOCK giữ tới commit) => các lần APPROVE cùng area,
+            //    kể cả ở node khác, chạy lần lượt; rồi kiểm tra trùng lịch trên DB trong transaction
+            if (hasAreaConflictInsideTx(conn, areaId, req.getPreferredStartTime(), req.getPreferredEndTime())) {
+                conn.rollback();
+                return null;
+            }
+
             // 1) Lấy capacity khu vực để gợi ý số ghế
             Integer areaCapacity = getAreaCapacityInsideTx(conn, areaId);
             int maxSeatsFromReq = (req.getExpectedCapacity() != null ? req.getExpectedCapacity() : 0);
@@ -325,6 +337,7 @@ public class EventRequestDAO {
             }
 
             conn.commit();
+            AreaScheduleIndex.put(newEventId, areaId, req.getPreferredStartTime(), req.getPreferredEndTime(), "CLOSED");
             return newEventId;
 
         } catch (Exception e) {
@@ -367,6 +380,37 @@ public class EventRequestDAO {
         return null;
     }
 
+    // Trong transaction của approve: khoá area rồi COUNT event trùng lịch (buffer 1h như hasAreaConflict)
+    private boolean hasAreaConflictInsideTx(Connection conn, int areaId, Timestamp startTime, Timestamp endTime)
+            throws SQLException {
+        if (startTime == null || endTime == null) {
+            return false;
+        }
+        String lockSql = "SELECT area_id FROM Venue_Area WITH (UPDLOCK, ROWLOCK) WHERE area_id = ?";
+        try ( PreparedStatement ps = conn.prepareStatement(lockSql)) {
+            ps.setInt(1, areaId);
+            try ( ResultSet rs = ps.executeQuery()) {
+                rs.next();
+            }
+        }
+
+        long ONE_HOUR_MS = 60L * 60L * 1000L;
+        String sql = "SELECT COUNT(*) AS cnt "
+                + "FROM Event "
+                + "WHERE area_id = ? "
+                + "  AND status IN ('OPEN','CLOSED','DRAFT') "
+                + "  AND start_time < ? "
+                + "  AND end_time   > ?";
+        try ( PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, areaId);
+            ps.setTimestamp(2, new Timestamp(endTime.getTime() + ONE_HOUR_MS));
+            ps.setTimestamp(3, new Timestamp(startTime.getTime() - ONE_HOUR_MS));
+            try ( ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt("cnt") > 0;
+            }
+        }
+    }
+
     private Integer getAreaCapacityInsideTx(Connection conn, int areaId) throws SQLException {
         String sql = "SELECT capacity FROM Venue_Area WHERE area_id = ?";
         try ( PreparedStatement ps = conn.prepareStatement(sql)) {
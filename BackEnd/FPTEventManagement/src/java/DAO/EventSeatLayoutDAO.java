@@ -1,6 +1,7 @@
 package DAO;
 
 import DTO.Seat;
+import DTO.SeatHoldInfo;
 import mylib.DBUtils;
 
 import java.sql.*;
@@ -34,6 +35,17 @@ public class EventSeatLayoutDAO {
     }
 
     // ============= RECONFIG LAYOUT GHẾ CHO EVENT ============
+    /**
+     * Layout mong muốn = totalNeeded ghế ACTIVE đầu tiên của area (theo hàng,
+     * cột), vipCount ghế đầu là VIP, còn lại STANDARD (ROW_NUMBER trong SQL).
+     *
+     * So với layout hiện có bằng 1 câu MERGE: chỉ INSERT ghế mới vào layout,
+     * UPDATE ghế đổi loại, DELETE ghế không còn dùng => đổi số lượng vé không
+     * phải xoá + insert lại toàn bộ Event_Seat_Layout. Chạy trong transaction
+     * của caller.
+     *
+     * Thứ tự hàng: LEN(row_no) trước để hàng AA.. (area > 26 hàng) đứng sau Z.
+     */
     public void reconfigureSeatsForEvent(
             Connection conn,
             int eventId,
@@ -44,67 +56,89 @@ public class EventSeatLayoutDAO {
 
         int totalNeeded = vipCount + standardCount;
 
-        // 1. Lấy danh sách ghế vật lý trong area (chỉ lấy ghế ACTIVE)
-        List<Integer> seatIds = new ArrayList<>();
-
-        String selectSql = "SELECT seat_id "
-                + "FROM Seat "
-                + "WHERE area_id = ? AND status = 'ACTIVE' "
-                + "ORDER BY row_no, col_no, seat_code";
-
-        try ( PreparedStatement ps = conn.prepareStatement(selectSql)) {
+        // 1. Đủ ghế vật lý trong area không (chỉ đếm ghế ACTIVE)
+        int activeSeats = 0;
+        String countSql = "SELECT COUNT(*) FROM Seat WHERE area_id = ? AND status = 'ACTIVE'";
+        try ( PreparedStatement ps = conn.prepareStatement(countSql)) {
             ps.setInt(1, areaId);
             try ( ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    seatIds.add(rs.getInt("seat_id"));
+                if (rs.next()) {
+                    activeSeats = rs.getInt(1);
                 }
             }
         }
 
-        if (seatIds.size() < totalNeeded) {
+        if (activeSeats < totalNeeded) {
             throw new RuntimeException(
                     "Not enough physical seats in area_id=" + areaId
-                    + " | active seats in DB=" + seatIds.size()
+                    + " | active seats in DB=" + activeSeats
                     + " < required=" + totalNeeded
             );
         }
 
-        // 2. Xoá layout cũ
-        deleteByEventId(conn, eventId);
-
-        // 3. Insert layout mới
-        String insertSql = "INSERT INTO Event_Seat_Layout (event_id, seat_id, seat_type, status) "
-                + "VALUES (?, ?, ?, ?)";
-
-        try ( PreparedStatement psInsert = conn.prepareStatement(insertSql)) {
-
-            int index = 0;
-
-            for (int i = 0; i < totalNeeded; i++) {
-                int seatId = seatIds.get(i);
+        // 2. Diff layout hiện tại với layout mong muốn (1 câu)
+        String mergeSql = "WITH target AS ( "
+                + "   SELECT event_id, seat_id, seat_type, status FROM Event_Seat_Layout WHERE event_id = ? "
+                + "), "
+                + "desired AS ( "
+                + "   SELECT seat_id, CASE WHEN rn <= ? THEN 'VIP' ELSE 'STANDARD' END AS seat_type "
+                + "   FROM ( "
+                + "       SELECT seat_id, ROW_NUMBER() OVER (ORDER BY LEN(row_no), row_no, col_no, seat_code) AS rn "
+                + "       FROM Seat "
+                + "       WHERE area_id = ? AND status = 'ACTIVE' "
+                + "   ) x "
+                + "   WHERE rn <= ? "
+                + ") "
+                + "MERGE target AS t "
+                + "USING desired AS d ON t.seat_id = d.seat_id "
+                + "WHEN MATCHED AND t.seat_type <> d.seat_type THEN "
+                + "   UPDATE SET seat_type = d.seat_type "
+                + "WHEN NOT MATCHED BY TARGET THEN "
+                + "   INSERT (event_id, seat_id, seat_type, status) VALUES (?, d.seat_id, d.seat_type, 'AVAILABLE') "
+                + "WHEN NOT MATCHED BY SOURCE THEN "
+                + "   DELETE "
+                + "OUTPUT $action;";
+
+        int inserted = 0, updated = 0, deleted = 0;
+        try ( PreparedStatement ps = conn.prepareStatement(mergeSql)) {
+            ps.setInt(1, eventId);
+            ps.setInt(2, vipCount);
+            ps.setInt(3, areaId);
+            ps.setInt(4, totalNeeded);
+            ps.setInt(5, eventId);
 
-                String seatType;
-                if (index < vipCount) {
-                    seatType = "VIP";
-                } else {
-                    seatType = "STANDARD";
+            try ( ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String action = rs.getString(1);
+                    if ("INSERT".equals(action)) {
+                        inserted++;
+                    } else if ("UPDATE".equals(action)) {
+                        updated++;
+                    } else if ("DELETE".equals(action)) {
+                        deleted++;
+                    }
                 }
-
-                psInsert.setInt(1, eventId);
-                psInsert.setInt(2, seatId);
-                psInsert.setString(3, seatType);
-                psInsert.setString(4, "AVAILABLE"); // ban đầu tất cả là AVAILABLE
-                psInsert.addBatch();
-
-                index++;
             }
-
-            psInsert.executeBatch();
         }
+
+        System.out.println("[EventSeatLayoutDAO] reconfigure eventId=" + eventId
+                + ": +" + inserted + " ~" + updated + " -" + deleted
+                + " (vip=" + vipCount + ", standard=" + standardCount + ")");
     }
 
     // ============= LẤY DANH SÁCH GHẾ CỦA EVENT (CHO FE RENDER) ============
     public List<Seat> getSeatsForEvent(int eventId, String seatTypeFilter) {
+        try {
+            return querySeatsForEvent(eventId, seatTypeFilter);
+        } catch (Exception e) {
+            System.err.println("[ERROR] getSeatsForEvent: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    // Giống getSeatsForEvent nhưng ném lỗi ra ngoài (SeatAvailabilityCache không được cache list rỗng khi DB lỗi)
+    public List<Seat> querySeatsForEvent(int eventId, String seatTypeFilter) throws SQLException, ClassNotFoundException {
         List<Seat> list = new ArrayList<>();
 
         StringBuilder sql = new StringBuilder(
@@ -144,7 +178,7 @@ public class EventSeatLayoutDAO {
             sql.append(" AND esl.seat_type = ? ");
         }
 
-        sql.append(" ORDER BY s.row_no, s.col_no, s.seat_code ");
+        sql.append(" ORDER BY LEN(s.row_no), s.row_no, s.col_no, s.seat_code ");
 
         try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql.toString())) {
 
@@ -158,10 +192,6 @@ public class EventSeatLayoutDAO {
                     list.add(mapRowToSeatForEvent(rs));
                 }
             }
-
-        } catch (Exception e) {
-            System.err.println("[ERROR] getSeatsForEvent: " + e.getMessage());
-            e.printStackTrace();
         }
 
         return list;
@@ -209,4 +239,96 @@ public class EventSeatLayoutDAO {
         }
         return null;
     }
+
+    // ============= VALIDATE + KHOÁ NHIỀU GHẾ TRONG 1 QUERY (dùng cho SeatHoldService) ============
+    /**
+     * Thay cho vòng lặp getSeatForEvent() + getActiveCategoryTicketByEventIdAndName()
+     * + findAlreadyBookedSeatIdsForEvent(): 1 query trả về cho từng ghế
+     * - seat theo layout event (area, seatType, AVAILABLE/BOOKED)
+     * - CategoryTicket ACTIVE ứng với seatType (OUTER APPLY, null nếu không có)
+     * - reserved = đã có Ticket bất kỳ cho ghế này
+     *
+     * Chạy trong transaction của caller: UPDLOCK + HOLDLOCK trên Ticket giữ
+     * khoá range tới khi commit => 2 người giữ cùng ghế sẽ chờ nhau thay vì
+     * cùng thấy "còn trống".
+     *
+     * Ghế không có trong layout (hoặc Seat không ACTIVE) sẽ không có trong map.
+     */
+    public java.util.Map<Integer, SeatHoldInfo> lockSeatsForHold(Connection conn, int eventId, List<Integer> seatIds)
+            throws SQLException {
+
+        java.util.Map<Integer, SeatHoldInfo> result = new java.util.HashMap<>();
+        if (seatIds == null || seatIds.isEmpty()) {
+            return result;
+        }
+
+        StringBuilder sql = new StringBuilder(
+                "SELECT "
+                + "   s.seat_id, "
+                + "   s.area_id, "
+                + "   s.seat_code, "
+                + "   esl.seat_type, "
+                + "   ct.category_ticket_id, "
+                + "   ct.price, "
+                + "   CASE "
+                + "       WHEN EXISTS ( "
+                + "           SELECT 1 FROM Ticket t WITH (UPDLOCK, HOLDLOCK) "
+                + "           WHERE t.event_id = esl.event_id "
+                + "             AND t.seat_id = esl.seat_id "
+                + "             AND t.status IN ('BOOKED','CHECKED_IN') "
+                + "       ) THEN 'BOOKED' "
+                + "       ELSE 'AVAILABLE' "
+                + "   END AS layout_status, "
+                + "   CASE "
+                + "       WHEN EXISTS ( "
+                + "           SELECT 1 FROM Ticket t2 WITH (UPDLOCK, HOLDLOCK) "
+                + "           WHERE t2.event_id = esl.event_id "
+                + "             AND t2.seat_id = esl.seat_id "
+                + "       ) THEN 1 ELSE 0 "
+                + "   END AS reserved "
+                + "FROM Event_Seat_Layout esl "
+                + "JOIN Seat s ON esl.seat_id = s.seat_id "
+                + "OUTER APPLY ( "
+                + "   SELECT TOP 1 c.category_ticket_id, c.price "
+                + "   FROM Category_Ticket c "
+                + "   WHERE c.event_id = esl.event_id "
+                + "     AND LOWER(c.name) = LOWER(esl.seat_type) "
+                + "     AND c.status = 'ACTIVE' "
+                + ") ct "
+                + "WHERE esl.event_id = ? "
+                + "  AND s.status = 'ACTIVE' "
+                + "  AND esl.seat_id IN (");
+        for (int i = 0; i < seatIds.size(); i++) {
+            if (i > 0) {
+                sql.append(",");
+            }
+            sql.append("?");
+        }
+        sql.append(")");
+
+        try ( PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int idx = 1;
+            ps.setInt(idx++, eventId);
+            for (Integer seatId : seatIds) {
+                ps.setInt(idx++, seatId);
+            }
+
+            try ( ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    SeatHoldInfo info = new SeatHoldInfo();
+                    info.setSeatId(rs.getInt("seat_id"));
+                    info.setAreaId(rs.getInt("area_id"));
+                    info.setSeatCode(rs.getString("seat_code"));
+                    info.setSeatType(rs.getString("seat_type"));
+                    info.setLayoutStatus(rs.getString("layout_status"));
+                    int ctId = rs.getInt("category_ticket_id");
+                    info.setCategoryTicketId(rs.wasNull() ? null : ctId);
+                    info.setPrice(rs.getBigDecimal("price"));
+                    info.setReserved(rs.getInt("reserved") == 1);
+                    result.put(info.getSeatId(), info);
+                }
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,176 @@
+package DAO;
+
+import mylib.DBUtils;
+import utils.InMemoryNotificationService.NotiItem;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ========================================================================================================
+ * DAO: NotificationDAO - BẢNG Notification (THÔNG BÁO CỦA USER)
+ * ========================================================================================================
+ *
+ * - notification_id do app cấp theo block (Notification_Id_Block) => cache RAM có
+ *   ID ngay lúc thêm, ghi DB sau (write-behind) mà vẫn phân trang theo ID được
+ * - Index (user_id, notification_id DESC): trang mới nhất / trang sau ?after=
+ * - Filtered index is_read = 0: đếm chưa đọc, mark-all-read
+ */
+public class NotificationDAO {
+
+    /**
+     * Tạo bảng + index nếu chưa có (project chưa có migration script riêng).
+     */
+    public void ensureTable() throws SQLException, ClassNotFoundException {
+        String sql = "IF OBJECT_ID('dbo.Notification', 'U') IS NULL "
+                + "BEGIN "
+                + "CREATE TABLE dbo.Notification ("
+                + " notification_id BIGINT NOT NULL PRIMARY KEY,"
+                + " user_id INT NOT NULL,"
+                + " title NVARCHAR(500) NOT NULL,"
+                + " content NVARCHAR(MAX) NULL,"
+                + " link_url NVARCHAR(1000) NULL,"
+                + " is_read BIT NOT NULL DEFAULT 0,"
+                + " created_at DATETIME2 NOT NULL DEFAULT SYSDATETIME()"
+                + "); "
+                + "CREATE INDEX IX_Notification_user ON dbo.Notification (user_id, notification_id DESC); "
+                + "CREATE INDEX IX_Notification_unread ON dbo.Notification (user_id) WHERE is_read = 0; "
+                + "END; "
+                + "IF OBJECT_ID('dbo.Notification_Id_Block', 'U') IS NULL "
+                + "BEGIN "
+                + "CREATE TABLE dbo.Notification_Id_Block (id INT NOT NULL PRIMARY KEY, next_id BIGINT NOT NULL); "
+                + "INSERT INTO dbo.Notification_Id_Block (id, next_id) "
+                + "SELECT 1, ISNULL(MAX(notification_id), 0) + 1 FROM dbo.Notification; "
+                + "END";
+
+        try ( Connection conn = DBUtils.getConnection();  Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    /**
+     * Giữ trước size ID liên tiếp. Trả về ID đầu tiên của block.
+     */
+    public long allocateIdBlock(int size) throws SQLException, ClassNotFoundException {
+        String sql = "UPDATE dbo.Notification_Id_Block SET next_id = next_id + ? "
+                + "OUTPUT DELETED.next_id WHERE id = 1";
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, size);
+            try ( ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+        }
+        throw new SQLException("Notification_Id_Block is empty");
+    }
+
+    /**
+     * Ghi 1 lô notification (JDBC batch, 1 transaction). Dòng đã có (gửi lại
+     * sau lỗi) bị bỏ qua => ghi lại an toàn.
+     */
+    public void insertBatch(List<NotiItem> items) throws SQLException, ClassNotFoundException {
+        if (items.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO dbo.Notification (notification_id, user_id, title, content, link_url, is_read, created_at) "
+                + "SELECT ?, ?, ?, ?, ?, ?, ? "
+                + "WHERE NOT EXISTS (SELECT 1 FROM dbo.Notification WHERE notification_id = ?)";
+
+        try ( Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try ( PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (NotiItem n : items) {
+                    ps.setLong(1, n.id);
+                    ps.setInt(2, n.userId);
+                    ps.setString(3, n.title);
+                    ps.setString(4, n.content);
+                    ps.setString(5, n.linkUrl);
+                    ps.setBoolean(6, n.read);
+                    ps.setTimestamp(7, new Timestamp(n.createdAt));
+                    ps.setLong(8, n.id);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Trang notification mới nhất trước. beforeId = null => trang đầu, ngược
+     * lại lấy các ID nhỏ hơn beforeId (cursor ?after=).
+     */
+    public List<NotiItem> findPage(int userId, Long beforeId, int limit) throws SQLException, ClassNotFoundException {
+        String sql = "SELECT TOP (?) notification_id, user_id, title, content, link_url, is_read, created_at "
+                + "FROM dbo.Notification "
+                + "WHERE user_id = ? AND (? IS NULL OR notification_id < ?) "
+                + "ORDER BY notification_id DESC";
+
+        List<NotiItem> list = new ArrayList<>();
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            ps.setInt(2, userId);
+            if (beforeId != null) {
+                ps.setLong(3, beforeId);
+                ps.setLong(4, beforeId);
+            } else {
+                ps.setNull(3, java.sql.Types.BIGINT);
+                ps.setNull(4, java.sql.Types.BIGINT);
+            }
+            try ( ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    NotiItem n = new NotiItem(rs.getLong("notification_id"), rs.getString("title"),
+                            rs.getString("content"), rs.getString("link_url"));
+                    n.userId = rs.getInt("user_id");
+                    n.read = rs.getBoolean("is_read");
+                    n.createdAt = rs.getTimestamp("created_at").getTime();
+                    n.persisted = true;
+                    list.add(n);
+                }
+            }
+        }
+        return list;
+    }
+
+    public int countUnread(int userId) throws SQLException, ClassNotFoundException {
+        String sql = "SELECT COUNT(*) FROM dbo.Notification WHERE user_id = ? AND is_read = 0";
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            try ( ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Đánh dấu đã đọc toàn bộ: 1 câu UPDATE. Trả về số dòng thay đổi.
+     */
+    public int markAllRead(int userId) throws SQLException, ClassNotFoundException {
+        String sql = "UPDATE dbo.Notification SET is_read = 1 WHERE user_id = ? AND is_read = 0";
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            return ps.executeUpdate();
+        }
+    }
+
+    public boolean markOneRead(int userId, long notificationId) throws SQLException, ClassNotFoundException {
+        String sql = "UPDATE dbo.Notification SET is_read = 1 "
+                + "WHERE notification_id = ? AND user_id = ? AND is_read = 0";
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, notificationId);
+            ps.setInt(2, userId);
+            return ps.executeUpdate() > 0;
+        }
+    }
+}
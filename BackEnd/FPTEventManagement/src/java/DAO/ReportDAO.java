@@ -5,6 +5,7 @@ import DTO.ReportDetailStaffDTO;
 import DTO.ReportListStaffDTO;
 import java.math.BigDecimal;
 import mylib.DBUtils;
+import service.EventTicketCounters;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -392,14 +393,18 @@ public class ReportDAO {
 
             // 4) Update Ticket.status = REFUNDED (chỉ update nếu đang CHECKED_IN)
             // (Bạn nhớ đảm bảo Ticket.status cho phép giá trị 'REFUNDED' nếu có CHECK constraint)
-            String sqlUpdateTicket = "UPDATE Ticket SET status = N'REFUNDED' WHERE ticket_id = ? AND status = N'CHECKED_IN'";
+            String sqlUpdateTicket = "UPDATE Ticket SET status = N'REFUNDED' OUTPUT INSERTED.event_id "
+                    + "WHERE ticket_id = ? AND status = N'CHECKED_IN'";
+            int refundedEventId;
             try ( PreparedStatement ps = conn.prepareStatement(sqlUpdateTicket)) {
                 ps.setInt(1, ticketId);
-                int rows = ps.executeUpdate();
-                if (rows <= 0) {
-                    conn.rollback();
-                    result.message = "Không cập nhật được trạng thái ticket (ticket không còn CHECKED_IN)";
-                    return result;
+                try ( ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        conn.rollback();
+                        result.message = "Không cập nhật được trạng thái ticket (ticket không còn CHECKED_IN)";
+                        return result;
+                    }
+                    refundedEventId = rs.getInt(1);
                 }
             }
 
@@ -424,6 +429,7 @@ public class ReportDAO {
             }
 
             conn.commit();
+            EventTicketCounters.onTransition(refundedEventId, "CHECKED_IN", "REFUNDED");
             result.success = true;
             result.refundAmount = refund;
             result.message = "Đã duyệt và hoàn tiền thành công";
@@ -1,6 +1,7 @@
 package DAO;
 
 import DTO.Seat;
+import mylib.AppProps;
 import mylib.DBUtils;
 
 import java.sql.*;
@@ -80,7 +81,7 @@ public class SeatDAO {
         String sql = "SELECT seat_id, area_id, seat_code, row_no, col_no, status " +
                      "FROM Seat " +
                      "WHERE area_id = ? " +
-                     "ORDER BY row_no, col_no";
+                     "ORDER BY LEN(row_no), row_no, col_no";
 
         try (Connection conn = DBUtils.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -127,43 +128,68 @@ public class SeatDAO {
     }
 
     // ====================== GENERATE GHẾ VẬT LÝ CHO AREA ======================
-    public void generateSeatsForArea(int areaId, int capacity) throws SQLException, ClassNotFoundException {
-        String sql = "INSERT INTO Seat (seat_code, row_no, col_no, status, area_id) " +
-                     "VALUES (?, ?, ?, ?, ?)";
-
-        try (Connection conn = DBUtils.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+    // Số ghế / hàng mặc định (A1..A10, B1..B10,...), đổi qua seat.rowWidth
+    public static final int DEFAULT_SEATS_PER_ROW = Math.max(1, AppProps.getInt("seat.rowWidth", 10));
 
-            int seatsPerRow = 10;   // 10 ghế / hàng: A1..A10, B1..B10,...
-            char row = 'A';
-            int col = 1;
+    // Giới hạn của bảng số sinh trong SQL (10^5)
+    public static final int MAX_GENERATED_SEATS = 100000;
 
-            for (int i = 1; i <= capacity; i++) {
-                String seatCode = row + String.valueOf(col);
-                String rowNo = String.valueOf(row);
-
-                String status = "ACTIVE";
+    public void generateSeatsForArea(int areaId, int capacity) throws SQLException, ClassNotFoundException {
+        generateSeatsForArea(areaId, capacity, DEFAULT_SEATS_PER_ROW);
+    }
 
-                ps.setString(1, seatCode);
-                ps.setString(2, rowNo);
-                ps.setInt(3, col);
-                ps.setString(4, status);
-                ps.setInt(5, areaId);
+    /**
+     * Sinh capacity ghế ACTIVE cho area bằng 1 câu INSERT ... SELECT (không
+     * gửi từng dòng qua JDBC).
+     *
+     * Tên hàng: A..Z, rồi AA..ZZ, rồi AAA.. (hàng thứ 27 trở đi không còn ra
+     * ký tự lạ sau 'Z' như bản cũ); cột 1..seatsPerRow; seat_code = hàng + cột.
+     */
+    public void generateSeatsForArea(int areaId, int capacity, int seatsPerRow) throws SQLException, ClassNotFoundException {
+        if (capacity <= 0) {
+            return;
+        }
+        if (capacity > MAX_GENERATED_SEATS) {
+            throw new IllegalArgumentException("capacity must be <= " + MAX_GENERATED_SEATS);
+        }
+        if (seatsPerRow <= 0) {
+            seatsPerRow = DEFAULT_SEATS_PER_ROW;
+        }
+        // Tên hàng tối đa 3 chữ cái: 26 + 26^2 + 26^3 hàng
+        if ((capacity + seatsPerRow - 1) / seatsPerRow > 26 + 676 + 17576) {
+            throw new IllegalArgumentException("Too many rows: increase seatsPerRow");
+        }
 
-                ps.addBatch();
+        // d: 0..9, n: 0..capacity-1 (5 lần CROSS JOIN = 10^5 số), r: chỉ số hàng, c: số cột
+        String sql = "WITH d AS (SELECT v FROM (VALUES (0),(1),(2),(3),(4),(5),(6),(7),(8),(9)) t(v)), "
+                + "n AS ( "
+                + "   SELECT TOP (?) ROW_NUMBER() OVER (ORDER BY (SELECT NULL)) - 1 AS i "
+                + "   FROM d a CROSS JOIN d b CROSS JOIN d c CROSS JOIN d e CROSS JOIN d f "
+                + "), "
+                + "p AS (SELECT i / ? AS r, i % ? + 1 AS c FROM n), "
+                + "l AS ( "
+                + "   SELECT c, CASE "
+                + "       WHEN r < 26 THEN CHAR(65 + r) "
+                + "       WHEN r < 702 THEN CHAR(65 + (r - 26) / 26) + CHAR(65 + (r - 26) % 26) "
+                + "       ELSE CHAR(65 + (r - 702) / 676 % 26) + CHAR(65 + (r - 702) / 26 % 26) + CHAR(65 + (r - 702) % 26) "
+                + "   END AS row_label "
+                + "   FROM p "
+                + ") "
+                + "INSERT INTO Seat (seat_code, row_no, col_no, status, area_id) "
+                + "SELECT row_label + CAST(c AS VARCHAR(10)), row_label, c, 'ACTIVE', ? "
+                + "FROM l";
 
-                col++;
-                if (col > seatsPerRow) {
-                    col = 1;
-                    row++;
-                }
+        try (Connection conn = DBUtils.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
 
-                if (i % 100 == 0) {
-                    ps.executeBatch();
-                }
-            }
+            ps.setInt(1, capacity);
+            ps.setInt(2, seatsPerRow);
+            ps.setInt(3, seatsPerRow);
+            ps.setInt(4, areaId);
 
-            ps.executeBatch();
+            int inserted = ps.executeUpdate();
+            System.out.println("[SeatDAO] generateSeatsForArea areaId=" + areaId
+                    + ", seats=" + inserted + ", seatsPerRow=" + seatsPerRow);
         }
     }
     
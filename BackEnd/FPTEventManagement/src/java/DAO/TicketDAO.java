@@ -23,14 +23,24 @@ package DAO;
  * checkoutTicket() - Check-out vé 8. getEventStats() - Thống kê vé theo sự kiện
  * 9. findTicketsByIds() - Lấy nhiều vé theo danh sách ID (batch) 10.
  * updateTicketAfterPayment() - Cập nhật vé sau thanh toán 11.
- * deleteTicketsByIds() - Xóa nhiều vé (batch)
+ * deleteTicketsByIds() - Xóa nhiều vé (batch) 12. getTicketsWithEvents() /
+ * checkinTicketsBatch() / checkoutTicketsBatch() - Check-in/out QR gộp nhiều
+ * vé: 1 query nạp + 1 UPDATE có điều kiện 13. streamGateManifest() /
+ * checkinTicketsAt() - Manifest cổng offline + đồng bộ check-in hàng loạt 14.
+ * updateTicketCodes() / getTicketOwner() / stripQrBlobs() - Mã vé thay cho
+ * ảnh QR Base64 (ảnh render ở /api/tickets/{id}/qr.png)
+ *
+ * Vé đổi trạng thái => báo EventTicketCounters (event_id lấy qua OUTPUT) để
+ * /api/events/stats không phải COUNT lại
  *
  * SỬ DỤNG: - Controller: MyTicketController, RegistrationController,
  * CheckinController - Service: QR generation, payment processing, statistics
  */
 import DTO.EventStatsResponse;
 import DTO.MyTicketResponse;
+import DTO.Event;
 import DTO.Ticket;
+import DTO.TicketGateInfo;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -43,6 +53,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import mylib.DBUtils;
+import service.EventTicketCounters;
+import service.SeatAvailabilityCache;
 
 public class TicketDAO {
 
@@ -118,6 +130,13 @@ public class TicketDAO {
             }
 
             int affected = ps.executeUpdate();
+            if (affected > 0 && t.getSeatId() != null) {
+                // Không có ticket_id => bỏ map ghế của event, lần đọc sau nạp lại
+                SeatAvailabilityCache.invalidate(t.getEventId());
+            }
+            if (affected > 0) {
+                EventTicketCounters.onTransition(t.getEventId(), null, t.getStatus());
+            }
             return affected > 0; // Trả về true nếu insert thành công
 
         } catch (SQLIntegrityConstraintViolationException ex) {
@@ -209,7 +228,10 @@ public class TicketDAO {
             // Lấy ticket_id vừa được sinh bởi IDENTITY
             try ( ResultSet rs = ps.getGeneratedKeys()) {
                 if (rs.next()) {
-                    return rs.getInt(1); // ticket_id
+                    int ticketId = rs.getInt(1); // ticket_id
+                    SeatAvailabilityCache.onTicketInserted(ticketId, t.getEventId(), t.getSeatId(), t.getStatus());
+                    EventTicketCounters.onTransition(t.getEventId(), null, t.getStatus());
+                    return ticketId;
                 }
             }
             return -1;
@@ -224,6 +246,18 @@ public class TicketDAO {
         return -1;
     }
 
+    /**
+     * Mã vé trả cho danh sách: vé cũ còn lưu Base64 PNG (~10 KB) trong
+     * qr_code_value => thay bằng ticket_id ngay trong SQL để blob không rời DB.
+     * Ảnh QR lấy riêng qua /api/tickets/{id}/qr.png (TicketQrController).
+     */
+    private static final String TICKET_CODE_SQL
+            = "CASE WHEN LEN(t.qr_code_value) > 64 THEN CAST(t.ticket_id AS VARCHAR(20)) ELSE t.qr_code_value END";
+
+    public static String qrUrl(int ticketId) {
+        return "/api/tickets/" + ticketId + "/qr.png";
+    }
+
     /**
      * ================================================================================================
      * METHOD: updateTicketQr - CẬP NHẬT QR CODE CHO VÉ
@@ -243,7 +277,7 @@ public class TicketDAO {
      * TRẢ VỀ: - true: Update thành công - false: Update thất bại (ticket không
      * tồn tại, connection error...)
      */
-    // ✅ MỚI: cập nhật QR code (Base64) cho ticket
+    // Giữ cho code cũ; luồng thanh toán giờ dùng updateTicketCodes (không lưu ảnh)
     public boolean updateTicketQr(int ticketId, String qrBase64) {
         String sql = "UPDATE Ticket "
                 + "SET qr_code_value = ?, qr_issued_at = ? "
@@ -381,6 +415,7 @@ public class TicketDAO {
     public boolean checkinTicket(int ticketId, Timestamp checkinTime) {
         String sql = "UPDATE Ticket "
                 + "SET status = 'CHECKED_IN', checkin_time = ? "
+                + "OUTPUT INSERTED.event_id "
                 + "WHERE ticket_id = ? AND status = 'BOOKED'";
 
         try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -388,8 +423,14 @@ public class TicketDAO {
             ps.setTimestamp(1, checkinTime);
             ps.setInt(2, ticketId);
 
-            int rows = ps.executeUpdate();
-            return rows > 0; // true = checkin thành công
+            try ( ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false; // vé không BOOKED / không tồn tại
+                }
+                EventTicketCounters.onTransition(rs.getInt(1), "BOOKED", "CHECKED_IN");
+            }
+            SeatAvailabilityCache.onTicketStatusChanged(ticketId, "CHECKED_IN");
+            return true; // true = checkin thành công
         } catch (Exception e) {
             System.err.println("[ERROR] checkinTicket: " + e.getMessage());
             e.printStackTrace();
@@ -428,7 +469,7 @@ public class TicketDAO {
      */
     // New: Lấy danh sách vé (kèm thông tin Event + Venue) theo user_id
     public List<MyTicketResponse> getTicketsByUserId(int userId) {
-        String sql = "SELECT t.ticket_id, t.qr_code_value, t.status, t.checkin_time, t.check_out_time, "
+        String sql = "SELECT t.ticket_id, " + TICKET_CODE_SQL + " AS ticket_code, t.status, t.checkin_time, t.check_out_time, "
                 + " e.title AS event_name, e.start_time AS start_time, v.venue_name AS venue_name "
                 + "FROM Ticket t "
                 + "JOIN Event e ON t.event_id = e.event_id "
@@ -448,7 +489,8 @@ public class TicketDAO {
                     // Map từng row trong ResultSet sang MyTicketResponse object
                     MyTicketResponse m = new MyTicketResponse();
                     m.setTicketId(rs.getInt("ticket_id"));
-                    m.setTicketCode(rs.getString("qr_code_value")); // Base64 QR image
+                    m.setTicketCode(rs.getString("ticket_code")); // mã vé, ảnh QR lấy ở qrUrl
+                    m.setQrUrl(qrUrl(m.getTicketId()));
                     m.setStatus(rs.getString("status"));
                     m.setCheckInTime(rs.getTimestamp("checkin_time"));
 
@@ -495,9 +537,20 @@ public class TicketDAO {
      */
     // New: get event statistics (total tickets, checked-in count, check-in rate)
     public EventStatsResponse getEventStats(int eventId) {
-        EventStatsResponse stats = new EventStatsResponse();
-        stats.setEventId(eventId);
+        int[] counts = {0, 0, 0, 0};
+        try {
+            counts = countTicketsByStatus(eventId);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return buildEventStats(eventId, counts[0], counts[1], counts[2], counts[3]);
+    }
 
+    /**
+     * Đếm vé của event theo status: [BOOKED, CHECKED_IN, CHECKED_OUT,
+     * REFUNDED] (dùng để nạp / đối soát EventTicketCounters).
+     */
+    public int[] countTicketsByStatus(int eventId) throws SQLException, ClassNotFoundException {
         // SQL đếm số lượng theo từng status
         String sql = "SELECT status, COUNT(*) as total FROM Ticket WHERE event_id = ? "
                 + "AND status IN ('BOOKED', 'CHECKED_IN', 'CHECKED_OUT', 'REFUNDED') GROUP BY status";
@@ -520,9 +573,16 @@ public class TicketDAO {
                     }
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        return new int[]{booked, checkedIn, checkedOut, refunded};
+    }
+
+    /**
+     * Dựng EventStatsResponse (tổng + tỉ lệ %) từ số vé theo status.
+     */
+    public static EventStatsResponse buildEventStats(int eventId, int booked, int checkedIn, int checkedOut, int refunded) {
+        EventStatsResponse stats = new EventStatsResponse();
+        stats.setEventId(eventId);
 
         int total = booked + checkedIn + checkedOut + refunded;
         stats.setTotalRegistered(total);
@@ -543,7 +603,7 @@ public class TicketDAO {
     public List<MyTicketResponse> getTicketsByRole(String role, int userId, Integer eventId) {
         List<MyTicketResponse> list = new ArrayList<>();
 
-        String sql = "SELECT t.ticket_id, t.qr_code_value, er.title, er.preferred_start_time, "
+        String sql = "SELECT t.ticket_id, " + TICKET_CODE_SQL + " AS ticket_code, er.title, er.preferred_start_time, "
                 + "t.status, t.checkin_time, t.check_out_time, t.qr_issued_at, u.full_name, "
                 + "s.seat_code, esl.seat_type "
                 + "FROM [dbo].[Ticket] t "
@@ -576,7 +636,8 @@ public class TicketDAO {
                 while (rs.next()) {
                     MyTicketResponse item = new MyTicketResponse();
                     item.setTicketId(rs.getInt("ticket_id"));
-                    item.setTicketCode(rs.getString("qr_code_value"));
+                    item.setTicketCode(rs.getString("ticket_code"));
+                    item.setQrUrl(qrUrl(item.getTicketId()));
                     item.setEventName(rs.getString("title"));
                     item.setStartTime(rs.getTimestamp("preferred_start_time"));
                     item.setStatus(rs.getString("status"));
@@ -646,6 +707,7 @@ public class TicketDAO {
                 + "bill_id = ?, "
                 + "status = ?, "
                 + "qr_issued_at = ? "
+                + "OUTPUT DELETED.status, INSERTED.event_id "
                 + "WHERE ticket_id = ?";
 
         try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -660,7 +722,12 @@ public class TicketDAO {
             ps.setTimestamp(3, t.getQrIssuedAt());
             ps.setInt(4, t.getTicketId());
 
-            ps.executeUpdate();
+            try ( ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    SeatAvailabilityCache.onTicketStatusChanged(t.getTicketId(), t.getStatus());
+                    EventTicketCounters.onTransition(rs.getInt(2), rs.getString(1), t.getStatus());
+                }
+            }
         }
     }
 
@@ -670,7 +737,8 @@ public class TicketDAO {
         }
 
         String placeholders = ids.stream().map(id -> "?").collect(Collectors.joining(","));
-        String sql = "DELETE FROM Ticket WHERE ticket_id IN (" + placeholders + ")";
+        String sql = "DELETE FROM Ticket OUTPUT DELETED.event_id, DELETED.status "
+                + "WHERE ticket_id IN (" + placeholders + ")";
 
         try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
 
@@ -679,19 +747,32 @@ public class TicketDAO {
                 ps.setInt(idx++, id);
             }
 
-            ps.executeUpdate();
+            try ( ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    EventTicketCounters.onTransition(rs.getInt(1), rs.getString(2), null);
+                }
+            }
         }
+        SeatAvailabilityCache.onTicketsDeleted(ids);
     }
 
     public boolean checkoutTicket(int ticketId) {
         String sql = "UPDATE dbo.Ticket "
                 + "SET status = 'CHECKED_OUT', check_out_time = GETDATE() "
+                + "OUTPUT INSERTED.event_id "
                 + "WHERE ticket_id = ? AND status = 'CHECKED_IN'";
 
         try ( Connection con = DBUtils.getConnection();  PreparedStatement ps = con.prepareStatement(sql)) {
 
             ps.setInt(1, ticketId);
-            return ps.executeUpdate() > 0;
+            try ( ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                EventTicketCounters.onTransition(rs.getInt(1), "CHECKED_IN", "CHECKED_OUT");
+            }
+            SeatAvailabilityCache.onTicketStatusChanged(ticketId, "CHECKED_OUT");
+            return true;
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -752,22 +833,50 @@ public class TicketDAO {
 
             try ( ResultSet rs = ps.getGeneratedKeys()) { // ✅ Lấy id sinh ra
                 if (rs.next()) {
-                    return rs.getInt(1);
+                    int ticketId = rs.getInt(1);
+                    SeatAvailabilityCache.onTicketInserted(ticketId, t.getEventId(), t.getSeatId(), t.getStatus());
+                    EventTicketCounters.onTransition(t.getEventId(), null, t.getStatus());
+                    return ticketId;
                 }
             }
             return -1;
         }
     }
 
-    public void updateTicketAfterPayment(Connection conn, Ticket t) throws SQLException {
-        String sql = "UPDATE Ticket SET bill_id=?, status=?, qr_issued_at=? WHERE ticket_id=?";
+    /**
+     * Bản dùng Connection của caller (transaction chưa commit): KHÔNG báo
+     * cache / bộ đếm ở đây, vì rollback sẽ làm số liệu trong RAM lệch. Trả về
+     * status cũ (null nếu không có dòng nào) và gán t.eventId; caller gọi
+     * notifyAfterPayment(t, oldStatus) SAU conn.commit().
+     */
+    public String updateTicketAfterPayment(Connection conn, Ticket t) throws SQLException {
+        String sql = "UPDATE Ticket SET bill_id=?, status=?, qr_issued_at=? "
+                + "OUTPUT DELETED.status, INSERTED.event_id WHERE ticket_id=?";
         try ( PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setObject(1, t.getBillId());
             ps.setString(2, t.getStatus());
             ps.setTimestamp(3, t.getQrIssuedAt());
             ps.setInt(4, t.getTicketId());
-            ps.executeUpdate();
+            try ( ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    t.setEventId(rs.getInt(2));
+                    return rs.getString(1);
+                }
+            }
         }
+        return null;
+    }
+
+    /**
+     * Báo SeatAvailabilityCache + EventTicketCounters sau khi transaction của
+     * updateTicketAfterPayment(conn, t) đã commit.
+     */
+    public void notifyAfterPayment(Ticket t, String oldStatus) {
+        if (oldStatus == null) {
+            return;
+        }
+        SeatAvailabilityCache.onTicketStatusChanged(t.getTicketId(), t.getStatus());
+        EventTicketCounters.onTransition(t.getEventId(), oldStatus, t.getStatus());
     }
 
     public void deleteTicketsByIds(Connection conn, List<Integer> ids) throws SQLException {
@@ -775,13 +884,507 @@ public class TicketDAO {
             return;
         }
         String in = ids.stream().map(x -> "?").collect(java.util.stream.Collectors.joining(","));
-        String sql = "DELETE FROM Ticket WHERE ticket_id IN (" + in + ")";
+        String sql = "DELETE FROM Ticket OUTPUT DELETED.event_id, DELETED.status WHERE ticket_id IN (" + in + ")";
         try ( PreparedStatement ps = conn.prepareStatement(sql)) {
             for (int i = 0; i < ids.size(); i++) {
                 ps.setInt(i + 1, ids.get(i));
             }
-            ps.executeUpdate();
+            try ( ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    EventTicketCounters.onTransition(rs.getInt(1), rs.getString(2), null);
+                }
+            }
+        }
+        SeatAvailabilityCache.onTicketsDeleted(ids);
+    }
+
+    /**
+     * ================================================================================================
+     * METHOD: insertPendingTicketsBatch - GIỮ NHIỀU GHẾ BẰNG 1 LỆNH INSERT (DÙNG CONNECTION CỦA CALLER)
+     * ================================================================================================
+     *
+     * MỤC ĐÍCH: - Thay vòng lặp insertTicketAndReturnId() từng ghế (mỗi ghế 1
+     * round-trip) bằng INSERT nhiều dòng VALUES (...),(...) + OUTPUT
+     * INSERTED.ticket_id => 1 round-trip cho tối đa BATCH_INSERT_ROWS ghế
+     *
+     * THAM SỐ: - seatIds[i] đi cùng categoryIds[i] (theo seatType của ghế)
+     *
+     * TRẢ VỀ: - Danh sách ticket_id theo ĐÚNG thứ tự seatIds
+     *
+     * LƯU Ý: - Không tự commit/rollback: chạy trong transaction của caller -
+     * Unique constraint (event_id, seat_id) bị vi phạm => ném SQLException -
+     * Không báo SeatAvailabilityCache: caller gọi SeatHoldService.publishHold
+     * sau commit (rollback thì cache không bị lệch)
+     */
+    private static final int BATCH_INSERT_ROWS = 200; // 5 tham số/dòng, SQL Server giới hạn 2100 tham số
+
+    public List<Integer> insertPendingTicketsBatch(Connection conn, int eventId, int userId,
+            List<Integer> seatIds, List<Integer> categoryIds, Timestamp issuedAt) throws SQLException {
+
+        List<Integer> ticketIds = new ArrayList<>();
+        if (seatIds == null || seatIds.isEmpty()) {
+            return ticketIds;
+        }
+
+        java.util.Map<Integer, Integer> ticketIdBySeat = new java.util.HashMap<>();
+
+        for (int from = 0; from < seatIds.size(); from += BATCH_INSERT_ROWS) {
+            int to = Math.min(from + BATCH_INSERT_ROWS, seatIds.size());
+
+            StringBuilder sql = new StringBuilder(
+                    "INSERT INTO Ticket "
+                    + "(event_id, user_id, category_ticket_id, bill_id, seat_id, "
+                    + " qr_code_value, qr_issued_at, status, checkin_time) "
+                    + "OUTPUT INSERTED.ticket_id, INSERTED.seat_id "
+                    + "VALUES ");
+            for (int i = from; i < to; i++) {
+                if (i > from) {
+                    sql.append(",");
+                }
+                sql.append("(?, ?, ?, NULL, ?, 'PENDING_QR', ?, 'PENDING', NULL)");
+            }
+
+            try ( PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                int idx = 1;
+                for (int i = from; i < to; i++) {
+                    ps.setInt(idx++, eventId);
+                    ps.setInt(idx++, userId);
+                    ps.setInt(idx++, categoryIds.get(i));
+                    ps.setInt(idx++, seatIds.get(i));
+                    ps.setTimestamp(idx++, issuedAt);
+                }
+
+                try ( ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ticketIdBySeat.put(rs.getInt("seat_id"), rs.getInt("ticket_id"));
+                    }
+                }
+            }
+        }
+
+        // OUTPUT không đảm bảo thứ tự => map lại theo seatIds
+        for (Integer seatId : seatIds) {
+            Integer tid = ticketIdBySeat.get(seatId);
+            if (tid == null) {
+                throw new SQLException("insertPendingTicketsBatch: thiếu ticket_id cho seatId=" + seatId);
+            }
+            ticketIds.add(tid);
+        }
+        return ticketIds;
+    }
+
+    /**
+     * Tạo index (status, qr_issued_at) cho câu DELETE của reaper nếu chưa có
+     * (project chưa có migration script riêng).
+     */
+    public void ensureHoldIndex() throws SQLException, ClassNotFoundException {
+        String sql = "IF NOT EXISTS (SELECT 1 FROM sys.indexes "
+                + "WHERE name = 'IX_Ticket_status_qr_issued_at' AND object_id = OBJECT_ID('dbo.Ticket')) "
+                + "CREATE INDEX IX_Ticket_status_qr_issued_at ON dbo.Ticket (status, qr_issued_at) INCLUDE (bill_id)";
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.execute();
+        }
+    }
+
+    /**
+     * Ticket PENDING (chưa có bill) mà qr_issued_at NULL (dữ liệu cũ / insert
+     * không set): không biết giữ ghế từ lúc nào => gán mốc = bây giờ, tức còn
+     * đủ 1 TTL trước khi bị dọn (không xoá nhầm lần thanh toán đang dở).
+     * Trả về số dòng đã gán.
+     */
+    public int stampPendingHoldsWithoutTime(int batchSize) throws SQLException, ClassNotFoundException {
+        String sql = "UPDATE TOP (?) Ticket SET qr_issued_at = SYSDATETIME() "
+                + "WHERE status = 'PENDING' AND bill_id IS NULL AND qr_issued_at IS NULL";
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, batchSize);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * ================================================================================================
+     * METHOD: releaseExpiredPendingTickets - TRẢ GHẾ CỦA CÁC TICKET PENDING QUÁ HẠN (1 BATCH)
+     * ================================================================================================
+     *
+     * MỤC ĐÍCH: - User đóng trình duyệt ở trang VNPay => BuyTicketController
+     * không bao giờ được gọi => Ticket PENDING nằm mãi, ghế hiện HOLD mãi -
+     * SeatHoldReaper gọi hàm này lặp lại tới khi hết ticket quá hạn
+     *
+     * CÁCH LÀM: - DELETE TOP (batchSize) ... OUTPUT DELETED.* => mỗi batch là
+     * 1 transaction ngắn, không khoá cả bảng Ticket - qr_issued_at của ticket
+     * PENDING = thời điểm giữ ghế (SeatHoldService set khi insert) - Index
+     * (status, qr_issued_at) do ensureHoldIndex() tạo => WHERE không scan bảng
+     * - Ticket PENDING cũ có qr_issued_at NULL không bao giờ khớp "< cutoff" =>
+     * SeatHoldReaper gọi stampPendingHoldsWithoutTime() trước để gán mốc
+     *
+     * TRẢ VỀ: - Danh sách Ticket đã xoá (ticketId, eventId, seatId, userId)
+     */
+    public List<Ticket> releaseExpiredPendingTickets(Timestamp cutoff, int batchSize) throws SQLException, ClassNotFoundException {
+        String sql = "DELETE TOP (?) FROM Ticket "
+                + "OUTPUT DELETED.ticket_id, DELETED.event_id, DELETED.user_id, DELETED.seat_id "
+                + "WHERE status = 'PENDING' AND bill_id IS NULL AND qr_issued_at < ?";
+
+        List<Ticket> released = new ArrayList<>();
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, batchSize);
+            ps.setTimestamp(2, cutoff);
+
+            try ( ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Ticket t = new Ticket();
+                    t.setTicketId(rs.getInt("ticket_id"));
+                    t.setEventId(rs.getInt("event_id"));
+                    t.setUserId(rs.getInt("user_id"));
+                    int seatId = rs.getInt("seat_id");
+                    t.setSeatId(rs.wasNull() ? null : seatId);
+                    t.setStatus("PENDING");
+                    released.add(t);
+                }
+            }
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        for (Ticket t : released) {
+            ids.add(t.getTicketId());
+        }
+        SeatAvailabilityCache.onTicketsDeleted(ids);
+        return released;
+    }
+
+    /**
+     * Lấy seat_id -> ticket_id của các ticket có ghế trong event (dùng khi
+     * SeatAvailabilityCache nạp event, để hook chỉ có ticketId vẫn tìm được ghế).
+     */
+    public java.util.Map<Integer, Integer> getSeatTicketIdsForEvent(int eventId) throws SQLException, ClassNotFoundException {
+        String sql = "SELECT ticket_id, seat_id FROM Ticket WHERE event_id = ? AND seat_id IS NOT NULL";
+
+        java.util.Map<Integer, Integer> ticketBySeat = new java.util.HashMap<>();
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, eventId);
+            try ( ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ticketBySeat.put(rs.getInt("seat_id"), rs.getInt("ticket_id"));
+                }
+            }
+        }
+        return ticketBySeat;
+    }
+
+    /**
+     * ================================================================================================
+     * METHOD: getTicketsWithEvents - NẠP NHIỀU VÉ + SỰ KIỆN TRONG 1 QUERY (CHECK-IN / CHECK-OUT)
+     * ================================================================================================
+     *
+     * MỤC ĐÍCH: - QR gộp "TICKETS:1,2,3,..." trước đây gọi getTicketById +
+     * EventDAO.getEventById cho từng vé (2 round-trip / vé) - Giờ: Ticket LEFT
+     * JOIN Event theo danh sách ID, chia chunk GATE_CHUNK_SIZE tham số
+     *
+     * TRẢ VỀ: - Map ticketId -> TicketGateInfo (vé không tồn tại thì không có
+     * trong map; event null nếu vé trỏ tới event không còn)
+     */
+    private static final int GATE_CHUNK_SIZE = 1000; // SQL Server giới hạn 2100 tham số
+
+    public java.util.Map<Integer, TicketGateInfo> getTicketsWithEvents(java.util.Collection<Integer> ticketIds)
+            throws SQLException, ClassNotFoundException {
+        java.util.Map<Integer, TicketGateInfo> result = new java.util.HashMap<>();
+        List<Integer> ids = new ArrayList<>(new java.util.LinkedHashSet<>(ticketIds));
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        try ( Connection conn = DBUtils.getConnection()) {
+            for (int from = 0; from < ids.size(); from += GATE_CHUNK_SIZE) {
+                List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + GATE_CHUNK_SIZE));
+                String placeholders = chunk.stream().map(id -> "?").collect(Collectors.joining(","));
+                String sql = "SELECT t.ticket_id, t.event_id, t.user_id, t.category_ticket_id, t.bill_id, t.seat_id, "
+                        + "       t.status, t.checkin_time, t.check_out_time, "
+                        + "       e.event_id AS e_event_id, e.title, e.start_time, e.end_time "
+                        + "FROM Ticket t LEFT JOIN Event e ON e.event_id = t.event_id "
+                        + "WHERE t.ticket_id IN (" + placeholders + ")";
+
+                try ( PreparedStatement ps = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ps.setInt(i + 1, chunk.get(i));
+                    }
+                    try ( ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            Ticket t = new Ticket();
+                            t.setTicketId(rs.getInt("ticket_id"));
+                            t.setEventId(rs.getInt("event_id"));
+                            t.setUserId(rs.getInt("user_id"));
+                            t.setCategoryTicketId(rs.getInt("category_ticket_id"));
+                            t.setBillId((Integer) rs.getObject("bill_id"));
+                            t.setSeatId((Integer) rs.getObject("seat_id"));
+                            t.setStatus(rs.getString("status"));
+                            t.setCheckinTime(rs.getTimestamp("checkin_time"));
+                            t.setCheckoutTime(rs.getTimestamp("check_out_time"));
+
+                            Event e = null;
+                            if (rs.getObject("e_event_id") != null) {
+                                e = new Event();
+                                e.setEventId(rs.getInt("e_event_id"));
+                                e.setTitle(rs.getString("title"));
+                                e.setStartTime(rs.getTimestamp("start_time"));
+                                e.setEndTime(rs.getTimestamp("end_time"));
+                            }
+                            result.put(t.getTicketId(), new TicketGateInfo(t, e));
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * ================================================================================================
+     * METHOD: checkinTicketsBatch - CHECK-IN NHIỀU VÉ BẰNG 1 UPDATE CÓ ĐIỀU KIỆN
+     * ================================================================================================
+     *
+     * - UPDATE ... OUTPUT INSERTED.ticket_id WHERE status = 'BOOKED' AND
+     * ticket_id IN (...) trong 1 transaction => vé bị check-in song song ở cổng
+     * khác sẽ không nằm trong kết quả (giống checkinTicket trả false)
+     *
+     * TRẢ VỀ: - Tập ticketId đã chuyển BOOKED -> CHECKED_IN
+     */
+    public java.util.Set<Integer> checkinTicketsBatch(java.util.Collection<Integer> ticketIds, Timestamp checkinTime)
+            throws SQLException, ClassNotFoundException {
+        java.util.Map<Integer, Integer> updated = updateStatusBatch(ticketIds,
+                "SET status = 'CHECKED_IN', checkin_time = ? ", checkinTime, "BOOKED");
+        for (java.util.Map.Entry<Integer, Integer> e : updated.entrySet()) {
+            SeatAvailabilityCache.onTicketStatusChanged(e.getKey(), "CHECKED_IN");
+            EventTicketCounters.onTransition(e.getValue(), "BOOKED", "CHECKED_IN");
+        }
+        return new java.util.HashSet<>(updated.keySet());
+    }
+
+    /**
+     * Check-out nhiều vé: CHECKED_IN -> CHECKED_OUT trong 1 transaction (xem
+     * checkinTicketsBatch). Trả về tập ticketId đã cập nhật.
+     */
+    public java.util.Set<Integer> checkoutTicketsBatch(java.util.Collection<Integer> ticketIds)
+            throws SQLException, ClassNotFoundException {
+        java.util.Map<Integer, Integer> updated = updateStatusBatch(ticketIds,
+                "SET status = 'CHECKED_OUT', check_out_time = GETDATE() ", null, "CHECKED_IN");
+        for (java.util.Map.Entry<Integer, Integer> e : updated.entrySet()) {
+            SeatAvailabilityCache.onTicketStatusChanged(e.getKey(), "CHECKED_OUT");
+            EventTicketCounters.onTransition(e.getValue(), "CHECKED_IN", "CHECKED_OUT");
+        }
+        return new java.util.HashSet<>(updated.keySet());
+    }
+
+    // Trả về ticketId -> eventId của các vé đã cập nhật
+    private java.util.Map<Integer, Integer> updateStatusBatch(java.util.Collection<Integer> ticketIds, String setClause,
+            Timestamp time, String fromStatus) throws SQLException, ClassNotFoundException {
+        java.util.Map<Integer, Integer> updated = new java.util.HashMap<>();
+        List<Integer> ids = new ArrayList<>(new java.util.LinkedHashSet<>(ticketIds));
+        if (ids.isEmpty()) {
+            return updated;
+        }
+
+        try ( Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (int from = 0; from < ids.size(); from += GATE_CHUNK_SIZE) {
+                    List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + GATE_CHUNK_SIZE));
+                    String placeholders = chunk.stream().map(id -> "?").collect(Collectors.joining(","));
+                    String sql = "UPDATE Ticket " + setClause
+                            + "OUTPUT INSERTED.ticket_id, INSERTED.event_id "
+                            + "WHERE status = ? AND ticket_id IN (" + placeholders + ")";
+
+                    try ( PreparedStatement ps = conn.prepareStatement(sql)) {
+                        int idx = 1;
+                        if (time != null) {
+                            ps.setTimestamp(idx++, time);
+                        }
+                        ps.setString(idx++, fromStatus);
+                        for (Integer id : chunk) {
+                            ps.setInt(idx++, id);
+                        }
+                        try ( ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                updated.put(rs.getInt(1), rs.getInt(2));
+                            }
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * ================================================================================================
+     * METHOD: streamGateManifest - DUYỆT VÉ HỢP LỆ CỦA 1 EVENT CHO MÁY QUÉT OFFLINE
+     * ================================================================================================
+     *
+     * - Chỉ lấy BOOKED / CHECKED_IN / CHECKED_OUT, sắp theo ticket_id
+     * - Đọc theo fetch size, mỗi dòng đẩy thẳng cho handler (không gom List) =>
+     * event vài chục nghìn vé vẫn không tốn RAM
+     *
+     * TRẢ VỀ: - Số vé đã duyệt
+     */
+    public interface GateManifestRowHandler {
+
+        void onRow(int ticketId, String status, Timestamp checkinTime) throws java.io.IOException;
+    }
+
+    public int streamGateManifest(int eventId, GateManifestRowHandler handler)
+            throws SQLException, ClassNotFoundException, java.io.IOException {
+        String sql = "SELECT ticket_id, status, checkin_time "
+                + "FROM Ticket "
+                + "WHERE event_id = ? AND status IN ('BOOKED', 'CHECKED_IN', 'CHECKED_OUT') "
+                + "ORDER BY ticket_id";
+
+        int count = 0;
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, eventId);
+            ps.setFetchSize(GATE_CHUNK_SIZE);
+            try ( ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    handler.onRow(rs.getInt("ticket_id"), rs.getString("status"), rs.getTimestamp("checkin_time"));
+                    count++;
+                }
+            }
         }
+        return count;
     }
 
+    /**
+     * ================================================================================================
+     * METHOD: checkinTicketsAt - ÁP DỤNG CHECK-IN OFFLINE (MỖI VÉ 1 THỜI ĐIỂM QUÉT)
+     * ================================================================================================
+     *
+     * - Cùng câu UPDATE có điều kiện với checkinTicket (WHERE status = 'BOOKED'),
+     * gửi bằng JDBC batch trong 1 transaction
+     * - Gửi lại cùng dữ liệu không đổi gì (vé đã CHECKED_IN => 0 dòng) =>
+     * idempotent
+     *
+     * TRẢ VỀ: - Tập ticketId đã chuyển BOOKED -> CHECKED_IN
+     */
+    public java.util.Set<Integer> checkinTicketsAt(int eventId, java.util.Map<Integer, Timestamp> checkinTimes)
+            throws SQLException, ClassNotFoundException {
+        java.util.Set<Integer> updated = new java.util.HashSet<>();
+        if (checkinTimes.isEmpty()) {
+            return updated;
+        }
+
+        String sql = "UPDATE Ticket "
+                + "SET status = 'CHECKED_IN', checkin_time = ? "
+                + "WHERE ticket_id = ? AND event_id = ? AND status = 'BOOKED'";
+
+        List<Integer> ids = new ArrayList<>(checkinTimes.keySet());
+        try ( Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try ( PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int from = 0; from < ids.size(); from += GATE_CHUNK_SIZE) {
+                    List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + GATE_CHUNK_SIZE));
+                    for (Integer id : chunk) {
+                        ps.setTimestamp(1, checkinTimes.get(id));
+                        ps.setInt(2, id);
+                        ps.setInt(3, eventId);
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] > 0) {
+                            updated.add(chunk.get(i));
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+
+        for (Integer id : updated) {
+            SeatAvailabilityCache.onTicketStatusChanged(id, "CHECKED_IN");
+        }
+        EventTicketCounters.onTransitions(eventId, "BOOKED", "CHECKED_IN", updated.size());
+        return updated;
+    }
+
+    /**
+     * ================================================================================================
+     * METHOD: updateTicketCodes - GHI MÃ VÉ (NỘI DUNG QR) SAU THANH TOÁN
+     * ================================================================================================
+     *
+     * - Thay cho sinh ảnh + updateTicketQr từng vé: qr_code_value = ticket_id
+     * (đúng nội dung QR), 1 câu UPDATE cho cả đơn
+     * - Ảnh QR render khi cần ở /api/tickets/{id}/qr.png
+     */
+    public int updateTicketCodes(List<Integer> ticketIds) throws SQLException, ClassNotFoundException {
+        if (ticketIds == null || ticketIds.isEmpty()) {
+            return 0;
+        }
+        String placeholders = ticketIds.stream().map(id -> "?").collect(Collectors.joining(","));
+        String sql = "UPDATE Ticket SET qr_code_value = CAST(ticket_id AS VARCHAR(20)) "
+                + "WHERE ticket_id IN (" + placeholders + ")";
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ticketIds.size(); i++) {
+                ps.setInt(i + 1, ticketIds.get(i));
+            }
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Thông tin tối thiểu để phục vụ ảnh QR (chủ vé + trạng thái), không đọc
+     * qr_code_value. Trả về null nếu không có vé.
+     */
+    public Ticket getTicketOwner(int ticketId) throws SQLException, ClassNotFoundException {
+        String sql = "SELECT ticket_id, event_id, user_id, status FROM Ticket WHERE ticket_id = ?";
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, ticketId);
+            try ( ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    Ticket t = new Ticket();
+                    t.setTicketId(rs.getInt("ticket_id"));
+                    t.setEventId(rs.getInt("event_id"));
+                    t.setUserId(rs.getInt("user_id"));
+                    t.setStatus(rs.getString("status"));
+                    return t;
+                }
+            }
+        }
+        return null;
+    }
+
+    public int getMaxTicketId() throws SQLException, ClassNotFoundException {
+        String sql = "SELECT ISNULL(MAX(ticket_id), 0) FROM Ticket";
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql);  ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * ================================================================================================
+     * METHOD: stripQrBlobs - XÓA ẢNH BASE64 CŨ TRONG qr_code_value (THEO KHOẢNG ID)
+     * ================================================================================================
+     *
+     * - Chỉ xử lý ticket_id trong (fromIdExclusive, toIdInclusive] => seek theo
+     * khóa chính, mỗi lần khóa ít dòng, không quét cả bảng
+     *
+     * TRẢ VỀ: - Số dòng đã thay Base64 bằng mã vé
+     */
+    public int stripQrBlobs(int fromIdExclusive, int toIdInclusive) throws SQLException, ClassNotFoundException {
+        String sql = "UPDATE Ticket SET qr_code_value = CAST(ticket_id AS VARCHAR(20)) "
+                + "WHERE ticket_id > ? AND ticket_id <= ? AND LEN(qr_code_value) > 64";
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, fromIdExclusive);
+            ps.setInt(2, toIdInclusive);
+            return ps.executeUpdate();
+        }
+    }
 }
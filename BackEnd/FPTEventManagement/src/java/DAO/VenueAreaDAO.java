@@ -1,7 +1,9 @@
 package DAO;
 
+import DTO.AreaBooking;
 import DTO.VenueArea;
 import mylib.DBUtils;
+import service.AreaScheduleIndex;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -11,7 +13,8 @@ public class VenueAreaDAO {
 
     /**
      * Lấy danh sách Area KHÔNG có Event nào trùng khoảng [start, end] với
-     * buffer 1 giờ trước & sau.Rule overlap với buffer 1h: existing.start_time < (end + 1h)
+     * buffer 1 giờ trước & sau (tra AreaScheduleIndex, SQL nếu index chưa
+     * sẵn sàng).Rule overlap với buffer 1h: existing.start_time < (end + 1h)
      * AND existing.end_time > (start - 1h)
      *
      * @param start
@@ -19,6 +22,25 @@ public class VenueAreaDAO {
      * @return
      */
     public List<VenueArea> getFreeAreasWith1hBuffer(Timestamp start, Timestamp end) {
+        // Lịch khu vực đã nạp trong RAM => không quét Event cho từng area
+        if (AreaScheduleIndex.isReady()) {
+            try {
+                List<VenueArea> free = new ArrayList<>();
+                for (VenueArea va : getAvailableAreas()) {
+                    if (!AreaScheduleIndex.hasConflict(va.getAreaId(), start.getTime(), end.getTime())) {
+                        free.add(va);
+                    }
+                }
+                return free;
+            } catch (Exception e) {
+                System.err.println("[ERROR] getFreeAreasWith1hBuffer (index): " + e.getMessage());
+            }
+        }
+        return queryFreeAreasWith1hBuffer(start, end);
+    }
+
+    // Bản SQL gốc (NOT EXISTS trên Event) - dùng khi AreaScheduleIndex chưa sẵn sàng
+    private List<VenueArea> queryFreeAreasWith1hBuffer(Timestamp start, Timestamp end) {
         List<VenueArea> list = new ArrayList<>();
 
         // ===== Tính buffer 1h =====
@@ -67,6 +89,147 @@ public class VenueAreaDAO {
         return list;
     }
 
+    // ======================= AREA AVAILABLE (CHO AreaScheduleIndex) =======================
+    public List<VenueArea> getAvailableAreas() throws SQLException, ClassNotFoundException {
+        List<VenueArea> list = new ArrayList<>();
+        String sql = "SELECT area_id, venue_id, area_name, floor, capacity, status FROM Venue_Area "
+                + "WHERE status = 'AVAILABLE' ORDER BY venue_id, area_name";
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql);  ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                VenueArea va = new VenueArea();
+                va.setAreaId(rs.getInt("area_id"));
+                va.setVenueId(rs.getInt("venue_id"));
+                va.setAreaName(rs.getNString("area_name"));
+                va.setFloor(rs.getNString("floor"));
+                va.setCapacity(rs.getInt("capacity"));
+                va.setStatus(rs.getNString("status"));
+                list.add(va);
+            }
+        }
+        return list;
+    }
+
+    // ======================= LỊCH ĐANG CHIẾM AREA (CHO AreaScheduleIndex) =======================
+    /**
+     * Event đang chiếm lịch khu vực (OPEN / CLOSED / DRAFT). from/to != null
+     * => chỉ lấy event giao khoảng [from, to).
+     */
+    public List<AreaBooking> getAreaBookings(Timestamp from, Timestamp to) throws SQLException, ClassNotFoundException {
+        List<AreaBooking> list = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(
+                "SELECT event_id, area_id, start_time, end_time, status FROM Event "
+                + "WHERE area_id IS NOT NULL AND start_time IS NOT NULL AND end_time IS NOT NULL "
+                + "  AND status IN ('OPEN','CLOSED','DRAFT') ");
+        if (from != null && to != null) {
+            sql.append("  AND start_time < ? AND end_time > ? ");
+        }
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            if (from != null && to != null) {
+                ps.setTimestamp(1, to);
+                ps.setTimestamp(2, from);
+            }
+            try ( ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapBooking(rs));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Lịch của 1 event (mọi status; null nếu không có event / thiếu area,
+     * thời gian).
+     */
+    public AreaBooking getAreaBookingByEventId(int eventId) throws SQLException, ClassNotFoundException {
+        String sql = "SELECT event_id, area_id, start_time, end_time, status FROM Event "
+                + "WHERE event_id = ? AND area_id IS NOT NULL AND start_time IS NOT NULL AND end_time IS NOT NULL";
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, eventId);
+            try ( ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return mapBooking(rs);
+                }
+            }
+        }
+        return null;
+    }
+
+    // ======================= LỊCH TẤT CẢ AREA TRONG KHOẢNG (STREAM) =======================
+    /**
+     * 1 dòng = 1 area AVAILABLE + 1 event chiếm lịch giao [from, to) (booking
+     * null nếu area trống cả khoảng). Sắp theo area_id, start_time.
+     */
+    public interface AreaAvailabilityRowHandler {
+
+        void onRow(VenueArea area, AreaBooking booking) throws java.io.IOException;
+    }
+
+    /**
+     * Duyệt 1 lượt (LEFT JOIN Venue_Area - Event), đọc theo fetch size và đẩy
+     * từng dòng cho handler => không gom List dù khoảng cả học kỳ.
+     *
+     * @param minCapacity null = không lọc sức chứa
+     */
+    public void streamAreaAvailability(Timestamp from, Timestamp to, Integer minCapacity,
+            AreaAvailabilityRowHandler handler) throws SQLException, ClassNotFoundException, java.io.IOException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT va.area_id, va.venue_id, va.area_name, va.floor, va.capacity, va.status, "
+                + "       e.event_id, e.start_time, e.end_time, e.status AS event_status "
+                + "FROM Venue_Area va "
+                + "LEFT JOIN Event e ON e.area_id = va.area_id "
+                + "     AND e.status IN ('OPEN','CLOSED','DRAFT') "
+                + "     AND e.start_time IS NOT NULL AND e.end_time IS NOT NULL "
+                + "     AND e.start_time < ? AND e.end_time > ? "
+                + "WHERE va.status = 'AVAILABLE' ");
+        if (minCapacity != null) {
+            sql.append("  AND va.capacity >= ? ");
+        }
+        sql.append("ORDER BY va.area_id, e.start_time, e.event_id");
+
+        try ( Connection conn = DBUtils.getConnection();  PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            ps.setTimestamp(1, to);
+            ps.setTimestamp(2, from);
+            if (minCapacity != null) {
+                ps.setInt(3, minCapacity);
+            }
+            ps.setFetchSize(500);
+
+            try ( ResultSet rs = ps.executeQuery()) {
+                VenueArea current = null;
+                while (rs.next()) {
+                    int areaId = rs.getInt("area_id");
+                    if (current == null || current.getAreaId() != areaId) {
+                        current = new VenueArea();
+                        current.setAreaId(areaId);
+                        current.setVenueId(rs.getInt("venue_id"));
+                        current.setAreaName(rs.getNString("area_name"));
+                        current.setFloor(rs.getNString("floor"));
+                        current.setCapacity(rs.getInt("capacity"));
+                        current.setStatus(rs.getNString("status"));
+                    }
+                    int eventId = rs.getInt("event_id");
+                    AreaBooking booking = rs.wasNull() ? null
+                            : new AreaBooking(eventId, areaId, rs.getTimestamp("start_time"),
+                                    rs.getTimestamp("end_time"), rs.getString("event_status"));
+                    handler.onRow(current, booking);
+                }
+            }
+        }
+    }
+
+    private AreaBooking mapBooking(ResultSet rs) throws SQLException {
+        return new AreaBooking(
+                rs.getInt("event_id"),
+                rs.getInt("area_id"),
+                rs.getTimestamp("start_time"),
+                rs.getTimestamp("end_time"),
+                rs.getString("status"));
+    }
+
     // Get all venue areas (return ALL statuses for admin view)
     public List<VenueArea> getAllAreas() {
         List<VenueArea> list = new ArrayList<>();
@@ -0,0 +1,67 @@
+package DTO;
+
+import java.sql.Timestamp;
+
+/**
+ * 1 event đang chiếm lịch 1 khu vực (Event.status OPEN / CLOSED / DRAFT).
+ * Dùng để nạp AreaScheduleIndex (lịch khu vực trong RAM).
+ */
+public class AreaBooking {
+
+    private int eventId;
+    private int areaId;
+    private Timestamp startTime;
+    private Timestamp endTime;
+    private String status;
+
+    public AreaBooking() {
+    }
+
+    public AreaBooking(int eventId, int areaId, Timestamp startTime, Timestamp endTime, String status) {
+        this.eventId = eventId;
+        this.areaId = areaId;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.status = status;
+    }
+
+    public int getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(int eventId) {
+        this.eventId = eventId;
+    }
+
+    public int getAreaId() {
+        return areaId;
+    }
+
+    public void setAreaId(int areaId) {
+        this.areaId = areaId;
+    }
+
+    public Timestamp getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Timestamp startTime) {
+        this.startTime = startTime;
+    }
+
+    public Timestamp getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(Timestamp endTime) {
+        this.endTime = endTime;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+}
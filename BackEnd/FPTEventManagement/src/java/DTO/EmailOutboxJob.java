@@ -0,0 +1,101 @@
+package DTO;
+
+/**
+ * 1 email chờ gửi trong bảng Email_Outbox (EmailOutboxService).
+ * QR không lưu dạng ảnh: worker render từ qrContent lúc gửi.
+ */
+public class EmailOutboxJob {
+
+    private long outboxId;
+    private String dedupKey;     // chống gửi trùng, ví dụ TICKET:{email}:{ticketIds}
+    private String recipient;
+    private String subject;
+    private String htmlBody;
+    private String qrContent;    // null => email không có ảnh inline
+    private String imageCid;     // cid dùng trong <img src='cid:...'>
+    private int attempts;
+    private long queuedMs;       // thời gian đã nằm trong outbox lúc được claim
+
+    public long getOutboxId() {
+        return outboxId;
+    }
+
+    public void setOutboxId(long outboxId) {
+        this.outboxId = outboxId;
+    }
+
+    public String getDedupKey() {
+        return dedupKey;
+    }
+
+    public void setDedupKey(String dedupKey) {
+        this.dedupKey = dedupKey;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public void setRecipient(String recipient) {
+        this.recipient = recipient;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getHtmlBody() {
+        return htmlBody;
+    }
+
+    public void setHtmlBody(String htmlBody) {
+        this.htmlBody = htmlBody;
+    }
+
+    public String getQrContent() {
+        return qrContent;
+    }
+
+    public void setQrContent(String qrContent) {
+        this.qrContent = qrContent;
+    }
+
+    public String getImageCid() {
+        return imageCid;
+    }
+
+    public void setImageCid(String imageCid) {
+        this.imageCid = imageCid;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public long getQueuedMs() {
+        return queuedMs;
+    }
+
+    public void setQueuedMs(long queuedMs) {
+        this.queuedMs = queuedMs;
+    }
+
+    @Override
+    public String toString() {
+        return "EmailOutboxJob{"
+                + "outboxId=" + outboxId
+                + ", dedupKey='" + dedupKey + '\''
+                + ", recipient='" + recipient + '\''
+                + ", subject='" + subject + '\''
+                + ", attempts=" + attempts
+                + '}';
+    }
+}
@@ -0,0 +1,95 @@
+package DTO;
+
+import java.sql.Timestamp;
+
+/**
+ * Tham số lọc + phân trang cho GET /api/events (keyset theo start_time, event_id).
+ * Field null = không lọc theo field đó.
+ */
+public class EventListQuery {
+
+    private String status;          // OPEN | CLOSED (null = cả hai)
+    private Integer venueId;
+    private Integer areaId;
+    private Timestamp from;         // start_time >= from
+    private Timestamp to;           // start_time < to
+    private String q;               // tìm trong title
+
+    // ===== Cursor: lấy các event đứng sau (afterStartTime, afterEventId) =====
+    private Timestamp afterStartTime;
+    private Integer afterEventId;
+
+    private int limit;
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getVenueId() {
+        return venueId;
+    }
+
+    public void setVenueId(Integer venueId) {
+        this.venueId = venueId;
+    }
+
+    public Integer getAreaId() {
+        return areaId;
+    }
+
+    public void setAreaId(Integer areaId) {
+        this.areaId = areaId;
+    }
+
+    public Timestamp getFrom() {
+        return from;
+    }
+
+    public void setFrom(Timestamp from) {
+        this.from = from;
+    }
+
+    public Timestamp getTo() {
+        return to;
+    }
+
+    public void setTo(Timestamp to) {
+        this.to = to;
+    }
+
+    public String getQ() {
+        return q;
+    }
+
+    public void setQ(String q) {
+        this.q = q;
+    }
+
+    public Timestamp getAfterStartTime() {
+        return afterStartTime;
+    }
+
+    public void setAfterStartTime(Timestamp afterStartTime) {
+        this.afterStartTime = afterStartTime;
+    }
+
+    public Integer getAfterEventId() {
+        return afterEventId;
+    }
+
+    public void setAfterEventId(Integer afterEventId) {
+        this.afterEventId = afterEventId;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+}
@@ -0,0 +1,44 @@
+package DTO;
+
+/**
+ * 1 lần quét vé offline do máy quét cổng gửi lên /api/staff/gate-sync.
+ */
+public class GateScan {
+
+    private int ticketId;
+    private long scannedAt;   // epoch millis theo đồng hồ máy quét
+    private String gateId;    // null => dùng gateId của cả batch
+
+    public GateScan() {
+    }
+
+    public GateScan(int ticketId, long scannedAt, String gateId) {
+        this.ticketId = ticketId;
+        this.scannedAt = scannedAt;
+        this.gateId = gateId;
+    }
+
+    public int getTicketId() {
+        return ticketId;
+    }
+
+    public void setTicketId(int ticketId) {
+        this.ticketId = ticketId;
+    }
+
+    public long getScannedAt() {
+        return scannedAt;
+    }
+
+    public void setScannedAt(long scannedAt) {
+        this.scannedAt = scannedAt;
+    }
+
+    public String getGateId() {
+        return gateId;
+    }
+
+    public void setGateId(String gateId) {
+        this.gateId = gateId;
+    }
+}
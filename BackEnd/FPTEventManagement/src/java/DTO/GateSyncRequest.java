@@ -0,0 +1,38 @@
+package DTO;
+
+import java.util.List;
+
+/**
+ * Body của POST /api/staff/gate-sync: các lần quét máy cổng tích lũy khi
+ * offline.
+ */
+public class GateSyncRequest {
+
+    private Integer eventId;
+    private String gateId;
+    private List<GateScan> scans;
+
+    public Integer getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(Integer eventId) {
+        this.eventId = eventId;
+    }
+
+    public String getGateId() {
+        return gateId;
+    }
+
+    public void setGateId(String gateId) {
+        this.gateId = gateId;
+    }
+
+    public List<GateScan> getScans() {
+        return scans;
+    }
+
+    public void setScans(List<GateScan> scans) {
+        this.scans = scans;
+    }
+}
@@ -20,7 +20,8 @@ package DTO;
  * 
  * MAPPING DATABASE:
  * - ticketId        <- Ticket.ticket_id
- * - ticketCode      <- Ticket.qr_code_value (Base64 image của QR code)
+ * - ticketCode      <- mã vé = nội dung QR (ticket_id), không còn ảnh Base64
+ * - qrUrl           <- /api/tickets/{ticketId}/qr.png (ảnh QR render khi cần)
  * - eventName       <- Event.title (JOIN qua Ticket.event_id)
  * - venueName       <- Venue.venue_name (JOIN: Event -> VenueArea -> Venue)
  * - startTime       <- Event.start_time
@@ -45,7 +46,8 @@ import java.math.BigDecimal;
 
 public class MyTicketResponse {
     private int ticketId;
-    private String ticketCode;      // qr_code_value
+    private String ticketCode;      // mã vé (nội dung QR)
+    private String qrUrl;           // ảnh QR: /api/tickets/{id}/qr.png
     private String eventName;       
     private String venueName;       // <--- THÊM LẠI TRƯỜNG NÀY ĐỂ FIX LỖI
     private Timestamp startTime;    
@@ -100,4 +102,12 @@ public class MyTicketResponse {
 
     public Timestamp getPurchaseDate() { return purchaseDate; }
     public void setPurchaseDate(Timestamp purchaseDate) { this.purchaseDate = purchaseDate; }
-}
\ No newline at end of file
+
+    public String getQrUrl() {
+        return qrUrl;
+    }
+
+    public void setQrUrl(String qrUrl) {
+        this.qrUrl = qrUrl;
+    }
+}
@@ -0,0 +1,97 @@
+package DTO;
+
+import java.math.BigDecimal;
+
+/**
+ * 1 dòng kết quả của query validate ghế hàng loạt (SeatHoldService):
+ * ghế theo layout event + CategoryTicket tương ứng seatType + ghế đã có Ticket chưa.
+ */
+public class SeatHoldInfo {
+
+    private int seatId;
+    private int areaId;
+    private String seatCode;
+    private String seatType;          // VIP / STANDARD (theo Event_Seat_Layout)
+    private String layoutStatus;      // AVAILABLE / BOOKED
+    private Integer categoryTicketId; // null nếu không có CategoryTicket ACTIVE cho seatType
+    private BigDecimal price;
+    private boolean reserved;         // đã có Ticket (PENDING/BOOKED/...) cho ghế này
+
+    public int getSeatId() {
+        return seatId;
+    }
+
+    public void setSeatId(int seatId) {
+        this.seatId = seatId;
+    }
+
+    public int getAreaId() {
+        return areaId;
+    }
+
+    public void setAreaId(int areaId) {
+        this.areaId = areaId;
+    }
+
+    public String getSeatCode() {
+        return seatCode;
+    }
+
+    public void setSeatCode(String seatCode) {
+        this.seatCode = seatCode;
+    }
+
+    public String getSeatType() {
+        return seatType;
+    }
+
+    public void setSeatType(String seatType) {
+        this.seatType = seatType;
+    }
+
+    public String getLayoutStatus() {
+        return layoutStatus;
+    }
+
+    public void setLayoutStatus(String layoutStatus) {
+        this.layoutStatus = layoutStatus;
+    }
+
+    public Integer getCategoryTicketId() {
+        return categoryTicketId;
+    }
+
+    public void setCategoryTicketId(Integer categoryTicketId) {
+        this.categoryTicketId = categoryTicketId;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public boolean isReserved() {
+        return reserved;
+    }
+
+    public void setReserved(boolean reserved) {
+        this.reserved = reserved;
+    }
+
+    @Override
+    public String toString() {
+        return "SeatHoldInfo{"
+                + "seatId=" + seatId
+                + ", areaId=" + areaId
+                + ", seatCode='" + seatCode + '\''
+                + ", seatType='" + seatType + '\''
+                + ", layoutStatus='" + layoutStatus + '\''
+                + ", categoryTicketId=" + categoryTicketId
+                + ", price=" + price
+                + ", reserved=" + reserved
+                + '}';
+    }
+}
@@ -17,7 +17,8 @@ package DTO;
  * - category_ticket_id: INT NOT NULL (FK -> CategoryTicket.category_ticket_id)
  * - bill_id: INT NULL (FK -> Bill.bill_id, null nếu vé miễn phí)
  * - seat_id: INT NULL (FK -> Seat.seat_id, null nếu không chọn chỗ)
- * - qr_code_value: NVARCHAR(MAX) NOT NULL (Base64 image của QR code)
+ * - qr_code_value: NVARCHAR(MAX) NOT NULL (mã vé = nội dung QR, tức ticket_id; ảnh QR render khi cần
+ *   qua GET /api/tickets/{ticketId}/qr.png, không còn lưu Base64)
  * - qr_issued_at: DATETIME2 DEFAULT GETDATE()
  * - status: NVARCHAR(20) NOT NULL (BOOKED/CHECKED_IN/CHECKED_OUT/CANCELLED/EXPIRED)
  * - checkin_time: DATETIME2 NULL
@@ -34,7 +35,7 @@ package DTO;
  * 1. Frontend gửi request đăng ký vé (POST /api/registrations/register)
  * 2. Backend tạo Ticket object với status = "BOOKED"
  * 3. TicketDAO.insertTicket() insert vào database
- * 4. Sinh QR code từ ticketId và lưu vào qr_code_value
+ * 4. Khi thanh toán xong: ghi mã vé (ticketId) vào qr_code_value, ảnh QR render lúc FE gọi qr.png
  * 5. Khi user check-in: Update status = "CHECKED_IN", set checkin_time
  * 6. Khi user check-out: Update status = "CHECKED_OUT", set check_out_time
  * 
@@ -0,0 +1,35 @@
+package DTO;
+
+/**
+ * 1 vé + sự kiện của vé, nạp cùng 1 query cho check-in / check-out hàng loạt
+ * (TicketDAO.getTicketsWithEvents). event = null nếu không tìm thấy sự kiện.
+ */
+public class TicketGateInfo {
+
+    private Ticket ticket;
+    private Event event;
+
+    public TicketGateInfo() {
+    }
+
+    public TicketGateInfo(Ticket ticket, Event event) {
+        this.ticket = ticket;
+        this.event = event;
+    }
+
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    public void setTicket(Ticket ticket) {
+        this.ticket = ticket;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public void setEvent(Event event) {
+        this.event = event;
+    }
+}
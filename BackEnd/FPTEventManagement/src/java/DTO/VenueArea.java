@@ -37,13 +37,15 @@ package DTO;
  * 6. status (String): Trạng thái
  * - AVAILABLE: Có thể đặt event
  * - UNAVAILABLE: Không sử dụng
+ * 7. seatsPerRow (Integer): Số ghế / hàng khi generate ghế (chỉ có trong request tạo area,
+ * không lưu DB; null => seat.rowWidth, mặc định 10)
  * 
  * GHẾ VẬT LÝ (SEAT):
  * - Khi tạo VenueArea mới, SeatDAO tự động generate ghế vật lý
  * - Số ghế = capacity
- * - Format ghế: A1, A2, ..., A10, B1, B2, ...
- * - 10 ghế / hàng (seatsPerRow = 10)
- * - INSERT INTO Seat (seat_code, row_no, col_no, status, area_id)
+ * - Format ghế: A1, A2, ..., A10, B1, B2, ... (sau Z là AA, AB, ...)
+ * - seatsPerRow ghế / hàng (mặc định 10)
+ * - 1 câu INSERT INTO Seat (...) SELECT ... cho cả area
  * 
  * BOOKING SYSTEM:
  * - Mỗi Event chỉ đặt 1 area tại 1 thời điểm
@@ -83,6 +85,7 @@ public class VenueArea {
     private String floor;
     private Integer capacity;
     private String status;
+    private Integer seatsPerRow;
 
     public Integer getAreaId() {
         return areaId;
@@ -131,4 +134,12 @@ public class VenueArea {
     public void setStatus(String status) {
         this.status = status;
     }
+
+    public Integer getSeatsPerRow() {
+        return seatsPerRow;
+    }
+
+    public void setSeatsPerRow(Integer seatsPerRow) {
+        this.seatsPerRow = seatsPerRow;
+    }
 }
\ No newline at end of file
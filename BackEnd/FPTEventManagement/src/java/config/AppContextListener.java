@@ -0,0 +1,60 @@
+package config;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import mylib.DBUtils;
+import mylib.EmailService;
+import service.AreaScheduleIndex;
+import service.CheckinStreamHub;
+import service.EmailOutboxService;
+import service.NotificationService;
+import service.QrBlobMigrationJob;
+import service.SeatHoldReaper;
+import service.SeatStreamHub;
+import utils.QrPngWriter;
+
+/**
+ * AppContextListener: vòng đời webapp (deploy / undeploy).
+ *
+ * - contextInitialized: khởi động các thành phần chạy nền
+ *   + SeatHoldReaper: dọn Ticket PENDING quá hạn (user bỏ dở thanh toán VNPay)
+ *   + SeatStreamHub: fan-out SSE trạng thái ghế + heartbeat
+ *   + EmailOutboxService: worker gửi email vé từ bảng Email_Outbox
+ *   + QrBlobMigrationJob: dọn ảnh Base64 cũ trong Ticket.qr_code_value (1 lần)
+ *   + NotificationService: thread ghi notification xuống bảng Notification theo lô
+ *   + CheckinStreamHub: SSE tốc độ check-in cho dashboard organizer
+ *   + AreaScheduleIndex: nạp lịch chiếm khu vực vào RAM (tra area trống / trùng lịch)
+ * - contextDestroyed: dừng thread nền + đóng pool kết nối SMTP, DB, giải phóng Deflater
+ *   của QrPngWriter để Tomcat undeploy/redeploy không bị leak kết nối SQL Server / native memory
+ */
+@WebListener
+public class AppContextListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        SeatHoldReaper.start();
+        SeatStreamHub.start();
+        EmailOutboxService.start();
+        QrBlobMigrationJob.start();
+        NotificationService.start();
+        CheckinStreamHub.start();
+        AreaScheduleIndex.start();
+        System.out.println("[AppContextListener] Webapp started");
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        AreaScheduleIndex.stop();
+        CheckinStreamHub.stop();
+        NotificationService.stop();
+        QrBlobMigrationJob.stop();
+        EmailOutboxService.stop();
+        SeatStreamHub.stop();
+        SeatHoldReaper.stop();
+        QrPngWriter.shutdown();
+        EmailService.shutdownPool();
+        DBUtils.shutdownPool();
+        System.out.println("[AppContextListener] Webapp stopped");
+    }
+}
@@ -937,6 +937,40 @@ public class SwaggerConfigServlet extends HttpServlet {
                 + "}"
                 + "}";
 
+        // ===== API: /api/tickets/{ticketId}/qr.png (Ảnh QR của vé, render khi cần) =====
+        String ticketQrPath = "\"/api/tickets/{ticketId}/qr.png\":{"
+                + "\"get\":{"
+                + "\"tags\":[\"Ticket\"],"
+                + "\"summary\":\"Ảnh QR của vé (PNG, render khi cần)\","
+                + "\"description\":\"Chỉ chủ vé hoặc ADMIN/ORGANIZER. DB chỉ lưu mã vé, ảnh được render và cache phía server. "
+                + "Trả ETag mạnh theo (ticketId, size) + Cache-Control private, immutable; gửi lại If-None-Match trùng => 304. "
+                + "Có thể truyền JWT qua ?token= để dùng trực tiếp trong thẻ <img> (chính là qrUrl trong MyTicketResponse).\","
+                + "\"security\":[{\"bearerAuth\":[]}],"
+                + "\"parameters\":["
+                + "  {\"name\":\"ticketId\",\"in\":\"path\",\"required\":true,\"schema\":{\"type\":\"integer\"}},"
+                + "  {\"name\":\"size\",\"in\":\"query\",\"required\":false,"
+                + "   \"schema\":{\"type\":\"integer\",\"minimum\":100,\"maximum\":1000,\"default\":300},"
+                + "   \"description\":\"Cạnh ảnh (px), làm tròn về bội số 50 trong [100, 1000]\"},"
+                + "  {\"name\":\"token\",\"in\":\"query\",\"required\":false,\"schema\":{\"type\":\"string\"},"
+                + "   \"description\":\"JWT thay cho header Authorization (cho thẻ <img>)\"},"
+                + "  {\"name\":\"If-None-Match\",\"in\":\"header\",\"required\":false,\"schema\":{\"type\":\"string\"},"
+                + "   \"description\":\"ETag đã nhận trước đó\"}"
+                + "],"
+                + "\"responses\":{"
+                + "  \"200\":{"
+                + "    \"description\":\"Ảnh QR\","
+                + "    \"headers\":{\"ETag\":{\"schema\":{\"type\":\"string\"}}},"
+                + "    \"content\":{\"image/png\":{\"schema\":{\"type\":\"string\",\"format\":\"binary\"}}}"
+                + "  },"
+                + "  \"304\":{\"description\":\"Not Modified (If-None-Match trùng ETag)\"},"
+                + "  \"400\":{\"description\":\"ticketId không hợp lệ\"},"
+                + "  \"401\":{\"description\":\"Unauthorized\"},"
+                + "  \"403\":{\"description\":\"Không phải chủ vé\"},"
+                + "  \"404\":{\"description\":\"Vé không tồn tại / chưa thanh toán\"}"
+                + "}"
+                + "}"
+                + "}";
+
         // ===== API: /api/payment/my-bills (Student Bill History) - UPDATED =====
         String myBillsPath
                 = "\"/api/payment/my-bills\":{"
@@ -1121,6 +1155,7 @@ public class SwaggerConfigServlet extends HttpServlet {
                 + myTicketsPath + ","
                 + eventStatsPath + ","
                 + ticketListPath + ","
+                + ticketQrPath + ","
                 + adminCreatePath + ","
                 + myBillsPath + ","
                 + staffOrganizerPath
@@ -1512,7 +1547,8 @@ public class SwaggerConfigServlet extends HttpServlet {
                 // Schema: MyTicketResponse (Dùng chung cho API danh sách vé & thống kê)
                 + "\"MyTicketResponse\":{\"type\":\"object\",\"properties\":{"
                 + "\"ticketId\":{\"type\":\"integer\"},"
-                + "\"ticketCode\":{\"type\":\"string\"},"
+                + "\"ticketCode\":{\"type\":\"string\",\"description\":\"Mã vé = nội dung QR (ticket_id)\"},"
+                + "\"qrUrl\":{\"type\":\"string\",\"example\":\"/api/tickets/123/qr.png\",\"description\":\"Ảnh QR render khi cần\"},"
                 + "\"eventName\":{\"type\":\"string\"},"
                 + "\"venueName\":{\"type\":\"string\"}," // Thêm trường này để Swagger hiển thị đúng
                 + "\"startTime\":{\"type\":\"string\",\"format\":\"date-time\"},"
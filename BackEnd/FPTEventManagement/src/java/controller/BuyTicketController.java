@@ -44,8 +44,8 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 // ==== Utils: tạo QR và gửi email ====
-import utils.QRCodeUtil;
-import utils.EmailUtils;
+import service.EmailOutboxService;
+import service.EventDetailCache;
 
 @WebServlet("/api/buyTicket")
 public class BuyTicketController extends HttpServlet {
@@ -305,15 +305,7 @@ public class BuyTicketController extends HttpServlet {
 
                     ticketDAO.updateTicketAfterPayment(t);
 
-                    int tid = t.getTicketId();
-                    finalTicketIds.add(tid);
-
-                    try {
-                        String qrBase64 = QRCodeUtil.generateTicketQrBase64(tid, 300, 300);
-                        ticketDAO.updateTicketQr(tid, qrBase64);
-                    } catch (Exception ex) {
-                        System.err.println("QR Gen Error for ticketId " + tid + ": " + ex.getMessage());
-                    }
+                    finalTicketIds.add(t.getTicketId());
                 } catch (SQLException ex) {
                     ex.printStackTrace();
 
@@ -337,6 +329,13 @@ public class BuyTicketController extends HttpServlet {
                 return;
             }
 
+            // Mã vé = nội dung QR (ticket_id); ảnh render khi cần ở /api/tickets/{id}/qr.png
+            try {
+                ticketDAO.updateTicketCodes(finalTicketIds);
+            } catch (Exception ex) {
+                System.err.println("Ticket code update error: " + ex.getMessage());
+            }
+
             // =========================================================
             // (11) Gửi Email vé điện tử (gộp nhiều vé)
             // =========================================================
@@ -363,7 +362,11 @@ public class BuyTicketController extends HttpServlet {
 
                 List<String> catParts = new ArrayList<>();
                 for (Map.Entry<Integer, Long> e : catCount.entrySet()) {
-                    CategoryTicket c = categoryDAO.getActiveCategoryTicketById(e.getKey());
+                    // Tên loại vé lấy từ cache chi tiết event; không có mới query
+                    CategoryTicket c = EventDetailCache.getCategory(eventId, e.getKey());
+                    if (c == null) {
+                        c = categoryDAO.getActiveCategoryTicketById(e.getKey());
+                    }
                     String name = (c != null && c.getName() != null) ? c.getName() : ("Category#" + e.getKey());
                     catParts.add(name + " x" + e.getValue());
                 }
@@ -381,8 +384,6 @@ public class BuyTicketController extends HttpServlet {
                             .collect(Collectors.joining(","));
                 }
 
-                byte[] qrBytes = QRCodeUtil.generateQRCodePngBytes(qrContent, 300, 300);
-
                 String startTimeString = "";
                 if (event.getStartTime() != null) {
                     SimpleDateFormat sdf = new SimpleDateFormat("HH:mm dd/MM/yyyy");
@@ -481,16 +482,11 @@ public class BuyTicketController extends HttpServlet {
                             + "</div>"
                             + "</div>";
 
-                    final byte[] finalQr = qrBytes;
-
-                    new Thread(() -> {
-                        try {
-                            EmailUtils.sendEmailWithImage(userEmail, subject, htmlContent, finalQr, "ticket_qr");
-                        } catch (Exception e) {
-                            System.err.println("[BuyTicketController] Error sending email: " + e.getMessage());
-                            e.printStackTrace();
-                        }
-                    }).start();
+                    // Chỉ ghi vào outbox (QR render + SMTP do worker nền) => redirect ngay
+                    EmailOutboxService.EnqueueResult queued = EmailOutboxService.enqueue(
+                            EmailOutboxService.ticketDedupKey(userEmail, ticketIdsStringForEmail),
+                            userEmail, subject, htmlContent, qrContent, "ticket_qr");
+                    System.out.println("[BuyTicketController] Ticket email " + queued + " for " + userEmail);
                 }
 
             } catch (Exception e) {
@@ -0,0 +1,98 @@
+package controller;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+import service.CheckinStreamHub;
+
+import java.io.IOException;
+
+/**
+ * API: GET /api/events/checkin-stream?eventId= (Server-Sent Events)
+ *
+ * MỤC ĐÍCH: - Dashboard organizer mở 1 EventSource thay cho refresh
+ * /api/events/stats - Server đẩy số check-in / check-out theo phút, tổng người
+ * đã vào, tốc độ quét tại cổng (CheckinStreamHub)
+ *
+ * AUTH: JWT, chỉ ORGANIZER / STAFF / ADMIN (như /api/events/stats).
+ * EventSource không gửi được header => JwtAuthFilter nhận ?token= cho path này
+ *
+ * FORMAT:
+ * - event: hello       data: {"eventId":..,"tickSec":..}
+ * - event: throughput  data: {"eventId","at","checkinRatePerMin","checkoutRatePerMin",
+ *   "gateScanRatePerMin","attendance":{...},"perMinute":[{"t","checkins","checkouts","scans"}]}
+ * - ": ping" mỗi 15s khi không có gì mới
+ *
+ * GHI CHÚ: mapping chính xác => ưu tiên hơn "/api/events/*" của SeatStreamController
+ */
+@WebServlet(urlPatterns = "/api/events/checkin-stream", asyncSupported = true)
+public class CheckinStreamController extends HttpServlet {
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+
+        // role do JwtAuthFilter gắn (đã chuẩn hoá, bỏ ROLE_)
+        Object roleAttr = req.getAttribute("role");
+        String role = roleAttr != null ? roleAttr.toString() : null;
+        if (role == null || !(role.equalsIgnoreCase("ORGANIZER") || role.equalsIgnoreCase("STAFF") || role.equalsIgnoreCase("ADMIN"))) {
+            resp.setContentType("application/json;charset=UTF-8");
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            resp.getWriter().write("{\"error\":\"Permission denied. ORGANIZER, STAFF or ADMIN only.\"}");
+            return;
+        }
+
+        int eventId;
+        try {
+            eventId = Integer.parseInt(req.getParameter("eventId").trim());
+            if (eventId <= 0) {
+                throw new NumberFormatException();
+            }
+        } catch (NullPointerException | NumberFormatException e) {
+            resp.setContentType("application/json;charset=UTF-8");
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().write("{\"error\":\"Invalid eventId\"}");
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("text/event-stream;charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setHeader("X-Accel-Buffering", "no"); // nginx/ngrok không gom buffer
+
+        AsyncContext ac = req.startAsync();
+        CheckinStreamHub.subscribe(eventId, ac);
+        System.out.println("[CheckinStream] subscribe eventId=" + eventId);
+    }
+
+    private void setCorsHeaders(HttpServletResponse res, HttpServletRequest req) {
+        String origin = req.getHeader("Origin");
+
+        boolean allowed = origin != null && (origin.equals("http://localhost:5173")
+                || origin.equals("http://127.0.0.1:5173")
+                || origin.equals("http://localhost:3000")
+                || origin.equals("http://127.0.0.1:3000")
+                || origin.contains("ngrok-free.app")
+                || origin.contains("ngrok.app"));
+
+        if (allowed) {
+            res.setHeader("Access-Control-Allow-Origin", origin);
+            res.setHeader("Access-Control-Allow-Credentials", "true");
+        } else {
+            res.setHeader("Access-Control-Allow-Origin", "null");
+        }
+
+        res.setHeader("Vary", "Origin");
+        res.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        res.setHeader("Access-Control-Allow-Headers",
+                "Content-Type, Authorization, ngrok-skip-browser-warning, Last-Event-ID");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Max-Age", "86400");
+    }
+}
@@ -1,6 +1,8 @@
 package controller;
 
 import DAO.EventDAO;
+import service.EventCatalogCache;
+import service.EventDetailCache;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -139,6 +141,10 @@ public class EventDisableController extends HttpServlet {
                 return;
             }
 
+            // Event chuyển CLOSED => dựng lại danh sách GET /api/events
+            EventCatalogCache.invalidate();
+            EventDetailCache.invalidate(eventId);
+
             // ===================== (5) Success =====================
             response.setStatus(HttpServletResponse.SC_OK); // 200
             response.getWriter().write("{\"success\":true,\"message\":\"Vô hiệu hóa event thành công\"}");
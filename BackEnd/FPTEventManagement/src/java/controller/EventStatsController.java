@@ -28,7 +28,7 @@ package controller;
  * token từ Authorization header 3. Verify JWT token (JwtUtils.verifyToken) 4.
  * Parse claims để lấy userId và role 5. Kiểm tra role = ORGANIZER hoặc STAFF 6.
  * Nếu không phải -> 403 Forbidden 7. Parse eventId từ query parameter 8.
- * Validate eventId là số nguyên dương 9. Gọi TicketDAO.getEventStats(eventId)
+ * Validate eventId là số nguyên dương 9. Gọi EventTicketCounters.getStats(eventId)
  * 10. DAO thực hiện query thống kê: - COUNT registrations WHERE eventId - COUNT
  * check-in WHERE status = CHECKED_IN - COUNT check-out WHERE status =
  * CHECKED_OUT - Tính tỉ lệ check-in/check-out 11. Trả về EventStatsDTO
@@ -61,8 +61,8 @@ package controller;
  * (verify token, parse claims) - Filter: filter/JwtAuthFilter.java
  * (authentication middleware)
  */
-import DAO.TicketDAO;
 import DTO.EventStatsResponse; // DTO mới có đủ trường booking/refunded
+import service.EventTicketCounters;
 import utils.JwtUtils;
 
 import com.google.gson.Gson;
@@ -77,7 +77,6 @@ import java.time.format.DateTimeParseException;
 @WebServlet("/api/events/stats")
 public class EventStatsController extends HttpServlet {
 
-    private final TicketDAO ticketDAO = new TicketDAO();
     private final Gson gson = new Gson();
 
     // Giữ nguyên logic CORS của bạn
@@ -166,9 +165,16 @@ public class EventStatsController extends HttpServlet {
             }
         }
 
-        // 5. Gọi TicketDAO (Hàm mới có tham số filterDate)
-        // Lưu ý: Đảm bảo TicketDAO đã có hàm getEventStats(int, LocalDate) trả về EventStatsResponse
-        EventStatsResponse stats = ticketDAO.getEventStats(eventId);
+        // 5. Lấy stats từ bộ đếm trong RAM (EventTicketCounters), không GROUP BY mỗi lần refresh
+        EventStatsResponse stats;
+        try {
+            stats = EventTicketCounters.getStats(eventId);
+        } catch (Exception e) {
+            System.err.println("[ERROR] EventStatsController: " + e.getMessage());
+            resp.setStatus(500);
+            resp.getWriter().write("{\"error\":\"Internal server error\"}");
+            return;
+        }
 
         if (stats == null) {
             resp.setStatus(404);
@@ -1,13 +1,15 @@
 package controller;
 
-// DAO dùng để lấy dữ liệu Event từ database
+// DAO dùng để lấy dữ liệu Event từ database (chế độ phân trang)
 import DAO.EventDAO;
 
-// Entity Event (mapping 1–1 với bảng event trong DB)
+// Entity Event + DTO gọn cho FE + tham số lọc / cursor
 import DTO.Event;
-
-// DTO dùng để trả dữ liệu gọn nhẹ cho FE (list event)
 import DTO.EventListDto;
+import DTO.EventListQuery;
+
+// Cache JSON danh sách event (đã serialize + gzip sẵn)
+import service.EventCatalogCache;
 
 // Gson để convert Java object -> JSON
 import com.google.gson.Gson;
@@ -17,11 +19,16 @@ import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.*;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
-import java.util.*;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * API lấy danh sách sự kiện
@@ -35,15 +42,21 @@ import java.util.logging.Logger;
  *
  * Luồng tổng quát:
  * 1) FE gọi GET /api/events
- * 2) Backend lấy danh sách event từ DB
- * 3) Map Event -> EventListDto
- * 4) Phân loại OPEN / CLOSED
- * 5) Trả JSON cho FE render
+ * 2) EventCatalogCache trả JSON đã dựng sẵn (miss => lấy event từ DB,
+ *    map Event -> EventListDto, phân loại OPEN / CLOSED, serialize 1 lần)
+ * 3) ETag khớp => 304, ngược lại ghi byte (gzip nếu FE nhận)
+ *
+ * Có tham số limit / cursor / status / venueId / areaId / from / to / q
+ * => chế độ phân trang keyset (xem handlePaged)
  */
 @WebServlet("/api/events")
 public class GetAllEventsController extends HttpServlet {
 
-    // DAO dùng để query DB
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+    private static final String[] PAGED_PARAMS = {"limit", "cursor", "status", "venueId", "areaId", "from", "to", "q"};
+
+    // DAO dùng cho chế độ phân trang (chế độ cũ đi qua EventCatalogCache)
     private final EventDAO eventDAO = new EventDAO();
 
     // GsonBuilder.serializeNulls():
@@ -52,6 +65,18 @@ public class GetAllEventsController extends HttpServlet {
             .serializeNulls()
             .create();
 
+    /**
+     * init: tạo index (start_time, event_id) nếu DB chưa có (1 lần khi nạp servlet)
+     */
+    @Override
+    public void init() {
+        try {
+            eventDAO.ensureListingIndex();
+        } catch (Exception e) {
+            System.err.println("[ERROR] GetAllEventsController.init: ensureListingIndex: " + e.getMessage());
+        }
+    }
+
     /**
      * doOptions: xử lý CORS preflight
      * Browser sẽ gọi OPTIONS trước GET nếu có CORS
@@ -64,6 +89,10 @@ public class GetAllEventsController extends HttpServlet {
 
     /**
      * doGet: API chính để lấy danh sách sự kiện
+     *
+     * - JSON lấy từ EventCatalogCache (đã serialize + gzip sẵn), không query DB mỗi lần
+     * - ETag / Last-Modified: FE gửi lại If-None-Match / If-Modified-Since => 304 không body
+     * - Accept-Encoding có gzip => gửi thẳng byte đã nén
      */
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -78,95 +107,240 @@ public class GetAllEventsController extends HttpServlet {
         // => Guest (chưa login) vẫn xem được danh sách event
         // => Phù hợp nghiệp vụ: quảng bá sự kiện công khai
 
+        // Có tham số lọc / phân trang => trả từng trang (keyset); không có => format cũ (cache)
+        if (isPagedRequest(request)) {
+            handlePaged(request, response);
+            return;
+        }
+
+        EventCatalogCache.Snapshot catalog;
         try {
-            // =================================================
-            // (1) Lấy toàn bộ Event từ database
-            // =================================================
-            // eventDAO.getAllEvents():
-            // - Thường là query JOIN (event + area + venue)
-            // - Trả về cả OPEN và CLOSED
-            List<Event> events = eventDAO.getAllEvents();
-
-            // Danh sách event mở
-            List<EventListDto> openEvents = new ArrayList<>();
-
-            // Danh sách event đóng
-            List<EventListDto> closedEvents = new ArrayList<>();
-
-            // =================================================
-            // (2) Duyệt từng Event và map sang DTO
-            // =================================================
-            for (Event e : events) {
-
-                // Tạo DTO chứa các field cần cho FE
-                EventListDto dto = new EventListDto(
-                        e.getEventId(),
-                        e.getTitle(),
-                        e.getDescription(),
-                        e.getStartTime(),
-                        e.getEndTime(),
-                        e.getMaxSeats(),
-                        e.getStatus(),
-                        e.getBannerUrl()
-                );
-
-                // ===== Map thêm thông tin khu vực =====
-                dto.setAreaId(e.getAreaId());
-                dto.setAreaName(e.getAreaName());
-                dto.setFloor(e.getFloor());
-
-                // ===== Map thêm thông tin địa điểm =====
-                dto.setVenueName(e.getVenueName());
-                dto.setVenueLocation(e.getVenueLocation());
-
-                // =================================================
-                // (3) Phân loại theo trạng thái
-                // =================================================
-                if ("OPEN".equalsIgnoreCase(e.getStatus())) {
-                    openEvents.add(dto);
-                } else if ("CLOSED".equalsIgnoreCase(e.getStatus())) {
-                    closedEvents.add(dto);
+            catalog = EventCatalogCache.get();
+        } catch (SQLException | ClassNotFoundException ex) {
+            // Lỗi DB (và chưa có bản cache nào để trả)
+            ex.printStackTrace();
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+
+            try (PrintWriter out = response.getWriter()) {
+                out.write("{\"message\":\"Internal server error when loading events\"}");
+            }
+            return;
+        }
+
+        // Vary thêm Accept-Encoding: cùng URL có bản gzip và bản thường
+        response.setHeader("Vary", "Origin, Accept-Encoding");
+        response.setHeader("ETag", catalog.etag);
+        response.setDateHeader("Last-Modified", catalog.lastModified);
+        // Luôn hỏi lại server (rẻ vì có 304) để thấy event mới ngay
+        response.setHeader("Cache-Control", "no-cache");
+
+        if (notModified(request, catalog)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        byte[] body = gzip ? catalog.gzip : catalog.json;
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLength(body.length);
+        try (OutputStream out = response.getOutputStream()) {
+            out.write(body);
+        }
+    }
+
+    // ======================= CHẾ ĐỘ PHÂN TRANG =======================
+    /**
+     * GET /api/events?limit=&cursor=&status=&venueId=&areaId=&from=&to=&q=
+     *
+     * - Sắp theo (startTime, eventId) tăng dần, trang sau lấy bằng cursor
+     *   (nextCursor của trang trước) => không OFFSET, trang nào cũng 1 lần seek index
+     * - status: OPEN | CLOSED; from/to: lọc startTime (yyyy-MM-dd hoặc yyyy-MM-ddTHH:mm[:ss])
+     * - q: tìm trong title
+     *
+     * Response: { items: [...EventListDto], nextCursor: "..." | null, hasMore: bool }
+     * STATUS: 200 OK - 400 tham số sai - 500 lỗi DB
+     */
+    private void handlePaged(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        EventListQuery query = new EventListQuery();
+        int limit = DEFAULT_LIMIT;
+        try {
+            String limitRaw = trimToNull(request.getParameter("limit"));
+            if (limitRaw != null) {
+                limit = Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(limitRaw)));
+            }
+
+            String status = trimToNull(request.getParameter("status"));
+            if (status != null) {
+                status = status.toUpperCase();
+                if (!"OPEN".equals(status) && !"CLOSED".equals(status)) {
+                    writeBadRequest(response, "status phải là OPEN hoặc CLOSED");
+                    return;
                 }
-                // Nếu có status khác (VD: DRAFT) thì không add
+                query.setStatus(status);
             }
 
-            // =================================================
-            // (4) Đóng gói JSON trả về FE
-            // =================================================
-            // Cấu trúc:
-            // {
-            //   "openEvents":   [ ... ],
-            //   "closedEvents": [ ... ]
-            // }
-            Map<String, Object> result = new HashMap<>();
-            result.put("openEvents", openEvents);
-            result.put("closedEvents", closedEvents);
-
-            // Convert Java object -> JSON string
-            String json = gson.toJson(result);
-
-            // Ghi JSON ra response
-            try (PrintWriter out = response.getWriter()) {
-                out.write(json);
+            String venueId = trimToNull(request.getParameter("venueId"));
+            if (venueId != null) {
+                query.setVenueId(Integer.parseInt(venueId));
+            }
+            String areaId = trimToNull(request.getParameter("areaId"));
+            if (areaId != null) {
+                query.setAreaId(Integer.parseInt(areaId));
             }
+        } catch (NumberFormatException e) {
+            writeBadRequest(response, "limit / venueId / areaId không hợp lệ");
+            return;
+        }
+
+        String fromRaw = trimToNull(request.getParameter("from"));
+        String toRaw = trimToNull(request.getParameter("to"));
+        query.setFrom(parseDateTime(fromRaw));
+        query.setTo(parseDateTime(toRaw));
+        if ((fromRaw != null && query.getFrom() == null) || (toRaw != null && query.getTo() == null)) {
+            writeBadRequest(response, "from / to không hợp lệ");
+            return;
+        }
 
-        } catch (SQLException ex) {
-            // =================================================
-            // (5) Lỗi DB
-            // =================================================
+        String q = trimToNull(request.getParameter("q"));
+        if (q != null) {
+            query.setQ(q.length() > 200 ? q.substring(0, 200) : q);
+        }
+
+        String cursor = trimToNull(request.getParameter("cursor"));
+        if (cursor != null && !decodeCursor(cursor, query)) {
+            writeBadRequest(response, "cursor không hợp lệ");
+            return;
+        }
+
+        // Lấy dư 1 dòng để biết còn trang sau
+        query.setLimit(limit + 1);
+        List<Event> rows;
+        try {
+            rows = eventDAO.findEvents(query);
+        } catch (SQLException | ClassNotFoundException ex) {
             ex.printStackTrace();
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-
             try (PrintWriter out = response.getWriter()) {
                 out.write("{\"message\":\"Internal server error when loading events\"}");
             }
+            return;
+        }
+
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows = rows.subList(0, limit);
+        }
+        List<EventListDto> items = new ArrayList<>(rows.size());
+        for (Event e : rows) {
+            items.add(EventCatalogCache.toListDto(e));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("items", items);
+        result.put("nextCursor", hasMore ? encodeCursor(rows.get(rows.size() - 1)) : null);
+        result.put("hasMore", hasMore);
+
+        try (PrintWriter out = response.getWriter()) {
+            out.write(gson.toJson(result));
+        }
+    }
+
+    private static boolean isPagedRequest(HttpServletRequest req) {
+        for (String name : PAGED_PARAMS) {
+            if (req.getParameter(name) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cursor = Base64URL("startMillis:nanos:eventId") của event cuối trang
+     * (giữ cả nanos để so bằng đúng start_time trong DB)
+     */
+    private static String encodeCursor(Event last) {
+        Timestamp t = last.getStartTime();
+        String raw = t.getTime() + ":" + t.getNanos() + ":" + last.getEventId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean decodeCursor(String cursor, EventListQuery query) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 3) {
+                return false;
+            }
+            Timestamp t = new Timestamp(Long.parseLong(parts[0]));
+            t.setNanos(Integer.parseInt(parts[1]));
+            query.setAfterStartTime(t);
+            query.setAfterEventId(Integer.parseInt(parts[2]));
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * parseDateTime: "yyyy-MM-dd", "yyyy-MM-ddTHH:mm" hoặc "yyyy-MM-ddTHH:mm:ss"
+     * (giống GetFreeAreasController), lỗi => null
+     */
+    private static Timestamp parseDateTime(String value) {
+        if (value == null) return null;
+        if (value.endsWith("Z") || value.endsWith("z")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        value = value.replace('T', ' ');
+        if (value.length() == 10) {
+            value = value + " 00:00:00";
+        } else if (value.length() == 16) {
+            value = value + ":00";
+        }
+        try {
+            return Timestamp.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String trimToNull(String s) {
+        if (s == null) return null;
+        String t = s.trim();
+        return t.isEmpty() ? null : t;
+    }
 
-        } catch (ClassNotFoundException ex) {
-            // =================================================
-            // (6) Lỗi load JDBC driver (hiếm khi xảy ra)
-            // =================================================
-            Logger.getLogger(GetAllEventsController.class.getName())
-                  .log(Level.SEVERE, null, ex);
+    private static void writeBadRequest(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        try (PrintWriter out = response.getWriter()) {
+            out.write("{\"message\":\"" + message + "\"}");
+        }
+    }
+
+    /**
+     * notModified: If-None-Match (ưu tiên) hoặc If-Modified-Since
+     */
+    private static boolean notModified(HttpServletRequest req, EventCatalogCache.Snapshot catalog) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null && !ifNoneMatch.trim().isEmpty()) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String c = candidate.trim();
+                if (c.startsWith("W/")) {
+                    c = c.substring(2);
+                }
+                if (c.equals("*") || c.equals(catalog.etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        try {
+            long since = req.getDateHeader("If-Modified-Since");
+            return since >= 0 && catalog.lastModified <= since;
+        } catch (IllegalArgumentException e) {
+            return false; // header sai định dạng
         }
     }
 
@@ -206,10 +380,10 @@ public class GetAllEventsController extends HttpServlet {
 
         // Cho phép các header cần thiết
         res.setHeader("Access-Control-Allow-Headers",
-                "Content-Type, Authorization, ngrok-skip-browser-warning");
+                "Content-Type, Authorization, ngrok-skip-browser-warning, If-None-Match");
 
         // Header nào FE được đọc
-        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization, ETag");
 
         // Cache preflight 24h
         res.setHeader("Access-Control-Max-Age", "86400");
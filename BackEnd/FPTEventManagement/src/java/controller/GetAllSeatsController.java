@@ -1,7 +1,7 @@
 package controller;
 
 import DAO.SeatDAO;
-import DAO.EventSeatLayoutDAO;
+import service.SeatAvailabilityCache;
 import DTO.Seat;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -30,9 +30,16 @@ import java.util.List;
  * /**
  * API: GET /api/seats
  *
- * STATUS CODE TỔNG QUAN: - 200 OK: trả danh sách ghế thành công - 400 Bad
- * Request: sai/thiếu tham số (eventId/areaId không hợp lệ) - 500 Internal
- * Server Error: lỗi server (exception không mong muốn)
+ * POLLING THEO EVENT (giảm băng thông sơ đồ ghế):
+ * - Response có "version" + header ETag ("eventId-version"), version tăng mỗi khi 1 ghế đổi trạng thái
+ * - Gửi If-None-Match = ETag cũ mà chưa có gì đổi => 304 Not Modified, không có body
+ * - Gửi ?sinceVersion=N => chỉ trả các ghế đổi trạng thái sau version N ("delta": true);
+ *   N quá cũ (change log đã bị ghi đè) hoặc không hợp lệ với event => trả full list ("delta": false)
+ *
+ * STATUS CODE TỔNG QUAN: - 200 OK: trả danh sách ghế thành công - 304 Not
+ * Modified: ETag khớp version hiện tại - 400 Bad Request: sai/thiếu tham số
+ * (eventId/areaId/sinceVersion không hợp lệ) - 500 Internal Server Error: lỗi
+ * server (exception không mong muốn)
  */
 @WebServlet("/api/seats")
 public class GetAllSeatsController extends HttpServlet {
@@ -40,9 +47,6 @@ public class GetAllSeatsController extends HttpServlet {
     // DAO thao tác bảng Seat (ghế vật lý theo area)
     private final SeatDAO seatDAO = new SeatDAO();
 
-    // DAO thao tác bảng Event_Seat_Layout (layout ghế theo event) + join Seat để lấy seat_code/row/col...
-    private final EventSeatLayoutDAO eventSeatLayoutDAO = new EventSeatLayoutDAO();
-
     // Gson trả JSON đẹp để debug dễ hơn
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
@@ -71,6 +75,9 @@ public class GetAllSeatsController extends HttpServlet {
             List<Seat> seats;
             Integer eventId = null;
             Integer areaId = null;
+            Long version = null;
+            Long sinceVersion = null;
+            Boolean delta = null;
 
             // =====================================================
             // CASE 1: CÓ eventId -> lấy ghế THEO EVENT
@@ -87,17 +94,52 @@ public class GetAllSeatsController extends HttpServlet {
                     return;
                 }
 
+                String sinceStr = req.getParameter("sinceVersion");
+                if (sinceStr != null && !sinceStr.trim().isEmpty()) {
+                    try {
+                        sinceVersion = Long.parseLong(sinceStr.trim());
+                    } catch (NumberFormatException e) {
+                        resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                        resp.getWriter().write("{\"error\":\"Invalid sinceVersion\"}");
+                        return;
+                    }
+                }
+
+                /**
+                 * 1.2) ETag / 304: so version hiện tại với If-None-Match trước khi
+                 * dựng list ghế => client poll mà không có gì đổi chỉ tốn 1 header
+                 */
+                long currentVersion = SeatAvailabilityCache.getVersion(eventId);
+                if (currentVersion >= 0) {
+                    String etag = "\"" + eventId + "-" + currentVersion + "\"";
+                    resp.setHeader("ETag", etag);
+                    resp.setHeader("Cache-Control", "no-cache");
+                    if (etagMatches(req.getHeader("If-None-Match"), etag)) {
+                        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED); // = 304
+                        return;
+                    }
+                }
+
                 /**
-                 * 1.2) Lấy danh sách ghế theo event: - Query thường là:
-                 * Event_Seat_Layout JOIN Seat - Vì Seat chứa
-                 * seat_code/row_no/col_no/area_id... - Event_Seat_Layout chứa
-                 * seat_type, status theo event (mở/khóa ghế trong event) -
-                 * seatType nếu có thì lọc ghế VIP/Standard...
+                 * 1.3) Lấy danh sách ghế theo event: - Nguồn gốc là
+                 * Event_Seat_Layout JOIN Seat (+ Ticket để biết HOLD/BOOKED) -
+                 * SeatAvailabilityCache nạp 1 lần rồi giữ trong RAM, TicketDAO
+                 * cập nhật khi vé đổi trạng thái => FE poll không chạm DB -
+                 * seatType nếu có thì lọc ghế VIP/Standard... - sinceVersion
+                 * nếu có thì chỉ lấy ghế đã đổi trạng thái
                  */
-                seats = eventSeatLayoutDAO.getSeatsForEvent(eventId, seatType);
+                SeatAvailabilityCache.SeatView view
+                        = SeatAvailabilityCache.getSeatView(eventId, seatType, sinceVersion);
+                seats = view.getSeats();
+                if (view.getVersion() >= 0) {
+                    version = view.getVersion();
+                    delta = view.isDelta();
+                    // version có thể đã tăng giữa getVersion() và getSeatView()
+                    resp.setHeader("ETag", "\"" + eventId + "-" + version + "\"");
+                }
 
                 /**
-                 * 1.3) Xác định areaId: - Nếu có ghế thì lấy areaId từ ghế đầu
+                 * 1.4) Xác định areaId: - Nếu có ghế thì lấy areaId từ ghế đầu
                  * tiên (vì ghế đó đã join từ Seat) - Nếu danh sách rỗng: event
                  * chưa cấu hình layout -> trả empty list
                  */
@@ -186,6 +228,9 @@ public class GetAllSeatsController extends HttpServlet {
             seatResponse.setSeatType(seatType);
             seatResponse.setTotal(seats != null ? seats.size() : 0);
             seatResponse.setSeats(seats);
+            seatResponse.setVersion(version);
+            seatResponse.setSinceVersion(sinceVersion);
+            seatResponse.setDelta(delta);
 
             String json = gson.toJson(seatResponse);
             resp.setStatus(HttpServletResponse.SC_OK);
@@ -199,6 +244,26 @@ public class GetAllSeatsController extends HttpServlet {
         }
     }
 
+    /**
+     * etagMatches: If-None-Match có thể là "*", 1 ETag hoặc danh sách cách nhau
+     * dấu phẩy (có thể kèm tiền tố W/)
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.trim().isEmpty()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.startsWith("W/")) {
+                c = c.substring(2);
+            }
+            if (c.equals("*") || c.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * parseColNumber: - colNo trong DB có thể là NVARCHAR ("1","2","03") -
      * convert sang int để sort đúng - nếu lỗi parse -> trả 0 để tránh crash
@@ -226,6 +291,10 @@ public class GetAllSeatsController extends HttpServlet {
         private String seatType;
         private int total;
         private List<Seat> seats;
+        // Chỉ có khi lấy theo event (null => Gson bỏ qua)
+        private Long version;
+        private Long sinceVersion;
+        private Boolean delta;
 
         public Integer getEventId() {
             return eventId;
@@ -266,6 +335,30 @@ public class GetAllSeatsController extends HttpServlet {
         public void setSeats(List<Seat> seats) {
             this.seats = seats;
         }
+
+        public Long getVersion() {
+            return version;
+        }
+
+        public void setVersion(Long version) {
+            this.version = version;
+        }
+
+        public Long getSinceVersion() {
+            return sinceVersion;
+        }
+
+        public void setSinceVersion(Long sinceVersion) {
+            this.sinceVersion = sinceVersion;
+        }
+
+        public Boolean getDelta() {
+            return delta;
+        }
+
+        public void setDelta(Boolean delta) {
+            this.delta = delta;
+        }
     }
 
     /**
@@ -292,8 +385,8 @@ public class GetAllSeatsController extends HttpServlet {
         res.setHeader("Vary", "Origin");
         res.setHeader("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
         res.setHeader("Access-Control-Allow-Headers",
-                "Content-Type, Authorization, ngrok-skip-browser-warning");
-        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+                "Content-Type, Authorization, ngrok-skip-browser-warning, If-None-Match");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization, ETag");
         res.setHeader("Access-Control-Max-Age", "86400");
     }
 }
@@ -0,0 +1,314 @@
+package controller;
+
+import DAO.VenueAreaDAO;
+import DTO.AreaBooking;
+import DTO.VenueArea;
+import com.google.gson.stream.JsonWriter;
+import mylib.AppProps;
+import service.AreaScheduleIndex;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Timestamp;
+
+/**
+ * API: GET /api/areas/availability?from=...&to=...[&minCapacity=][&minDurationMinutes=60]
+ *
+ * MỤC ĐÍCH:
+ * - Organizer xem lịch của MỌI khu vực AVAILABLE trong 1 khoảng (vd cả học kỳ) trước khi gửi
+ *   Event_Request, thay vì đoán giờ rồi bị từ chối vì trùng lịch ở ProcessEventRequestController
+ *
+ * CÁCH LÀM:
+ * - 1 query LEFT JOIN Venue_Area - Event, sắp theo area_id, start_time (VenueAreaDAO.streamAreaAvailability)
+ * - Duyệt 1 lượt, ghi JSON thẳng ra response (JsonWriter) => RAM không đổi theo số area / event
+ * - Mỗi area: "intervals" theo thời gian, xen kẽ
+ *   + OCCUPIED: event đang chiếm (giờ thật của event, kèm eventId, eventStatus)
+ *   + FREE: khoảng đặt được event mới (đã trừ buffer 1h quanh các event), dài >= minDurationMinutes
+ *
+ * RESPONSE (stream):
+ * {"status":"success","from","to","bufferHours":1,"minCapacity","minDurationMinutes",
+ *  "areas":[{"areaId","venueId","areaName","floor","capacity","intervals":[...],"freeMinutes"}],
+ *  "total":n}
+ *
+ * STATUS CODE:
+ * - 200 OK
+ * - 403 Forbidden: không phải ORGANIZER / STAFF / ADMIN
+ * - 400 Bad Request: thiếu / sai from, to, minCapacity; khoảng quá areaIndex.availabilityMaxDays (200)
+ * - 500: lỗi DB trước khi bắt đầu ghi (lỗi giữa chừng chỉ log được, response bị cắt)
+ */
+@WebServlet("/api/areas/availability")
+public class GetAreaAvailabilityController extends HttpServlet {
+
+    private static final int MAX_RANGE_DAYS = Math.max(1, AppProps.getInt("areaIndex.availabilityMaxDays", 200));
+
+    private final VenueAreaDAO venueAreaDAO = new VenueAreaDAO();
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        req.setCharacterEncoding("UTF-8");
+        resp.setContentType("application/json;charset=UTF-8");
+
+        // ===================== 1) Role (JwtAuthFilter đã verify token) =====================
+        Object roleAttr = req.getAttribute("role");
+        String role = roleAttr != null ? roleAttr.toString() : null;
+        if (role == null || !("ORGANIZER".equalsIgnoreCase(role) || "STAFF".equalsIgnoreCase(role)
+                || "ADMIN".equalsIgnoreCase(role))) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            resp.getWriter().print("{\"status\":\"fail\",\"message\":\"Chỉ ORGANIZER, STAFF hoặc ADMIN mới được xem lịch khu vực\"}");
+            return;
+        }
+
+        // ===================== 2) Tham số =====================
+        Timestamp from = parseDateTime(req.getParameter("from"));
+        Timestamp to = parseDateTime(req.getParameter("to"));
+        if (from == null || to == null) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"status\":\"fail\",\"message\":\"Thiếu hoặc sai định dạng from / to\"}");
+            return;
+        }
+        if (!to.after(from)) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"status\":\"fail\",\"message\":\"to phải sau from\"}");
+            return;
+        }
+        if (to.getTime() - from.getTime() > MAX_RANGE_DAYS * 24L * 60L * 60L * 1000L) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"status\":\"fail\",\"message\":\"Khoảng thời gian tối đa " + MAX_RANGE_DAYS + " ngày\"}");
+            return;
+        }
+
+        Integer minCapacity = null;
+        int minDurationMinutes = 60;
+        try {
+            String capStr = req.getParameter("minCapacity");
+            if (!isBlank(capStr)) {
+                minCapacity = Integer.parseInt(capStr.trim());
+            }
+            String minStr = req.getParameter("minDurationMinutes");
+            if (!isBlank(minStr)) {
+                minDurationMinutes = Integer.parseInt(minStr.trim());
+            }
+        } catch (NumberFormatException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"status\":\"fail\",\"message\":\"minCapacity / minDurationMinutes không hợp lệ\"}");
+            return;
+        }
+        if ((minCapacity != null && minCapacity < 0) || minDurationMinutes <= 0) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"status\":\"fail\",\"message\":\"minCapacity >= 0, minDurationMinutes > 0\"}");
+            return;
+        }
+
+        // ===================== 3) Stream =====================
+        AvailabilityWriter w = new AvailabilityWriter(resp, from, to, minCapacity, minDurationMinutes);
+        try {
+            // Lấy cả event có buffer 1h chạm vào khoảng
+            venueAreaDAO.streamAreaAvailability(
+                    new Timestamp(from.getTime() - AreaScheduleIndex.BUFFER_MS),
+                    new Timestamp(to.getTime() + AreaScheduleIndex.BUFFER_MS),
+                    minCapacity, w::onRow);
+            w.finish();
+        } catch (Exception e) {
+            System.err.println("[ERROR] GetAreaAvailability: " + e.getMessage());
+            if (!w.started) {
+                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                resp.getWriter().print("{\"status\":\"fail\",\"message\":\"Lỗi server khi tra lịch khu vực\"}");
+            }
+            // Đã ghi 1 phần => không sửa được status, response bị cắt (JSON không hợp lệ)
+        }
+    }
+
+    /**
+     * Gộp dòng (area, event) đã sắp theo area, start_time thành JSON, chỉ giữ
+     * trạng thái của area đang ghi.
+     */
+    private static final class AvailabilityWriter {
+
+        private final HttpServletResponse resp;
+        private final long from;
+        private final long to;
+        private final Integer minCapacity;
+        private final int minDurationMinutes;
+        private final long minDurationMs;
+
+        private JsonWriter json;
+        boolean started;
+        private Integer currentAreaId;
+        private long cursor;         // thời điểm sớm nhất có thể bắt đầu event mới trong area hiện tại
+        private long freeMs;
+        private int total;
+
+        AvailabilityWriter(HttpServletResponse resp, Timestamp from, Timestamp to, Integer minCapacity,
+                int minDurationMinutes) {
+            this.resp = resp;
+            this.from = from.getTime();
+            this.to = to.getTime();
+            this.minCapacity = minCapacity;
+            this.minDurationMinutes = minDurationMinutes;
+            this.minDurationMs = minDurationMinutes * 60_000L;
+        }
+
+        void onRow(VenueArea area, AreaBooking booking) throws IOException {
+            if (!started) {
+                begin();
+            }
+            if (!area.getAreaId().equals(currentAreaId)) {
+                endArea();
+                beginArea(area);
+            }
+            if (booking == null) {
+                return;
+            }
+
+            long blockFrom = booking.getStartTime().getTime() - AreaScheduleIndex.BUFFER_MS;
+            long blockTo = booking.getEndTime().getTime() + AreaScheduleIndex.BUFFER_MS;
+            free(blockFrom);
+
+            json.beginObject();
+            json.name("type").value("OCCUPIED");
+            json.name("start").value(booking.getStartTime().toString());
+            json.name("end").value(booking.getEndTime().toString());
+            json.name("eventId").value(booking.getEventId());
+            json.name("eventStatus").value(booking.getStatus());
+            json.endObject();
+
+            cursor = Math.max(cursor, blockTo);
+        }
+
+        void finish() throws IOException {
+            if (!started) {
+                begin();
+            }
+            endArea();
+            json.endArray();
+            json.name("total").value(total);
+            json.endObject();
+            json.flush();
+        }
+
+        private void begin() throws IOException {
+            started = true;
+            PrintWriter out = resp.getWriter();
+            json = new JsonWriter(out);
+            json.setSerializeNulls(false); // giống Gson mặc định: bỏ field null (floor)
+            json.beginObject();
+            json.name("status").value("success");
+            json.name("from").value(new Timestamp(from).toString());
+            json.name("to").value(new Timestamp(to).toString());
+            json.name("bufferHours").value(1);
+            if (minCapacity != null) {
+                json.name("minCapacity").value(minCapacity);
+            }
+            json.name("minDurationMinutes").value(minDurationMinutes);
+            json.name("areas").beginArray();
+        }
+
+        private void beginArea(VenueArea area) throws IOException {
+            currentAreaId = area.getAreaId();
+            cursor = from;
+            freeMs = 0;
+            total++;
+
+            json.beginObject();
+            json.name("areaId").value(area.getAreaId());
+            json.name("venueId").value(area.getVenueId());
+            json.name("areaName").value(area.getAreaName());
+            json.name("floor").value(area.getFloor());
+            json.name("capacity").value(area.getCapacity());
+            json.name("intervals").beginArray();
+        }
+
+        private void endArea() throws IOException {
+            if (currentAreaId == null) {
+                return;
+            }
+            free(to);
+            json.endArray();
+            json.name("freeMinutes").value(freeMs / 60_000L);
+            json.endObject();
+            currentAreaId = null;
+        }
+
+        // Khoảng trống [cursor, until) (cắt trong [from, to))
+        private void free(long until) throws IOException {
+            long end = Math.min(until, to);
+            if (end - cursor >= minDurationMs) {
+                json.beginObject();
+                json.name("type").value("FREE");
+                json.name("start").value(new Timestamp(cursor).toString());
+                json.name("end").value(new Timestamp(end).toString());
+                json.endObject();
+                freeMs += end - cursor;
+            }
+        }
+    }
+
+    // ====== Helper parse datetime (giống GetFreeAreasController) ======
+    private Timestamp parseDateTime(String s) {
+        if (s == null) return null;
+        String value = s.trim();
+        if (value.isEmpty()) return null;
+
+        // Bỏ 'Z' nếu có
+        if (value.endsWith("Z") || value.endsWith("z")) {
+            value = value.substring(0, value.length() - 1);
+        }
+
+        value = value.replace('T', ' ');
+
+        // Chỉ có ngày => 00:00:00
+        if (value.length() == 10) {
+            value = value + " 00:00:00";
+        }
+        // yyyy-MM-dd HH:mm -> thêm :00
+        if (value.length() == 16) {
+            value = value + ":00";
+        }
+
+        try {
+            return Timestamp.valueOf(value);
+        } catch (Exception e) {
+            System.err.println("[WARN] parseDateTime failed for value = " + s + " -> " + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    private void setCorsHeaders(HttpServletResponse res, HttpServletRequest req) {
+        String origin = req.getHeader("Origin");
+
+        boolean allowed = origin != null && (origin.equals("http://localhost:5173")
+                || origin.equals("http://127.0.0.1:5173")
+                || origin.equals("http://localhost:3000")
+                || origin.equals("http://127.0.0.1:3000")
+                || origin.contains("ngrok-free.app")
+                || origin.contains("ngrok.app"));
+
+        if (allowed) {
+            res.setHeader("Access-Control-Allow-Origin", origin);
+            res.setHeader("Access-Control-Allow-Credentials", "true");
+        } else {
+            res.setHeader("Access-Control-Allow-Origin", "null");
+        }
+
+        res.setHeader("Vary", "Origin");
+        res.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        res.setHeader("Access-Control-Allow-Headers",
+                "Content-Type, Authorization, ngrok-skip-browser-warning");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Max-Age", "86400");
+    }
+}
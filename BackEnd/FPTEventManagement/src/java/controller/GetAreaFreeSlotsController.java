@@ -0,0 +1,221 @@
+package controller;
+
+import DAO.VenueAreaDAO;
+import DTO.VenueArea;
+import com.google.gson.Gson;
+import mylib.AppProps;
+import service.AreaScheduleIndex;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * API: GET /api/areas/free-slots?from=...&to=...[&minDurationMinutes=60][&venueId=]
+ *
+ * MỤC ĐÍCH:
+ * - Thay vì thử từng khung giờ với /api/areas/free, trả luôn cho TỪNG khu vực (AVAILABLE)
+ *   các khoảng trống trong [from, to)
+ * - Mỗi khoảng trống [start, end]: đặt event bất kỳ nằm trong khoảng này đều không trùng lịch
+ *   (đã trừ buffer 1h trước & sau các event hiện có)
+ *
+ * NGUỒN: AreaScheduleIndex (lịch trong RAM, không quét Event theo từng area)
+ *
+ * STATUS CODE:
+ * - 200 OK: {status:"success", from, to, bufferHours, minDurationMinutes, total, areas:[{..., freeSlots:[...]}]}
+ * - 403 Forbidden: không phải STAFF / ADMIN (giống /api/areas/free)
+ * - 400 Bad Request: thiếu / sai from, to, khoảng quá areaIndex.maxRangeDays (31 ngày)
+ * - 500: lỗi DB
+ */
+@WebServlet("/api/areas/free-slots")
+public class GetAreaFreeSlotsController extends HttpServlet {
+
+    private static final int MAX_RANGE_DAYS = Math.max(1, AppProps.getInt("areaIndex.maxRangeDays", 31));
+
+    private final VenueAreaDAO venueAreaDAO = new VenueAreaDAO();
+    private final Gson gson = new Gson();
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        req.setCharacterEncoding("UTF-8");
+        resp.setContentType("application/json;charset=UTF-8");
+
+        PrintWriter out = resp.getWriter();
+
+        // ===================== 1) Role (JwtAuthFilter đã verify token) =====================
+        Object roleAttr = req.getAttribute("role");
+        String role = roleAttr != null ? roleAttr.toString() : null;
+        if (role == null || !("STAFF".equalsIgnoreCase(role) || "ADMIN".equalsIgnoreCase(role))) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            out.print("{\"status\":\"fail\",\"message\":\"Chỉ STAFF hoặc ADMIN mới được xem lịch trống của khu vực\"}");
+            return;
+        }
+
+        // ===================== 2) Tham số =====================
+        Timestamp from = parseDateTime(req.getParameter("from"));
+        Timestamp to = parseDateTime(req.getParameter("to"));
+        if (from == null || to == null) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            out.print("{\"status\":\"fail\",\"message\":\"Thiếu hoặc sai định dạng from / to\"}");
+            return;
+        }
+        if (!to.after(from)) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            out.print("{\"status\":\"fail\",\"message\":\"to phải sau from\"}");
+            return;
+        }
+        if (to.getTime() - from.getTime() > MAX_RANGE_DAYS * 24L * 60L * 60L * 1000L) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            out.print("{\"status\":\"fail\",\"message\":\"Khoảng thời gian tối đa " + MAX_RANGE_DAYS + " ngày\"}");
+            return;
+        }
+
+        int minDurationMinutes = 60;
+        Integer venueId = null;
+        try {
+            String minStr = req.getParameter("minDurationMinutes");
+            if (!isBlank(minStr)) {
+                minDurationMinutes = Integer.parseInt(minStr.trim());
+            }
+            String venueStr = req.getParameter("venueId");
+            if (!isBlank(venueStr)) {
+                venueId = Integer.parseInt(venueStr.trim());
+            }
+        } catch (NumberFormatException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            out.print("{\"status\":\"fail\",\"message\":\"minDurationMinutes / venueId không hợp lệ\"}");
+            return;
+        }
+        if (minDurationMinutes <= 0) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            out.print("{\"status\":\"fail\",\"message\":\"minDurationMinutes phải > 0\"}");
+            return;
+        }
+
+        // ===================== 3) Tra lịch =====================
+        List<VenueArea> areas;
+        Map<Integer, List<long[]>> slots;
+        try {
+            areas = new ArrayList<>();
+            for (VenueArea va : venueAreaDAO.getAvailableAreas()) {
+                if (venueId == null || venueId.equals(va.getVenueId())) {
+                    areas.add(va);
+                }
+            }
+            List<Integer> areaIds = new ArrayList<>();
+            for (VenueArea va : areas) {
+                areaIds.add(va.getAreaId());
+            }
+            slots = AreaScheduleIndex.freeSlots(areaIds, from.getTime(), to.getTime(), minDurationMinutes * 60_000L);
+        } catch (Exception e) {
+            System.err.println("[ERROR] GetAreaFreeSlots: " + e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            out.print("{\"status\":\"fail\",\"message\":\"Lỗi server khi tra lịch khu vực\"}");
+            return;
+        }
+
+        // ===================== 4) Response =====================
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (VenueArea va : areas) {
+            List<Map<String, Object>> free = new ArrayList<>();
+            for (long[] s : slots.get(va.getAreaId())) {
+                Map<String, Object> slot = new LinkedHashMap<>();
+                slot.put("start", new Timestamp(s[0]).toString());
+                slot.put("end", new Timestamp(s[1]).toString());
+                slot.put("durationMinutes", (s[1] - s[0]) / 60_000L);
+                free.add(slot);
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("areaId", va.getAreaId());
+            item.put("venueId", va.getVenueId());
+            item.put("areaName", va.getAreaName());
+            item.put("floor", va.getFloor());
+            item.put("capacity", va.getCapacity());
+            item.put("freeSlots", free);
+            items.add(item);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", "success");
+        result.put("from", from.toString());
+        result.put("to", to.toString());
+        result.put("bufferHours", 1);
+        result.put("minDurationMinutes", minDurationMinutes);
+        result.put("total", items.size());
+        result.put("areas", items);
+        out.print(gson.toJson(result));
+    }
+
+    // ====== Helper parse datetime (giống GetFreeAreasController) ======
+    private Timestamp parseDateTime(String s) {
+        if (s == null) return null;
+        String value = s.trim();
+        if (value.isEmpty()) return null;
+
+        // Bỏ 'Z' nếu có
+        if (value.endsWith("Z") || value.endsWith("z")) {
+            value = value.substring(0, value.length() - 1);
+        }
+
+        value = value.replace('T', ' ');
+
+        // Chỉ có ngày => 00:00:00
+        if (value.length() == 10) {
+            value = value + " 00:00:00";
+        }
+        // yyyy-MM-dd HH:mm -> thêm :00
+        if (value.length() == 16) {
+            value = value + ":00";
+        }
+
+        try {
+            return Timestamp.valueOf(value);
+        } catch (Exception e) {
+            System.err.println("[WARN] parseDateTime failed for value = " + s + " -> " + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    private void setCorsHeaders(HttpServletResponse res, HttpServletRequest req) {
+        String origin = req.getHeader("Origin");
+
+        boolean allowed = origin != null && (origin.equals("http://localhost:5173")
+                || origin.equals("http://127.0.0.1:5173")
+                || origin.equals("http://localhost:3000")
+                || origin.equals("http://127.0.0.1:3000")
+                || origin.contains("ngrok-free.app")
+                || origin.contains("ngrok.app"));
+
+        if (allowed) {
+            res.setHeader("Access-Control-Allow-Origin", origin);
+            res.setHeader("Access-Control-Allow-Credentials", "true");
+        } else {
+            res.setHeader("Access-Control-Allow-Origin", "null");
+        }
+
+        res.setHeader("Vary", "Origin");
+        res.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        res.setHeader("Access-Control-Allow-Headers",
+                "Content-Type, Authorization, ngrok-skip-browser-warning");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Max-Age", "86400");
+    }
+}
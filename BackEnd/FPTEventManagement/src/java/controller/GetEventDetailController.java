@@ -1,14 +1,7 @@
 package controller;
 
-// ===== DAO dùng để truy vấn dữ liệu Event từ database =====
-import DAO.EventDAO;
-
-// ===== DTO chứa đầy đủ thông tin chi tiết của Event (event + venue + ticket...) =====
-import DTO.EventDetailDto;
-
-// ===== Gson dùng để convert Java Object -> JSON =====
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+// ===== Cache chi tiết Event (EventDetailDto + JSON đã serialize, nạp từ EventDAO khi miss) =====
+import service.EventDetailCache;
 
 // ===== Servlet API =====
 import jakarta.servlet.annotation.WebServlet;
@@ -26,6 +19,7 @@ import java.sql.SQLException;
  * - Trả về chi tiết 1 sự kiện theo eventId
  * - Dùng cho màn hình Event Detail bên Frontend
  * - API PUBLIC (Guest cũng xem được) → KHÔNG check JWT / role
+ * - Đọc qua EventDetailCache (bị invalidate khi event được sửa / vô hiệu hoá)
  *
  * RESPONSE:
  * - 200: Thành công, trả JSON chi tiết event
@@ -36,18 +30,6 @@ import java.sql.SQLException;
 @WebServlet("/api/events/detail")
 public class GetEventDetailController extends HttpServlet {
 
-    // DAO xử lý truy vấn dữ liệu Event từ DB
-    private final EventDAO eventDAO = new EventDAO();
-
-    /**
-     * Gson:
-     * - serializeNulls(): các field null (vd: bannerUrl) vẫn xuất hiện trong JSON
-     *   → giúp FE dễ xử lý UI, không cần check field có tồn tại hay không
-     */
-    private final Gson gson = new GsonBuilder()
-            .serializeNulls()
-            .create();
-
     /**
      * doGet:
      * - API chỉ dùng GET vì chỉ đọc dữ liệu
@@ -81,11 +63,11 @@ public class GetEventDetailController extends HttpServlet {
             // Nếu id không phải số → NumberFormatException
             int eventId = Integer.parseInt(idParam);
 
-            // ===== Lấy chi tiết event từ DB =====
-            EventDetailDto detail = eventDAO.getEventDetail(eventId);
+            // ===== Lấy chi tiết event (cache TTL ngắn, miss => DB; nhiều request cùng miss chỉ 1 query) =====
+            EventDetailCache.Entry detail = EventDetailCache.get(eventId);
 
             // ===== Nếu không tìm thấy event =====
-            if (detail == null) {
+            if (detail.detail == null) {
                 // 404 Not Found: resource không tồn tại
                 response.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 try (PrintWriter out = response.getWriter()) {
@@ -101,8 +83,8 @@ public class GetEventDetailController extends HttpServlet {
              * → nếu không Gson sẽ không serialize được field
              */
 
-            // ===== Convert DTO -> JSON =====
-            String json = gson.toJson(detail);
+            // ===== JSON đã serialize sẵn trong cache (Gson serializeNulls) =====
+            String json = detail.json;
 
             // ===== Trả JSON cho FE =====
             try (PrintWriter out = response.getWriter()) {
@@ -4,15 +4,20 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.*;
+import service.NotificationService;
 import utils.InMemoryNotificationService;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @WebServlet("/api/notifications/my")
 public class GetMyNotificationsController extends HttpServlet {
 
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+
     private final Gson gson = new GsonBuilder().create();
 
     @Override
@@ -30,10 +35,76 @@ public class GetMyNotificationsController extends HttpServlet {
             return;
         }
 
-        List<InMemoryNotificationService.NotiItem> list
-                = InMemoryNotificationService.getNotifications(userId);
+        int unread;
+        try {
+            unread = NotificationService.getUnreadCount(userId);
+        } catch (Exception e) {
+            System.err.println("[ERROR] GetMyNotificationsController.getUnreadCount: " + e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            try ( PrintWriter out = resp.getWriter()) {
+                out.write("{\"message\":\"Cannot load notifications\"}");
+            }
+            return;
+        }
+
+        // Badge chuông: ?countOnly=true => chỉ trả số chưa đọc (đếm sẵn, không duyệt danh sách)
+        resp.setHeader("X-Unread-Count", String.valueOf(unread));
+        if ("true".equalsIgnoreCase(req.getParameter("countOnly"))) {
+            try ( PrintWriter out = resp.getWriter()) {
+                out.write("{\"unreadCount\":" + unread + "}");
+            }
+            return;
+        }
+
+        // Phân trang theo cursor: ?after=<id cuối trang trước>&limit=N
+        String afterParam = req.getParameter("after");
+        String limitParam = req.getParameter("limit");
+        Long after = null;
+        int limit = DEFAULT_LIMIT;
+        try {
+            if (afterParam != null && !afterParam.trim().isEmpty()) {
+                after = Long.parseLong(afterParam.trim());
+            }
+            if (limitParam != null && !limitParam.trim().isEmpty()) {
+                limit = Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(limitParam.trim())));
+            }
+        } catch (NumberFormatException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            try ( PrintWriter out = resp.getWriter()) {
+                out.write("{\"message\":\"Invalid after/limit\"}");
+            }
+            return;
+        }
+
+        InMemoryNotificationService.Page page;
+        try {
+            page = NotificationService.getPage(userId, after, limit);
+        } catch (Exception e) {
+            System.err.println("[ERROR] GetMyNotificationsController.getPage: " + e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            try ( PrintWriter out = resp.getWriter()) {
+                out.write("{\"message\":\"Cannot load notifications\"}");
+            }
+            return;
+        }
+
+        Long nextCursor = page.getNextCursor();
+        if (nextCursor != null) {
+            resp.setHeader("X-Next-Cursor", String.valueOf(nextCursor));
+        }
 
-        String json = gson.toJson(list);
+        String json;
+        if (afterParam == null && limitParam == null) {
+            // FE cũ: mảng notification (nay là trang đầu), trang sau xem X-Next-Cursor
+            json = gson.toJson(page.items);
+        } else {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("items", page.items);
+            body.put("nextCursor", nextCursor);
+            body.put("hasMore", page.hasMore);
+            body.put("unreadCount", unread);
+            json = gson.toJson(body);
+        }
         try ( PrintWriter out = resp.getWriter()) {
             out.write(json);
         }
@@ -60,7 +131,7 @@ public class GetMyNotificationsController extends HttpServlet {
         res.setHeader("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
         res.setHeader("Access-Control-Allow-Headers",
                 "Content-Type, Authorization, ngrok-skip-browser-warning");
-        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization, X-Unread-Count, X-Next-Cursor");
         res.setHeader("Access-Control-Max-Age", "86400");
     }
 }
@@ -4,7 +4,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.*;
-import utils.InMemoryNotificationService;
+import service.NotificationService;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -34,7 +34,16 @@ public class MarkAllNotificationsReadController extends HttpServlet {
             return;
         }
 
-        InMemoryNotificationService.markAllRead(userId);
+        try {
+            NotificationService.markAllRead(userId);
+        } catch (Exception e) {
+            System.err.println("[ERROR] MarkAllNotificationsReadController: " + e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            try (PrintWriter out = resp.getWriter()) {
+                out.write("{\"success\":false,\"message\":\"Cannot mark notifications as read\"}");
+            }
+            return;
+        }
 
         try (PrintWriter out = resp.getWriter()) {
             out.write("{\"success\":true,\"message\":\"All notifications marked as read\"}");
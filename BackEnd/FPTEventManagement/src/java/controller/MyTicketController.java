@@ -108,7 +108,8 @@ public class MyTicketController extends HttpServlet {
      *     "categoryName": "VIP",
      *     "seatCode": "A-01",
      *     "status": "BOOKED",
-     *     "qrCodeValue": "base64_encoded_qr_image...",
+     *     "ticketCode": "123",
+     *     "qrUrl": "/api/tickets/123/qr.png",
      *     "startTime": "2025-01-15T14:00:00",
      *     "venueName": "FPT Hòa Lạc",
      *     "areaName": "Hall A"
@@ -3,24 +3,17 @@ package controller;
 
 import config.VnPayUtil; // Util tạo URL thanh toán VNPay (build params + ký HMAC + returnUrl)
 
-import DAO.CategoryTicketDAO;
 import DAO.EventDAO;
-import DAO.EventSeatLayoutDAO;
-import DAO.SeatDAO;
-import DAO.TicketDAO;
 
-import DTO.CategoryTicket;
 import DTO.Event;
-import DTO.Seat;
-import DTO.Ticket;
+
+import service.SeatHoldService;
 
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.*;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -55,14 +48,8 @@ import java.util.stream.Collectors;
 @WebServlet("/api/payment-ticket")
 public class PaymentTicketController extends HttpServlet {
 
-    // DAO lấy seat layout theo event (event_id + seat_id + seat_type + status)
-    private final EventSeatLayoutDAO eventSeatLayoutDAO = new EventSeatLayoutDAO();
-
-    // SeatDAO ở đây dùng để check ghế đã bị giữ/đặt trong bảng Ticket (PENDING/BOOKED) - chống tranh ghế
-    private final SeatDAO seatDAO = new SeatDAO();
-
-    // TicketDAO: insert PENDING ticket + delete khi lỗi
-    private final TicketDAO ticketDAO = new TicketDAO();
+    // Validate ghế + tạo Ticket PENDING cho tất cả ghế trong 1 transaction
+    private final SeatHoldService seatHoldService = new SeatHoldService();
 
     /**
      * doGet:
@@ -70,13 +57,11 @@ public class PaymentTicketController extends HttpServlet {
      * 1) Nhận params (userId, eventId, seatIds, categoryTicketId cũ)
      * 2) Validate input basic
      * 3) Validate event (phải OPEN)
-     * 4) Với mỗi seatId:
-     *    - check seat có trong layout event
-     *    - check seat thuộc area của event
-     *    - check seat status AVAILABLE
+     * 4) SeatHoldService validate tất cả seatId bằng 1 query:
+     *    - seat có trong layout event, thuộc area của event, status AVAILABLE
      *    - lấy seatType -> map sang CategoryTicket -> cộng tiền
-     * 5) Double-check ghế đã bị giữ/đặt trong Ticket table chưa (PENDING/BOOKED)
-     * 6) Insert tickets PENDING để giữ chỗ (tempTicketIds)
+     * 5) Trong cùng query: ghế đã bị giữ/đặt trong Ticket table chưa (PENDING/BOOKED)
+     * 6) Insert tickets PENDING để giữ chỗ (tempTicketIds) - cùng 1 transaction, tất cả hoặc không
      * 7) Build orderInfo + paymentUrl VNPay
      * 8) Redirect user sang VNPay (302)
      */
@@ -170,194 +155,50 @@ public class PaymentTicketController extends HttpServlet {
                 return;
             }
 
-            CategoryTicketDAO categoryDAO = new CategoryTicketDAO();
-
-            // ================== (4) Validate ghế + tính tiền theo seatType ==================
-            BigDecimal totalPrice = BigDecimal.ZERO;
-
-            // Mỗi seat có thể có categoryTicketId riêng theo seatType (VIP/Standard)
-            List<Integer> categoryIdsForSeats = new ArrayList<>();
-
-            for (Integer seatId : seatIds) {
-
-                /**
-                 * Lấy seat "theo event" (JOIN Event_Seat_Layout + Seat):
-                 * - đảm bảo seatId này được cấu hình cho event
-                 * - lấy seatType + status theo event
-                 *
-                 * CÂU HỎI THẦY/CÔ:
-                 * - "Tại sao không lấy từ bảng Seat luôn?" => vì Seat là ghế vật lý, còn event có cấu hình riêng (seat_type/status)
-                 */
-                Seat seat = eventSeatLayoutDAO.getSeatForEvent(eventId, seatId);
-                System.out.println("[CHECK] Seat for event: " + seat);
-
-                // seat không nằm trong layout của event => không hợp lệ
-                if (seat == null) {
-                    // ✅ STATUS CODE: 400 Bad Request
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); // = 400
-                    resp.getWriter().println("Seat " + seatId + " not configured for this event");
-                    System.out.println("❌ Seat " + seatId + " not configured for this event");
-                    return;
-                }
-
-                // Seat không thuộc area của event => sai khu vực (để tránh seatId bậy)
-                if (event.getAreaId() != null && seat.getAreaId() != event.getAreaId()) {
-                    // ✅ STATUS CODE: 400 Bad Request
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); // = 400
-                    resp.getWriter().println("Seat " + seatId + " does not belong to event area");
-                    System.out.println("❌ Seat " + seatId + " does not belong to event area");
-                    return;
-                }
-
-                /**
-                 * Check status seat trong layout event phải AVAILABLE (mở bán)
-                 *
-                 * ✅ STATUS CODE: 400 Bad Request
-                 *
-                 * CÂU HỎI THẦY/CÔ:
-                 * - "Seat status AVAILABLE khác gì BOOKED?" => AVAILABLE là trạng thái cấu hình mở bán,
-                 *   BOOKED là trạng thái giao dịch nằm ở Ticket.
-                 */
-                if (!"AVAILABLE".equalsIgnoreCase(seat.getStatus())) {
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); // = 400
-                    resp.getWriter().println("Seat " + seatId + " is not AVAILABLE for this event");
-                    System.out.println("❌ Seat " + seatId + " is not AVAILABLE, status=" + seat.getStatus());
-                    return;
-                }
-
-                // seatType dùng để map giá đúng (VIP/Standard)
-                String seatType = seat.getSeatType();
-                if (isBlank(seatType)) {
-                    // ✅ STATUS CODE: 400 Bad Request
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); // = 400
-                    resp.getWriter().println("Seat " + seatId + " has no seatType");
-                    System.out.println("❌ Seat has no seatType, seatId=" + seatId);
-                    return;
-                }
-
-                /**
-                 * Lấy CategoryTicket theo seatType của ghế (VIP/Standard)
-                 *
-                 * CÂU HỎI THẦY/CÔ:
-                 * - "Vì sao không bắt user chọn 1 categoryTicketId chung?"
-                 *   => Vì hệ thống cho phép user chọn nhiều ghế khác loại (VIP + Standard) trong 1 lần thanh toán.
-                 */
-                CategoryTicket ctByType = categoryDAO.getActiveCategoryTicketByEventIdAndName(eventId, seatType);
-                System.out.println("[CHECK] CategoryTicket by seatType (" + seatType + "): " + ctByType);
-
-                if (ctByType == null) {
-                    // ✅ STATUS CODE: 400 Bad Request
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); // = 400
-                    resp.getWriter().println("No active category ticket for seatType: " + seatType);
-                    System.out.println("❌ No active category ticket for seatType=" + seatType);
-                    return;
-                }
-
-                // Lưu categoryTicketId tương ứng seat này để lát insert Ticket
-                categoryIdsForSeats.add(ctByType.getCategoryTicketId());
-
-                // Cộng giá theo từng ghế
-                totalPrice = totalPrice.add(ctByType.getPrice());
-            }
-
-            // ================== (5) Double-check trên Ticket table (PENDING/BOOKED) ==================
+            // ================== (4)(5)(6) Validate ghế + giữ chỗ PENDING (SeatHoldService) ==================
             /**
-             * Mục tiêu:
-             * - Chống race condition: 2 người cùng chọn 1 ghế trong cùng thời điểm.
-             * - Event_Seat_Layout chỉ là cấu hình (AVAILABLE), còn ai đang giữ/chốt ghế nằm ở Ticket table.
+             * Trước đây: mỗi ghế 2 query validate + 1 connection insert Ticket PENDING,
+             * lỗi giữa chừng phải xoá tay. Giờ SeatHoldService làm tất cả trong 1 transaction:
+             * - 1 query set-based: ghế có trong layout event, đúng area, AVAILABLE, có seatType,
+             *   có CategoryTicket ACTIVE theo seatType (VIP/Standard) + ghế đã có Ticket chưa
+             * - 1 lệnh INSERT nhiều dòng tạo Ticket PENDING cho mọi ghế
+             * - Giữ được TẤT CẢ ghế hoặc KHÔNG ghế nào
              *
-             * ✅ Nếu phát hiện ghế đã bị giữ/đặt => 400 Bad Request
-             * ✅ Nếu lỗi DB khi check => 500 Internal Server Error
-             *
-             * CÂU HỎI THẦY/CÔ:
-             * - "Tại sao check ở Ticket chứ không update status ở Event_Seat_Layout?"
-             *   => Ticket là bảng giao dịch (PENDING/BOOKED), Event_Seat_Layout là cấu hình mở bán.
-             */
-            try {
-                //Bước này dùng để kiểm tra trong bảng Ticket xem có vé nào đã tồn tại cho các seat_id đó hay chưa
-                List<Integer> alreadyBookedSeatIds = seatDAO.findAlreadyBookedSeatIdsForEvent(eventId, seatIds);
-                if (!alreadyBookedSeatIds.isEmpty()) {
-                    // ✅ STATUS CODE: 400 Bad Request
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); // = 400
-                    String msg = "Some seats already reserved/booked: " + alreadyBookedSeatIds;
-                    resp.getWriter().println(msg);
-                    System.out.println("❌ " + msg);
-                    return;
-                }
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                // ✅ STATUS CODE: 500 Internal Server Error (backend/DB lỗi khi check)
-                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR); // = 500
-                resp.getWriter().println("Error checking booked seats: " + ex.toString());
-                System.out.println("❌ Error checking booked seats: " + ex.toString());
-                return;
-            }
-
-            // ================== (6) TẠO TICKET PENDING để giữ chỗ ==================
-            /**
-             * Đây là bước quan trọng nhất:
-             * - Insert Ticket với status = PENDING trước khi redirect VNPay
-             * - Nếu user thanh toán thành công -> BuyTicketController update PENDING -> BOOKED
-             * - Nếu fail -> xoá PENDING để trả ghế
+             * ✅ STATUS CODE:
+             * - 400 Bad Request: ghế không hợp lệ / đã bị giữ-đặt (message giữ nguyên như cũ)
+             * - 409 Conflict: tranh ghế với user khác đúng lúc insert (unique constraint / deadlock)
+             * - 500 Internal Server Error: lỗi DB khác
              *
              * CÂU HỎI THẦY/CÔ:
              * - "Tại sao không đợi VNPay success rồi mới insert ticket?"
              *   => Nếu không tạo PENDING, nhiều người có thể thanh toán cùng 1 ghế (race condition).
+             * - "Sao ở trên trả 400, ở đây trả 409?" =>
+             *   + 400: input/logic không hợp lệ
+             *   + 409: xung đột do concurrency (ghế bị người khác giữ trước)
              */
-            List<Integer> tempTicketIds = new ArrayList<>();
-            Timestamp now = new Timestamp(System.currentTimeMillis()); // (hiện chưa dùng)
-
-            try {
-                for (int i = 0; i < seatIds.size(); i++) {
-                    Integer seatId = seatIds.get(i);
-                    Integer categoryIdForSeat = categoryIdsForSeats.get(i);
-
-                    Ticket temp = new Ticket();
-                    temp.setEventId(eventId);
-                    temp.setUserId(userId);
-                    temp.setCategoryTicketId(categoryIdForSeat); // ✅ theo seatType của ghế
-                    temp.setSeatId(seatId);
-                    temp.setBillId(null);
-                    temp.setStatus("PENDING"); // ✅ giữ chỗ
-                    temp.setQrIssuedAt(null);
-                    temp.setQrCodeValue(null);
-
-                    // Insert ticket và lấy ticketId mới
-                    int tid = ticketDAO.insertTicketAndReturnId(temp);
-                    if (tid <= 0) {
-                        throw new SQLException("insertTicketAndReturnId trả về <= 0 cho seatId=" + seatId);
-                    }
-                    tempTicketIds.add(tid);
+            SeatHoldService.HoldResult hold = seatHoldService.holdSeats(userId, event, seatIds);
+
+            if (!hold.isOk()) {
+                switch (hold.getStatus()) {
+                    case INVALID:
+                        resp.setStatus(HttpServletResponse.SC_BAD_REQUEST); // = 400
+                        break;
+                    case CONFLICT:
+                        resp.setStatus(HttpServletResponse.SC_CONFLICT); // = 409
+                        break;
+                    default:
+                        resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR); // = 500
+                        break;
                 }
-            } catch (Exception ex) {
-                ex.printStackTrace();
-
-                // Nếu đã insert được một phần -> rollback thủ công bằng cách xoá các ticket đã tạo
-                if (!tempTicketIds.isEmpty()) {
-                    try {
-                        ticketDAO.deleteTicketsByIds(tempTicketIds);
-                    } catch (Exception ex2) {
-                        ex2.printStackTrace();
-                    }
-                }
-
-                /**
-                 * Nếu tạo PENDING thất bại (thường do ghế bị user khác giữ trước / unique constraint)
-                 *
-                 * ✅ STATUS CODE: 409 Conflict
-                 * - Conflict nghĩa là xung đột tài nguyên (ghế)
-                 *
-                 * CÂU HỎI THẦY/CÔ:
-                 * - "Sao ở trên trả 400, ở đây trả 409?" =>
-                 *   + 400: input/logic không hợp lệ
-                 *   + 409: xung đột do concurrency (ghế bị người khác giữ trước)
-                 */
-                resp.setStatus(HttpServletResponse.SC_CONFLICT); // = 409
-                resp.getWriter().println("Seat(s) already taken by another user. Please choose other seats.");
-                System.out.println("❌ Error creating PENDING tickets: " + ex.toString());
+                resp.getWriter().println(hold.getMessage());
+                System.out.println("❌ Hold seats failed: " + hold.getMessage());
                 return;
             }
 
+            BigDecimal totalPrice = hold.getTotalPrice();
+            List<Integer> categoryIdsForSeats = hold.getCategoryIdsForSeats();
+            List<Integer> tempTicketIds = hold.getTicketIds();
+
             // Chuyển tempTicketIds sang "1,2,3" để nhét vào orderInfo
             String tempTicketIdsStr = tempTicketIds.stream().map(String::valueOf).collect(Collectors.joining(","));
             System.out.println("✅ Created PENDING tickets: " + tempTicketIdsStr);
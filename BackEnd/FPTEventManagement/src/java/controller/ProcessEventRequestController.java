@@ -4,7 +4,9 @@ import DAO.EventRequestDAO;
 import DTO.EventRequest;
 import com.google.gson.Gson;
 import utils.JwtUtils;
-import utils.InMemoryNotificationService;   // ✅ Service lưu notification tạm trong RAM (không lưu DB)
+import service.EventCatalogCache;
+import service.EventDetailCache;
+import service.NotificationService;   // ✅ Notification lưu bảng Notification (ghi nền) + cache RAM
 
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.*;
@@ -276,19 +278,29 @@ public class ProcessEventRequestController extends HttpServlet {
 
         // Nếu tạo event/update request fail -> 500
         if (newEventId == null) {
+            // Transaction từ chối vì trùng lịch (vd node khác vừa duyệt cùng area) -> 409
+            if (eventRequestDAO.hasAreaConflict(body.areaId, start, end)) {
+                resp.setStatus(HttpServletResponse.SC_CONFLICT); // 409
+                out.print("{\"status\":\"fail\",\"message\":\"Khu vực đã có sự kiện khác trong khoảng thời gian này\"}");
+                return;
+            }
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR); // 500
             out.print("{\"status\":\"error\",\"message\":\"Không thể tạo Event hoặc cập nhật request\"}");
             return;
         }
 
+        // Có event mới => danh sách công khai GET /api/events phải dựng lại
+        EventCatalogCache.invalidate();
+        EventDetailCache.invalidate(newEventId);
+
         // ======================= NOTIFICATION =======================
         /**
          * Tạo notification cho organizer (người gửi request).
-         * Hiện tại dùng InMemoryNotificationService => chỉ sống trong RAM
+         * NotificationService: thêm vào cache RAM ngay, ghi bảng Notification ở thread nền
          *
          * CÂU HỎI THẦY CÔ:
-         * - InMemory có nhược điểm gì? => restart server là mất notification; multi-server không đồng bộ.
-         * - Vì sao vẫn dùng? => demo nhanh, chưa triển khai DB/queue; sau có thể thay bằng Notification table.
+         * - Vì sao không INSERT thẳng? => approve không phải chờ DB ghi notification; thread nền gom lô.
+         * - Restart server có mất không? => không (trừ lô chưa kịp ghi nếu DB chết lúc tắt).
          */
         Integer requesterId = reqObj.getRequesterId();  // organizer
         if (requesterId != null) {
@@ -296,7 +308,7 @@ public class ProcessEventRequestController extends HttpServlet {
             String content = "Yêu cầu tổ chức sự kiện \"" + reqObj.getTitle() + "\" của bạn đã được duyệt.";
             String linkUrl = "/events/" + newEventId; // FE có thể dẫn sang trang event mới
 
-            InMemoryNotificationService.addNotification(requesterId, title, content, linkUrl);
+            NotificationService.addNotification(requesterId, title, content, linkUrl);
         }
 
         // Thành công -> 200 OK
@@ -340,7 +352,7 @@ public class ProcessEventRequestController extends HttpServlet {
             String content = "Yêu cầu tổ chức sự kiện \"" + reqObj.getTitle() + "\" của bạn đã bị từ chối.";
             String linkUrl = "/organizer/event-requests/" + reqObj.getRequestId();
 
-            InMemoryNotificationService.addNotification(requesterId, title, content, linkUrl);
+            NotificationService.addNotification(requesterId, title, content, linkUrl);
         }
 
         // Thành công -> 200 OK
@@ -0,0 +1,90 @@
+package controller;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+import service.SeatAvailabilityCache;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * API: POST /api/admin/seat-cache?eventId=...
+ *
+ * MỤC ĐÍCH: - Kiểm tra nhất quán sơ đồ ghế cache trong RAM
+ * (SeatAvailabilityCache) với DB cho 1 event - Nạp lại event từ
+ * Event_Seat_Layout/Ticket, trả về số ghế bị lệch và thay map mới
+ *
+ * QUYỀN: chỉ ADMIN
+ *
+ * STATUS CODE: - 200 OK: đã rebuild (kèm mismatches) - 400 Bad Request: thiếu/sai
+ * eventId - 403 Forbidden: không phải ADMIN - 500 Internal Server Error: không
+ * nạp được từ DB
+ */
+@WebServlet("/api/admin/seat-cache")
+public class SeatCacheAdminController extends HttpServlet {
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setContentType("application/json;charset=UTF-8");
+
+        String role = (String) req.getAttribute("role");
+        if (role == null || !"ADMIN".equalsIgnoreCase(role)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            resp.getWriter().write("{\"error\":\"Permission denied. ADMIN only.\"}");
+            return;
+        }
+
+        int eventId;
+        try {
+            eventId = Integer.parseInt(req.getParameter("eventId").trim());
+        } catch (Exception e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().write("{\"error\":\"Invalid eventId\"}");
+            return;
+        }
+
+        Map<String, Object> report = SeatAvailabilityCache.verify(eventId);
+        System.out.println("[SeatCacheAdmin] verify eventId=" + eventId + " -> " + report.get("mismatches") + " mismatch(es)");
+
+        resp.setStatus(Boolean.TRUE.equals(report.get("rebuilt"))
+                ? HttpServletResponse.SC_OK
+                : HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        resp.getWriter().write(gson.toJson(report));
+    }
+
+    private void setCorsHeaders(HttpServletResponse res, HttpServletRequest req) {
+        String origin = req.getHeader("Origin");
+
+        boolean allowed = origin != null && (origin.equals("http://localhost:5173")
+                || origin.equals("http://127.0.0.1:5173")
+                || origin.equals("http://localhost:3000")
+                || origin.equals("http://127.0.0.1:3000")
+                || origin.contains("ngrok-free.app")
+                || origin.contains("ngrok.app"));
+
+        if (allowed) {
+            res.setHeader("Access-Control-Allow-Origin", origin);
+            res.setHeader("Access-Control-Allow-Credentials", "true");
+        } else {
+            res.setHeader("Access-Control-Allow-Origin", "null");
+        }
+
+        res.setHeader("Vary", "Origin");
+        res.setHeader("Access-Control-Allow-Methods", "POST, OPTIONS");
+        res.setHeader("Access-Control-Allow-Headers",
+                "Content-Type, Authorization, ngrok-skip-browser-warning");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Max-Age", "86400");
+    }
+}
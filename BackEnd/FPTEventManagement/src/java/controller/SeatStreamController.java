@@ -0,0 +1,106 @@
+package controller;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+import service.SeatAvailabilityCache;
+import service.SeatStreamHub;
+
+import java.io.IOException;
+
+/**
+ * API: GET /api/events/{eventId}/seat-stream (Server-Sent Events)
+ *
+ * MỤC ĐÍCH: - Trang chọn ghế mở 1 EventSource thay cho poll /api/seats -
+ * Server đẩy ngay khi ghế đổi trạng thái (HOLD / BOOKED / RELEASED)
+ *
+ * AUTH: JWT như /api/seats. EventSource không gửi được header Authorization
+ * => JwtAuthFilter nhận thêm ?token=... cho riêng path này
+ *
+ * FORMAT:
+ * - event: hello   data: {"eventId":..,"version":..}  (ngay khi kết nối)
+ * - event: seats   data: [{"seatId":..,"status":"HOLD","version":..}, ...]
+ * - event: resync  data: {"eventId":..}  => client gọi lại /api/seats?eventId=
+ * - ": ping" mỗi 15s để proxy không cắt kết nối
+ *
+ * GHI CHÚ: - Servlet async, không giữ thread Tomcat trong lúc chờ (SeatStreamHub)
+ * - /api/events, /api/events/detail... là mapping chính xác nên vẫn ưu tiên
+ * hơn "/api/events/*" của servlet này
+ */
+@WebServlet(urlPatterns = "/api/events/*", asyncSupported = true)
+public class SeatStreamController extends HttpServlet {
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+
+        // pathInfo = "/{eventId}/seat-stream"
+        String pathInfo = req.getPathInfo();
+        String[] parts = pathInfo == null ? new String[0] : pathInfo.split("/");
+        if (parts.length != 3 || !"seat-stream".equals(parts[2])) {
+            resp.setContentType("application/json;charset=UTF-8");
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            resp.getWriter().write("{\"error\":\"Not found\"}");
+            return;
+        }
+
+        int eventId;
+        try {
+            eventId = Integer.parseInt(parts[1].trim());
+        } catch (NumberFormatException e) {
+            resp.setContentType("application/json;charset=UTF-8");
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().write("{\"error\":\"Invalid eventId\"}");
+            return;
+        }
+
+        // Nạp map ghế của event (nếu chưa có) để hook TicketDAO bắt đầu đẩy thay đổi
+        long version = SeatAvailabilityCache.getVersion(eventId);
+        if (version < 0) {
+            resp.setContentType("application/json;charset=UTF-8");
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            resp.getWriter().write("{\"error\":\"Could not load seats\"}");
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("text/event-stream;charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setHeader("X-Accel-Buffering", "no"); // nginx/ngrok không gom buffer
+
+        AsyncContext ac = req.startAsync();
+        SeatStreamHub.subscribe(eventId, ac, version);
+        System.out.println("[SeatStream] subscribe eventId=" + eventId);
+    }
+
+    private void setCorsHeaders(HttpServletResponse res, HttpServletRequest req) {
+        String origin = req.getHeader("Origin");
+
+        boolean allowed = origin != null && (origin.equals("http://localhost:5173")
+                || origin.equals("http://127.0.0.1:5173")
+                || origin.equals("http://localhost:3000")
+                || origin.equals("http://127.0.0.1:3000")
+                || origin.contains("ngrok-free.app")
+                || origin.contains("ngrok.app"));
+
+        if (allowed) {
+            res.setHeader("Access-Control-Allow-Origin", origin);
+            res.setHeader("Access-Control-Allow-Credentials", "true");
+        } else {
+            res.setHeader("Access-Control-Allow-Origin", "null");
+        }
+
+        res.setHeader("Vary", "Origin");
+        res.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        res.setHeader("Access-Control-Allow-Headers",
+                "Content-Type, Authorization, ngrok-skip-browser-warning, Last-Event-ID");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Max-Age", "86400");
+    }
+}
@@ -1,9 +1,9 @@
 package controller;
 
 import DAO.TicketDAO;
-import DAO.EventDAO;
 import DTO.Ticket;
 import DTO.Event;
+import DTO.TicketGateInfo;
 import utils.JwtUtils;
 
 import com.google.gson.Gson;
@@ -12,19 +12,23 @@ import com.google.gson.JsonArray;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.*;
 
+import service.CheckinThroughput;
 import service.SystemConfigService;
 
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @WebServlet("/api/staff/checkin")
 public class StaffCheckinController extends HttpServlet {
 
     private final TicketDAO ticketDAO = new TicketDAO();
-    private final EventDAO eventDAO = new EventDAO();
     private final SystemConfigService systemConfigService = new SystemConfigService();
 
     private final Gson gson = new Gson();
@@ -67,23 +71,16 @@ public class StaffCheckinController extends HttpServlet {
         setCorsHeaders(resp, req);
         resp.setContentType("application/json;charset=UTF-8");
 
-        // ===== 1. Kiểm tra Token =====
-        String authHeader = req.getHeader("Authorization");
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        // ===== 1. Kiểm tra Token (JwtAuthFilter đã verify, không parse lại header) =====
+        JwtUtils.JwtUser jwtUser = JwtUtils.fromRequest(req);
+        if (jwtUser == null) {
             resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             resp.getWriter().write("{\"error\":\"Vui lòng đăng nhập để thực hiện check-in\"}");
             return;
         }
 
-        String token = authHeader.substring(7);
-        if (!JwtUtils.validateToken(token)) {
-            resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-            resp.getWriter().write("{\"error\":\"Phiên đăng nhập đã hết hạn. Vui lòng đăng nhập lại\"}");
-            return;
-        }
-
         // ===== 2. Kiểm tra quyền =====
-        String role = JwtUtils.getRoleFromToken(token);
+        String role = jwtUser.getRole();
         if (role == null || !(role.equalsIgnoreCase("ORGANIZER") || role.equalsIgnoreCase("ADMIN"))) {
             resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
             resp.getWriter().write("{\"error\":\"Bạn không có quyền thực hiện check-in\"}");
@@ -139,35 +136,45 @@ public class StaffCheckinController extends HttpServlet {
         // ✅ log config đang dùng
         System.out.println("[StaffCheckin] checkinAllowedBeforeStartMinutes = " + allowBeforeMinutes);
 
-        // ===== 5. Xử lý check-in từng vé =====
+        // ===== 5. Nạp tất cả vé + sự kiện bằng 1 query =====
         Timestamp now = new Timestamp(System.currentTimeMillis());
+        Map<Integer, TicketGateInfo> infos;
+        try {
+            infos = ticketDAO.getTicketsWithEvents(ticketIds);
+        } catch (Exception e) {
+            System.err.println("[ERROR] StaffCheckin load tickets: " + e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            resp.getWriter().write("{\"error\":\"Không thể check-in vé. Vui lòng thử lại\"}");
+            return;
+        }
+
+        // ===== 6. Kiểm tra rule từng vé trong RAM, gom vé hợp lệ =====
         JsonArray resultArray = new JsonArray();
-        int successCount = 0;
-        int failCount = 0;
+        List<JsonObject> pendingItems = new ArrayList<>(); // vé chờ UPDATE (theo thứ tự QR)
+        Set<Integer> toCheckin = new LinkedHashSet<>();
 
         for (Integer ticketId : ticketIds) {
             JsonObject item = new JsonObject();
             item.addProperty("ticketId", ticketId);
+            resultArray.add(item);
 
-            Ticket ticket = ticketDAO.getTicketById(ticketId);
+            TicketGateInfo info = infos.get(ticketId);
+            Ticket ticket = info != null ? info.getTicket() : null;
             if (ticket == null) {
                 item.addProperty("success", false);
                 item.addProperty("message", "Vé #" + ticketId + " không tồn tại trong hệ thống");
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 
-            Event event = eventDAO.getEventById(ticket.getEventId());
+            Event event = info.getEvent();
             if (event == null) {
                 item.addProperty("success", false);
                 item.addProperty("message", "Không tìm thấy thông tin sự kiện của vé #" + ticketId);
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 
             item.addProperty("eventName", event.getTitle());
+            CheckinThroughput.onScans(event.getEventId(), 1); // lượt quét tại cổng (dashboard live)
 
             Timestamp eventStartTime = event.getStartTime();
             Timestamp eventEndTime = event.getEndTime();
@@ -189,8 +196,6 @@ public class StaffCheckinController extends HttpServlet {
                     item.addProperty("earliestCheckinTime", earliestCheckinTime.toString());
                     item.addProperty("eventStartTime", eventStartTime.toString());
                     item.addProperty("checkinAllowedBeforeStartMinutes", allowBeforeMinutes);
-                    failCount++;
-                    resultArray.add(item);
                     continue;
                 }
             }
@@ -201,26 +206,24 @@ public class StaffCheckinController extends HttpServlet {
                 item.addProperty("success", false);
                 item.addProperty("message", "Sự kiện đã kết thúc lúc " + endTimeStr);
                 item.addProperty("eventEndTime", eventEndTime.toString());
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 
-            String currentStatus = ticket.getStatus();
+            // QR lặp lại cùng 1 vé: lần sau thấy vé như đã check-in ở lần trước (giống xử lý tuần tự cũ)
+            String currentStatus = toCheckin.contains(ticketId) ? "CHECKED_IN" : ticket.getStatus();
             item.addProperty("currentStatus", currentStatus);
 
             //Nếu vé đang check in mà đã check in sẽ hiện như này (Tránh trường hợp vé check in, check in lại)
             if ("CHECKED_IN".equalsIgnoreCase(currentStatus)) {
-                String checkinTimeStr = ticket.getCheckinTime() != null
-                        ? dateFormat.format(ticket.getCheckinTime())
+                Timestamp previous = toCheckin.contains(ticketId) ? now : ticket.getCheckinTime();
+                String checkinTimeStr = previous != null
+                        ? dateFormat.format(previous)
                         : "không rõ";
                 item.addProperty("success", false);
                 item.addProperty("message", "Vé đã được check-in lúc " + checkinTimeStr);
-                if (ticket.getCheckinTime() != null) {
-                    item.addProperty("previousCheckinTime", ticket.getCheckinTime().toString());
+                if (previous != null) {
+                    item.addProperty("previousCheckinTime", previous.toString());
                 }
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 
@@ -242,28 +245,52 @@ public class StaffCheckinController extends HttpServlet {
                 }
                 item.addProperty("success", false);
                 item.addProperty("message", statusMsg);
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 
-            //Nếu chạy hết ở trên qua hết xuông dưới đây sẽ thỏa cập nhật trạng thái của vé thành check in
-            boolean ok = ticketDAO.checkinTicket(ticketId, now);
-            if (!ok) {
+            //Qua hết rule => chờ UPDATE chung
+            toCheckin.add(ticketId);
+            pendingItems.add(item);
+        }
+
+        // ===== 7. 1 UPDATE ... WHERE status = 'BOOKED' cho tất cả vé hợp lệ (1 transaction) =====
+        Set<Integer> checkedIn = Collections.emptySet();
+        if (!toCheckin.isEmpty()) {
+            try {
+                checkedIn = ticketDAO.checkinTicketsBatch(toCheckin, now);
+            } catch (Exception e) {
+                System.err.println("[ERROR] StaffCheckin batch update: " + e.getMessage());
+            }
+        }
+        for (Integer ticketId : checkedIn) {
+            CheckinThroughput.onCheckins(infos.get(ticketId).getTicket().getEventId(), 1);
+        }
+
+        for (JsonObject item : pendingItems) {
+            int ticketId = item.get("ticketId").getAsInt();
+            if (!checkedIn.contains(ticketId)) {
+                // Vé vừa bị check-in ở cổng khác / lỗi DB
                 item.addProperty("success", false);
                 item.addProperty("message", "Không thể check-in vé. Vui lòng thử lại");
-                failCount++;
             } else {
                 item.addProperty("success", true);
                 item.addProperty("status", "CHECKED_IN");
                 item.addProperty("checkinTime", now.toString());
                 item.addProperty("message", "Check-in thành công vé #" + ticketId);
+            }
+        }
+
+        int successCount = 0;
+        int failCount = 0;
+        for (int i = 0; i < resultArray.size(); i++) {
+            if (resultArray.get(i).getAsJsonObject().get("success").getAsBoolean()) {
                 successCount++;
+            } else {
+                failCount++;
             }
-            resultArray.add(item);
         }
 
-        // ===== 6. Tạo message tổng hợp =====
+        // ===== 8. Tạo message tổng hợp =====
         String mainMessage;
         boolean isSuccess = (failCount == 0);
 
@@ -281,7 +308,7 @@ public class StaffCheckinController extends HttpServlet {
             }
         }
 
-        // ===== 7. Trả về response =====
+        // ===== 9. Trả về response =====
         JsonObject resJson = new JsonObject();
         resJson.addProperty("success", isSuccess);
         resJson.addProperty("message", mainMessage);
@@ -1,9 +1,9 @@
 package controller;
 
 import DAO.TicketDAO;
-import DAO.EventDAO;
 import DTO.Ticket;
 import DTO.Event;
+import DTO.TicketGateInfo;
 import utils.JwtUtils;
 
 import com.google.gson.Gson;
@@ -12,27 +12,26 @@ import com.google.gson.JsonObject;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.*;
 
+import service.CheckinThroughput;
 import service.SystemConfigService;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @WebServlet("/api/staff/checkout")
 public class StaffCheckoutController extends HttpServlet {
 
-    // DAO thao tác Ticket: lấy vé theo id, update trạng thái CHECKED_OUT
+    // DAO thao tác Ticket: lấy vé + event theo lô, update trạng thái CHECKED_OUT
     private final TicketDAO ticketDAO = new TicketDAO();
 
-    // DAO thao tác Event: lấy thông tin event để kiểm tra thời gian + show eventName
-    private final EventDAO eventDAO = new EventDAO();
-
     // Service đọc config hệ thống (ví dụ: minMinutesAfterStart để cho phép checkout sau X phút)
     private final SystemConfigService systemConfigService = new SystemConfigService();
 
@@ -139,29 +138,19 @@ public class StaffCheckoutController extends HttpServlet {
         resp.setContentType("application/json;charset=UTF-8");
 
         // ===================== 1) Token =====================
-        // Lấy header Authorization dạng: "Bearer <token>"
-        String authHeader = req.getHeader("Authorization");
+        // JwtAuthFilter đã verify token + gắn JwtUser vào request => không parse lại header
+        JwtUtils.JwtUser jwtUser = JwtUtils.fromRequest(req);
 
-        // Nếu thiếu/không đúng format Bearer => 401
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        // Thiếu token / token hỏng / hết hạn => 401
+        if (jwtUser == null) {
             resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED); // 401
             resp.getWriter().write("{\"error\":\"Vui lòng đăng nhập để thực hiện check-out\"}");
             return;
         }
 
-        // Cắt token ra khỏi "Bearer "
-        String token = authHeader.substring(7);
-
-        // Validate token => nếu fail => 401
-        if (!JwtUtils.validateToken(token)) {
-            resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED); // 401
-            resp.getWriter().write("{\"error\":\"Phiên đăng nhập đã hết hạn. Vui lòng đăng nhập lại\"}");
-            return;
-        }
-
         // ===================== 2) Role =====================
-        // Lấy role từ token (ADMIN / ORGANIZER / ...)
-        String role = JwtUtils.getRoleFromToken(token);
+        // Role trong token (ADMIN / ORGANIZER / ...)
+        String role = jwtUser.getRole();
 
         // Chỉ ORGANIZER hoặc ADMIN được checkout => nếu không => 403
         if (role == null || !(role.equalsIgnoreCase("ORGANIZER") || role.equalsIgnoreCase("ADMIN"))) {
@@ -230,63 +219,62 @@ public class StaffCheckoutController extends HttpServlet {
          *
          * CÂU HỎI THẦY/CÔ: 1) "Tại sao phải đọc config runtime từ file?" => để
          * admin cấu hình rule mà không sửa code. 2) "Đọc file ở đâu?" => trong
-         * WEB-INF/classes/config/SystemConfig.json qua ServletContext realPath.
+         * WEB-INF/classes/config/SystemConfig.json qua ServletContext realPath,
+         * nhưng SystemConfigService giữ snapshot RAM (không đọc đĩa mỗi lần quét).
          */
         SystemConfigService.SystemConfig cfg = systemConfigService.load(req.getServletContext());
         int minMinutesAfterStart = cfg.minMinutesAfterStart;
 
-        // Log để debug xem đang đọc đúng file nào và giá trị bao nhiêu
-        String realPath = req.getServletContext().getRealPath("/WEB-INF/classes/config/SystemConfig.json");
-        System.out.println("[StaffCheckout] CONFIG realPath = " + realPath);
+        // Log giá trị đang dùng (nguồn file: /api/admin/metrics -> systemConfig)
         System.out.println("[StaffCheckout] minMinutesAfterStart = " + minMinutesAfterStart);
 
-        // Optional debug: log raw json
+        // ===================== 5) Nạp tất cả vé + event bằng 1 query =====================
+        Timestamp now = new Timestamp(System.currentTimeMillis()); // thời gian checkout hiện tại
+
+        // Thay cho getTicketById + getEventById trong vòng lặp (2N round-trip)
+        Map<Integer, TicketGateInfo> infos;
         try {
-            if (realPath != null) {
-                String raw = new String(Files.readAllBytes(Paths.get(realPath)), StandardCharsets.UTF_8);
-                System.out.println("[StaffCheckout] CONFIG raw json = " + raw);
-            }
+            infos = ticketDAO.getTicketsWithEvents(ticketIds);
         } catch (Exception e) {
-            System.out.println("[StaffCheckout] Read config raw failed: " + e.getMessage());
+            System.err.println("[ERROR] StaffCheckout load tickets: " + e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR); // 500
+            resp.getWriter().write("{\"error\":\"Không thể check-out vé. Vui lòng thử lại\"}");
+            return;
         }
 
-        // ===================== 5) Xử lý check-out từng vé =====================
-        Timestamp now = new Timestamp(System.currentTimeMillis()); // thời gian checkout hiện tại
-
         JsonArray resultArray = new JsonArray(); // mảng results[] trả về FE
-        int successCount = 0;                    // đếm vé checkout thành công
-        int failCount = 0;                       // đếm vé checkout thất bại
+        List<JsonObject> pendingItems = new ArrayList<>(); // vé qua hết rule, chờ UPDATE chung
+        Set<Integer> toCheckout = new LinkedHashSet<>();
 
-        // Loop từng ticketId để xử lý độc lập
+        // Loop từng ticketId: chỉ kiểm tra rule trong RAM, chưa ghi DB
         for (Integer ticketId : ticketIds) {
             JsonObject item = new JsonObject();            // object kết quả cho từng vé
             item.addProperty("ticketId", ticketId);
+            resultArray.add(item);
 
             // 5.1) Lấy ticket
-            Ticket ticket = ticketDAO.getTicketById(ticketId);
+            TicketGateInfo info = infos.get(ticketId);
+            Ticket ticket = info != null ? info.getTicket() : null;
 
             // Nếu ticket không tồn tại => fail (đưa vào results, không return)
             // (HTTP cuối sẽ quyết định theo failCount)
             if (ticket == null) {
                 item.addProperty("success", false);
                 item.addProperty("message", "Vé #" + ticketId + " không tồn tại trong hệ thống");
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 
-            // 5.2) Lấy event theo ticket.eventId để check thời gian và show tên event
-            Event event = eventDAO.getEventById(ticket.getEventId());
+            // 5.2) Event đã JOIN sẵn theo ticket.eventId để check thời gian và show tên event
+            Event event = info.getEvent();
             if (event == null) {
                 item.addProperty("success", false);
                 item.addProperty("message", "Không tìm thấy thông tin sự kiện của vé #" + ticketId);
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 
             // Trả thêm eventName để FE hiển thị
             item.addProperty("eventName", event.getTitle());
+            CheckinThroughput.onScans(event.getEventId(), 1); // lượt quét tại cổng (dashboard live)
 
             // ===== RULE THỜI GIAN: checkout chỉ trong khung cho phép =====
             Timestamp eventStartTime = event.getStartTime();
@@ -296,8 +284,6 @@ public class StaffCheckoutController extends HttpServlet {
             if (eventStartTime == null || eventEndTime == null) {
                 item.addProperty("success", false);
                 item.addProperty("message", "Sự kiện không có thời gian hợp lệ để check-out");
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 
@@ -319,8 +305,6 @@ public class StaffCheckoutController extends HttpServlet {
                         + " (cấu hình: " + minMinutesAfterStart + " phút sau khi bắt đầu)");
                 item.addProperty("allowCheckoutTime", allowCheckoutTime.toString());
                 item.addProperty("minMinutesAfterStart", minMinutesAfterStart);
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 
@@ -334,22 +318,19 @@ public class StaffCheckoutController extends HttpServlet {
                 item.addProperty("checkoutDeadlineTime", checkoutDeadlineTime.toString());
                 item.addProperty("checkoutGraceMinutes", checkoutGraceMinutes);
                 item.addProperty("eventEndTime", eventEndTime.toString());
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 // ===== END RULE THỜI GIAN =====
 
             // 5.3) Check trạng thái vé
-            String currentStatus = ticket.getStatus();
+            // QR lặp lại cùng 1 vé: lần sau thấy vé như đã checkout ở lần trước
+            String currentStatus = toCheckout.contains(ticketId) ? "CHECKED_OUT" : ticket.getStatus();
             item.addProperty("currentStatus", currentStatus);
 
             // Nếu đã checkout rồi => fail
             if ("CHECKED_OUT".equalsIgnoreCase(currentStatus)) {
                 item.addProperty("success", false);
                 item.addProperty("message", "Vé đã được check-out trước đó");
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 
@@ -359,30 +340,49 @@ public class StaffCheckoutController extends HttpServlet {
                 item.addProperty("success", false);
                 item.addProperty("message",
                         "Không thể check-out vì vé chưa check-in hoặc trạng thái không hợp lệ: " + currentStatus);
-                failCount++;
-                resultArray.add(item);
                 continue;
             }
 
-            // 5.4) Update DB: set status CHECKED_OUT + thời gian checkout (tuỳ DAO)
-            boolean ok = ticketDAO.checkoutTicket(ticketId);
+            toCheckout.add(ticketId);
+            pendingItems.add(item);
+        }
+
+        // 5.4) 1 UPDATE ... WHERE status = 'CHECKED_IN' cho tất cả vé hợp lệ (1 transaction)
+        Set<Integer> checkedOut = Collections.emptySet();
+        if (!toCheckout.isEmpty()) {
+            try {
+                checkedOut = ticketDAO.checkoutTicketsBatch(toCheckout);
+            } catch (Exception e) {
+                System.err.println("[ERROR] StaffCheckout batch update: " + e.getMessage());
+            }
+        }
+        for (Integer ticketId : checkedOut) {
+            CheckinThroughput.onCheckouts(infos.get(ticketId).getTicket().getEventId(), 1);
+        }
 
-            if (!ok) {
-                // Update thất bại => fail
+        for (JsonObject item : pendingItems) {
+            int ticketId = item.get("ticketId").getAsInt();
+            if (!checkedOut.contains(ticketId)) {
+                // Update thất bại (vé vừa đổi trạng thái ở cổng khác / lỗi DB) => fail
                 item.addProperty("success", false);
                 item.addProperty("message", "Không thể check-out vé. Vui lòng thử lại");
-                failCount++;
             } else {
                 // Update ok => success
                 item.addProperty("success", true);
                 item.addProperty("status", "CHECKED_OUT");
                 item.addProperty("checkoutTime", now.toString());
                 item.addProperty("message", "Check-out thành công vé #" + ticketId);
-                successCount++;
             }
+        }
 
-            // add kết quả từng vé vào results[]
-            resultArray.add(item);
+        int successCount = 0; // đếm vé checkout thành công
+        int failCount = 0;    // đếm vé checkout thất bại
+        for (int i = 0; i < resultArray.size(); i++) {
+            if (resultArray.get(i).getAsJsonObject().get("success").getAsBoolean()) {
+                successCount++;
+            } else {
+                failCount++;
+            }
         }
 
         // ===================== 6) Message tổng hợp =====================
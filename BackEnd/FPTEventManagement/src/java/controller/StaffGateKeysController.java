@@ -0,0 +1,88 @@
+package controller;
+
+import com.google.gson.Gson;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+import service.GateManifestService;
+import utils.JwtUtils;
+
+import java.io.IOException;
+
+/**
+ * API: GET /api/staff/gate-keys
+ *
+ * MỤC ĐÍCH: - Máy quét cổng lấy public key (JWKS) để tự kiểm tra chữ ký ES256
+ * của manifest (/api/staff/gate-manifest) khi offline - Chọn khóa theo "kid"
+ * trong header manifest; public key không ký được => máy quét không giả mạo
+ * được manifest
+ *
+ * RESPONSE: {"keys":[{"kty":"EC","crv":"P-256","x","y","kid","alg":"ES256","use":"sig"}]}
+ *
+ * QUYỀN: ORGANIZER / ADMIN (giống /api/staff/gate-manifest)
+ *
+ * STATUS CODE: - 200 OK - 401 / 403
+ */
+@WebServlet("/api/staff/gate-keys")
+public class StaffGateKeysController extends HttpServlet {
+
+    private final Gson gson = new Gson();
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+
+        JwtUtils.JwtUser jwtUser = JwtUtils.fromRequest(req);
+        if (jwtUser == null) {
+            writeError(resp, HttpServletResponse.SC_UNAUTHORIZED, "Vui lòng đăng nhập");
+            return;
+        }
+        String role = jwtUser.getRole();
+        if (role == null || !(role.equalsIgnoreCase("ORGANIZER") || role.equalsIgnoreCase("ADMIN"))) {
+            writeError(resp, HttpServletResponse.SC_FORBIDDEN, "Bạn không có quyền lấy khóa kiểm tra manifest");
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("application/jwk-set+json;charset=UTF-8");
+        // Khóa tạm (chưa cấu hình) đổi mỗi lần khởi động => không cache lâu
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.getWriter().write(gson.toJson(GateManifestService.getPublicJwks()));
+    }
+
+    private void writeError(HttpServletResponse resp, int status, String message) throws IOException {
+        resp.setStatus(status);
+        resp.setContentType("application/json;charset=UTF-8");
+        resp.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+
+    private void setCorsHeaders(HttpServletResponse res, HttpServletRequest req) {
+        String origin = req.getHeader("Origin");
+
+        boolean allowed = origin != null && (origin.equals("http://localhost:5173")
+                || origin.equals("http://127.0.0.1:5173")
+                || origin.equals("http://localhost:3000")
+                || origin.equals("http://127.0.0.1:3000")
+                || origin.contains("ngrok-free.app")
+                || origin.contains("ngrok.app"));
+
+        if (allowed) {
+            res.setHeader("Access-Control-Allow-Origin", origin);
+            res.setHeader("Access-Control-Allow-Credentials", "true");
+        } else {
+            res.setHeader("Access-Control-Allow-Origin", "null");
+        }
+
+        res.setHeader("Vary", "Origin");
+        res.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        res.setHeader("Access-Control-Allow-Headers",
+                "Content-Type, Authorization, ngrok-skip-browser-warning");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Max-Age", "86400");
+    }
+}
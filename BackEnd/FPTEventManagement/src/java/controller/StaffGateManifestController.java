@@ -0,0 +1,132 @@
+package controller;
+
+import DAO.EventDAO;
+import DTO.Event;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+import service.GateManifestService;
+import service.SystemConfigService;
+import utils.JwtUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * API: GET /api/staff/gate-manifest?eventId=...
+ *
+ * MỤC ĐÍCH: - Máy quét cổng tải trước danh sách vé hợp lệ của event để
+ * check-in cả khi mất mạng, sau đó đẩy lên /api/staff/gate-sync
+ *
+ * FORMAT: application/x-ndjson (xem GateManifestService) - header, mỗi vé 1
+ * dòng [ticketId,"B"|"I"|"O"], dòng cuối có chữ ký ES256 (kiểm tra bằng public
+ * key ở /api/staff/gate-keys) - Ghi thẳng ra
+ * response (gzip nếu client hỗ trợ), không build toàn bộ trong RAM
+ *
+ * QUYỀN: ORGANIZER / ADMIN (giống /api/staff/checkin)
+ *
+ * STATUS CODE: - 200 OK - 400 thiếu eventId - 401 / 403 - 404 không có event
+ */
+@WebServlet("/api/staff/gate-manifest")
+public class StaffGateManifestController extends HttpServlet {
+
+    private final EventDAO eventDAO = new EventDAO();
+    private final SystemConfigService systemConfigService = new SystemConfigService();
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+
+        // ===== 1. Token + role =====
+        JwtUtils.JwtUser jwtUser = JwtUtils.fromRequest(req);
+        if (jwtUser == null) {
+            writeError(resp, HttpServletResponse.SC_UNAUTHORIZED, "Vui lòng đăng nhập");
+            return;
+        }
+        String role = jwtUser.getRole();
+        if (role == null || !(role.equalsIgnoreCase("ORGANIZER") || role.equalsIgnoreCase("ADMIN"))) {
+            writeError(resp, HttpServletResponse.SC_FORBIDDEN, "Bạn không có quyền tải danh sách vé");
+            return;
+        }
+
+        // ===== 2. Event =====
+        int eventId;
+        try {
+            eventId = Integer.parseInt(req.getParameter("eventId").trim());
+        } catch (Exception e) {
+            writeError(resp, HttpServletResponse.SC_BAD_REQUEST, "Thiếu hoặc sai eventId");
+            return;
+        }
+
+        Event event = eventDAO.getEventById(eventId);
+        if (event == null) {
+            writeError(resp, HttpServletResponse.SC_NOT_FOUND, "Không tìm thấy sự kiện");
+            return;
+        }
+
+        SystemConfigService.SystemConfig cfg = systemConfigService.load(req.getServletContext());
+
+        // ===== 3. Stream manifest =====
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("application/x-ndjson;charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-store");
+
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        if (gzip) {
+            resp.setHeader("Content-Encoding", "gzip");
+            resp.setHeader("Vary", "Origin, Accept-Encoding");
+        }
+
+        long t0 = System.currentTimeMillis();
+        OutputStream raw = resp.getOutputStream();
+        try ( OutputStream out = gzip
+                ? new GZIPOutputStream(raw, 8192)
+                : new BufferedOutputStream(raw, 8192)) {
+            int count = GateManifestService.writeManifest(event, cfg.checkinAllowedBeforeStartMinutes, out);
+            System.out.println("[GateManifest] eventId=" + eventId + ", tickets=" + count
+                    + ", gzip=" + gzip + ", " + (System.currentTimeMillis() - t0) + "ms");
+        } catch (Exception e) {
+            // Đã ghi một phần => không đổi được status; thiếu dòng chữ ký nên máy quét sẽ bỏ manifest này
+            System.err.println("[ERROR] gate-manifest eventId=" + eventId + ": " + e.getMessage());
+        }
+    }
+
+    private void writeError(HttpServletResponse resp, int status, String message) throws IOException {
+        resp.setStatus(status);
+        resp.setContentType("application/json;charset=UTF-8");
+        resp.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+
+    private void setCorsHeaders(HttpServletResponse res, HttpServletRequest req) {
+        String origin = req.getHeader("Origin");
+
+        boolean allowed = origin != null && (origin.equals("http://localhost:5173")
+                || origin.equals("http://127.0.0.1:5173")
+                || origin.equals("http://localhost:3000")
+                || origin.equals("http://127.0.0.1:3000")
+                || origin.contains("ngrok-free.app")
+                || origin.contains("ngrok.app"));
+
+        if (allowed) {
+            res.setHeader("Access-Control-Allow-Origin", origin);
+            res.setHeader("Access-Control-Allow-Credentials", "true");
+        } else {
+            res.setHeader("Access-Control-Allow-Origin", "null");
+        }
+
+        res.setHeader("Vary", "Origin");
+        res.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        res.setHeader("Access-Control-Allow-Headers",
+                "Content-Type, Authorization, ngrok-skip-browser-warning");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Max-Age", "86400");
+    }
+}
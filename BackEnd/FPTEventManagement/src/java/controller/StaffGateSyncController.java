@@ -0,0 +1,137 @@
+package controller;
+
+import DAO.EventDAO;
+import DTO.Event;
+import DTO.GateSyncRequest;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+import service.GateManifestService;
+import service.SystemConfigService;
+import utils.JwtUtils;
+
+import java.io.IOException;
+
+/**
+ * API: POST /api/staff/gate-sync
+ *
+ * BODY: { "eventId": 12, "gateId": "GATE-A", "scans": [ {"ticketId": 101,
+ * "scannedAt": 1735000000000, "gateId": "GATE-A"}, ... ] }
+ *
+ * MỤC ĐÍCH: - Máy quét offline đẩy các lần check-in đã tích lũy - Áp dụng
+ * idempotent: gửi lại cùng batch (mất response, timeout...) không đổi dữ
+ * liệu, kết quả ALREADY_APPLIED - Báo xung đột: vé đã check-in ở cổng khác
+ * (DOUBLE_SCAN), quét trùng trong batch, vé đã check-out
+ *
+ * RESPONSE: { eventId, received, applied, alreadyApplied, conflictCount,
+ * rejectedCount, results[], conflicts[] } (xem GateManifestService.sync)
+ *
+ * QUYỀN: ORGANIZER / ADMIN (giống /api/staff/checkin)
+ *
+ * STATUS CODE: - 200 đã xử lý (kể cả có conflict) - 400 body sai / quá nhiều
+ * lần quét - 401 / 403 - 404 không có event - 500 lỗi DB => máy quét gửi lại
+ * cả batch
+ */
+@WebServlet("/api/staff/gate-sync")
+public class StaffGateSyncController extends HttpServlet {
+
+    private final EventDAO eventDAO = new EventDAO();
+    private final SystemConfigService systemConfigService = new SystemConfigService();
+    private final Gson gson = new Gson();
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setContentType("application/json;charset=UTF-8");
+
+        // ===== 1. Token + role =====
+        JwtUtils.JwtUser jwtUser = JwtUtils.fromRequest(req);
+        if (jwtUser == null) {
+            resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            resp.getWriter().write("{\"error\":\"Vui lòng đăng nhập để thực hiện check-in\"}");
+            return;
+        }
+        String role = jwtUser.getRole();
+        if (role == null || !(role.equalsIgnoreCase("ORGANIZER") || role.equalsIgnoreCase("ADMIN"))) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            resp.getWriter().write("{\"error\":\"Bạn không có quyền thực hiện check-in\"}");
+            return;
+        }
+
+        // ===== 2. Body =====
+        GateSyncRequest body;
+        try {
+            body = gson.fromJson(req.getReader(), GateSyncRequest.class);
+        } catch (JsonParseException e) {
+            body = null;
+        }
+        if (body == null || body.getEventId() == null || body.getScans() == null) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().write("{\"error\":\"Thiếu eventId hoặc danh sách scans\"}");
+            return;
+        }
+        if (body.getScans().size() > GateManifestService.MAX_SCANS) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().write("{\"error\":\"Tối đa " + GateManifestService.MAX_SCANS
+                    + " lần quét mỗi lần đồng bộ\"}");
+            return;
+        }
+
+        Event event = eventDAO.getEventById(body.getEventId());
+        if (event == null) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            resp.getWriter().write("{\"error\":\"Không tìm thấy sự kiện\"}");
+            return;
+        }
+
+        SystemConfigService.SystemConfig cfg = systemConfigService.load(req.getServletContext());
+
+        // ===== 3. Áp dụng =====
+        try {
+            JsonObject result = GateManifestService.sync(event, cfg.checkinAllowedBeforeStartMinutes,
+                    body.getGateId(), body.getScans());
+            System.out.println("[GateSync] eventId=" + event.getEventId() + ", gate=" + body.getGateId()
+                    + ", received=" + result.get("received") + ", applied=" + result.get("applied")
+                    + ", conflicts=" + result.get("conflictCount"));
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.getWriter().write(gson.toJson(result));
+        } catch (Exception e) {
+            System.err.println("[ERROR] gate-sync eventId=" + event.getEventId() + ": " + e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            resp.getWriter().write("{\"error\":\"Không thể đồng bộ check-in. Vui lòng gửi lại\"}");
+        }
+    }
+
+    private void setCorsHeaders(HttpServletResponse res, HttpServletRequest req) {
+        String origin = req.getHeader("Origin");
+
+        boolean allowed = origin != null && (origin.equals("http://localhost:5173")
+                || origin.equals("http://127.0.0.1:5173")
+                || origin.equals("http://localhost:3000")
+                || origin.equals("http://127.0.0.1:3000")
+                || origin.contains("ngrok-free.app")
+                || origin.contains("ngrok.app"));
+
+        if (allowed) {
+            res.setHeader("Access-Control-Allow-Origin", origin);
+            res.setHeader("Access-Control-Allow-Credentials", "true");
+        } else {
+            res.setHeader("Access-Control-Allow-Origin", "null");
+        }
+
+        res.setHeader("Vary", "Origin");
+        res.setHeader("Access-Control-Allow-Methods", "POST, OPTIONS");
+        res.setHeader("Access-Control-Allow-Headers",
+                "Content-Type, Authorization, ngrok-skip-browser-warning");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Max-Age", "86400");
+    }
+}
@@ -5,6 +5,7 @@ import com.google.gson.JsonObject;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.*;
 
+import service.SystemConfigService;
 import utils.JwtUtils;
 
 import java.io.IOException;
@@ -239,7 +240,8 @@ public class StaffSystemConfigController extends HttpServlet {
      * 3) parse body JSON -> SystemConfig newCfg
      * 4) validate range 0..600 cho cả 2 field
      * 5) resolve path -> createDirectories -> write file JSON
-     * 6) trả JSON success + data + writtenTo
+     * 6) SystemConfigService.invalidate() -> check-in/check-out dùng config mới ngay
+     * 7) trả JSON success + data + writtenTo
      *
      * ======================= STATUS CODE TRẢ VỀ (POST) =======================
      * - 200 OK:
@@ -311,6 +313,9 @@ public class StaffSystemConfigController extends HttpServlet {
             // ghi file (overwrite)
             Files.write(path, json.getBytes(StandardCharsets.UTF_8));
 
+            // check-in / check-out đọc snapshot RAM => bỏ snapshot cũ để có hiệu lực ngay
+            SystemConfigService.invalidate();
+
             // 6) Response success
             JsonObject res = new JsonObject();
             res.addProperty("success", true);
@@ -0,0 +1,131 @@
+package controller;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+import mylib.DBUtils;
+import mylib.EmailService;
+import service.AreaScheduleIndex;
+import service.CheckinStreamHub;
+import service.EmailOutboxService;
+import service.EventCatalogCache;
+import service.EventDetailCache;
+import service.EventTicketCounters;
+import service.GateManifestService;
+import service.NotificationService;
+import service.QrBlobMigrationJob;
+import service.SeatAvailabilityCache;
+import service.SeatHoldReaper;
+import service.SeatHoldService;
+import service.SeatStreamHub;
+import service.SystemConfigService;
+import service.TicketQrService;
+import utils.JwtUtils;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * API: GET /api/admin/metrics
+ *
+ * MỤC ĐÍCH: - Xuất các gauge/counter nội bộ để theo dõi hiệu năng lúc cao
+ * điểm (mở bán vé, check-in) - dbPool: active, idle, waiters, thời gian chờ
+ * mượn kết nối, số lần timeout, nghi leak - statementCache: hit/miss
+ * PreparedStatement theo từng SQL fingerprint - seatHold: số lần giữ ghế
+ * OK/INVALID/CONFLICT + latency theo số ghế - seatHoldReaper: số ghế đã trả
+ * do hết hạn giữ chỗ + thời gian mỗi lượt quét - seatAvailability: sơ đồ ghế
+ * cache trong RAM (hit, số lần nạp, cập nhật từ hook, lệch khi verify) -
+ * seatStream: số subscriber SSE, số thay đổi đã đẩy/gộp, fan-out latency -
+ * emailOutbox: độ sâu hàng đợi email, latency gửi SMTP, lỗi / dead-letter -
+ * smtpPool: kết nối SMTP dùng lại, NOOP health check, số mail / kết nối -
+ * jwt: số lần parse + verify chữ ký thật, cache hit/miss, token lỗi -
+ * gate: manifest cổng offline đã phát, lần quét đồng bộ / xung đột -
+ * ticketQr: cache ảnh QR (hit/miss, byte) - qrBlobMigration: tiến độ dọn Base64
+ * - notifications: hàng đợi ghi DB (write-behind), lô đã ghi / lỗi, cache RAM (hit/miss, bị loại)
+ * - systemConfig: nguồn SystemConfig.json đang dùng, số lần nạp lại / kiểm tra mtime
+ * - eventCatalog: cache JSON GET /api/events (hit, trả bản cũ, số lần dựng lại, kích thước)
+ * - eventDetail: cache chi tiết event (hit/miss, request chờ chung 1 lần nạp, invalidate)
+ * - ticketCounters: bộ đếm vé theo trạng thái của /api/events/stats (nạp, đối soát, lệch đã sửa)
+ * - checkinStream: SSE dashboard check-in (subscriber, frame dựng / bỏ vì trùng, cửa sổ theo phút)
+ * - areaSchedule: lịch khu vực trong RAM (sẵn sàng?, số cửa sổ bận, số lần tra / nạp lại)
+ *
+ * QUYỀN: chỉ ADMIN (role lấy từ JwtAuthFilter)
+ *
+ * STATUS CODE: - 200 OK - 403 Forbidden: không phải ADMIN
+ */
+@WebServlet("/api/admin/metrics")
+public class SystemMetricsController extends HttpServlet {
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setContentType("application/json;charset=UTF-8");
+
+        String role = (String) req.getAttribute("role");
+        if (role == null || !"ADMIN".equalsIgnoreCase(role)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            resp.getWriter().write("{\"error\":\"Permission denied. ADMIN only.\"}");
+            return;
+        }
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("timestamp", System.currentTimeMillis());
+        metrics.put("dbPool", DBUtils.getPoolStats());
+        metrics.put("statementCache", DBUtils.getStatementCacheStats());
+        metrics.put("seatHold", SeatHoldService.getStats());
+        metrics.put("seatHoldReaper", SeatHoldReaper.getStats());
+        metrics.put("seatAvailability", SeatAvailabilityCache.getStats());
+        metrics.put("seatStream", SeatStreamHub.getStats());
+        metrics.put("emailOutbox", EmailOutboxService.getStats());
+        metrics.put("smtpPool", EmailService.getPoolStats());
+        metrics.put("jwt", JwtUtils.getStats());
+        metrics.put("gate", GateManifestService.getStats());
+        metrics.put("ticketQr", TicketQrService.getStats());
+        metrics.put("qrBlobMigration", QrBlobMigrationJob.getStats());
+        metrics.put("notifications", NotificationService.getStats());
+        metrics.put("systemConfig", SystemConfigService.getStats());
+        metrics.put("eventCatalog", EventCatalogCache.getStats());
+        metrics.put("eventDetail", EventDetailCache.getStats());
+        metrics.put("ticketCounters", EventTicketCounters.getStats());
+        metrics.put("checkinStream", CheckinStreamHub.getStats());
+        metrics.put("areaSchedule", AreaScheduleIndex.getStats());
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().write(gson.toJson(metrics));
+    }
+
+    private void setCorsHeaders(HttpServletResponse res, HttpServletRequest req) {
+        String origin = req.getHeader("Origin");
+
+        boolean allowed = origin != null && (origin.equals("http://localhost:5173")
+                || origin.equals("http://127.0.0.1:5173")
+                || origin.equals("http://localhost:3000")
+                || origin.equals("http://127.0.0.1:3000")
+                || origin.contains("ngrok-free.app")
+                || origin.contains("ngrok.app"));
+
+        if (allowed) {
+            res.setHeader("Access-Control-Allow-Origin", origin);
+            res.setHeader("Access-Control-Allow-Credentials", "true");
+        } else {
+            res.setHeader("Access-Control-Allow-Origin", "null");
+        }
+
+        res.setHeader("Vary", "Origin");
+        res.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        res.setHeader("Access-Control-Allow-Headers",
+                "Content-Type, Authorization, ngrok-skip-browser-warning");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization");
+        res.setHeader("Access-Control-Max-Age", "86400");
+    }
+}
@@ -0,0 +1,150 @@
+package controller;
+
+import DAO.TicketDAO;
+import DTO.Ticket;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.*;
+import service.TicketQrService;
+
+import java.io.IOException;
+
+/**
+ * API: GET /api/tickets/{ticketId}/qr.png?size=300
+ *
+ * MỤC ĐÍCH: - Ảnh QR của vé render khi cần (không lưu Base64 trong DB nữa) -
+ * Danh sách vé chỉ trả ticketCode + qrUrl trỏ về đây
+ *
+ * CACHE: - Server: LRU byte cache trong TicketQrService - Client: ETag mạnh
+ * theo (ticketId, size) + Cache-Control private, immutable => If-None-Match
+ * trùng trả 304, không render lại
+ *
+ * AUTH: JWT (header hoặc ?token= cho thẻ <img>), chỉ chủ vé hoặc
+ * ADMIN / ORGANIZER
+ *
+ * STATUS CODE: - 200 image/png - 304 Not Modified - 400 id sai - 401 / 403 -
+ * 404 vé không tồn tại / chưa thanh toán
+ */
+@WebServlet("/api/tickets/*")
+public class TicketQrController extends HttpServlet {
+
+    private final TicketDAO ticketDAO = new TicketDAO();
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCorsHeaders(resp, req);
+
+        // pathInfo = "/{ticketId}/qr.png"
+        String pathInfo = req.getPathInfo();
+        String[] parts = pathInfo == null ? new String[0] : pathInfo.split("/");
+        if (parts.length != 3 || !"qr.png".equals(parts[2])) {
+            writeError(resp, HttpServletResponse.SC_NOT_FOUND, "Not found");
+            return;
+        }
+
+        int ticketId;
+        try {
+            ticketId = Integer.parseInt(parts[1].trim());
+        } catch (NumberFormatException e) {
+            writeError(resp, HttpServletResponse.SC_BAD_REQUEST, "Invalid ticketId");
+            return;
+        }
+
+        Integer userId = (Integer) req.getAttribute("userId");
+        String role = (String) req.getAttribute("role");
+        if (userId == null) {
+            writeError(resp, HttpServletResponse.SC_UNAUTHORIZED, "Unauthorized");
+            return;
+        }
+
+        // ===== Quyền: chủ vé hoặc ADMIN / ORGANIZER =====
+        Ticket ticket;
+        try {
+            ticket = ticketDAO.getTicketOwner(ticketId);
+        } catch (Exception e) {
+            System.err.println("[ERROR] qr.png getTicketOwner: " + e.getMessage());
+            writeError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal server error");
+            return;
+        }
+        boolean staff = "ADMIN".equalsIgnoreCase(role) || "ORGANIZER".equalsIgnoreCase(role);
+        if (ticket == null || "PENDING".equalsIgnoreCase(ticket.getStatus())) {
+            writeError(resp, HttpServletResponse.SC_NOT_FOUND, "Ticket not found");
+            return;
+        }
+        if (!staff && ticket.getUserId() != userId) {
+            writeError(resp, HttpServletResponse.SC_FORBIDDEN, "Permission denied");
+            return;
+        }
+
+        int size = TicketQrService.DEFAULT_SIZE;
+        String sizeParam = req.getParameter("size");
+        if (sizeParam != null) {
+            try {
+                size = TicketQrService.clampSize(Integer.parseInt(sizeParam.trim()));
+            } catch (NumberFormatException ignore) {
+            }
+        }
+
+        // ===== ETag: ảnh chỉ phụ thuộc (ticketId, size) =====
+        String etag = TicketQrService.etag(ticketId, size);
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Cache-Control", "private, max-age=31536000, immutable");
+
+        String inm = req.getHeader("If-None-Match");
+        if (inm != null && (inm.contains(etag) || "*".equals(inm.trim()))) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] png;
+        try {
+            png = TicketQrService.getPng(ticketId, size);
+        } catch (Exception e) {
+            System.err.println("[ERROR] qr.png render ticketId=" + ticketId + ": " + e.getMessage());
+            resp.setHeader("Cache-Control", "no-store");
+            writeError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Could not render QR");
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("image/png");
+        resp.setContentLength(png.length);
+        resp.getOutputStream().write(png);
+    }
+
+    private void writeError(HttpServletResponse resp, int status, String message) throws IOException {
+        resp.setStatus(status);
+        resp.setContentType("application/json;charset=UTF-8");
+        resp.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+
+    private void setCorsHeaders(HttpServletResponse res, HttpServletRequest req) {
+        String origin = req.getHeader("Origin");
+
+        boolean allowed = origin != null && (origin.equals("http://localhost:5173")
+                || origin.equals("http://127.0.0.1:5173")
+                || origin.equals("http://localhost:3000")
+                || origin.equals("http://127.0.0.1:3000")
+                || origin.contains("ngrok-free.app")
+                || origin.contains("ngrok.app"));
+
+        if (allowed) {
+            res.setHeader("Access-Control-Allow-Origin", origin);
+            res.setHeader("Access-Control-Allow-Credentials", "true");
+        } else {
+            res.setHeader("Access-Control-Allow-Origin", "null");
+        }
+
+        res.setHeader("Vary", "Origin");
+        res.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        res.setHeader("Access-Control-Allow-Headers",
+                "Content-Type, Authorization, ngrok-skip-browser-warning, If-None-Match");
+        res.setHeader("Access-Control-Expose-Headers", "Authorization, ETag");
+        res.setHeader("Access-Control-Max-Age", "86400");
+    }
+}
@@ -15,6 +15,9 @@ import DTO.CategoryTicket;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import utils.JwtUtils;
+import service.EventCatalogCache;
+import service.EventDetailCache;
+import service.SeatAvailabilityCache;
 
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.*;
@@ -81,15 +84,8 @@ public class UpdateEventDetailsController extends HttpServlet {
 
         try {
             // ======================= (1) AUTH + ROLE =======================
-            String authHeader = req.getHeader("Authorization");
-            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-                resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                out.write("{\"error\":\"Missing or invalid token\"}");
-                return;
-            }
-
-            String token = authHeader.substring(7);
-            JwtUtils.JwtUser jwtUser = JwtUtils.parseToken(token);
+            // JwtAuthFilter đã verify token + gắn JwtUser vào request
+            JwtUtils.JwtUser jwtUser = JwtUtils.fromRequest(req);
             if (jwtUser == null) {
                 resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
                 out.write("{\"error\":\"Invalid token\"}");
@@ -292,6 +288,15 @@ public class UpdateEventDetailsController extends HttpServlet {
 
                 conn.commit();
 
+                // Banner / trạng thái có thể đã đổi => dựng lại danh sách GET /api/events
+                EventCatalogCache.invalidate();
+                EventDetailCache.invalidate(body.eventId);
+
+                // Layout ghế có thể đã đổi => bỏ sơ đồ ghế đang cache của event
+                if (!lockQuantity) {
+                    SeatAvailabilityCache.invalidate(body.eventId);
+                }
+
                 resp.setStatus(HttpServletResponse.SC_OK);
                 out.write("{\"message\":\"Event details updated successfully\"}");
 
@@ -173,8 +173,10 @@ public class VenueAreaController extends HttpServlet {
 
             try {
                 if (areaId != null && capacity != null && capacity > 0) {
-                    // ✅ Auto generate seats theo capacity
-                    seatDAO.generateSeatsForArea(areaId, capacity);
+                    // ✅ Auto generate seats theo capacity (seatsPerRow tuỳ chọn trong body)
+                    Integer seatsPerRow = area.getSeatsPerRow();
+                    seatDAO.generateSeatsForArea(areaId, capacity,
+                            seatsPerRow != null ? seatsPerRow : SeatDAO.DEFAULT_SEATS_PER_ROW);
                 }
 
                 resp.setStatus(HttpServletResponse.SC_CREATED);
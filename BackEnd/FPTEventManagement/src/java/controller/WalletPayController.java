@@ -7,8 +7,6 @@ import DTO.*;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.*;
 
-import utils.EmailUtils;
-import utils.QRCodeUtil;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -21,14 +19,19 @@ import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.stream.Collectors;
 import mylib.DBUtils;
+import service.EventTicketCounters;
+import service.SeatAvailabilityCache;
+import service.EmailOutboxService;
+import service.EventDetailCache;
+import service.SeatHoldService;
 
 @WebServlet("/api/wallet/pay-ticket")
 public class WalletPayController extends HttpServlet {
 
     private static final String FRONTEND_BASE_URL = "http://localhost:3000";
 
-    // ===== DAO giống PaymentTicketController =====
-    private final EventSeatLayoutDAO eventSeatLayoutDAO = new EventSeatLayoutDAO();
+    // ===== Giữ ghế giống PaymentTicketController =====
+    private final SeatHoldService seatHoldService = new SeatHoldService();
     private final SeatDAO seatDAO = new SeatDAO();
     private final TicketDAO ticketDAO = new TicketDAO();
     private final CategoryTicketDAO categoryDAO = new CategoryTicketDAO();
@@ -89,97 +92,33 @@ public class WalletPayController extends HttpServlet {
                 return;
             }
 
-            // ===== (3) Validate seats + map seatType -> CategoryTicket + tính tiền =====
-            BigDecimal totalPrice = BigDecimal.ZERO;
-
-            for (Integer seatId : seatIds) {
-                Seat seat = eventSeatLayoutDAO.getSeatForEvent(eventId, seatId);
-
-                if (seat == null) {
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                    resp.getWriter().println("Seat " + seatId + " not configured for this event");
-                    return;
-                }
-
-                if (event.getAreaId() != null && seat.getAreaId() != event.getAreaId()) {
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                    resp.getWriter().println("Seat " + seatId + " does not belong to event area");
-                    return;
-                }
-
-                if (!"AVAILABLE".equalsIgnoreCase(seat.getStatus())) {
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                    resp.getWriter().println("Seat " + seatId + " is not AVAILABLE for this event");
-                    return;
-                }
-
-                String seatType = seat.getSeatType();
-                if (isBlank(seatType)) {
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                    resp.getWriter().println("Seat " + seatId + " has no seatType");
-                    return;
-                }
-
-                CategoryTicket ctByType = categoryDAO.getActiveCategoryTicketByEventIdAndName(eventId, seatType);
-                if (ctByType == null) {
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                    resp.getWriter().println("No active category ticket for seatType: " + seatType);
-                    return;
-                }
-
-                categoryIdsForSeats.add(ctByType.getCategoryTicketId());
-                totalPrice = totalPrice.add(ctByType.getPrice());
-            }
-
-            // ===== (4) Check booked/reserved trước (pre-check) =====
-            try {
-                List<Integer> alreadyBookedSeatIds = seatDAO.findAlreadyBookedSeatIdsForEvent(eventId, seatIds);
-                if (!alreadyBookedSeatIds.isEmpty()) {
-                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                    resp.getWriter().println("Some seats already reserved/booked: " + alreadyBookedSeatIds);
-                    return;
-                }
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                resp.getWriter().println("Error checking booked seats: " + ex.toString());
-                return;
-            }
-
-            // ===== (5) TRANSACTION: insert PENDING -> deduct wallet -> bill -> BOOKED =====
+            // ===== (3)(4)(5) TRANSACTION: validate + giữ ghế PENDING -> deduct wallet -> bill -> BOOKED =====
             Timestamp now = new Timestamp(System.currentTimeMillis());
+            BigDecimal totalPrice;
             int billId;
 
             try ( Connection conn = DBUtils.getConnection()) {
                 conn.setAutoCommit(false);
 
                 try {
-                    // (5.1) Insert PENDING tickets (hold seats)
-                    for (int i = 0; i < seatIds.size(); i++) {
-                        Integer seatId = seatIds.get(i);
-                        Integer categoryIdForSeat = categoryIdsForSeats.get(i);
-
-                        Ticket temp = new Ticket();
-                        temp.setEventId(eventId);
-                        temp.setUserId(userId);
-                        temp.setCategoryTicketId(categoryIdForSeat);
-                        temp.setSeatId(seatId);
-                        temp.setBillId(null);
-
-                        temp.setStatus("PENDING");
-
-                        // ✅ GIỐNG PAYMENT: không cho NULL vì DB NOT NULL
-                        temp.setQrCodeValue("PENDING_QR");   // hoặc "PENDING_QR" / "PENDING"
-                        temp.setQrIssuedAt(now);             // hoặc new Timestamp(System.currentTimeMillis())
-
-                        temp.setCheckinTime(null); // nếu Ticket có field này
-
-                        int tid = ticketDAO.insertTicketAndReturnId(conn, temp);
-                        if (tid <= 0) {
-                            throw new SQLException("insertTicketAndReturnId <= 0 for seatId=" + seatId);
+                    // (5.1) Validate ghế + insert PENDING tickets (hold seats) bằng SeatHoldService
+                    //       chạy trong transaction này => wallet fail thì rollback luôn ghế
+                    SeatHoldService.HoldResult hold = seatHoldService.holdSeats(conn, userId, event, seatIds);
+                    if (!hold.isOk()) {
+                        conn.rollback();
+                        if (hold.getStatus() == SeatHoldService.HoldStatus.INVALID) {
+                            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                        } else if (hold.getStatus() == SeatHoldService.HoldStatus.CONFLICT) {
+                            resp.setStatus(HttpServletResponse.SC_CONFLICT);
+                        } else {
+                            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
                         }
-                        createdTempTicketIds.add(tid);
+                        resp.getWriter().println(hold.getMessage());
+                        return;
                     }
+                    createdTempTicketIds.addAll(hold.getTicketIds());
+                    categoryIdsForSeats.addAll(hold.getCategoryIdsForSeats());
+                    totalPrice = hold.getTotalPrice();
 
                     // (5.2) Lock wallet + check đủ tiền + trừ tiền
                     BigDecimal wallet = walletDAO.getWalletForUpdate(conn, userId);
@@ -227,7 +166,9 @@ public class WalletPayController extends HttpServlet {
                         return;
                     }
 
-                    // (5.4) Update tickets -> BOOKED
+                    // (5.4) Update tickets -> BOOKED (cache / bộ đếm báo sau commit)
+                    List<Ticket> bookedTickets = new ArrayList<>();
+                    List<String> oldStatuses = new ArrayList<>();
                     for (Integer tid : createdTempTicketIds) {
                         Ticket t = new Ticket();
                         t.setTicketId(tid);
@@ -235,11 +176,17 @@ public class WalletPayController extends HttpServlet {
                         t.setStatus("BOOKED");
                         t.setQrIssuedAt(now);
 
-                        ticketDAO.updateTicketAfterPayment(conn, t);
+                        oldStatuses.add(ticketDAO.updateTicketAfterPayment(conn, t));
+                        bookedTickets.add(t);
                     }
 
                     conn.commit();
 
+                    SeatHoldService.publishHold(eventId, seatIds, hold);
+                    for (int i = 0; i < bookedTickets.size(); i++) {
+                        ticketDAO.notifyAfterPayment(bookedTickets.get(i), oldStatuses.get(i));
+                    }
+
                 } catch (SQLException ex) {
                     // Nếu insert PENDING fail do tranh ghế (unique constraint) => 409
                     ex.printStackTrace();
@@ -247,6 +194,9 @@ public class WalletPayController extends HttpServlet {
                         conn.rollback();
                     } catch (Exception ignore) {
                     }
+                    // Rollback không qua deleteTicketsByIds => sơ đồ ghế cache / bộ đếm có thể lệch
+                    SeatAvailabilityCache.invalidate(eventId);
+                    EventTicketCounters.invalidate(eventId);
 
                     resp.setStatus(HttpServletResponse.SC_CONFLICT);
                     resp.getWriter().println("Seat(s) already taken by another user. Please choose other seats.");
@@ -260,6 +210,8 @@ public class WalletPayController extends HttpServlet {
                         conn.rollback();
                     } catch (Exception ignore) {
                     }
+                    SeatAvailabilityCache.invalidate(eventId);
+                    EventTicketCounters.invalidate(eventId);
 
                     resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
                     resp.getWriter().println("wallet_payment_exception: " + ex.getMessage());
@@ -267,16 +219,13 @@ public class WalletPayController extends HttpServlet {
                 }
             }
 
-            // ===== (6) Sau commit: QR + Email (copy BuyTicketController) =====
+            // ===== (6) Sau commit: mã vé + Email (copy BuyTicketController) =====
             try {
-                // Update QR per ticket (optional)
-                for (Integer tid : createdTempTicketIds) {
-                    try {
-                        String qrBase64 = QRCodeUtil.generateTicketQrBase64(tid, 300, 300);
-                        ticketDAO.updateTicketQr(tid, qrBase64);
-                    } catch (Exception ex) {
-                        System.err.println("QR Gen Error for ticketId " + tid + ": " + ex.getMessage());
-                    }
+                // Mã vé = nội dung QR (ticket_id); ảnh render khi cần ở /api/tickets/{id}/qr.png
+                try {
+                    ticketDAO.updateTicketCodes(createdTempTicketIds);
+                } catch (Exception ex) {
+                    System.err.println("Ticket code update error: " + ex.getMessage());
                 }
 
                 Users user = usersDAO.findById(userId);
@@ -300,7 +249,11 @@ public class WalletPayController extends HttpServlet {
 
                     List<String> catParts = new ArrayList<>();
                     for (Map.Entry<Integer, Long> e : catCount.entrySet()) {
-                        CategoryTicket c = categoryDAO.getActiveCategoryTicketById(e.getKey());
+                        // Tên loại vé lấy từ cache chi tiết event; không có mới query
+                        CategoryTicket c = EventDetailCache.getCategory(eventId, e.getKey());
+                        if (c == null) {
+                            c = categoryDAO.getActiveCategoryTicketById(e.getKey());
+                        }
                         String name = (c != null && c.getName() != null) ? c.getName() : ("Category#" + e.getKey());
                         catParts.add(name + " x" + e.getValue());
                     }
@@ -312,8 +265,6 @@ public class WalletPayController extends HttpServlet {
                             ? String.valueOf(createdTempTicketIds.get(0))
                             : "TICKETS:" + createdTempTicketIds.stream().map(String::valueOf).collect(Collectors.joining(","));
 
-                    byte[] qrBytes = QRCodeUtil.generateQRCodePngBytes(qrContent, 300, 300);
-
                     String startTimeString = "";
                     if (event.getStartTime() != null) {
                         SimpleDateFormat sdf = new SimpleDateFormat("HH:mm dd/MM/yyyy");
@@ -374,13 +325,11 @@ public class WalletPayController extends HttpServlet {
                             + "<img src='cid:ticket_qr' style='width: 200px; height: 200px;' alt='Ticket QR'/>"
                             + "</div></div></div></div>";
 
-                    new Thread(() -> {
-                        try {
-                            EmailUtils.sendEmailWithImage(user.getEmail(), subject, htmlContent, qrBytes, "ticket_qr");
-                        } catch (Exception e) {
-                            System.err.println("[WalletPayController] Error sending email: " + e.getMessage());
-                        }
-                    }).start();
+                    // Chỉ ghi vào outbox (QR render + SMTP do worker nền) => redirect ngay
+                    EmailOutboxService.EnqueueResult queued = EmailOutboxService.enqueue(
+                            EmailOutboxService.ticketDedupKey(user.getEmail(), ticketIdsStringForEmail),
+                            user.getEmail(), subject, htmlContent, qrContent, "ticket_qr");
+                    System.out.println("[WalletPayController] Ticket email " + queued + " for " + user.getEmail());
                 }
 
             } catch (Exception e) {
@@ -8,7 +8,8 @@ import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
 
-@WebFilter(urlPatterns = {"/api/*"})
+// asyncSupported: filter nằm trước servlet async (SSE /api/events/{id}/seat-stream)
+@WebFilter(urlPatterns = {"/api/*"}, asyncSupported = true)
 public class JwtAuthFilter implements Filter {
 
     // ==================== CORS ====================
@@ -26,8 +27,8 @@ public class JwtAuthFilter implements Filter {
         resp.setHeader("Access-Control-Max-Age", "86400");
         resp.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
         resp.setHeader("Access-Control-Allow-Headers",
-                "Content-Type, Authorization, ngrok-skip-browser-warning");
-        resp.setHeader("Access-Control-Expose-Headers", "Authorization");
+                "Content-Type, Authorization, ngrok-skip-browser-warning, If-None-Match");
+        resp.setHeader("Access-Control-Expose-Headers", "Authorization, ETag");
         resp.setContentType("application/json;charset=UTF-8");
         resp.setHeader("Vary", "Origin");
     }
@@ -50,6 +51,15 @@ public class JwtAuthFilter implements Filter {
     }
 
     // ==================== PUBLIC PATHS ====================
+    // EventSource (SSE) / thẻ <img> không gửi được header Authorization
+    private boolean allowsQueryToken(HttpServletRequest req) {
+        String uri = req.getRequestURI();
+        return uri != null
+                && ((uri.contains("/api/events/") && uri.endsWith("/seat-stream"))
+                || uri.endsWith("/api/events/checkin-stream")
+                || (uri.contains("/api/tickets/") && uri.endsWith("/qr.png")));
+    }
+
     private boolean isPublicPath(HttpServletRequest req) {
         String path = req.getRequestURI();
         String ctx = req.getContextPath();
@@ -144,7 +154,16 @@ public class JwtAuthFilter implements Filter {
 
         // Từ đây trở đi: mọi /api/* đều cần JWT
         String auth = req.getHeader("Authorization");
-        System.out.println("🔹 Authorization header: " + auth);
+        // EventSource (SSE) / <img> không gửi được header => cho phép ?token= cho seat-stream, checkin-stream, qr.png
+        boolean queryToken = false;
+        if (auth == null && allowsQueryToken(req) && req.getParameter("token") != null) {
+            auth = "Bearer " + req.getParameter("token");
+            queryToken = true;
+        }
+        // Không log token (header hay ?token=): log server không được chứa credential
+        System.out.println("🔹 Authorization: " + (auth == null ? "none"
+                : (auth.startsWith("Bearer ") ? "Bearer <redacted>" : "<redacted>")
+                + (queryToken ? " (?token=)" : " (header)")));
 
         if (auth == null || !auth.startsWith("Bearer ")) {
             System.out.println("❌ Missing or invalid Authorization header");
@@ -154,10 +173,10 @@ public class JwtAuthFilter implements Filter {
         }
 
         String token = auth.substring(7).trim();
-        System.out.println("🔹 Token prefix: "
-                + token.substring(0, Math.min(20, token.length())) + "...");
 
-        if (!JwtUtils.validateToken(token)) {
+        // 1 lần verify chữ ký + đọc claims (cache theo token, xem JwtUtils.verify)
+        JwtUtils.JwtUser user = JwtUtils.verify(token);
+        if (user == null) {
             System.out.println("❌ Token validation failed");
             writeJson(resp, HttpServletResponse.SC_UNAUTHORIZED,
                     "{\"error\":\"Invalid or expired token\"}");
@@ -165,9 +184,9 @@ public class JwtAuthFilter implements Filter {
         }
 
         try {
-            String email = JwtUtils.getEmailFromToken(token);
-            String role = JwtUtils.getRoleFromToken(token);
-            Integer id = JwtUtils.getIdFromToken(token);
+            String email = user.getEmail();
+            String role = user.getRole();
+            Integer id = user.getUserId();
 
             // Chuẩn hóa role: bỏ ROLE_ và uppercase
             if (role != null) {
@@ -179,7 +198,7 @@ public class JwtAuthFilter implements Filter {
 
             System.out.println("✅ Token parsed: email=" + email + ", role=" + role + ", id=" + id);
 
-            if (email == null || role == null || id == null) {
+            if (email == null || role == null) {
                 throw new Exception("Missing claims in token");
             }
 
@@ -187,6 +206,9 @@ public class JwtAuthFilter implements Filter {
             req.setAttribute("jwt_email", email);
             req.setAttribute("jwt_role", role);
             req.setAttribute("jwt_id", id);
+            // Controller dùng JwtUtils.fromRequest(req) thay vì tự parse lại header
+            req.setAttribute(JwtUtils.REQUEST_ATTR,
+                    new JwtUtils.JwtUser(id, email, role, user.getExpiresAt()));
 
             // Quan trọng: cho controller cũ dùng tên 'role'
             req.setAttribute("role", role);
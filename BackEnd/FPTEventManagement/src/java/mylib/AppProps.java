@@ -0,0 +1,44 @@
+package mylib;
+
+/**
+ * Đọc cấu hình chạy nền (pool, reaper, cache...) từ System property, nếu không
+ * có thì lấy biến môi trường tương ứng: db.pool.maxSize -> DB_POOL_MAX_SIZE.
+ * Giá trị sai định dạng => dùng mặc định.
+ */
+public final class AppProps {
+
+    private AppProps() {
+    }
+
+    public static String get(String name) {
+        String v = System.getProperty(name);
+        if (v == null) {
+            String env = name.replaceAll("([a-z])([A-Z])", "$1_$2").replace('.', '_').toUpperCase();
+            v = System.getenv(env);
+        }
+        return v;
+    }
+
+    public static String get(String name, String def) {
+        String v = get(name);
+        return v != null && !v.trim().isEmpty() ? v.trim() : def;
+    }
+
+    public static int getInt(String name, int def) {
+        try {
+            String v = get(name);
+            return v != null ? Integer.parseInt(v.trim()) : def;
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    public static long getLong(String name, long def) {
+        try {
+            String v = get(name);
+            return v != null ? Long.parseLong(v.trim()) : def;
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package mylib;
+
+/**
+ * ========================================================================================================
+ * MYLIB: ConnectionPool - POOL KẾT NỐI SQL SERVER DÙNG CHUNG CHO TOÀN BỘ DAO
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ: - DBUtils.getConnection() gọi DriverManager.getConnection() mỗi
+ * lần => mỗi query phải bắt tay TCP + TLS + login SQL Server từ đầu - Lúc mở
+ * bán vé, chi phí bắt tay chiếm phần lớn latency và làm cạn login slot của
+ * server
+ *
+ * CÁCH HOẠT ĐỘNG: - Giữ tối đa maxSize kết nối vật lý, caller mượn qua
+ * getConnection() - Connection trả ra là PROXY: gọi close() => trả kết nối về
+ * pool (không đóng thật) => code DAO dùng try-with-resources giữ nguyên - Mỗi
+ * lần mượn tạo 1 proxy mới => handle cũ đã close không thể đụng vào kết nối đã
+ * được người khác mượn
+ *
+ * TÍNH NĂNG: - Bounded: Semaphore giới hạn số kết nối đang mượn, chờ tối đa
+ * maxWaitMs rồi ném SQLTimeoutException - Validation-on-borrow: isValid() nếu
+ * kết nối đã nằm idle lâu hơn validationIntervalMs - Idle eviction: thread nền
+ * đóng kết nối idle quá idleTimeoutMs (giữ lại minIdle) - Leak detection: lưu
+ * stack trace nơi mượn, cảnh báo nếu giữ quá leakDetectionThresholdMs - Reset
+ * trạng thái khi trả về: rollback transaction dở dang, bật lại autoCommit -
+ * Gauges: active, idle, waiters, thời gian chờ (tổng / max / trung bình)
+ *
+ * CẤU HÌNH (System property, hoặc biến môi trường dạng DB_POOL_MAX_SIZE):
+ * db.pool.maxSize, db.pool.minIdle, db.pool.maxWaitMs, db.pool.idleTimeoutMs,
+ * db.pool.validationIntervalMs, db.pool.validationTimeoutSec,
+ * db.pool.leakDetectionThresholdMs (0 = tắt), db.pool.statementCacheSize
+ * (số PreparedStatement cache mỗi kết nối, 0 = tắt - xem StatementCache)
+ */
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConnectionPool {
+
+    private static final long HOUSEKEEPING_PERIOD_MS = 30_000L;
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final int maxSize;
+    private final int minIdle;
+    private final long maxWaitMs;
+    private final long idleTimeoutMs;
+    private final long validationIntervalMs;
+    private final int validationTimeoutSec;
+    private final long leakDetectionThresholdMs;
+    private final int statementCacheSize;
+
+    // Giới hạn số kết nối đang được mượn (fair => ai chờ trước được trước)
+    private final Semaphore permits;
+
+    // Kết nối rảnh: đầu deque là kết nối vừa trả (còn "ấm"), cuối deque là kết nối cũ nhất
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    // Kết nối đang được mượn (dùng cho leak detection + gauge active)
+    private final Set<PooledConnection> inUse = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean shutdown = false;
+
+    // ===== Gauges / counters =====
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicLong totalBorrows = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong connectionsDestroyed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+
+        this.maxSize = Math.max(1, AppProps.getInt("db.pool.maxSize", 20));
+        this.minIdle = Math.min(maxSize, Math.max(0, AppProps.getInt("db.pool.minIdle", 2)));
+        this.maxWaitMs = AppProps.getLong("db.pool.maxWaitMs", 5_000L);
+        this.idleTimeoutMs = AppProps.getLong("db.pool.idleTimeoutMs", 10 * 60_000L);
+        this.validationIntervalMs = AppProps.getLong("db.pool.validationIntervalMs", 1_000L);
+        this.validationTimeoutSec = AppProps.getInt("db.pool.validationTimeoutSec", 2);
+        this.leakDetectionThresholdMs = AppProps.getLong("db.pool.leakDetectionThresholdMs", 60_000L);
+        this.statementCacheSize = Math.max(0, AppProps.getInt("db.pool.statementCacheSize", 50));
+
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeep,
+                HOUSEKEEPING_PERIOD_MS, HOUSEKEEPING_PERIOD_MS, TimeUnit.MILLISECONDS);
+
+        System.out.println("[ConnectionPool] Started: maxSize=" + maxSize + ", minIdle=" + minIdle
+                + ", maxWaitMs=" + maxWaitMs + ", idleTimeoutMs=" + idleTimeoutMs
+                + ", leakDetectionThresholdMs=" + leakDetectionThresholdMs
+                + ", statementCacheSize=" + statementCacheSize);
+    }
+
+    // ================== MƯỢN KẾT NỐI ==================
+    public Connection getConnection() throws SQLException {
+        if (shutdown) {
+            throw new SQLException("Connection pool đã shutdown");
+        }
+
+        long start = System.nanoTime();
+        boolean acquired;
+        waiters.incrementAndGet();
+        try {
+            acquired = permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Bị interrupt khi chờ kết nối DB", e);
+        } finally {
+            waiters.decrementAndGet();
+        }
+        recordWait(System.nanoTime() - start);
+
+        if (!acquired) {
+            borrowTimeouts.incrementAndGet();
+            throw new SQLTimeoutException("Hết kết nối DB sau " + maxWaitMs + "ms (active="
+                    + inUse.size() + ", maxSize=" + maxSize + ", waiters=" + waiters.get() + ")");
+        }
+
+        try {
+            PooledConnection pc = takeUsableIdle();
+            if (pc == null) {
+                pc = createPhysical();
+            }
+            pc.borrowedAt = System.currentTimeMillis();
+            pc.borrowSite = leakDetectionThresholdMs > 0
+                    ? new Throwable("Connection được mượn tại") : null;
+            pc.leakReported = false;
+            inUse.add(pc);
+            totalBorrows.incrementAndGet();
+
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new ConnectionHandle(pc));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Lấy kết nối idle còn dùng được, kết nối hỏng thì đóng luôn
+    private PooledConnection takeUsableIdle() {
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            if (isUsable(pc)) {
+                return pc;
+            }
+            validationFailures.incrementAndGet();
+            destroy(pc);
+        }
+        return null;
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        try {
+            if (pc.raw.isClosed()) {
+                return false;
+            }
+            long idleFor = System.currentTimeMillis() - pc.lastReturnedAt;
+            if (idleFor < validationIntervalMs) {
+                return true; // vừa dùng xong => bỏ qua round-trip validate
+            }
+            return pc.raw.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection createPhysical() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, user, password);
+        connectionsCreated.incrementAndGet();
+        return new PooledConnection(raw, statementCacheSize);
+    }
+
+    // ================== TRẢ KẾT NỐI ==================
+    private void release(PooledConnection pc, boolean broken) {
+        if (!inUse.remove(pc)) {
+            return;
+        }
+        try {
+            if (broken || shutdown || !resetState(pc)) {
+                destroy(pc);
+            } else {
+                pc.lastReturnedAt = System.currentTimeMillis();
+                pc.borrowSite = null;
+                idle.offerFirst(pc);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Đưa kết nối về trạng thái sạch trước khi cho người khác mượn: - Còn
+     * transaction dở (autoCommit=false mà quên commit) => rollback - Bật lại
+     * autoCommit / readOnly / isolation mặc định
+     */
+    private boolean resetState(PooledConnection pc) {
+        try {
+            Connection c = pc.raw;
+            if (c.isClosed()) {
+                return false;
+            }
+            if (!c.getAutoCommit()) {
+                c.rollback();
+                c.setAutoCommit(true);
+            }
+            if (c.isReadOnly()) {
+                c.setReadOnly(false);
+            }
+            if (c.getTransactionIsolation() != pc.defaultIsolation) {
+                c.setTransactionIsolation(pc.defaultIsolation);
+            }
+            c.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("[ConnectionPool] Reset connection failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pc) {
+        pc.statements.closeAll();
+        try {
+            pc.raw.close();
+        } catch (SQLException ignore) {
+        }
+        connectionsDestroyed.incrementAndGet();
+    }
+
+    // ================== HOUSEKEEPING: IDLE EVICTION + LEAK DETECTION + MIN IDLE ==================
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // 1) Đóng kết nối idle quá lâu, duyệt từ cũ nhất (cuối deque)
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && idle.size() > minIdle) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastReturnedAt > idleTimeoutMs && idle.remove(pc)) {
+                    destroy(pc);
+                }
+            }
+
+            // 2) Cảnh báo kết nối bị giữ quá lâu (nghi leak)
+            if (leakDetectionThresholdMs > 0) {
+                for (PooledConnection pc : inUse) {
+                    if (!pc.leakReported && now - pc.borrowedAt > leakDetectionThresholdMs) {
+                        pc.leakReported = true;
+                        leaksDetected.incrementAndGet();
+                        System.err.println("[ConnectionPool] ⚠️ Nghi leak: connection bị giữ "
+                                + (now - pc.borrowedAt) + "ms (threshold=" + leakDetectionThresholdMs + "ms)");
+                        if (pc.borrowSite != null) {
+                            pc.borrowSite.printStackTrace();
+                        }
+                    }
+                }
+            }
+
+            // 3) Giữ sẵn minIdle kết nối để request đầu tiên không phải bắt tay
+            while (!shutdown && idle.size() + inUse.size() < minIdle) {
+                PooledConnection pc = createPhysical();
+                pc.lastReturnedAt = System.currentTimeMillis();
+                idle.offerLast(pc);
+            }
+        } catch (Exception e) {
+            System.err.println("[ConnectionPool] Housekeeping error: " + e.getMessage());
+        }
+    }
+
+    // ================== SHUTDOWN (gọi khi undeploy webapp) ==================
+    public void shutdown() {
+        shutdown = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destroy(pc);
+        }
+        System.out.println("[ConnectionPool] Shutdown. In-use connections will be closed on return: " + inUse.size());
+    }
+
+    // ================== GAUGES ==================
+    public Map<String, Object> getStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long borrows = totalBorrows.get();
+        m.put("maxSize", maxSize);
+        m.put("active", inUse.size());
+        m.put("idle", idle.size());
+        m.put("waiters", waiters.get());
+        m.put("totalBorrows", borrows);
+        m.put("borrowTimeouts", borrowTimeouts.get());
+        m.put("totalWaitMs", TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()));
+        m.put("maxWaitMs", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        m.put("avgWaitMicros", borrows > 0 ? TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get() / borrows) : 0);
+        m.put("connectionsCreated", connectionsCreated.get());
+        m.put("connectionsDestroyed", connectionsDestroyed.get());
+        m.put("validationFailures", validationFailures.get());
+        m.put("leaksDetected", leaksDetected.get());
+        m.put("statementCacheSize", statementCacheSize);
+        return m;
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        long prev;
+        do {
+            prev = maxWaitNanos.get();
+        } while (nanos > prev && !maxWaitNanos.compareAndSet(prev, nanos));
+    }
+
+    // ================== KẾT NỐI VẬT LÝ ==================
+    private static final class PooledConnection {
+
+        final Connection raw;
+        final int defaultIsolation;
+        final StatementCache statements;
+        volatile long borrowedAt;
+        volatile long lastReturnedAt;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+
+        PooledConnection(Connection raw, int statementCacheSize) throws SQLException {
+            this.raw = raw;
+            this.defaultIsolation = raw.getTransactionIsolation();
+            this.statements = new StatementCache(raw, statementCacheSize);
+            this.lastReturnedAt = System.currentTimeMillis();
+        }
+    }
+
+    // ================== PROXY TRẢ CHO CALLER (close() = trả về pool) ==================
+    private final class ConnectionHandle implements InvocationHandler {
+
+        private final PooledConnection pc;
+        private volatile boolean released = false;
+        private volatile boolean broken = false;
+
+        ConnectionHandle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(pc, broken);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pc.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pc.raw + "]";
+                default:
+                    break;
+            }
+
+            if (released) {
+                throw new SQLException("Connection đã được trả về pool, không dùng lại được");
+            }
+
+            try {
+                // prepareStatement(sql) / prepareStatement(sql, autoGeneratedKeys) => đi qua cache
+                if ("prepareStatement".equals(name) && args != null && args[0] instanceof String) {
+                    if (args.length == 1) {
+                        return pc.statements.prepare((String) args[0], Statement.NO_GENERATED_KEYS, (Connection) proxy);
+                    }
+                    if (args.length == 2 && args[1] instanceof Integer) {
+                        return pc.statements.prepare((String) args[0], (Integer) args[1], (Connection) proxy);
+                    }
+                }
+                return method.invoke(pc.raw, args);
+            } catch (SQLException e) {
+                if (isFatal(e)) {
+                    broken = true;
+                }
+                throw e;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException && isFatal((SQLException) cause)) {
+                    broken = true; // kết nối hỏng => đóng hẳn khi trả về
+                }
+                throw cause;
+            }
+        }
+
+        // SQLState 08xxx = lỗi kết nối (mất mạng, server đóng session...)
+        private boolean isFatal(SQLException e) {
+            String state = e.getSQLState();
+            return state != null && state.startsWith("08");
+        }
+    }
+}
@@ -6,8 +6,9 @@
 package mylib;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
 
 
 public class DBUtils {
@@ -16,11 +17,51 @@ public class DBUtils {
     private static final String DB_USER_NAME = "SA";
     private static final String DB_PASSWORD = "12345";
 
+    // Pool dùng chung, khởi tạo lazy ở lần gọi đầu tiên
+    private static volatile ConnectionPool pool;
+
+    /**
+     * Mượn 1 connection từ pool. Gọi close() (try-with-resources) sẽ trả
+     * connection về pool thay vì đóng kết nối vật lý.
+     */
     public static Connection getConnection() throws ClassNotFoundException, SQLException {
-        Connection conn = null;
-        Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
-        String url = "jdbc:sqlserver://localhost:1433;databaseName=" + DB_NAME;
-        conn = DriverManager.getConnection(url, DB_USER_NAME, DB_PASSWORD);
-        return conn;
+        return getPool().getConnection();
+    }
+
+    private static ConnectionPool getPool() throws ClassNotFoundException {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DBUtils.class) {
+                p = pool;
+                if (p == null) {
+                    Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
+                    String url = "jdbc:sqlserver://localhost:1433;databaseName=" + DB_NAME;
+                    p = new ConnectionPool(url, DB_USER_NAME, DB_PASSWORD);
+                    pool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    // Gauges của pool (active, idle, waiters, wait time...) cho /api/admin/metrics
+    public static Map<String, Object> getPoolStats() {
+        ConnectionPool p = pool;
+        return p != null ? p.getStats() : Collections.<String, Object>emptyMap();
+    }
+
+    // Hit/miss của PreparedStatement cache theo fingerprint SQL (top 20 query)
+    public static Map<String, Object> getStatementCacheStats() {
+        return StatementCache.getStats(20);
+    }
+
+    // Đóng pool khi undeploy webapp (gọi từ AppContextListener)
+    public static void shutdownPool() {
+        synchronized (DBUtils.class) {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
     }
 }
@@ -40,10 +40,10 @@ package mylib;
  *    - Subject và nội dung HTML do caller cung cấp
  *    - Return: true = success, false = failed
  * 
- * 3. createSession():
- *    - Tạo SMTP session với Gmail
- *    - Config STARTTLS, authentication
- *    - Private helper method
+ * 3. getSession() / send() / sendBulk():
+ *    - 1 Session dùng chung + pool Transport đã connect sẵn (SmtpTransportPool)
+ *    - sendBulk / sendCustomEmailBulk: nhiều mail trên cùng 1 kết nối đã auth
+ *    - getPoolStats() cho /api/admin/metrics, shutdownPool() khi undeploy
  * 
  * 4. generateOtp():
  *    - Sinh mã OTP 6 chữ số ngẫu nhiên (100000 - 999999)
@@ -59,9 +59,9 @@ package mylib;
  * LUỒNG GỬI EMAIL:
  * 1. Controller gọi EmailService.generateOtp()
  * 2. Controller gọi EmailService.sendRegistrationOtpEmail(email, otp)
- * 3. EmailService.createSession() tạo SMTP connection
- * 4. Tạo MimeMessage với HTML content
- * 5. Transport.send(message) gửi email qua Gmail SMTP
+ * 3. Tạo MimeMessage từ Session dùng chung
+ * 4. Mượn Transport đã connect từ pool (NOOP kiểm tra nếu idle lâu)
+ * 5. sendMessage trên kết nối đó, trả Transport về pool
  * 6. Return true/false
  * 
  * ERROR HANDLING:
@@ -88,13 +88,13 @@ package mylib;
  * - Config: SMTP settings (host, port, credentials)
  */
 
-import java.util.Properties;
-import javax.mail.Authenticator;
-import javax.mail.PasswordAuthentication;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 
@@ -113,7 +113,7 @@ public class EmailService {
     // ================== 1) GỬI EMAIL OTP ĐĂNG KÝ ==================
     public static boolean sendRegistrationOtpEmail(String toEmail, String otp) {
         try {
-            Session session = createSession();
+            Session session = getSession();
             MimeMessage message = new MimeMessage(session);
 
             message.setFrom(new InternetAddress(EMAIL_FROM, "FPT Event Management", "UTF-8"));
@@ -134,7 +134,7 @@ public class EmailService {
                     + "</body></html>";
 
             message.setContent(html, "text/html; charset=UTF-8");
-            Transport.send(message);
+            send(message);
             System.out.println("[EmailService] ✅ Registration OTP sent to: " + toEmail);
             return true;
 
@@ -149,7 +149,7 @@ public class EmailService {
     // ==================
     public static boolean sendCustomEmail(String toEmail, String subject, String htmlContent) {
         try {
-            Session session = createSession();
+            Session session = getSession();
             MimeMessage message = new MimeMessage(session);
 
             message.setFrom(new InternetAddress(EMAIL_FROM, "FPT Event Management", "UTF-8"));
@@ -157,7 +157,7 @@ public class EmailService {
             message.setSubject(subject, "UTF-8");
             message.setContent(htmlContent, "text/html; charset=UTF-8");
 
-            Transport.send(message);
+            send(message);
             System.out.println("[EmailService] ✅ Custom email sent to: " + toEmail);
             return true;
 
@@ -168,22 +168,79 @@ public class EmailService {
         }
     }
 
-    // ================== 3) HÀM TẠO PHIÊN SMTP CHUNG ==================
-    private static Session createSession() {
-        Properties props = new Properties();
-        props.put("mail.smtp.auth", "true");
-        props.put("mail.smtp.starttls.enable", "true");
-        props.put("mail.smtp.host", SMTP_HOST);
-        props.put("mail.smtp.port", SMTP_PORT);
-        props.put("mail.smtp.ssl.protocols", "TLSv1.2");
-        props.put("mail.debug", "true");
-
-        return Session.getInstance(props, new Authenticator() {
-            @Override
-            protected PasswordAuthentication getPasswordAuthentication() {
-                return new PasswordAuthentication(EMAIL_FROM, EMAIL_PASSWORD);
+    // ================== 2b) GỬI CÙNG 1 EMAIL CHO NHIỀU NGƯỜI (nhắc sự kiện, thông báo...)
+    // Mỗi người nhận 1 message riêng nhưng gửi liên tiếp trên 1 kết nối SMTP
+    public static int sendCustomEmailBulk(List<String> toEmails, String subject, String htmlContent) {
+        try {
+            Session session = getSession();
+            List<MimeMessage> messages = new ArrayList<>();
+            for (String to : toEmails) {
+                MimeMessage message = new MimeMessage(session);
+                message.setFrom(new InternetAddress(EMAIL_FROM, "FPT Event Management", "UTF-8"));
+                message.addRecipient(Message.RecipientType.TO, new InternetAddress(to));
+                message.setSubject(subject, "UTF-8");
+                message.setContent(htmlContent, "text/html; charset=UTF-8");
+                messages.add(message);
+            }
+
+            int sent = sendBulk(messages);
+            System.out.println("[EmailService] ✅ Bulk email sent: " + sent + "/" + toEmails.size());
+            return sent;
+
+        } catch (Exception e) {
+            System.err.println("[EmailService] ❌ Failed to send bulk email: " + e.getMessage());
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    // ================== 3) SESSION + POOL KẾT NỐI SMTP DÙNG CHUNG ==================
+    // Khởi tạo lazy ở lần gửi đầu tiên (giống DBUtils / ConnectionPool)
+    private static volatile SmtpTransportPool pool;
+
+    private static SmtpTransportPool getPool() {
+        SmtpTransportPool p = pool;
+        if (p == null) {
+            synchronized (EmailService.class) {
+                p = pool;
+                if (p == null) {
+                    p = new SmtpTransportPool(SMTP_HOST, Integer.parseInt(SMTP_PORT), EMAIL_FROM, EMAIL_PASSWORD);
+                    pool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    // Session dùng chung để tạo MimeMessage (EmailUtils cũng dùng)
+    public static Session getSession() {
+        return getPool().getSession();
+    }
+
+    // Gửi qua Transport đã connect sẵn trong pool (thay cho Transport.send)
+    public static void send(Message message) throws MessagingException {
+        getPool().send(message);
+    }
+
+    // Gửi nhiều message trên cùng 1 kết nối, trả về số mail gửi được
+    public static int sendBulk(List<? extends Message> messages) throws MessagingException {
+        return getPool().sendBulk(messages);
+    }
+
+    // Gauges của pool SMTP cho /api/admin/metrics
+    public static Map<String, Object> getPoolStats() {
+        SmtpTransportPool p = pool;
+        return p != null ? p.getStats() : Collections.<String, Object>emptyMap();
+    }
+
+    // Đóng các kết nối SMTP khi undeploy webapp (gọi từ AppContextListener)
+    public static void shutdownPool() {
+        synchronized (EmailService.class) {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
             }
-        });
+        }
     }
 
     // ================== 4) SINH OTP 6 CHỮ SỐ ==================
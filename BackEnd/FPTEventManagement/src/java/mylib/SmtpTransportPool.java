@@ -0,0 +1,364 @@
+package mylib;
+
+/**
+ * ========================================================================================================
+ * MYLIB: SmtpTransportPool - POOL KẾT NỐI SMTP (javax.mail Transport) DÙNG CHUNG
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ: - EmailService / EmailUtils tạo Session mới cho mỗi email, và
+ * Transport.send() mở kết nối TCP + STARTTLS + AUTH rồi đóng ngay => mỗi email
+ * tốn vài trăm ms bắt tay, gửi OTP / nhắc sự kiện hàng loạt chỉ được vài
+ * mail/giây
+ *
+ * CÁCH HOẠT ĐỘNG: - 1 Session dùng chung (Session thread-safe) - Giữ tối đa
+ * maxSize Transport đã connect + authenticate, mượn / trả như ConnectionPool -
+ * Transport KHÔNG thread-safe => mỗi lần chỉ 1 thread dùng 1 Transport
+ *
+ * TÍNH NĂNG: - Health check: Transport nằm idle quá noopAfterMs thì gọi
+ * isConnected() (SMTPTransport gửi lệnh NOOP), hỏng thì connect lại - Idle quá
+ * maxIdleMs => đóng, mở kết nối mới (server thường tự cắt kết nối idle) -
+ * Gửi quá maxMessagesPerConnection trên 1 kết nối => đóng, mở lại (Gmail giới
+ * hạn số mail / kết nối) - Lỗi kết nối lúc gửi => bỏ Transport đó, thử lại 1
+ * lần trên kết nối mới (SendFailedException = địa chỉ sai thì không thử lại) -
+ * sendBulk: nhiều message liên tiếp trên CÙNG 1 kết nối đã auth
+ *
+ * CẤU HÌNH (System property, hoặc biến môi trường dạng SMTP_POOL_MAX_SIZE):
+ * smtp.pool.maxSize, smtp.pool.maxWaitMs, smtp.pool.noopAfterMs,
+ * smtp.pool.maxIdleMs, smtp.pool.maxMessagesPerConnection, smtp.debug
+ */
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Authenticator;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.PasswordAuthentication;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+public class SmtpTransportPool {
+
+    private final String host;
+    private final int port;
+    private final String user;
+    private final String password;
+    private final Session session;
+
+    private final int maxSize;
+    private final long maxWaitMs;
+    private final long noopAfterMs;
+    private final long maxIdleMs;
+    private final int maxMessagesPerConnection;
+
+    private final Semaphore permits;
+
+    // Transport rảnh: đầu deque là cái vừa trả (kết nối còn "ấm")
+    private final LinkedBlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile boolean shutdown = false;
+
+    // ===== Gauges / counters =====
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicLong totalBorrows = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong connectsOpened = new AtomicLong();
+    private final AtomicLong connectsClosed = new AtomicLong();
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final AtomicLong noopChecks = new AtomicLong();
+    private final AtomicLong noopFailures = new AtomicLong();
+    private final AtomicLong retriedSends = new AtomicLong();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong sendFailures = new AtomicLong();
+    private final AtomicLong totalSendNanos = new AtomicLong();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+
+    public SmtpTransportPool(String host, int port, String user, String password) {
+        this.host = host;
+        this.port = port;
+        this.user = user;
+        this.password = password;
+
+        this.maxSize = Math.max(1, AppProps.getInt("smtp.pool.maxSize", 3));
+        this.maxWaitMs = AppProps.getLong("smtp.pool.maxWaitMs", 30_000L);
+        this.noopAfterMs = AppProps.getLong("smtp.pool.noopAfterMs", 10_000L);
+        this.maxIdleMs = AppProps.getLong("smtp.pool.maxIdleMs", 120_000L);
+        this.maxMessagesPerConnection = Math.max(1, AppProps.getInt("smtp.pool.maxMessagesPerConnection", 90));
+
+        this.permits = new Semaphore(maxSize, true);
+        this.session = createSession();
+
+        System.out.println("[SmtpTransportPool] Started: host=" + host + ":" + port + ", maxSize=" + maxSize
+                + ", noopAfterMs=" + noopAfterMs + ", maxIdleMs=" + maxIdleMs
+                + ", maxMessagesPerConnection=" + maxMessagesPerConnection);
+    }
+
+    private Session createSession() {
+        Properties props = new Properties();
+        props.put("mail.smtp.auth", "true");
+        props.put("mail.smtp.starttls.enable", "true");
+        props.put("mail.smtp.host", host);
+        props.put("mail.smtp.port", String.valueOf(port));
+        props.put("mail.smtp.ssl.protocols", "TLSv1.2");
+        // Kết nối giữ lâu => bắt buộc có timeout, tránh thread treo khi server im lặng
+        props.put("mail.smtp.connectiontimeout", "10000");
+        props.put("mail.smtp.timeout", "20000");
+        props.put("mail.smtp.writetimeout", "20000");
+        props.put("mail.debug", AppProps.get("smtp.debug", "false"));
+
+        return Session.getInstance(props, new Authenticator() {
+            @Override
+            protected PasswordAuthentication getPasswordAuthentication() {
+                return new PasswordAuthentication(user, password);
+            }
+        });
+    }
+
+    // Session dùng chung để tạo MimeMessage
+    public Session getSession() {
+        return session;
+    }
+
+    // ================== GỬI ==================
+    /**
+     * Gửi 1 message qua 1 Transport mượn từ pool.
+     */
+    public void send(Message message) throws MessagingException {
+        PooledTransport[] holder = {borrow()};
+        try {
+            sendOne(holder, message);
+        } finally {
+            giveBack(holder[0]);
+        }
+    }
+
+    /**
+     * Gửi nhiều message liên tiếp trên cùng 1 kết nối đã auth (không bắt tay
+     * lại giữa các mail). Trả về số message gửi thành công; message lỗi được
+     * ghi log và bỏ qua.
+     */
+    public int sendBulk(List<? extends Message> messages) throws MessagingException {
+        int ok = 0;
+        PooledTransport[] holder = {borrow()};
+        try {
+            for (Message m : messages) {
+                try {
+                    sendOne(holder, m);
+                    ok++;
+                } catch (MessagingException e) {
+                    System.err.println("[SmtpTransportPool] Bulk send failed for 1 message: " + e.getMessage());
+                }
+            }
+        } finally {
+            giveBack(holder[0]);
+        }
+        return ok;
+    }
+
+    /**
+     * Gửi trên holder[0]; lỗi kết nối thì bỏ Transport đó, connect lại và thử
+     * thêm 1 lần. holder[0] luôn là Transport còn dùng được (hoặc null) để
+     * caller trả về pool.
+     */
+    private void sendOne(PooledTransport[] holder, Message message) throws MessagingException {
+        if (message.getSentDate() == null) {
+            message.setSentDate(new java.util.Date());
+        }
+        message.saveChanges();
+
+        for (int attempt = 0;; attempt++) {
+            long start = System.nanoTime();
+            try {
+                if (holder[0] == null || holder[0].sent >= maxMessagesPerConnection) {
+                    destroy(holder[0]);
+                    holder[0] = null;
+                    holder[0] = connect();
+                }
+                holder[0].transport.sendMessage(message, message.getAllRecipients());
+                holder[0].sent++;
+                messagesSent.incrementAndGet();
+                recordSend(System.nanoTime() - start);
+                return;
+            } catch (SendFailedException e) {
+                // Địa chỉ người nhận bị từ chối: kết nối vẫn dùng được, không thử lại
+                sendFailures.incrementAndGet();
+                throw e;
+            } catch (MessagingException | IllegalStateException e) {
+                // Kết nối bị server cắt / timeout => bỏ Transport này
+                destroy(holder[0]);
+                holder[0] = null;
+                if (attempt >= 1) {
+                    sendFailures.incrementAndGet();
+                    throw e instanceof MessagingException
+                            ? (MessagingException) e
+                            : new MessagingException(e.getMessage(), e);
+                }
+                retriedSends.incrementAndGet();
+            }
+        }
+    }
+
+    // ================== MƯỢN / TRẢ ==================
+    private PooledTransport borrow() throws MessagingException {
+        if (shutdown) {
+            throw new MessagingException("SMTP pool đã shutdown");
+        }
+
+        boolean acquired;
+        waiters.incrementAndGet();
+        try {
+            acquired = permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Bị interrupt khi chờ kết nối SMTP", e);
+        } finally {
+            waiters.decrementAndGet();
+        }
+        if (!acquired) {
+            borrowTimeouts.incrementAndGet();
+            throw new MessagingException("Hết kết nối SMTP sau " + maxWaitMs + "ms (maxSize=" + maxSize + ")");
+        }
+
+        active.incrementAndGet();
+        totalBorrows.incrementAndGet();
+        try {
+            PooledTransport pt = takeUsableIdle();
+            return pt != null ? pt : connect();
+        } catch (MessagingException | RuntimeException e) {
+            active.decrementAndGet();
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void giveBack(PooledTransport pt) {
+        try {
+            if (pt != null) {
+                if (shutdown) {
+                    destroy(pt);
+                } else {
+                    pt.lastUsedAt = System.currentTimeMillis();
+                    idle.offerFirst(pt);
+                }
+            }
+        } finally {
+            active.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    /**
+     * Lấy Transport rảnh còn dùng được: idle quá lâu thì đóng, idle vừa phải
+     * thì NOOP kiểm tra trước khi dùng.
+     */
+    private PooledTransport takeUsableIdle() {
+        PooledTransport pt;
+        while ((pt = idle.pollFirst()) != null) {
+            long idleMs = System.currentTimeMillis() - pt.lastUsedAt;
+            if (idleMs > maxIdleMs) {
+                destroy(pt);
+                continue;
+            }
+            if (idleMs > noopAfterMs) {
+                noopChecks.incrementAndGet();
+                boolean alive;
+                try {
+                    alive = pt.transport.isConnected(); // SMTPTransport: gửi NOOP
+                } catch (RuntimeException e) {
+                    alive = false;
+                }
+                if (!alive) {
+                    noopFailures.incrementAndGet();
+                    destroy(pt);
+                    continue;
+                }
+            }
+            return pt;
+        }
+        return null;
+    }
+
+    private PooledTransport connect() throws MessagingException {
+        Transport t = session.getTransport("smtp");
+        try {
+            t.connect(host, port, user, password);
+        } catch (MessagingException e) {
+            connectFailures.incrementAndGet();
+            throw e;
+        }
+        connectsOpened.incrementAndGet();
+        return new PooledTransport(t);
+    }
+
+    private void destroy(PooledTransport pt) {
+        if (pt == null) {
+            return;
+        }
+        try {
+            pt.transport.close();
+        } catch (Exception ignore) {
+        }
+        connectsClosed.incrementAndGet();
+    }
+
+    // ================== SHUTDOWN (gọi khi undeploy webapp) ==================
+    public void shutdown() {
+        shutdown = true;
+        PooledTransport pt;
+        while ((pt = idle.pollFirst()) != null) {
+            destroy(pt);
+        }
+        System.out.println("[SmtpTransportPool] Shutdown. In-use transports will be closed on return: " + active.get());
+    }
+
+    // ================== GAUGES ==================
+    public Map<String, Object> getStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long sent = messagesSent.get();
+        m.put("maxSize", maxSize);
+        m.put("active", active.get());
+        m.put("idle", idle.size());
+        m.put("waiters", waiters.get());
+        m.put("totalBorrows", totalBorrows.get());
+        m.put("borrowTimeouts", borrowTimeouts.get());
+        m.put("connectsOpened", connectsOpened.get());
+        m.put("connectsClosed", connectsClosed.get());
+        m.put("connectFailures", connectFailures.get());
+        m.put("noopChecks", noopChecks.get());
+        m.put("noopFailures", noopFailures.get());
+        m.put("retriedSends", retriedSends.get());
+        m.put("messagesSent", sent);
+        m.put("sendFailures", sendFailures.get());
+        m.put("messagesPerConnect", connectsOpened.get() > 0 ? Math.round(sent * 10.0 / connectsOpened.get()) / 10.0 : 0.0);
+        m.put("avgSendMs", sent > 0 ? TimeUnit.NANOSECONDS.toMillis(totalSendNanos.get() / sent) : 0);
+        m.put("maxSendMs", TimeUnit.NANOSECONDS.toMillis(maxSendNanos.get()));
+        return m;
+    }
+
+    private void recordSend(long nanos) {
+        totalSendNanos.addAndGet(nanos);
+        long prev;
+        do {
+            prev = maxSendNanos.get();
+        } while (nanos > prev && !maxSendNanos.compareAndSet(prev, nanos));
+    }
+
+    // ================== TRANSPORT VẬT LÝ ==================
+    private static final class PooledTransport {
+
+        final Transport transport;
+        long lastUsedAt = System.currentTimeMillis();
+        int sent;
+
+        PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
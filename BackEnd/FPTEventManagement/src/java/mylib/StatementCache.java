@@ -0,0 +1,304 @@
+package mylib;
+
+/**
+ * ========================================================================================================
+ * MYLIB: StatementCache - CACHE PREPAREDSTATEMENT THEO SQL TEXT (MỖI KẾT NỐI VẬT LÝ 1 CACHE)
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ: - DAO gọi conn.prepareStatement(sql) mỗi lần => SQL Server phải
+ * sp_prepare / sp_unprepare lại cùng 1 câu lệnh liên tục (getTicketById,
+ * getEventById, getSeatById...)
+ *
+ * CÁCH HOẠT ĐỘNG: - Mỗi kết nối vật lý trong ConnectionPool có 1 LRU (key = SQL
+ * text + kiểu generated keys) - prepareStatement() trả PROXY: close() chỉ
+ * đóng ResultSet còn mở, reset statement (clearParameters, clearBatch,
+ * fetchSize / maxRows / queryTimeout về 0) và trả về cache, không đóng thật;
+ * reset lỗi => đóng thật, bỏ khỏi cache - getConnection() của proxy trả
+ * Connection proxy của pool (người đang mượn), không lộ kết nối vật lý - Statement
+ * đang được dùng (chưa close) mà cùng SQL bị prepare lần nữa => tạo statement
+ * thường, không cache - Vượt dung lượng => đóng statement ít dùng nhất
+ *
+ * THỐNG KÊ: - hit/miss theo "fingerprint" của SQL (gom khoảng trắng, gom
+ * danh sách IN (?,?,?) thành IN (?..)) để biết query nào hưởng lợi
+ */
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+final class StatementCache {
+
+    // Giới hạn số fingerprint được thống kê (tránh map phình vô hạn với SQL động)
+    private static final int MAX_FINGERPRINTS = 500;
+    // SQL text -> fingerprint, tránh chạy regex mỗi lần prepare (SQL động: ngừng nhớ khi đầy)
+    private static final int MAX_SQL_TEXTS = 2000;
+    private static final Map<String, String> FINGERPRINT_BY_SQL = new ConcurrentHashMap<>();
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern IN_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+
+    private static final Map<String, FingerprintStats> STATS = new ConcurrentHashMap<>();
+    private static final LongAdder TOTAL_HITS = new LongAdder();
+    private static final LongAdder TOTAL_MISSES = new LongAdder();
+    private static final LongAdder TOTAL_EVICTIONS = new LongAdder();
+
+    private final Connection raw;
+    private final int capacity;
+
+    // access-order LinkedHashMap = LRU
+    private final LinkedHashMap<String, CachedStatement> lru;
+
+    StatementCache(Connection raw, int capacity) {
+        this.raw = raw;
+        this.capacity = capacity;
+        this.lru = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Dùng thay cho raw.prepareStatement(sql) / raw.prepareStatement(sql,
+     * autoGeneratedKeys). owner = Connection proxy mà caller đang giữ
+     * (ps.getConnection() trả về cái này).
+     */
+    PreparedStatement prepare(String sql, int autoGeneratedKeys, Connection owner) throws SQLException {
+        if (capacity <= 0) {
+            CachedStatement plain = new CachedStatement("", prepareRaw(sql, autoGeneratedKeys));
+            plain.uncached = true;
+            plain.owner = owner;
+            plain.inUse = true;
+            return plain.proxy;
+        }
+
+        String key = autoGeneratedKeys + "|" + sql;
+        FingerprintStats fs = statsFor(sql);
+
+        CachedStatement cs;
+        synchronized (this) {
+            cs = lru.get(key);
+            if (cs != null && !cs.inUse) {
+                cs.owner = owner;
+                cs.inUse = true;
+            } else if (cs != null) {
+                cs = null; // cùng SQL đang mở ở chỗ khác => không dùng chung
+            }
+        }
+
+        if (cs != null) {
+            TOTAL_HITS.increment();
+            if (fs != null) {
+                fs.hits.increment();
+            }
+            return cs.proxy;
+        }
+
+        TOTAL_MISSES.increment();
+        if (fs != null) {
+            fs.misses.increment();
+        }
+
+        PreparedStatement ps = prepareRaw(sql, autoGeneratedKeys);
+        CachedStatement created = new CachedStatement(key, ps);
+        created.owner = owner;
+        created.inUse = true;
+
+        List<CachedStatement> toClose = new ArrayList<>();
+        synchronized (this) {
+            if (lru.containsKey(key)) {
+                // slot đã có statement (đang được dùng) => statement mới này không cache
+                created.uncached = true;
+            } else {
+                lru.put(key, created);
+                Iterator<CachedStatement> it = lru.values().iterator();
+                while (lru.size() > capacity && it.hasNext()) {
+                    CachedStatement eldest = it.next();
+                    if (eldest == created) {
+                        continue;
+                    }
+                    it.remove();
+                    TOTAL_EVICTIONS.increment();
+                    if (eldest.inUse) {
+                        eldest.uncached = true; // đóng thật khi caller close()
+                    } else {
+                        toClose.add(eldest);
+                    }
+                }
+            }
+        }
+        for (CachedStatement c : toClose) {
+            closeQuietly(c.ps);
+        }
+        return created.proxy;
+    }
+
+    private PreparedStatement prepareRaw(String sql, int autoGeneratedKeys) throws SQLException {
+        return autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS
+                ? raw.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : raw.prepareStatement(sql);
+    }
+
+    // Caller gọi ps.close(). Reset mọi thứ DAO có thể đã đổi để lần mượn sau
+    // không chạy lại batch cũ (addBatch rồi lỗi trước executeBatch) hay kế thừa fetchSize...
+    // ResultSet DAO quên đóng cũng đóng ở đây, không để cursor sang người mượn sau
+    private void giveBack(CachedStatement cs) {
+        boolean reusable;
+        try {
+            ResultSet rs = cs.ps.getResultSet();
+            if (rs != null) {
+                rs.close();
+            }
+            cs.ps.clearParameters();
+            cs.ps.clearBatch();
+            cs.ps.setFetchSize(0);
+            cs.ps.setMaxRows(0);
+            cs.ps.setQueryTimeout(0);
+            cs.ps.clearWarnings();
+            reusable = !cs.uncached;
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        synchronized (this) {
+            cs.inUse = false;
+            cs.owner = null;
+            if (!reusable && lru.get(cs.key) == cs) {
+                lru.remove(cs.key);
+            }
+        }
+        if (!reusable) {
+            closeQuietly(cs.ps);
+        }
+    }
+
+    // Gọi khi kết nối vật lý bị đóng hẳn
+    synchronized void closeAll() {
+        for (CachedStatement cs : lru.values()) {
+            closeQuietly(cs.ps);
+        }
+        lru.clear();
+    }
+
+    private static void closeQuietly(Statement st) {
+        try {
+            st.close();
+        } catch (SQLException ignore) {
+        }
+    }
+
+    // ================== PROXY STATEMENT ==================
+    private final class CachedStatement implements InvocationHandler {
+
+        final String key;
+        final PreparedStatement ps;
+        final PreparedStatement proxy;
+        volatile boolean inUse;
+        volatile boolean uncached;
+        volatile Connection owner;
+
+        CachedStatement(String key, PreparedStatement ps) {
+            this.key = key;
+            this.ps = ps;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    this);
+        }
+
+        @Override
+        public Object invoke(Object proxyObj, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) {
+                        giveBack(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return !inUse || ps.isClosed();
+                case "equals":
+                    return proxyObj == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxyObj);
+                default:
+                    break;
+            }
+            if (!inUse) {
+                throw new SQLException("PreparedStatement đã đóng");
+            }
+            if ("getConnection".equals(method.getName())) {
+                return owner;
+            }
+            try {
+                return method.invoke(ps, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // ================== THỐNG KÊ ==================
+    private static final class FingerprintStats {
+
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+    }
+
+    private static FingerprintStats statsFor(String sql) {
+        String fp = fingerprint(sql);
+        FingerprintStats fs = STATS.get(fp);
+        if (fs == null && STATS.size() < MAX_FINGERPRINTS) {
+            fs = STATS.computeIfAbsent(fp, k -> new FingerprintStats());
+        }
+        return fs;
+    }
+
+    static String fingerprint(String sql) {
+        String fp = FINGERPRINT_BY_SQL.get(sql);
+        if (fp != null) {
+            return fp;
+        }
+        String s = WHITESPACE.matcher(sql).replaceAll(" ").trim();
+        fp = IN_LIST.matcher(s).replaceAll("?..");
+        if (FINGERPRINT_BY_SQL.size() < MAX_SQL_TEXTS) {
+            FINGERPRINT_BY_SQL.put(sql, fp);
+        }
+        return fp;
+    }
+
+    static Map<String, Object> getStats(int topN) {
+        List<Map.Entry<String, FingerprintStats>> entries = new ArrayList<>(STATS.entrySet());
+        entries.sort((a, b) -> Long.compare(
+                b.getValue().hits.sum() + b.getValue().misses.sum(),
+                a.getValue().hits.sum() + a.getValue().misses.sum()));
+
+        List<Map<String, Object>> top = new ArrayList<>();
+        for (int i = 0; i < entries.size() && i < topN; i++) {
+            Map.Entry<String, FingerprintStats> e = entries.get(i);
+            long h = e.getValue().hits.sum();
+            long m = e.getValue().misses.sum();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("sql", e.getKey());
+            row.put("hits", h);
+            row.put("misses", m);
+            row.put("hitRatio", (h + m) > 0 ? String.format("%.1f%%", h * 100.0 / (h + m)) : "0.0%");
+            top.add(row);
+        }
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("hits", TOTAL_HITS.sum());
+        m.put("misses", TOTAL_MISSES.sum());
+        m.put("evictions", TOTAL_EVICTIONS.sum());
+        m.put("fingerprints", STATS.size());
+        m.put("top", top);
+        return m;
+    }
+}
@@ -0,0 +1,390 @@
+package service;
+
+import DAO.VenueAreaDAO;
+import DTO.AreaBooking;
+import mylib.AppProps;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: AreaScheduleIndex - LỊCH CHIẾM KHU VỰC TRONG RAM (THAY NOT EXISTS / COUNT TRÊN Event)
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ:
+ * - getFreeAreasWith1hBuffer (NOT EXISTS cho từng area) quét Event mỗi lần organizer thử
+ *   1 khung giờ; thử nhiều ngày = nhiều lần quét
+ *
+ * PHẠM VI: chỉ dùng cho đường TÌM KIẾM (khu vực trống, khoảng trống). Index chỉ thấy ghi
+ * từ node khác sau mỗi lần nạp lại => APPROVE (ghi) vẫn kiểm tra trùng lịch trên DB, trong
+ * transaction (EventRequestDAO.approveRequestAndCreateEvent)
+ *
+ * CẤU TRÚC:
+ * - Mỗi area: các cửa sổ bận [start - 1h, end + 1h) của event OPEN / CLOSED / DRAFT, sắp theo
+ *   điểm đầu, kèm maxTo[i] = max điểm cuối của cửa sổ 0..i
+ * - Trùng lịch [S, E) <=> có cửa sổ from < E và to > S
+ *   <=> gọi i = cửa sổ cuối cùng có from < E (tìm nhị phân) thì maxTo[i] > S  => O(log n)
+ * - Liệt kê cửa sổ giao [S, E): đi lùi từ i, dừng khi maxTo <= S => O(log n + k)
+ * - Mảng của area là bất biến, đổi = dựng lại mảng của riêng area đó (ghi hiếm, đọc nhiều)
+ *
+ * CẬP NHẬT:
+ * - start(): nạp toàn bộ lúc deploy; nạp lại mỗi areaIndex.reloadSec (600s) => thấy ghi từ node khác
+ *   (query KHÔNG giữ LOCK; event được put/refresh trong lúc query giữ trạng thái mới hơn đó)
+ * - put(): sau approveRequestAndCreateEvent (đã commit)
+ * - refresh(eventId): đọc lại 1 event (sau disableEventIfNoTickets)
+ * - Nạp / refresh lỗi => isReady() = false, DAO quay về SQL cũ tới lần nạp sau
+ */
+public class AreaScheduleIndex {
+
+    public static final long BUFFER_MS = 60L * 60L * 1000L;
+
+    private static final long RELOAD_SEC = Math.max(30L, AppProps.getLong("areaIndex.reloadSec", 600L));
+
+    private static final VenueAreaDAO venueAreaDAO = new VenueAreaDAO();
+
+    // Ghi (nạp / put / refresh) tuần tự qua LOCK; đọc không khoá
+    private static final Object LOCK = new Object();
+    private static final Map<Integer, AreaWindows> BY_AREA = new ConcurrentHashMap<>();
+    // Dữ liệu gốc để dựng lại mảng: areaId -> (eventId -> [from, to]); eventId -> areaId
+    private static final Map<Integer, Map<Integer, long[]>> AREA_EVENTS = new HashMap<>();
+    private static final Map<Integer, Integer> EVENT_AREA = new HashMap<>();
+    // != null khi reload đang query: các event put/refresh trong lúc đó (không lấy từ snapshot)
+    private static Set<Integer> touchedDuringReload;
+
+    private static volatile boolean ready;
+    private static ScheduledExecutorService scheduler;
+
+    // ===== Thống kê =====
+    private static final LongAdder CONFLICT_QUERIES = new LongAdder();
+    private static final LongAdder SLOT_QUERIES = new LongAdder();
+    private static final LongAdder LOADS = new LongAdder();
+    private static final LongAdder LOAD_FAILURES = new LongAdder();
+    private static final LongAdder UPDATES = new LongAdder();
+    private static final AtomicLong LAST_LOAD_MS = new AtomicLong();
+    private static volatile long loadedAt;
+
+    /**
+     * Cửa sổ bận của 1 area (bất biến), sắp theo from.
+     */
+    private static final class AreaWindows {
+
+        final long[] from;
+        final long[] to;
+        final long[] maxTo;
+
+        AreaWindows(long[][] windows) {
+            Arrays.sort(windows, (x, y) -> Long.compare(x[0], y[0]));
+            int n = windows.length;
+            from = new long[n];
+            to = new long[n];
+            maxTo = new long[n];
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                from[i] = windows[i][0];
+                to[i] = windows[i][1];
+                max = Math.max(max, to[i]);
+                maxTo[i] = max;
+            }
+        }
+
+        // Chỉ số cửa sổ cuối cùng có from < x, -1 nếu không có
+        int lastStartingBefore(long x) {
+            int lo = 0, hi = from.length - 1, ans = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (from[mid] < x) {
+                    ans = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return ans;
+        }
+
+        boolean overlaps(long s, long e) {
+            int i = lastStartingBefore(e);
+            return i >= 0 && maxTo[i] > s;
+        }
+
+        // Cửa sổ giao [s, e), sắp theo from
+        List<long[]> overlapping(long s, long e) {
+            List<long[]> out = new ArrayList<>();
+            for (int i = lastStartingBefore(e); i >= 0 && maxTo[i] > s; i--) {
+                if (to[i] > s) {
+                    out.add(new long[]{from[i], to[i]});
+                }
+            }
+            java.util.Collections.reverse(out);
+            return out;
+        }
+    }
+
+    // ================== VÒNG ĐỜI (AppContextListener) ==================
+    public static synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        reload();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "area-schedule-reload");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(AreaScheduleIndex::reload, RELOAD_SEC, RELOAD_SEC, TimeUnit.SECONDS);
+        System.out.println("[AreaScheduleIndex] Started: ready=" + ready + ", areas=" + BY_AREA.size()
+                + ", reloadSec=" + RELOAD_SEC);
+    }
+
+    public static synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        ready = false;
+        System.out.println("[AreaScheduleIndex] Stopped");
+    }
+
+    public static boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Nạp lại toàn bộ từ Event. Query ngoài LOCK (put/refresh của request
+     * không phải chờ), rồi mới thay dữ liệu trong LOCK; event vừa put/refresh
+     * trong lúc query giữ trạng thái hiện tại thay vì snapshot cũ hơn.
+     */
+    public static void reload() {
+        long t0 = System.currentTimeMillis();
+        Set<Integer> touched = new HashSet<>();
+        synchronized (LOCK) {
+            if (touchedDuringReload != null) {
+                return; // đang có 1 lần nạp khác
+            }
+            touchedDuringReload = touched;
+        }
+
+        List<AreaBooking> rows;
+        try {
+            rows = venueAreaDAO.getAreaBookings(null, null);
+        } catch (Exception e) {
+            synchronized (LOCK) {
+                touchedDuringReload = null;
+            }
+            LOAD_FAILURES.increment();
+            ready = false;
+            System.err.println("[ERROR] AreaScheduleIndex.reload: " + e.getMessage());
+            return;
+        }
+
+        synchronized (LOCK) {
+            touchedDuringReload = null;
+            Map<Integer, Map<Integer, long[]>> areaEvents = new HashMap<>();
+            Map<Integer, Integer> eventArea = new HashMap<>();
+            for (AreaBooking b : rows) {
+                if (!touched.contains(b.getEventId())) {
+                    areaEvents.computeIfAbsent(b.getAreaId(), k -> new HashMap<>()).put(b.getEventId(), window(b));
+                    eventArea.put(b.getEventId(), b.getAreaId());
+                }
+            }
+            for (Integer eventId : touched) {
+                Integer areaId = EVENT_AREA.get(eventId);
+                if (areaId != null) {
+                    areaEvents.computeIfAbsent(areaId, k -> new HashMap<>()).put(eventId, AREA_EVENTS.get(areaId).get(eventId));
+                    eventArea.put(eventId, areaId);
+                }
+            }
+            AREA_EVENTS.clear();
+            AREA_EVENTS.putAll(areaEvents);
+            EVENT_AREA.clear();
+            EVENT_AREA.putAll(eventArea);
+            BY_AREA.keySet().retainAll(AREA_EVENTS.keySet());
+            for (Integer areaId : AREA_EVENTS.keySet()) {
+                rebuild(areaId);
+            }
+            ready = true;
+            loadedAt = System.currentTimeMillis();
+        }
+        LOADS.increment();
+        LAST_LOAD_MS.set(System.currentTimeMillis() - t0);
+    }
+
+    // ================== CẬP NHẬT ==================
+    /**
+     * Event vừa tạo / đổi lịch (đã commit). Status không chiếm lịch => bỏ
+     * khỏi index.
+     */
+    public static void put(int eventId, int areaId, Timestamp start, Timestamp end, String status) {
+        if (start == null || end == null) {
+            refresh(eventId);
+            return;
+        }
+        synchronized (LOCK) {
+            apply(new AreaBooking(eventId, areaId, start, end, status), eventId);
+        }
+    }
+
+    /**
+     * Đọc lại lịch của 1 event từ DB (sau khi đổi status / xoá).
+     */
+    public static void refresh(int eventId) {
+        AreaBooking b;
+        try {
+            b = venueAreaDAO.getAreaBookingByEventId(eventId);
+        } catch (Exception e) {
+            // Không biết trạng thái thật => dùng SQL tới lần nạp sau
+            ready = false;
+            System.err.println("[ERROR] AreaScheduleIndex.refresh eventId=" + eventId + ": " + e.getMessage());
+            return;
+        }
+        synchronized (LOCK) {
+            apply(b, eventId);
+        }
+    }
+
+    // Gọi trong LOCK. b == null => event không còn
+    private static void apply(AreaBooking b, int eventId) {
+        if (touchedDuringReload != null) {
+            touchedDuringReload.add(eventId);
+        }
+        Integer oldArea = EVENT_AREA.remove(eventId);
+        if (oldArea != null) {
+            Map<Integer, long[]> events = AREA_EVENTS.get(oldArea);
+            if (events != null) {
+                events.remove(eventId);
+            }
+            rebuild(oldArea);
+        }
+        if (b != null && isBlocking(b.getStatus())) {
+            AREA_EVENTS.computeIfAbsent(b.getAreaId(), k -> new HashMap<>()).put(eventId, window(b));
+            EVENT_AREA.put(eventId, b.getAreaId());
+            rebuild(b.getAreaId());
+        }
+        UPDATES.increment();
+    }
+
+    // Gọi trong LOCK
+    private static void rebuild(int areaId) {
+        Map<Integer, long[]> events = AREA_EVENTS.get(areaId);
+        if (events == null || events.isEmpty()) {
+            AREA_EVENTS.remove(areaId);
+            BY_AREA.remove(areaId);
+            return;
+        }
+        BY_AREA.put(areaId, new AreaWindows(events.values().toArray(new long[0][])));
+    }
+
+    private static long[] window(AreaBooking b) {
+        return new long[]{b.getStartTime().getTime() - BUFFER_MS, b.getEndTime().getTime() + BUFFER_MS};
+    }
+
+    private static boolean isBlocking(String status) {
+        return "OPEN".equalsIgnoreCase(status) || "CLOSED".equalsIgnoreCase(status) || "DRAFT".equalsIgnoreCase(status);
+    }
+
+    // ================== TRA CỨU ==================
+    /**
+     * Khoảng [start, end) có đụng event nào của area không (đã tính buffer
+     * 1h). Chỉ gọi khi isReady().
+     */
+    public static boolean hasConflict(int areaId, long start, long end) {
+        CONFLICT_QUERIES.increment();
+        AreaWindows w = BY_AREA.get(areaId);
+        return w != null && w.overlaps(start, end);
+    }
+
+    /**
+     * Các khoảng trống của từng area trong [from, to), mỗi khoảng dài ít
+     * nhất minDurationMs. Trong 1 khoảng trống có thể đặt event bất kỳ
+     * (buffer 1h đã trừ sẵn). Index chưa sẵn sàng => dựng tạm từ các event
+     * giao [from - 1h, to + 1h) (1 query).
+     *
+     * @return areaId -> danh sách [start, end] (ms), theo thứ tự thời gian
+     */
+    public static Map<Integer, List<long[]>> freeSlots(Collection<Integer> areaIds, long from, long to,
+            long minDurationMs) throws SQLException, ClassNotFoundException {
+        SLOT_QUERIES.increment();
+
+        Map<Integer, AreaWindows> source = BY_AREA;
+        if (!ready) {
+            source = loadRange(from, to);
+        }
+
+        Map<Integer, List<long[]>> result = new LinkedHashMap<>();
+        for (Integer areaId : areaIds) {
+            AreaWindows w = source.get(areaId);
+            List<long[]> busy = w == null ? new ArrayList<long[]>() : w.overlapping(from, to);
+            result.put(areaId, gaps(busy, from, to, Math.max(1L, minDurationMs)));
+        }
+        return result;
+    }
+
+    // Phần bù của hợp các cửa sổ bận trong [from, to)
+    private static List<long[]> gaps(List<long[]> busy, long from, long to, long minDurationMs) {
+        List<long[]> slots = new ArrayList<>();
+        long cursor = from;
+        for (long[] b : busy) {
+            if (b[0] > cursor && b[0] - cursor >= minDurationMs) {
+                slots.add(new long[]{cursor, Math.min(b[0], to)});
+            }
+            cursor = Math.max(cursor, b[1]);
+            if (cursor >= to) {
+                return slots;
+            }
+        }
+        if (to - cursor >= minDurationMs) {
+            slots.add(new long[]{cursor, to});
+        }
+        return slots;
+    }
+
+    private static Map<Integer, AreaWindows> loadRange(long from, long to) throws SQLException, ClassNotFoundException {
+        List<AreaBooking> rows = venueAreaDAO.getAreaBookings(
+                new Timestamp(from - BUFFER_MS), new Timestamp(to + BUFFER_MS));
+        Map<Integer, List<long[]>> byArea = new HashMap<>();
+        for (AreaBooking b : rows) {
+            byArea.computeIfAbsent(b.getAreaId(), k -> new ArrayList<>()).add(window(b));
+        }
+        Map<Integer, AreaWindows> out = new HashMap<>();
+        for (Map.Entry<Integer, List<long[]>> e : byArea.entrySet()) {
+            out.put(e.getKey(), new AreaWindows(e.getValue().toArray(new long[0][])));
+        }
+        return out;
+    }
+
+    public static Map<String, Object> getStats() {
+        int windows = 0;
+        for (AreaWindows w : BY_AREA.values()) {
+            windows += w.from.length;
+        }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("ready", ready);
+        m.put("areas", BY_AREA.size());
+        m.put("windows", windows);
+        m.put("loadedAt", loadedAt);
+        m.put("reloadSec", RELOAD_SEC);
+        m.put("conflictQueries", CONFLICT_QUERIES.sum());
+        m.put("slotQueries", SLOT_QUERIES.sum());
+        m.put("loads", LOADS.sum());
+        m.put("loadFailures", LOAD_FAILURES.sum());
+        m.put("lastLoadMs", LAST_LOAD_MS.get());
+        m.put("updates", UPDATES.sum());
+        return m;
+    }
+}
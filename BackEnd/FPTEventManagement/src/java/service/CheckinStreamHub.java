@@ -0,0 +1,426 @@
+package service;
+
+import DTO.EventStatsResponse;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import mylib.AppProps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: CheckinStreamHub - ĐẨY TỐC ĐỘ CHECK-IN / CHECK-OUT CỦA EVENT XUỐNG DASHBOARD ORGANIZER (SSE)
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ:
+ * - Organizer refresh /api/events/stats liên tục để xem người đến => N người xem = N lần query
+ *
+ * CÁCH HOẠT ĐỘNG:
+ * - 1 thread "checkin-stream-dispatcher", mỗi checkinStream.tickSec (2s):
+ *   + Với mỗi event đang có người xem: dựng 1 frame DUY NHẤT từ CheckinThroughput (theo phút)
+ *     + EventTicketCounters.peekStats (số vé theo trạng thái) => tick KHÔNG BAO GIỜ query DB
+ *   + Bộ đếm chưa nạp / đến hạn đối soát => giao cho thread "checkin-stream-seeder" nạp;
+ *     trong lúc chờ frame chưa có "attendance" => 1 query chậm không làm đứng stream của event khác
+ *   + Frame giống frame trước => không gửi; chỉ ": ping" mỗi 15s
+ *   + Cùng 1 mảng byte ghi cho mọi subscriber của event
+ * - Ghi non-blocking (WriteListener) như SeatStreamHub; client chậm chỉ giữ frame MỚI NHẤT
+ *
+ * FORMAT (event: throughput):
+ * {"eventId","at","checkinRatePerMin","checkoutRatePerMin","gateScanRatePerMin",
+ *  "attendance":{"registered","checkedIn","checkedOut","attended","refunded"},
+ *  "perMinute":[{"t","checkins","checkouts","scans"}, ...]}
+ */
+public class CheckinStreamHub {
+
+    private static final long TICK_SEC = Math.max(1L, AppProps.getLong("checkinStream.tickSec", 2L));
+    private static final long HEARTBEAT_MS = 15_000L;
+    private static final int SERIES_MIN = Math.max(1, AppProps.getInt("checkinStream.seriesMin", 15));
+    private static final long ASYNC_TIMEOUT_MS = AppProps.getLong("checkinStream.timeoutMs", 30 * 60_000L);
+
+    private static final Map<Integer, Set<Subscriber>> SUBSCRIBERS = new ConcurrentHashMap<>();
+    // eventId -> frame gửi gần nhất (so sánh để bỏ frame trùng)
+    private static final Map<Integer, String> LAST_FRAME = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService dispatcher;
+    private static ExecutorService seeder;
+    // event đang chờ / đang nạp EventTicketCounters trên seeder
+    private static final Set<Integer> SEEDING = ConcurrentHashMap.newKeySet();
+    private static long lastHeartbeat;
+    private static long lastEvict;
+
+    // ===== Thống kê =====
+    private static final AtomicInteger CURRENT_SUBSCRIBERS = new AtomicInteger();
+    private static final LongAdder TOTAL_CONNECTIONS = new LongAdder();
+    private static final LongAdder FRAMES_BUILT = new LongAdder();
+    private static final LongAdder FRAMES_UNCHANGED = new LongAdder();
+    private static final LongAdder DELIVERED = new LongAdder();
+    private static final LongAdder COALESCED = new LongAdder();
+    private static final LongAdder WRITE_ERRORS = new LongAdder();
+    private static final LongAdder ATTENDANCE_ERRORS = new LongAdder();
+
+    // ================== VÒNG ĐỜI (AppContextListener) ==================
+    public static synchronized void start() {
+        if (dispatcher != null) {
+            return;
+        }
+        dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkin-stream-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        seeder = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "checkin-stream-seeder");
+            t.setDaemon(true);
+            return t;
+        });
+        dispatcher.scheduleWithFixedDelay(CheckinStreamHub::tick, TICK_SEC, TICK_SEC, TimeUnit.SECONDS);
+        System.out.println("[CheckinStreamHub] Started: tickSec=" + TICK_SEC + ", seriesMin=" + SERIES_MIN);
+    }
+
+    public static synchronized void stop() {
+        if (dispatcher != null) {
+            dispatcher.shutdownNow();
+            dispatcher = null;
+        }
+        if (seeder != null) {
+            seeder.shutdownNow();
+            seeder = null;
+        }
+        SEEDING.clear();
+        for (Set<Subscriber> subs : SUBSCRIBERS.values()) {
+            for (Subscriber s : subs) {
+                s.close();
+            }
+        }
+        SUBSCRIBERS.clear();
+        LAST_FRAME.clear();
+        System.out.println("[CheckinStreamHub] Stopped");
+    }
+
+    // ================== ĐĂNG KÝ SUBSCRIBER ==================
+    /**
+     * Gắn 1 kết nối SSE (đã startAsync) vào event; frame đầu tiên được dựng
+     * ngay trên dispatcher.
+     */
+    public static void subscribe(int eventId, AsyncContext ac) throws IOException {
+        ac.setTimeout(ASYNC_TIMEOUT_MS);
+        Subscriber sub = new Subscriber(eventId, ac);
+        ac.addListener(sub);
+
+        sub.control.add("retry: 3000\nevent: hello\ndata: {\"eventId\":" + eventId
+                + ",\"tickSec\":" + TICK_SEC + "}\n\n");
+
+        // setWriteListener TRƯỚC khi đưa vào SUBSCRIBERS (như SeatStreamHub): tick chỉ thấy
+        // subscriber đã có WriteListener
+        sub.out.setWriteListener(sub);
+
+        SUBSCRIBERS.computeIfAbsent(eventId, k -> ConcurrentHashMap.newKeySet()).add(sub);
+        CURRENT_SUBSCRIBERS.incrementAndGet();
+        TOTAL_CONNECTIONS.increment();
+        if (sub.closed) {
+            remove(sub);
+            return;
+        }
+        requestSeed(eventId);
+
+        ScheduledExecutorService d = dispatcher;
+        if (d != null) {
+            d.execute(() -> sendInitial(sub));
+        }
+    }
+
+    // Subscriber mới: gửi frame hiện có (hoặc dựng mới) thay vì chờ tick
+    private static void sendInitial(Subscriber sub) {
+        String frame = LAST_FRAME.get(sub.eventId);
+        if (frame == null) {
+            frame = buildFrame(sub.eventId);
+            LAST_FRAME.put(sub.eventId, frame);
+        }
+        sub.offer(toBytes(frame));
+    }
+
+    // ================== TICK ==================
+    private static void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Integer, Set<Subscriber>> e : SUBSCRIBERS.entrySet()) {
+                Set<Subscriber> subs = e.getValue();
+                if (subs.isEmpty()) {
+                    continue;
+                }
+                int eventId = e.getKey();
+                String frame = buildFrame(eventId);
+                if (frame.equals(LAST_FRAME.get(eventId))) {
+                    FRAMES_UNCHANGED.increment();
+                    continue;
+                }
+                LAST_FRAME.put(eventId, frame);
+                byte[] bytes = toBytes(frame);
+                for (Subscriber s : subs) {
+                    s.offer(bytes);
+                }
+            }
+            LAST_FRAME.keySet().retainAll(SUBSCRIBERS.keySet());
+
+            if (now - lastHeartbeat >= HEARTBEAT_MS) {
+                lastHeartbeat = now;
+                for (Set<Subscriber> subs : SUBSCRIBERS.values()) {
+                    for (Subscriber s : subs) {
+                        s.ping();
+                    }
+                }
+            }
+            if (now - lastEvict >= 60_000L) {
+                lastEvict = now;
+                CheckinThroughput.evictIdle();
+            }
+        } catch (RuntimeException ex) {
+            // Không để lỗi 1 tick giết luôn lịch chạy
+            System.err.println("[ERROR] CheckinStreamHub.tick: " + ex.getMessage());
+        }
+    }
+
+    private static String buildFrame(int eventId) {
+        FRAMES_BUILT.increment();
+        CheckinThroughput.Snapshot snap = CheckinThroughput.snapshot(eventId, SERIES_MIN);
+
+        JsonObject o = new JsonObject();
+        o.addProperty("eventId", eventId);
+        o.addProperty("checkinRatePerMin", snap.checkinRatePerMin);
+        o.addProperty("checkoutRatePerMin", snap.checkoutRatePerMin);
+        o.addProperty("gateScanRatePerMin", snap.scanRatePerMin);
+        if (snap.lastActivityAt > 0) {
+            o.addProperty("lastActivityAt", snap.lastActivityAt);
+        }
+
+        if (EventTicketCounters.needsSeed(eventId)) {
+            requestSeed(eventId);
+        }
+        EventStatsResponse st = EventTicketCounters.peekStats(eventId);
+        if (st != null) {
+            JsonObject a = new JsonObject();
+            a.addProperty("registered", st.getTotalRegistered());
+            a.addProperty("checkedIn", st.getTotalCheckedIn());       // đang có mặt
+            a.addProperty("checkedOut", st.getTotalCheckedOut());
+            a.addProperty("attended", st.getTotalCheckedIn() + st.getTotalCheckedOut());
+            a.addProperty("refunded", st.getTotalRefunded());
+            o.add("attendance", a);
+        }
+
+        JsonArray series = new JsonArray();
+        for (CheckinThroughput.Minute m : snap.series) {
+            JsonObject p = new JsonObject();
+            p.addProperty("t", m.minuteStart);
+            p.addProperty("checkins", m.checkins);
+            p.addProperty("checkouts", m.checkouts);
+            p.addProperty("scans", m.scans);
+            series.add(p);
+        }
+        o.add("perMinute", series);
+        return o.toString();
+    }
+
+    /**
+     * Nạp / đối soát EventTicketCounters trên seeder (không trên dispatcher).
+     * Mỗi event tối đa 1 lần nạp đang chờ; lỗi => tick sau thử lại.
+     */
+    private static void requestSeed(int eventId) {
+        ExecutorService s = seeder;
+        if (s == null || !SEEDING.add(eventId)) {
+            return;
+        }
+        try {
+            s.execute(() -> {
+                try {
+                    EventTicketCounters.getStats(eventId);
+                } catch (Exception ex) {
+                    // Chưa nạp được bộ đếm => frame vẫn gửi số theo phút
+                    ATTENDANCE_ERRORS.increment();
+                    System.err.println("[ERROR] CheckinStreamHub.seed eventId=" + eventId + ": " + ex.getMessage());
+                } finally {
+                    SEEDING.remove(eventId);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            SEEDING.remove(eventId); // đang stop()
+        }
+    }
+
+    private static byte[] toBytes(String frame) {
+        // "at" không đưa vào frame để so sánh trùng; gắn lúc gửi
+        String data = frame.substring(0, frame.length() - 1) + ",\"at\":" + System.currentTimeMillis() + "}";
+        return ("event: throughput\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void remove(Subscriber s) {
+        Set<Subscriber> subs = SUBSCRIBERS.get(s.eventId);
+        if (subs != null && subs.remove(s)) {
+            CURRENT_SUBSCRIBERS.decrementAndGet();
+            if (subs.isEmpty()) {
+                SUBSCRIBERS.remove(s.eventId, subs);
+            }
+        }
+    }
+
+    // ================== 1 KẾT NỐI SSE ==================
+    private static final class Subscriber implements WriteListener, AsyncListener {
+
+        final int eventId;
+        final AsyncContext ac;
+        final ServletOutputStream out;
+
+        final ArrayDeque<String> control = new ArrayDeque<>();
+        byte[] latest;          // frame mới nhất chưa gửi (frame cũ hơn bị thay)
+        boolean needFlush;
+        volatile boolean closed;
+
+        Subscriber(int eventId, AsyncContext ac) throws IOException {
+            this.eventId = eventId;
+            this.ac = ac;
+            this.out = ac.getResponse().getOutputStream();
+        }
+
+        synchronized void offer(byte[] frame) {
+            if (closed) {
+                return;
+            }
+            if (latest != null) {
+                COALESCED.increment();
+            }
+            latest = frame;
+            flush();
+        }
+
+        synchronized void ping() {
+            if (closed) {
+                return;
+            }
+            if (control.isEmpty() && latest == null) {
+                control.add(": ping\n\n");
+            }
+            flush();
+        }
+
+        synchronized void flush() {
+            if (closed) {
+                return;
+            }
+            try {
+                while (out.isReady()) {
+                    if (needFlush) {
+                        needFlush = false;
+                        out.flush();
+                        continue;
+                    }
+                    byte[] chunk = nextChunk();
+                    if (chunk == null) {
+                        return;
+                    }
+                    out.write(chunk);
+                    needFlush = true;
+                }
+            } catch (IOException | IllegalStateException e) {
+                WRITE_ERRORS.increment();
+                close();
+            }
+        }
+
+        private byte[] nextChunk() {
+            if (!control.isEmpty()) {
+                StringBuilder sb = new StringBuilder();
+                while (!control.isEmpty()) {
+                    sb.append(control.poll());
+                }
+                return sb.toString().getBytes(StandardCharsets.UTF_8);
+            }
+            if (latest != null) {
+                byte[] b = latest;
+                latest = null;
+                DELIVERED.increment();
+                return b;
+            }
+            return null;
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            remove(this);
+            try {
+                ac.complete();
+            } catch (Exception ignore) {
+            }
+        }
+
+        // ===== WriteListener =====
+        @Override
+        public void onWritePossible() {
+            flush();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            WRITE_ERRORS.increment();
+            close();
+        }
+
+        // ===== AsyncListener =====
+        @Override
+        public void onComplete(AsyncEvent event) {
+            closed = true;
+            remove(this);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    // ================== THỐNG KÊ ==================
+    public static Map<String, Object> getStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("subscribers", CURRENT_SUBSCRIBERS.get());
+        m.put("eventsWithSubscribers", SUBSCRIBERS.size());
+        m.put("totalConnections", TOTAL_CONNECTIONS.sum());
+        m.put("tickSec", TICK_SEC);
+        m.put("framesBuilt", FRAMES_BUILT.sum());
+        m.put("framesUnchanged", FRAMES_UNCHANGED.sum());
+        m.put("delivered", DELIVERED.sum());
+        m.put("coalesced", COALESCED.sum());
+        m.put("writeErrors", WRITE_ERRORS.sum());
+        m.put("attendanceErrors", ATTENDANCE_ERRORS.sum());
+        m.put("seeding", SEEDING.size());
+        m.put("throughput", CheckinThroughput.getStats());
+        return m;
+    }
+}
@@ -0,0 +1,218 @@
+package service;
+
+import mylib.AppProps;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: CheckinThroughput - ĐẾM CHECK-IN / CHECK-OUT / LƯỢT QUÉT THEO PHÚT (CỬA SỔ TRƯỢT, TRONG RAM)
+ * ========================================================================================================
+ *
+ * NGUỒN:
+ * - StaffCheckinController / StaffCheckoutController: mỗi lượt quét QR (kể cả bị từ chối) + số vé
+ *   UPDATE thành công
+ * - GateManifestService: vé quét offline đồng bộ lên => ghi vào đúng phút đã quét (nếu còn trong cửa sổ)
+ *
+ * CẤU TRÚC:
+ * - Mỗi event 1 vòng (ring) checkinStream.windowMin ô (60), mỗi ô = 1 phút; ô cũ bị ghi đè khi
+ *   vòng quay lại => bộ nhớ cố định, không query DB
+ * - snapshot(): chuỗi N phút gần nhất + tốc độ trung bình RATE_MINUTES phút (vé/phút)
+ * - Event không có hoạt động quá 1 cửa sổ => bỏ (evictIdle, gọi từ CheckinStreamHub)
+ */
+public class CheckinThroughput {
+
+    public static final int WINDOW_MIN = Math.max(5, AppProps.getInt("checkinStream.windowMin", 60));
+    public static final int RATE_MINUTES = Math.min(WINDOW_MIN, Math.max(1, AppProps.getInt("checkinStream.rateMinutes", 5)));
+
+    private static final long MINUTE_MS = 60_000L;
+
+    private static final Map<Integer, Window> WINDOWS = new ConcurrentHashMap<>();
+
+    // ===== Thống kê =====
+    private static final LongAdder RECORDED = new LongAdder();
+    private static final LongAdder DROPPED_OUT_OF_WINDOW = new LongAdder();
+    private static final LongAdder EVICTED = new LongAdder();
+
+    /**
+     * Số liệu 1 phút (bản sao, chỉ đọc).
+     */
+    public static final class Minute {
+
+        public final long minuteStart;   // epoch ms đầu phút
+        public final int checkins;
+        public final int checkouts;
+        public final int scans;
+
+        Minute(long minuteStart, int checkins, int checkouts, int scans) {
+            this.minuteStart = minuteStart;
+            this.checkins = checkins;
+            this.checkouts = checkouts;
+            this.scans = scans;
+        }
+    }
+
+    /**
+     * Ảnh chụp cửa sổ của 1 event tại thời điểm now.
+     */
+    public static final class Snapshot {
+
+        public final Minute[] series;          // cũ -> mới, phần tử cuối là phút hiện tại (chưa trọn)
+        public final double checkinRatePerMin;
+        public final double checkoutRatePerMin;
+        public final double scanRatePerMin;
+        public final long lastActivityAt;      // 0 = chưa có hoạt động
+
+        Snapshot(Minute[] series, double checkinRatePerMin, double checkoutRatePerMin, double scanRatePerMin,
+                long lastActivityAt) {
+            this.series = series;
+            this.checkinRatePerMin = checkinRatePerMin;
+            this.checkoutRatePerMin = checkoutRatePerMin;
+            this.scanRatePerMin = scanRatePerMin;
+            this.lastActivityAt = lastActivityAt;
+        }
+    }
+
+    private static final class Window {
+
+        final long[] minute = new long[WINDOW_MIN];     // số phút epoch của ô; -1 = trống
+        final int[] checkins = new int[WINDOW_MIN];
+        final int[] checkouts = new int[WINDOW_MIN];
+        final int[] scans = new int[WINDOW_MIN];
+        long lastActivityAt;
+
+        Window() {
+            java.util.Arrays.fill(minute, -1L);
+        }
+
+        synchronized boolean add(long atMillis, long nowMillis, int dCheckin, int dCheckout, int dScan) {
+            long m = Math.floorDiv(atMillis, MINUTE_MS);
+            long nowMin = Math.floorDiv(nowMillis, MINUTE_MS);
+            if (m > nowMin || m <= nowMin - WINDOW_MIN) {
+                return false; // ngoài cửa sổ (giờ máy quét lệch / đồng bộ quá trễ)
+            }
+            int idx = (int) Math.floorMod(m, (long) WINDOW_MIN);
+            if (minute[idx] != m) {
+                minute[idx] = m;
+                checkins[idx] = 0;
+                checkouts[idx] = 0;
+                scans[idx] = 0;
+            }
+            checkins[idx] += dCheckin;
+            checkouts[idx] += dCheckout;
+            scans[idx] += dScan;
+            lastActivityAt = Math.max(lastActivityAt, nowMillis);
+            return true;
+        }
+
+        synchronized Snapshot snapshot(long nowMillis, int seriesMinutes) {
+            long nowMin = Math.floorDiv(nowMillis, MINUTE_MS);
+            Minute[] series = new Minute[seriesMinutes];
+            for (int i = 0; i < seriesMinutes; i++) {
+                long m = nowMin - (seriesMinutes - 1 - i);
+                int idx = (int) Math.floorMod(m, (long) WINDOW_MIN);
+                series[i] = minute[idx] == m
+                        ? new Minute(m * MINUTE_MS, checkins[idx], checkouts[idx], scans[idx])
+                        : new Minute(m * MINUTE_MS, 0, 0, 0);
+            }
+
+            // Tốc độ: tổng RATE_MINUTES phút gần nhất (kể cả phút đang chạy) / thời gian đã trôi
+            long in = 0, out = 0, sc = 0;
+            for (int k = 0; k < RATE_MINUTES; k++) {
+                long m = nowMin - k;
+                int idx = (int) Math.floorMod(m, (long) WINDOW_MIN);
+                if (minute[idx] == m) {
+                    in += checkins[idx];
+                    out += checkouts[idx];
+                    sc += scans[idx];
+                }
+            }
+            double elapsedMin = (RATE_MINUTES - 1) + (Math.floorMod(nowMillis, MINUTE_MS) / (double) MINUTE_MS);
+            elapsedMin = Math.max(elapsedMin, 1.0);
+            return new Snapshot(series, round1(in / elapsedMin), round1(out / elapsedMin), round1(sc / elapsedMin),
+                    lastActivityAt);
+        }
+    }
+
+    // ================== GHI ==================
+    public static void onScans(int eventId, int count) {
+        record(eventId, System.currentTimeMillis(), 0, 0, count);
+    }
+
+    public static void onCheckins(int eventId, int count) {
+        record(eventId, System.currentTimeMillis(), count, 0, 0);
+    }
+
+    public static void onCheckouts(int eventId, int count) {
+        record(eventId, System.currentTimeMillis(), 0, count, 0);
+    }
+
+    /**
+     * 1 lượt quét + check-in tại thời điểm atMillis (vé quét offline đồng bộ lên sau).
+     */
+    public static void onOfflineCheckin(int eventId, long atMillis, boolean applied) {
+        record(eventId, atMillis, applied ? 1 : 0, 0, 1);
+    }
+
+    private static void record(int eventId, long atMillis, int dCheckin, int dCheckout, int dScan) {
+        if (dCheckin <= 0 && dCheckout <= 0 && dScan <= 0) {
+            return;
+        }
+        Window w = WINDOWS.computeIfAbsent(eventId, k -> new Window());
+        if (w.add(atMillis, System.currentTimeMillis(), dCheckin, dCheckout, dScan)) {
+            RECORDED.increment();
+        } else {
+            DROPPED_OUT_OF_WINDOW.increment();
+        }
+    }
+
+    // ================== ĐỌC ==================
+    /**
+     * seriesMinutes phút gần nhất của event (event chưa có hoạt động => toàn 0).
+     */
+    public static Snapshot snapshot(int eventId, int seriesMinutes) {
+        int n = Math.max(1, Math.min(seriesMinutes, WINDOW_MIN));
+        Window w = WINDOWS.get(eventId);
+        if (w == null) {
+            w = new Window(); // không lưu lại: chỉ để dựng chuỗi 0
+        }
+        return w.snapshot(System.currentTimeMillis(), n);
+    }
+
+    /**
+     * Bỏ event không có hoạt động quá 1 cửa sổ.
+     */
+    public static void evictIdle() {
+        long cutoff = System.currentTimeMillis() - WINDOW_MIN * MINUTE_MS;
+        for (Iterator<Window> it = WINDOWS.values().iterator(); it.hasNext();) {
+            Window w = it.next();
+            boolean idle;
+            synchronized (w) {
+                idle = w.lastActivityAt < cutoff;
+            }
+            if (idle) {
+                it.remove();
+                EVICTED.increment();
+            }
+        }
+    }
+
+    private static double round1(double v) {
+        return Math.round(v * 10.0) / 10.0;
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("events", WINDOWS.size());
+        m.put("windowMin", WINDOW_MIN);
+        m.put("rateMinutes", RATE_MINUTES);
+        m.put("recorded", RECORDED.sum());
+        m.put("droppedOutOfWindow", DROPPED_OUT_OF_WINDOW.sum());
+        m.put("evicted", EVICTED.sum());
+        return m;
+    }
+}
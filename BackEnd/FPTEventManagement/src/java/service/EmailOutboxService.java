@@ -0,0 +1,361 @@
+package service;
+
+import DAO.EmailOutboxDAO;
+import DTO.EmailOutboxJob;
+import mylib.AppProps;
+import utils.EmailUtils;
+import utils.QRCodeUtil;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: EmailOutboxService - GỬI EMAIL VÉ ĐIỆN TỬ QUA HÀNG ĐỢI (KHÔNG CHẶN REQUEST THANH TOÁN)
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ:
+ * - BuyTicketController / WalletPayController render QR + mở 1 Thread mới gọi SMTP
+ *   cho mỗi lần mua => SMTP chậm/lỗi là mất email, thread không giới hạn
+ *
+ * CÁCH HOẠT ĐỘNG:
+ * - Controller chỉ enqueue (1 INSERT vào Email_Outbox) rồi trả response/redirect ngay
+ * - N worker nền (start từ AppContextListener) claim batch email đến hạn,
+ *   render QR từ qrContent, gửi qua EmailUtils
+ * - Lỗi: thử lại với backoff luỹ thừa (30s, 60s, 120s... tối đa 30 phút, có jitter)
+ * - Quá maxAttempts: chuyển DEAD (dead-letter), giữ last_error để tra cứu
+ * - Chống trùng: dedup_key UNIQUE (vd: TICKET:{email}:{ticketIds})
+ * - Giới hạn: outbox đang chờ vượt maxPending => từ chối enqueue (REJECTED)
+ * - Không tạo/ghi được bảng: gửi trực tiếp qua 1 executor có hàng đợi giới hạn
+ *   (không bền vững, chỉ để user vẫn nhận được vé)
+ *
+ * CẤU HÌNH (System property / biến môi trường):
+ * - emailOutbox.workers (2), emailOutbox.batchSize (10), emailOutbox.maxAttempts (6)
+ * - emailOutbox.pollMs (2000), emailOutbox.maxPending (20000)
+ */
+public class EmailOutboxService {
+
+    public enum EnqueueResult {
+        QUEUED, DUPLICATE, REJECTED, FALLBACK
+    }
+
+    private static final int WORKERS = Math.max(1, AppProps.getInt("emailOutbox.workers", 2));
+    private static final int BATCH_SIZE = Math.max(1, AppProps.getInt("emailOutbox.batchSize", 10));
+    private static final int MAX_ATTEMPTS = Math.max(1, AppProps.getInt("emailOutbox.maxAttempts", 6));
+    private static final long POLL_MS = Math.max(200L, AppProps.getLong("emailOutbox.pollMs", 2000L));
+    private static final int MAX_PENDING = Math.max(1, AppProps.getInt("emailOutbox.maxPending", 20000));
+    private static final int LEASE_SECONDS = 300;
+    private static final int BACKOFF_BASE_SEC = 30;
+    private static final int BACKOFF_MAX_SEC = 1800;
+    private static final long DEPTH_REFRESH_MS = 5000;
+
+    private static final EmailOutboxDAO outboxDAO = new EmailOutboxDAO();
+
+    private static final Object WAKE = new Object();
+    private static ExecutorService workers;
+    private static volatile boolean running;
+    private static volatile boolean tableReady;
+
+    // Dự phòng khi không dùng được bảng outbox: 1 thread, hàng đợi giới hạn (tạo ở start, dừng ở stop)
+    private static volatile ThreadPoolExecutor fallback;
+
+    // ===== Thống kê =====
+    private static final LongAdder ENQUEUED = new LongAdder();
+    private static final LongAdder DUPLICATES = new LongAdder();
+    private static final LongAdder REJECTED = new LongAdder();
+    private static final LongAdder ENQUEUE_ERRORS = new LongAdder();
+    private static final LongAdder SENT = new LongAdder();
+    private static final LongAdder SEND_FAILURES = new LongAdder();
+    private static final LongAdder DEAD_LETTERED = new LongAdder();
+    private static final LongAdder FALLBACK_SENT = new LongAdder();
+    private static final LongAdder FALLBACK_DROPPED = new LongAdder();
+    private static final LongAdder SEND_COUNT = new LongAdder();
+    private static final LongAdder SEND_TOTAL_MS = new LongAdder();
+    private static final AtomicLong SEND_MAX_MS = new AtomicLong();
+    private static final AtomicLong QUEUE_MAX_MS = new AtomicLong();
+    private static final AtomicInteger PENDING_DEPTH = new AtomicInteger();
+    private static final AtomicInteger SENDING_DEPTH = new AtomicInteger();
+    private static final AtomicInteger DEAD_DEPTH = new AtomicInteger();
+    private static final AtomicLong LAST_DEPTH_REFRESH = new AtomicLong();
+
+    // ================== VÒNG ĐỜI (AppContextListener) ==================
+    public static synchronized void start() {
+        if (workers != null) {
+            return;
+        }
+        try {
+            outboxDAO.ensureTable();
+            tableReady = true;
+            refreshDepth(true);
+        } catch (Exception e) {
+            tableReady = false;
+            System.err.println("[ERROR] EmailOutboxService.start: Email_Outbox unavailable, using direct send: " + e.getMessage());
+        }
+
+        running = true;
+        AtomicInteger seq = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(WORKERS, r -> {
+            Thread t = new Thread(r, "email-outbox-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < WORKERS; i++) {
+            workers.execute(EmailOutboxService::workerLoop);
+        }
+        fallback = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(500), r -> {
+                    Thread t = new Thread(r, "email-outbox-fallback");
+                    t.setDaemon(true);
+                    return t;
+                });
+        System.out.println("[EmailOutboxService] Started: workers=" + WORKERS + ", batchSize=" + BATCH_SIZE
+                + ", maxAttempts=" + MAX_ATTEMPTS + ", tableReady=" + tableReady);
+    }
+
+    public static synchronized void stop() {
+        running = false;
+        synchronized (WAKE) {
+            WAKE.notifyAll();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+        ThreadPoolExecutor f = fallback;
+        fallback = null;
+        if (f != null) {
+            // Cho email gửi thẳng đang chờ chạy nốt 1 lúc, rồi dừng hẳn (thread không sống qua undeploy)
+            f.shutdown();
+            try {
+                if (!f.awaitTermination(10, TimeUnit.SECONDS)) {
+                    System.err.println("[ERROR] EmailOutboxService.stop: " + f.shutdownNow().size()
+                            + " fallback email(s) not sent");
+                }
+            } catch (InterruptedException e) {
+                f.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.println("[EmailOutboxService] Stopped");
+    }
+
+    // ================== ENQUEUE (từ controller) ==================
+    /**
+     * Xếp 1 email vé vào outbox. QR được render lúc gửi từ qrContent, nên
+     * request thanh toán chỉ tốn 1 INSERT.
+     */
+    public static EnqueueResult enqueue(String dedupKey, String to, String subject, String htmlBody,
+            String qrContent, String imageCid) {
+        EmailOutboxJob job = new EmailOutboxJob();
+        job.setDedupKey(dedupKey);
+        job.setRecipient(to);
+        job.setSubject(subject);
+        job.setHtmlBody(htmlBody);
+        job.setQrContent(qrContent);
+        job.setImageCid(imageCid);
+
+        if (tableReady) {
+            if (PENDING_DEPTH.get() >= MAX_PENDING) {
+                REJECTED.increment();
+                System.err.println("[EmailOutboxService] Outbox full (" + PENDING_DEPTH.get() + "), rejected: " + dedupKey);
+                return EnqueueResult.REJECTED;
+            }
+            try {
+                long id = outboxDAO.insert(job);
+                if (id < 0) {
+                    DUPLICATES.increment();
+                    return EnqueueResult.DUPLICATE;
+                }
+                ENQUEUED.increment();
+                PENDING_DEPTH.incrementAndGet();
+                synchronized (WAKE) {
+                    WAKE.notify();
+                }
+                return EnqueueResult.QUEUED;
+            } catch (Exception e) {
+                ENQUEUE_ERRORS.increment();
+                System.err.println("[ERROR] EmailOutboxService.enqueue: " + e.getMessage());
+            }
+        }
+
+        // Không ghi được outbox => gửi thẳng (không retry) để user vẫn có vé
+        ThreadPoolExecutor f = fallback;
+        if (f == null) {
+            FALLBACK_DROPPED.increment();
+            System.err.println("[ERROR] EmailOutboxService.fallback not running, dropped: " + dedupKey);
+            return EnqueueResult.REJECTED;
+        }
+        try {
+            f.execute(() -> {
+                try {
+                    send(job);
+                    FALLBACK_SENT.increment();
+                } catch (Exception e) {
+                    SEND_FAILURES.increment();
+                    System.err.println("[ERROR] EmailOutboxService.fallback: " + e.getMessage());
+                }
+            });
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            FALLBACK_DROPPED.increment();
+            System.err.println("[ERROR] EmailOutboxService.fallback queue full, dropped: " + dedupKey);
+            return EnqueueResult.REJECTED;
+        }
+        return EnqueueResult.FALLBACK;
+    }
+
+    /**
+     * dedup_key cho email vé: mỗi người nhận + bộ ticketId chỉ 1 email.
+     * Danh sách vé dài (mua nhiều ghế) thì băm SHA-256 để vừa cột NVARCHAR(300).
+     */
+    public static String ticketDedupKey(String recipient, String ticketIds) {
+        String ids = ticketIds == null ? "" : ticketIds.replace(" ", "");
+        if (ids.length() > 200) {
+            try {
+                byte[] digest = java.security.MessageDigest.getInstance("SHA-256")
+                        .digest(ids.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                StringBuilder sb = new StringBuilder("sha256-");
+                for (byte b : digest) {
+                    sb.append(String.format("%02x", b));
+                }
+                ids = sb.toString();
+            } catch (java.security.NoSuchAlgorithmException e) {
+                ids = ids.substring(0, 200) + "#" + ids.hashCode();
+            }
+        }
+        return "TICKET:" + (recipient == null ? "" : recipient.trim().toLowerCase()) + ":" + ids;
+    }
+
+    // ================== WORKER ==================
+    private static void workerLoop() {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            int processed = 0;
+            if (tableReady) {
+                try {
+                    List<EmailOutboxJob> jobs = outboxDAO.claimBatch(BATCH_SIZE, LEASE_SECONDS);
+                    for (EmailOutboxJob job : jobs) {
+                        process(job);
+                    }
+                    processed = jobs.size();
+                } catch (Exception e) {
+                    System.err.println("[ERROR] EmailOutboxService.workerLoop: " + e.getMessage());
+                }
+                refreshDepth(false);
+            }
+
+            // Batch đầy => còn việc, claim tiếp ngay
+            if (processed < BATCH_SIZE) {
+                try {
+                    synchronized (WAKE) {
+                        WAKE.wait(POLL_MS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void process(EmailOutboxJob job) {
+        QUEUE_MAX_MS.accumulateAndGet(job.getQueuedMs(), Math::max);
+        try {
+            send(job);
+            outboxDAO.markSent(job.getOutboxId());
+            SENT.increment();
+        } catch (Exception e) {
+            SEND_FAILURES.increment();
+            String error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            try {
+                if (job.getAttempts() >= MAX_ATTEMPTS) {
+                    outboxDAO.markDead(job.getOutboxId(), error);
+                    DEAD_LETTERED.increment();
+                    System.err.println("[EmailOutboxService] ❌ Dead-lettered " + job + ": " + error);
+                } else {
+                    int delay = backoffSeconds(job.getAttempts());
+                    outboxDAO.markRetry(job.getOutboxId(), error, delay);
+                    System.err.println("[EmailOutboxService] Retry in " + delay + "s: " + job + ": " + error);
+                }
+            } catch (Exception dbErr) {
+                // Không ghi được trạng thái => lease hết hạn, worker sẽ claim lại
+                System.err.println("[ERROR] EmailOutboxService.process: " + dbErr.getMessage());
+            }
+        }
+    }
+
+    private static void send(EmailOutboxJob job) throws Exception {
+        long start = System.currentTimeMillis();
+        byte[] image = null;
+        if (job.getQrContent() != null) {
+            image = QRCodeUtil.generateQRCodePngBytes(job.getQrContent(), 300, 300);
+        }
+        EmailUtils.sendEmailWithImage(job.getRecipient(), job.getSubject(), job.getHtmlBody(),
+                image, job.getImageCid());
+
+        long took = System.currentTimeMillis() - start;
+        SEND_COUNT.increment();
+        SEND_TOTAL_MS.add(took);
+        SEND_MAX_MS.accumulateAndGet(took, Math::max);
+    }
+
+    // 30s * 2^(attempts-1), tối đa 30 phút, jitter +-20% để các email lỗi cùng lúc không dồn lại
+    static int backoffSeconds(int attempts) {
+        long base = (long) BACKOFF_BASE_SEC << Math.min(16, Math.max(0, attempts - 1));
+        long capped = Math.min(BACKOFF_MAX_SEC, base);
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return (int) Math.max(1, Math.round(capped * jitter));
+    }
+
+    private static void refreshDepth(boolean force) {
+        long now = System.currentTimeMillis();
+        long last = LAST_DEPTH_REFRESH.get();
+        if (!force && now - last < DEPTH_REFRESH_MS) {
+            return;
+        }
+        if (!LAST_DEPTH_REFRESH.compareAndSet(last, now)) {
+            return;
+        }
+        try {
+            Map<String, Integer> counts = outboxDAO.countOpenByStatus();
+            PENDING_DEPTH.set(counts.getOrDefault("PENDING", 0));
+            SENDING_DEPTH.set(counts.getOrDefault("SENDING", 0));
+            DEAD_DEPTH.set(counts.getOrDefault("DEAD", 0));
+        } catch (Exception e) {
+            System.err.println("[ERROR] EmailOutboxService.refreshDepth: " + e.getMessage());
+        }
+    }
+
+    // ================== THỐNG KÊ ==================
+    public static Map<String, Object> getStats() {
+        long sends = SEND_COUNT.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("running", running);
+        m.put("tableReady", tableReady);
+        m.put("workers", WORKERS);
+        m.put("pending", PENDING_DEPTH.get());
+        m.put("sending", SENDING_DEPTH.get());
+        m.put("dead", DEAD_DEPTH.get());
+        m.put("enqueued", ENQUEUED.sum());
+        m.put("duplicates", DUPLICATES.sum());
+        m.put("rejected", REJECTED.sum());
+        m.put("enqueueErrors", ENQUEUE_ERRORS.sum());
+        m.put("sent", SENT.sum());
+        m.put("sendFailures", SEND_FAILURES.sum());
+        m.put("deadLettered", DEAD_LETTERED.sum());
+        m.put("fallbackSent", FALLBACK_SENT.sum());
+        m.put("fallbackDropped", FALLBACK_DROPPED.sum());
+        m.put("avgSendMs", sends > 0 ? SEND_TOTAL_MS.sum() / sends : 0);
+        m.put("maxSendMs", SEND_MAX_MS.get());
+        m.put("maxQueuedMs", QUEUE_MAX_MS.get());
+        return m;
+    }
+}
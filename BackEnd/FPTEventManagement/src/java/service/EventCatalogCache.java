@@ -0,0 +1,252 @@
+package service;
+
+import DAO.EventDAO;
+import DTO.Event;
+import DTO.EventListDto;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import mylib.AppProps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ========================================================================================================
+ * SERVICE: EventCatalogCache - DANH SÁCH SỰ KIỆN CÔNG KHAI (GET /api/events) ĐÃ SERIALIZE SẴN
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ:
+ * - Mỗi lượt guest mở trang chủ: getAllEvents (JOIN Event + Venue_Area + Venue trên mọi event
+ *   OPEN/CLOSED) -> map EventListDto -> Gson => cùng 1 kết quả tính lại hàng nghìn lần
+ *
+ * CÁCH HOẠT ĐỘNG:
+ * - Giữ 1 snapshot: byte JSON (UTF-8) + byte gzip + ETag (SHA-256 nội dung) + Last-Modified
+ * - Controller chỉ ghi byte ra response (hoặc 304 nếu If-None-Match / If-Modified-Since khớp)
+ * - invalidate() sau khi event đổi (duyệt request tạo event, sửa chi tiết, vô hiệu hoá)
+ * - Quá TTL (eventCatalog.ttlSec, mặc định 300s) cũng nạp lại => thấy thay đổi từ node khác
+ * - Nhiều request cùng miss => chỉ 1 thread query DB (lock); thread khác:
+ *   + có snapshot cũ => trả snapshot cũ ngay, không chờ
+ *   + chưa có gì => chờ thread đang nạp rồi dùng kết quả của nó
+ * - Nạp lỗi mà còn snapshot cũ => trả snapshot cũ (log lỗi)
+ * - Nội dung không đổi sau khi nạp lại => giữ nguyên ETag / Last-Modified
+ */
+public class EventCatalogCache {
+
+    private static final long TTL_MS = Math.max(1L, AppProps.getLong("eventCatalog.ttlSec", 300L)) * 1000L;
+
+    private static final EventDAO eventDAO = new EventDAO();
+
+    // serializeNulls: giữ đúng format cũ của GetAllEventsController
+    private static final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    private static final ReentrantLock BUILD_LOCK = new ReentrantLock();
+    // Tăng mỗi lần invalidate; snapshot nạp trước đó bị coi là cũ
+    private static final AtomicLong GENERATION = new AtomicLong();
+    private static volatile Snapshot snapshot;
+
+    // ===== Thống kê =====
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder STALE_SERVED = new LongAdder();
+    private static final LongAdder BUILDS = new LongAdder();
+    private static final LongAdder BUILD_FAILURES = new LongAdder();
+    private static final LongAdder INVALIDATIONS = new LongAdder();
+    private static final AtomicLong LAST_BUILD_MS = new AtomicLong();
+
+    /**
+     * 1 phiên bản catalog đã serialize (bất biến).
+     */
+    public static final class Snapshot {
+
+        public final byte[] json;
+        public final byte[] gzip;
+        public final String etag;
+        public final long lastModified;   // ms, làm tròn xuống giây (theo HTTP date)
+        public final int eventCount;
+        final long generation;
+        final long builtAt;
+
+        Snapshot(byte[] json, byte[] gzip, String etag, long lastModified, int eventCount,
+                long generation, long builtAt) {
+            this.json = json;
+            this.gzip = gzip;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.eventCount = eventCount;
+            this.generation = generation;
+            this.builtAt = builtAt;
+        }
+
+        boolean fresh(long now) {
+            return generation == GENERATION.get() && now - builtAt < TTL_MS;
+        }
+    }
+
+    /**
+     * Catalog hiện tại (nạp lại nếu cần).
+     */
+    public static Snapshot get() throws SQLException, ClassNotFoundException {
+        Snapshot s = snapshot;
+        if (s != null && s.fresh(System.currentTimeMillis())) {
+            HITS.increment();
+            return s;
+        }
+
+        if (s != null) {
+            // Đã có bản cũ: thread khác đang nạp thì trả bản cũ luôn
+            if (!BUILD_LOCK.tryLock()) {
+                STALE_SERVED.increment();
+                return s;
+            }
+        } else {
+            BUILD_LOCK.lock();
+        }
+
+        try {
+            s = snapshot;
+            if (s != null && s.fresh(System.currentTimeMillis())) {
+                HITS.increment();
+                return s; // vừa được thread khác nạp xong
+            }
+            try {
+                Snapshot built = build(s);
+                snapshot = built;
+                return built;
+            } catch (SQLException | ClassNotFoundException | RuntimeException e) {
+                BUILD_FAILURES.increment();
+                if (s != null) {
+                    System.err.println("[ERROR] EventCatalogCache.build (serving stale): " + e.getMessage());
+                    STALE_SERVED.increment();
+                    return s;
+                }
+                throw e;
+            }
+        } finally {
+            BUILD_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Gọi sau khi event đổi (đã commit).
+     */
+    public static void invalidate() {
+        GENERATION.incrementAndGet();
+        INVALIDATIONS.increment();
+    }
+
+    private static Snapshot build(Snapshot previous) throws SQLException, ClassNotFoundException {
+        long t0 = System.currentTimeMillis();
+        // Lấy generation trước khi query: invalidate xen giữa => bản này coi như cũ ngay
+        long generation = GENERATION.get();
+
+        List<Event> events = eventDAO.getAllEvents();
+
+        List<EventListDto> openEvents = new ArrayList<>();
+        List<EventListDto> closedEvents = new ArrayList<>();
+        for (Event e : events) {
+            EventListDto dto = toListDto(e);
+            if ("OPEN".equalsIgnoreCase(e.getStatus())) {
+                openEvents.add(dto);
+            } else if ("CLOSED".equalsIgnoreCase(e.getStatus())) {
+                closedEvents.add(dto);
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("openEvents", openEvents);
+        result.put("closedEvents", closedEvents);
+
+        byte[] json = gson.toJson(result).getBytes(StandardCharsets.UTF_8);
+        String etag = "\"events-" + sha256Prefix(json) + "\"";
+
+        long now = System.currentTimeMillis();
+        if (previous != null && previous.etag.equals(etag)) {
+            // Nội dung y hệt => giữ validator cũ, không gzip lại
+            Snapshot same = new Snapshot(previous.json, previous.gzip, previous.etag, previous.lastModified,
+                    previous.eventCount, generation, now);
+            BUILDS.increment();
+            LAST_BUILD_MS.set(now - t0);
+            return same;
+        }
+
+        Snapshot s = new Snapshot(json, gzip(json), etag, now / 1000L * 1000L, openEvents.size() + closedEvents.size(),
+                generation, now);
+        BUILDS.increment();
+        LAST_BUILD_MS.set(System.currentTimeMillis() - t0);
+        return s;
+    }
+
+    /**
+     * Event -> EventListDto (các field FE cần cho danh sách).
+     */
+    public static EventListDto toListDto(Event e) {
+        EventListDto dto = new EventListDto(
+                e.getEventId(),
+                e.getTitle(),
+                e.getDescription(),
+                e.getStartTime(),
+                e.getEndTime(),
+                e.getMaxSeats(),
+                e.getStatus(),
+                e.getBannerUrl()
+        );
+        dto.setAreaId(e.getAreaId());
+        dto.setAreaName(e.getAreaName());
+        dto.setFloor(e.getFloor());
+        dto.setVenueName(e.getVenueName());
+        dto.setVenueLocation(e.getVenueLocation());
+        return dto;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(256, data.length / 4));
+        try ( GZIPOutputStream gz = new GZIPOutputStream(bos, 8192)) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // không xảy ra với ByteArrayOutputStream
+        }
+        return bos.toByteArray();
+    }
+
+    private static String sha256Prefix(byte[] data) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder sb = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                sb.append(Character.forDigit((d[i] >> 4) & 0xF, 16)).append(Character.forDigit(d[i] & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        Snapshot s = snapshot;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("cached", s != null);
+        m.put("etag", s == null ? null : s.etag);
+        m.put("events", s == null ? 0 : s.eventCount);
+        m.put("jsonBytes", s == null ? 0 : s.json.length);
+        m.put("gzipBytes", s == null ? 0 : s.gzip.length);
+        m.put("ttlMs", TTL_MS);
+        m.put("hits", HITS.sum());
+        m.put("staleServed", STALE_SERVED.sum());
+        m.put("builds", BUILDS.sum());
+        m.put("buildFailures", BUILD_FAILURES.sum());
+        m.put("invalidations", INVALIDATIONS.sum());
+        m.put("lastBuildMs", LAST_BUILD_MS.get());
+        return m;
+    }
+}
@@ -0,0 +1,212 @@
+package service;
+
+import DAO.EventDAO;
+import DTO.CategoryTicket;
+import DTO.EventDetailDto;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import mylib.AppProps;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: EventDetailCache - CHI TIẾT EVENT (GET /api/events/detail) + LOẠI VÉ, READ-THROUGH
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ:
+ * - Mỗi lượt xem trang event: getEventDetail = JOIN 4 bảng + 1 query Category_Ticket;
+ *   lúc mở bán trang event là URL bị gọi nhiều nhất
+ *
+ * CÁCH HOẠT ĐỘNG:
+ * - Cache theo eventId: EventDetailDto + JSON đã serialize, TTL ngắn (eventDetail.ttlSec, 30s)
+ * - Event không tồn tại / không OPEN-CLOSED cũng cache (TTL 5s) => id rác không đập DB
+ * - Single-flight: nhiều request cùng miss 1 event => chỉ 1 query, còn lại chờ kết quả đó
+ * - invalidate(eventId) sau khi sửa chi tiết / vô hiệu hoá event (đã commit); lần nạp
+ *   đang chạy lúc invalidate không được ghi vào cache
+ * - Loại vé (tên, giá) của event dùng lại cho luồng thanh toán (tên loại vé trong email)
+ *
+ * LƯU Ý: DTO trả ra dùng chung giữa các request => chỉ đọc, không sửa.
+ *
+ * CẤU HÌNH: eventDetail.ttlSec (30), eventDetail.maxEntries (1000)
+ */
+public class EventDetailCache {
+
+    private static final long TTL_MS = Math.max(1L, AppProps.getLong("eventDetail.ttlSec", 30L)) * 1000L;
+    private static final long NEGATIVE_TTL_MS = Math.min(TTL_MS, 5000L);
+    private static final int MAX_ENTRIES = Math.max(1, AppProps.getInt("eventDetail.maxEntries", 1000));
+
+    private static final EventDAO eventDAO = new EventDAO();
+
+    // serializeNulls: giữ đúng format cũ của GetEventDetailController
+    private static final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    private static final Map<Integer, Entry> CACHE = new ConcurrentHashMap<>();
+    private static final Map<Integer, CompletableFuture<Entry>> IN_FLIGHT = new ConcurrentHashMap<>();
+    // Tăng mỗi lần invalidate: lần nạp bắt đầu trước đó không được ghi cache
+    private static final AtomicLong INVALIDATION_SEQ = new AtomicLong();
+
+    // ===== Thống kê =====
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder COALESCED = new LongAdder();
+    private static final LongAdder LOAD_FAILURES = new LongAdder();
+    private static final LongAdder INVALIDATIONS = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    /**
+     * 1 lần nạp chi tiết event (bất biến). detail = null => event không
+     * tồn tại / không công khai.
+     */
+    public static final class Entry {
+
+        public final EventDetailDto detail;
+        public final String json;
+        final Map<Integer, CategoryTicket> categories;
+        final long expiresAt;
+
+        Entry(EventDetailDto detail, String json, Map<Integer, CategoryTicket> categories, long expiresAt) {
+            this.detail = detail;
+            this.json = json;
+            this.categories = categories;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Chi tiết event (đọc qua cache). detail == null => 404.
+     */
+    public static Entry get(int eventId) throws SQLException, ClassNotFoundException {
+        Entry e = CACHE.get(eventId);
+        if (e != null && System.currentTimeMillis() < e.expiresAt) {
+            HITS.increment();
+            return e;
+        }
+
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> running = IN_FLIGHT.putIfAbsent(eventId, mine);
+        if (running != null) {
+            // Thread khác đang nạp event này => chờ kết quả của nó
+            COALESCED.increment();
+            return await(running);
+        }
+
+        MISSES.increment();
+        try {
+            Entry loaded = load(eventId);
+            mine.complete(loaded);
+            return loaded;
+        } catch (SQLException | ClassNotFoundException | RuntimeException ex) {
+            LOAD_FAILURES.increment();
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            IN_FLIGHT.remove(eventId, mine);
+        }
+    }
+
+    /**
+     * Loại vé ACTIVE của event theo categoryTicketId (từ cache), null nếu
+     * không có.
+     */
+    public static CategoryTicket getCategory(int eventId, int categoryTicketId) {
+        try {
+            return get(eventId).categories.get(categoryTicketId);
+        } catch (Exception ex) {
+            System.err.println("[ERROR] EventDetailCache.getCategory: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Gọi sau khi event đổi (đã commit).
+     */
+    public static void invalidate(int eventId) {
+        INVALIDATION_SEQ.incrementAndGet();
+        CACHE.remove(eventId);
+        INVALIDATIONS.increment();
+    }
+
+    private static Entry load(int eventId) throws SQLException, ClassNotFoundException {
+        long seq = INVALIDATION_SEQ.get();
+        EventDetailDto detail = eventDAO.getEventDetail(eventId);
+        long now = System.currentTimeMillis();
+
+        Entry entry;
+        if (detail == null) {
+            entry = new Entry(null, null, Collections.<Integer, CategoryTicket>emptyMap(), now + NEGATIVE_TTL_MS);
+        } else {
+            Map<Integer, CategoryTicket> categories = new HashMap<>();
+            if (detail.getTickets() != null) {
+                for (CategoryTicket c : detail.getTickets()) {
+                    categories.put(c.getCategoryTicketId(), c);
+                }
+            }
+            entry = new Entry(detail, gson.toJson(detail), categories, now + TTL_MS);
+        }
+
+        if (seq == INVALIDATION_SEQ.get()) {
+            if (CACHE.size() >= MAX_ENTRIES && !CACHE.containsKey(eventId)) {
+                evict(now);
+            }
+            CACHE.put(eventId, entry);
+        }
+        return entry;
+    }
+
+    // Bỏ entry hết hạn; vẫn đầy thì bỏ 1 entry bất kỳ
+    private static void evict(long now) {
+        CACHE.values().removeIf(e -> now >= e.expiresAt);
+        Iterator<Integer> it = CACHE.keySet().iterator();
+        while (CACHE.size() >= MAX_ENTRIES && it.hasNext()) {
+            it.next();
+            it.remove();
+            EVICTIONS.increment();
+        }
+    }
+
+    private static Entry await(CompletableFuture<Entry> future) throws SQLException, ClassNotFoundException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for event detail", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", CACHE.size());
+        m.put("maxEntries", MAX_ENTRIES);
+        m.put("ttlMs", TTL_MS);
+        m.put("hits", HITS.sum());
+        m.put("misses", MISSES.sum());
+        m.put("coalesced", COALESCED.sum());
+        m.put("loadFailures", LOAD_FAILURES.sum());
+        m.put("invalidations", INVALIDATIONS.sum());
+        m.put("evictions", EVICTIONS.sum());
+        return m;
+    }
+}
@@ -0,0 +1,220 @@
+package service;
+
+import DAO.TicketDAO;
+import DTO.EventStatsResponse;
+import mylib.AppProps;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ========================================================================================================
+ * SERVICE: EventTicketCounters - ĐẾM VÉ THEO TRẠNG THÁI CỦA TỪNG EVENT (CHO /api/events/stats)
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ:
+ * - Dashboard organizer mở suốt buổi check-in, mỗi lần refresh chạy
+ *   GROUP BY status COUNT(*) trên Ticket đúng lúc bảng đang bị ghi liên tục
+ *
+ * CÁCH HOẠT ĐỘNG:
+ * - Mỗi event 4 LongAdder: BOOKED, CHECKED_IN, CHECKED_OUT, REFUNDED
+ * - Nạp (seed) từ DB lần đầu event được hỏi; sau đó TicketDAO / ReportDAO báo mỗi lần
+ *   vé đổi trạng thái (from -> to, lấy event_id qua OUTPUT của câu UPDATE)
+ * - Đọc stats = cộng 4 bộ đếm => O(1), không đụng DB
+ * - Đối soát: quá ticketStats.reconcileSec (60s) kể từ lần nạp => 1 request nạp lại
+ *   (tryLock, request khác vẫn đọc số hiện tại) => sửa lệch do transaction rollback
+ *   sau khi hook đã chạy, hoặc ghi từ node khác
+ * - Hook tới lúc đang nạp => số lần ghi thay đổi => nạp lại (tối đa 3 lần)
+ * - Event chưa ai hỏi thì hook bỏ qua (không tạo bộ đếm)
+ */
+public class EventTicketCounters {
+
+    private static final long RECONCILE_MS = Math.max(1L, AppProps.getLong("ticketStats.reconcileSec", 60L)) * 1000L;
+    private static final int MAX_SEED_ATTEMPTS = 3;
+
+    private static final String[] TRACKED = {"BOOKED", "CHECKED_IN", "CHECKED_OUT", "REFUNDED"};
+
+    private static final TicketDAO ticketDAO = new TicketDAO();
+
+    private static final Map<Integer, Counters> COUNTERS = new ConcurrentHashMap<>();
+
+    // ===== Thống kê =====
+    private static final LongAdder READS = new LongAdder();
+    private static final LongAdder SEEDS = new LongAdder();
+    private static final LongAdder SEED_FAILURES = new LongAdder();
+    private static final LongAdder TRANSITIONS = new LongAdder();
+    private static final LongAdder DRIFT_CORRECTED = new LongAdder();
+
+    /**
+     * Bộ đếm của 1 event. counts[i] ứng với TRACKED[i].
+     */
+    private static final class Counters {
+
+        final LongAdder[] counts = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+        final AtomicLong writes = new AtomicLong();
+        final ReentrantLock seedLock = new ReentrantLock();
+        volatile long seededAt;     // 0 = chưa nạp xong lần nào
+
+        long get(int i) {
+            return Math.max(0L, counts[i].sum());
+        }
+    }
+
+    // ================== ĐỌC ==================
+    /**
+     * Stats của event từ bộ đếm (nạp từ DB lần đầu / khi đến hạn đối soát).
+     */
+    public static EventStatsResponse getStats(int eventId) throws SQLException, ClassNotFoundException {
+        READS.increment();
+        Counters c = COUNTERS.computeIfAbsent(eventId, k -> new Counters());
+
+        if (c.seededAt == 0) {
+            // Chưa có số => bắt buộc chờ nạp
+            c.seedLock.lock();
+            try {
+                if (c.seededAt == 0) {
+                    seed(eventId, c);
+                }
+            } finally {
+                c.seedLock.unlock();
+            }
+        } else if (System.currentTimeMillis() - c.seededAt > RECONCILE_MS && c.seedLock.tryLock()) {
+            try {
+                seed(eventId, c);
+            } catch (SQLException | ClassNotFoundException e) {
+                // Đối soát lỗi => vẫn trả số hiện tại
+                System.err.println("[ERROR] EventTicketCounters.reconcile eventId=" + eventId + ": " + e.getMessage());
+            } finally {
+                c.seedLock.unlock();
+            }
+        }
+
+        return TicketDAO.buildEventStats(eventId, (int) c.get(0), (int) c.get(1), (int) c.get(2), (int) c.get(3));
+    }
+
+    /**
+     * Stats từ bộ đếm đã nạp, KHÔNG đụng DB (không nạp, không đối soát).
+     * null => event chưa được nạp lần nào.
+     */
+    public static EventStatsResponse peekStats(int eventId) {
+        Counters c = COUNTERS.get(eventId);
+        if (c == null || c.seededAt == 0) {
+            return null;
+        }
+        READS.increment();
+        return TicketDAO.buildEventStats(eventId, (int) c.get(0), (int) c.get(1), (int) c.get(2), (int) c.get(3));
+    }
+
+    /**
+     * true nếu getStats(eventId) lúc này sẽ query DB (chưa nạp / đến hạn đối soát).
+     */
+    public static boolean needsSeed(int eventId) {
+        Counters c = COUNTERS.get(eventId);
+        return c == null || c.seededAt == 0 || System.currentTimeMillis() - c.seededAt > RECONCILE_MS;
+    }
+
+    // Gọi trong seedLock
+    private static void seed(int eventId, Counters c) throws SQLException, ClassNotFoundException {
+        for (int attempt = 1; ; attempt++) {
+            long writesBefore = c.writes.get();
+            int[] db;
+            try {
+                db = ticketDAO.countTicketsByStatus(eventId);
+            } catch (SQLException | ClassNotFoundException e) {
+                SEED_FAILURES.increment();
+                throw e;
+            }
+            if (c.writes.get() != writesBefore && attempt < MAX_SEED_ATTEMPTS) {
+                continue; // có vé đổi trạng thái trong lúc đếm => đếm lại
+            }
+
+            long drift = 0;
+            for (int i = 0; i < TRACKED.length; i++) {
+                long current = c.counts[i].sum();
+                drift += Math.abs(current - db[i]);
+                c.counts[i].add(db[i] - current);
+            }
+            if (c.seededAt != 0 && drift > 0) {
+                DRIFT_CORRECTED.add(drift);
+            }
+            c.seededAt = System.currentTimeMillis();
+            SEEDS.increment();
+            return;
+        }
+    }
+
+    // ================== HOOK TỪ DAO ==================
+    /**
+     * Vé của event đổi trạng thái from -> to (from = null: vé mới; to =
+     * null: vé bị xoá).
+     */
+    public static void onTransition(int eventId, String from, String to) {
+        Counters c = COUNTERS.get(eventId);
+        if (c == null) {
+            return;
+        }
+        int fromIdx = indexOf(from);
+        int toIdx = indexOf(to);
+        if (fromIdx == toIdx) {
+            return;
+        }
+        c.writes.incrementAndGet();
+        if (fromIdx >= 0) {
+            c.counts[fromIdx].decrement();
+        }
+        if (toIdx >= 0) {
+            c.counts[toIdx].increment();
+        }
+        TRANSITIONS.increment();
+    }
+
+    /**
+     * Nhiều vé cùng event, cùng chuyển from -> to.
+     */
+    public static void onTransitions(int eventId, String from, String to, int count) {
+        for (int i = 0; i < count; i++) {
+            onTransition(eventId, from, to);
+        }
+    }
+
+    /**
+     * Bỏ bộ đếm event (không biết event của vé vừa đổi) => lần đọc sau nạp
+     * lại.
+     */
+    public static void invalidate(int eventId) {
+        Counters c = COUNTERS.get(eventId);
+        if (c != null) {
+            c.writes.incrementAndGet();
+            c.seededAt = 1; // coi như quá hạn đối soát
+        }
+    }
+
+    private static int indexOf(String status) {
+        if (status == null) {
+            return -1;
+        }
+        for (int i = 0; i < TRACKED.length; i++) {
+            if (TRACKED[i].equalsIgnoreCase(status)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("events", COUNTERS.size());
+        m.put("reconcileMs", RECONCILE_MS);
+        m.put("reads", READS.sum());
+        m.put("seeds", SEEDS.sum());
+        m.put("seedFailures", SEED_FAILURES.sum());
+        m.put("transitions", TRANSITIONS.sum());
+        m.put("driftCorrected", DRIFT_CORRECTED.sum());
+        return m;
+    }
+}
@@ -0,0 +1,548 @@
+package service;
+
+import DAO.TicketDAO;
+import DTO.Event;
+import DTO.GateScan;
+import DTO.Ticket;
+import DTO.TicketGateInfo;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import mylib.AppProps;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: GateManifestService - CHẾ ĐỘ CỔNG OFFLINE (MANIFEST KÝ SỐ + ĐỒNG BỘ HÀNG LOẠT)
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ:
+ * - Mỗi lần quét gọi /api/staff/checkin => mạng chập chờn là cả hàng người đứng chờ
+ *
+ * CÁCH HOẠT ĐỘNG:
+ * - Manifest (GET /api/staff/gate-manifest): NDJSON, ghi thẳng ra response
+ *   + dòng 1: header {"type":"manifest","eventId",..,"startTime","endTime","expiresAt",..}
+ *   + mỗi vé 1 dòng: [ticketId,"B"] | [ticketId,"I",checkinMs] | [ticketId,"O"]
+ *   + dòng cuối: {"type":"end","count":N,"sig":...} với sig = base64url(ECDSA P-256 /
+ *     SHA-256, dạng r||s 64 byte như JWS ES256) của toàn bộ byte phía trước
+ *     => thiếu dòng cuối (đứt giữa chừng) là manifest hỏng
+ * - Ký bằng khóa BẤT ĐỐI XỨNG: máy quét chỉ giữ public key (GET /api/staff/gate-keys,
+ *   JWKS, chọn theo "kid" trong header) => kiểm tra được nhưng không giả mạo được manifest
+ * - Máy quét kiểm tra vé với manifest trong máy, lưu lại các lần quét
+ * - Đồng bộ (POST /api/staff/gate-sync): áp dụng bằng cùng UPDATE có điều kiện của
+ *   TicketDAO.checkinTicket (WHERE status = 'BOOKED'), checkin_time = thời điểm quét
+ *   (làm tròn giây) => gửi lại cùng batch ra ALREADY_APPLIED, không đổi dữ liệu
+ *
+ * KẾT QUẢ TỪNG LẦN QUÉT:
+ * - APPLIED / ALREADY_APPLIED
+ * - CONFLICT: DOUBLE_SCAN (vé đã check-in lúc khác, vd cổng khác),
+ *   DUPLICATE_SCAN (cùng vé quét nhiều lần trong batch), ALREADY_CHECKED_OUT
+ * - REJECTED: NOT_FOUND, WRONG_EVENT, INVALID_STATUS, OUTSIDE_WINDOW, INVALID_SCAN
+ *
+ * CẤU HÌNH (System property / biến môi trường):
+ * - gate.signingKey (PKCS#8, PEM hoặc base64) + gate.signingPublicKey (X.509 SPKI): cặp khóa
+ *   EC P-256 dùng chung cho mọi node. Chưa cấu hình => sinh cặp khóa tạm lúc khởi động
+ *   (mất khi restart, mỗi node 1 khóa khác nhau) - chỉ dùng khi dev
+ * - gate.manifestTtlMinutes (720), gate.sync.maxScans (5000),
+ *   gate.sync.maxClockSkewSec (300)
+ */
+public class GateManifestService {
+
+    public static final int MAX_SCANS = Math.max(1, AppProps.getInt("gate.sync.maxScans", 5000));
+
+    private static final long MANIFEST_TTL_MS = Math.max(1L, AppProps.getLong("gate.manifestTtlMinutes", 720L)) * 60_000L;
+    private static final long MAX_CLOCK_SKEW_MS = Math.max(0L, AppProps.getLong("gate.sync.maxClockSkewSec", 300L)) * 1000L;
+
+    private static final KeyPair KEYS = loadKeys();
+    private static final Map<String, Object> JWK = toJwk((ECPublicKey) KEYS.getPublic());
+    private static final String KEY_ID = (String) JWK.get("kid");
+
+    private static final TicketDAO ticketDAO = new TicketDAO();
+    private static final Gson gson = new Gson();
+
+    // ===== Thống kê =====
+    private static final LongAdder MANIFESTS = new LongAdder();
+    private static final LongAdder MANIFEST_TICKETS = new LongAdder();
+    private static final LongAdder MANIFEST_MS = new LongAdder();
+    private static final LongAdder SYNC_BATCHES = new LongAdder();
+    private static final LongAdder SCANS = new LongAdder();
+    private static final LongAdder APPLIED = new LongAdder();
+    private static final LongAdder ALREADY_APPLIED = new LongAdder();
+    private static final LongAdder CONFLICTS = new LongAdder();
+    private static final LongAdder REJECTED = new LongAdder();
+
+    private GateManifestService() {
+    }
+
+    // ===================== MANIFEST =====================
+    /**
+     * Ghi manifest của event ra out (không gom vào RAM). Trả về số vé.
+     */
+    public static int writeManifest(Event event, int allowBeforeMinutes, OutputStream out)
+            throws IOException, SQLException, ClassNotFoundException {
+        long t0 = System.currentTimeMillis();
+        SignedLineWriter w = new SignedLineWriter(out, newSigner());
+
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("type", "manifest");
+        header.put("v", 1);
+        header.put("alg", "ES256");
+        header.put("kid", KEY_ID);
+        header.put("eventId", event.getEventId());
+        header.put("title", event.getTitle());
+        header.put("startTime", event.getStartTime() != null ? event.getStartTime().getTime() : null);
+        header.put("endTime", event.getEndTime() != null ? event.getEndTime().getTime() : null);
+        header.put("checkinAllowedBeforeStartMinutes", allowBeforeMinutes);
+        header.put("generatedAt", t0);
+        header.put("expiresAt", t0 + MANIFEST_TTL_MS);
+        w.line(gson.toJson(header));
+
+        StringBuilder sb = new StringBuilder(32);
+        int count = ticketDAO.streamGateManifest(event.getEventId(), (ticketId, status, checkinTime) -> {
+            sb.setLength(0);
+            sb.append('[').append(ticketId).append(",\"").append(statusCode(status)).append('"');
+            if (checkinTime != null && "CHECKED_IN".equalsIgnoreCase(status)) {
+                sb.append(',').append(checkinTime.getTime());
+            }
+            sb.append(']');
+            w.line(sb);
+        });
+
+        String sig;
+        try {
+            sig = Base64.getUrlEncoder().withoutPadding().encodeToString(derToP1363(w.sig.sign(), 32));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("ECDSA signing failed", e);
+        }
+        w.raw("{\"type\":\"end\",\"count\":" + count + ",\"sig\":\"" + sig + "\"}\n");
+        out.flush();
+
+        MANIFESTS.increment();
+        MANIFEST_TICKETS.add(count);
+        MANIFEST_MS.add(System.currentTimeMillis() - t0);
+        return count;
+    }
+
+    private static String statusCode(String status) {
+        if ("CHECKED_IN".equalsIgnoreCase(status)) {
+            return "I";
+        }
+        if ("CHECKED_OUT".equalsIgnoreCase(status)) {
+            return "O";
+        }
+        return "B";
+    }
+
+    /**
+     * Ghi từng dòng + cập nhật chữ ký trên đúng các byte đã ghi.
+     */
+    private static final class SignedLineWriter {
+
+        private final OutputStream out;
+        private final Signature sig;
+
+        SignedLineWriter(OutputStream out, Signature sig) {
+            this.out = out;
+            this.sig = sig;
+        }
+
+        void line(CharSequence s) throws IOException {
+            byte[] b = (s + "\n").getBytes(StandardCharsets.UTF_8);
+            try {
+                sig.update(b);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("ECDSA signing failed", e);
+            }
+            out.write(b);
+        }
+
+        void raw(String s) throws IOException {
+            out.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // ===================== SYNC =====================
+    /**
+     * Áp dụng các lần quét offline của 1 event. Lỗi DB ném ra ngoài => máy quét
+     * gửi lại cả batch (an toàn vì idempotent).
+     */
+    public static JsonObject sync(Event event, int allowBeforeMinutes, String batchGateId, List<GateScan> scans)
+            throws SQLException, ClassNotFoundException {
+        long now = System.currentTimeMillis();
+        SYNC_BATCHES.increment();
+        SCANS.add(scans.size());
+
+        // ===== 1. Kiểm tra + gộp lần quét: mỗi vé giữ lần quét sớm nhất =====
+        List<JsonObject> invalid = new ArrayList<>();
+        Map<Integer, GateScan> first = new LinkedHashMap<>();
+        List<GateScan> duplicates = new ArrayList<>();
+
+        for (GateScan s : scans) {
+            if (s == null) {
+                continue;
+            }
+            String gate = s.getGateId() != null ? s.getGateId() : batchGateId;
+            if (s.getTicketId() <= 0 || s.getScannedAt() <= 0 || s.getScannedAt() > now + MAX_CLOCK_SKEW_MS) {
+                invalid.add(result(s.getTicketId(), gate, s.getScannedAt(), "REJECTED", "INVALID_SCAN",
+                        "Lần quét không hợp lệ (thiếu ticketId / scannedAt hoặc đồng hồ máy quét lệch)"));
+                continue;
+            }
+            // DATETIME trong DB không giữ đủ mili-giây => làm tròn giây để so sánh khi gửi lại
+            GateScan scan = new GateScan(s.getTicketId(), s.getScannedAt() / 1000L * 1000L, gate);
+
+            GateScan prev = first.get(scan.getTicketId());
+            if (prev == null) {
+                first.put(scan.getTicketId(), scan);
+            } else if (prev.getScannedAt() == scan.getScannedAt() && Objects.equals(prev.getGateId(), scan.getGateId())) {
+                // Máy quét gửi trùng cùng 1 bản ghi => bỏ qua
+            } else if (scan.getScannedAt() < prev.getScannedAt()) {
+                first.put(scan.getTicketId(), scan);
+                duplicates.add(prev);
+            } else {
+                duplicates.add(scan);
+            }
+        }
+
+        // ===== 2. Nạp vé + event bằng 1 query, phân loại trong RAM =====
+        Map<Integer, TicketGateInfo> infos = ticketDAO.getTicketsWithEvents(first.keySet());
+        Map<Integer, JsonObject> outcome = new LinkedHashMap<>();
+        Map<Integer, Timestamp> toApply = new LinkedHashMap<>();
+
+        Timestamp start = event.getStartTime();
+        Timestamp end = event.getEndTime();
+        long earliest = start != null ? start.getTime() - allowBeforeMinutes * 60_000L : Long.MIN_VALUE;
+        long latest = end != null ? end.getTime() : Long.MAX_VALUE;
+
+        for (GateScan scan : first.values()) {
+            int ticketId = scan.getTicketId();
+            TicketGateInfo info = infos.get(ticketId);
+            Ticket ticket = info != null ? info.getTicket() : null;
+
+            if (ticket == null) {
+                outcome.put(ticketId, result(ticketId, scan.getGateId(), scan.getScannedAt(), "REJECTED", "NOT_FOUND",
+                        "Vé #" + ticketId + " không tồn tại trong hệ thống"));
+            } else if (ticket.getEventId() != event.getEventId()) {
+                outcome.put(ticketId, result(ticketId, scan.getGateId(), scan.getScannedAt(), "REJECTED", "WRONG_EVENT",
+                        "Vé #" + ticketId + " không thuộc sự kiện này"));
+            } else if (scan.getScannedAt() < earliest || scan.getScannedAt() > latest) {
+                outcome.put(ticketId, result(ticketId, scan.getGateId(), scan.getScannedAt(), "REJECTED", "OUTSIDE_WINDOW",
+                        "Thời điểm quét nằm ngoài khung giờ check-in của sự kiện"));
+            } else if ("BOOKED".equalsIgnoreCase(ticket.getStatus())) {
+                toApply.put(ticketId, new Timestamp(scan.getScannedAt()));
+            } else {
+                outcome.put(ticketId, classifyExisting(ticket, scan));
+            }
+        }
+
+        // ===== 3. 1 transaction, UPDATE có điều kiện như checkinTicket =====
+        Set<Integer> applied = ticketDAO.checkinTicketsAt(event.getEventId(), toApply);
+        // Dashboard live: ghi lượt quét / check-in vào đúng phút đã quét ở cổng
+        for (GateScan scan : first.values()) {
+            TicketGateInfo info = infos.get(scan.getTicketId());
+            if (info != null && info.getTicket() != null && info.getTicket().getEventId() == event.getEventId()) {
+                CheckinThroughput.onOfflineCheckin(event.getEventId(), scan.getScannedAt(),
+                        applied.contains(scan.getTicketId()));
+            }
+        }
+        Set<Integer> lost = new HashSet<>();
+        for (Integer ticketId : toApply.keySet()) {
+            if (applied.contains(ticketId)) {
+                GateScan scan = first.get(ticketId);
+                JsonObject r = result(ticketId, scan.getGateId(), scan.getScannedAt(), "APPLIED", null,
+                        "Check-in thành công vé #" + ticketId);
+                r.addProperty("checkinTime", scan.getScannedAt());
+                outcome.put(ticketId, r);
+            } else {
+                lost.add(ticketId);
+            }
+        }
+
+        // Vé vừa đổi trạng thái ở chỗ khác giữa lúc nạp và UPDATE => đọc lại để báo đúng
+        if (!lost.isEmpty()) {
+            Map<Integer, TicketGateInfo> fresh = ticketDAO.getTicketsWithEvents(lost);
+            for (Integer ticketId : lost) {
+                GateScan scan = first.get(ticketId);
+                TicketGateInfo info = fresh.get(ticketId);
+                if (info == null || info.getTicket() == null) {
+                    outcome.put(ticketId, result(ticketId, scan.getGateId(), scan.getScannedAt(), "REJECTED", "NOT_FOUND",
+                            "Vé #" + ticketId + " không tồn tại trong hệ thống"));
+                } else {
+                    outcome.put(ticketId, classifyExisting(info.getTicket(), scan));
+                }
+            }
+        }
+
+        // ===== 4. Gom kết quả theo thứ tự quét =====
+        JsonArray results = new JsonArray();
+        JsonArray conflicts = new JsonArray();
+        int appliedCount = 0;
+        int alreadyCount = 0;
+        int conflictCount = 0;
+        int rejectedCount = 0;
+
+        List<JsonObject> all = new ArrayList<>();
+        for (Integer ticketId : first.keySet()) {
+            all.add(outcome.get(ticketId));
+        }
+        for (GateScan dup : duplicates) {
+            GateScan kept = first.get(dup.getTicketId());
+            JsonObject r = result(dup.getTicketId(), dup.getGateId(), dup.getScannedAt(), "CONFLICT", "DUPLICATE_SCAN",
+                    "Vé #" + dup.getTicketId() + " được quét nhiều lần");
+            r.addProperty("firstScannedAt", kept.getScannedAt());
+            r.addProperty("firstGateId", kept.getGateId());
+            all.add(r);
+        }
+        all.addAll(invalid);
+
+        for (JsonObject r : all) {
+            results.add(r);
+            switch (r.get("result").getAsString()) {
+                case "APPLIED":
+                    appliedCount++;
+                    break;
+                case "ALREADY_APPLIED":
+                    alreadyCount++;
+                    break;
+                case "CONFLICT":
+                    conflictCount++;
+                    conflicts.add(r);
+                    break;
+                default:
+                    rejectedCount++;
+            }
+        }
+
+        APPLIED.add(appliedCount);
+        ALREADY_APPLIED.add(alreadyCount);
+        CONFLICTS.add(conflictCount);
+        REJECTED.add(rejectedCount);
+
+        JsonObject res = new JsonObject();
+        res.addProperty("eventId", event.getEventId());
+        res.addProperty("gateId", batchGateId);
+        res.addProperty("received", scans.size());
+        res.addProperty("applied", appliedCount);
+        res.addProperty("alreadyApplied", alreadyCount);
+        res.addProperty("conflictCount", conflictCount);
+        res.addProperty("rejectedCount", rejectedCount);
+        res.addProperty("serverTime", now);
+        res.add("results", results);
+        res.add("conflicts", conflicts);
+        return res;
+    }
+
+    /**
+     * Vé không còn BOOKED: cùng thời điểm quét = batch gửi lại, khác = quét
+     * trùng (thường là cổng khác).
+     */
+    private static JsonObject classifyExisting(Ticket ticket, GateScan scan) {
+        int ticketId = ticket.getTicketId();
+        String status = ticket.getStatus();
+
+        if ("CHECKED_IN".equalsIgnoreCase(status)) {
+            Timestamp ci = ticket.getCheckinTime();
+            if (ci != null && ci.getTime() / 1000L * 1000L == scan.getScannedAt()) {
+                JsonObject r = result(ticketId, scan.getGateId(), scan.getScannedAt(), "ALREADY_APPLIED", null,
+                        "Lần quét đã được đồng bộ trước đó");
+                r.addProperty("checkinTime", ci.getTime());
+                return r;
+            }
+            JsonObject r = result(ticketId, scan.getGateId(), scan.getScannedAt(), "CONFLICT", "DOUBLE_SCAN",
+                    "Vé đã được check-in trước đó");
+            if (ci != null) {
+                r.addProperty("existingCheckinTime", ci.getTime());
+            }
+            return r;
+        }
+        if ("CHECKED_OUT".equalsIgnoreCase(status)) {
+            return result(ticketId, scan.getGateId(), scan.getScannedAt(), "CONFLICT", "ALREADY_CHECKED_OUT",
+                    "Vé đã được check-out trước đó");
+        }
+        JsonObject r = result(ticketId, scan.getGateId(), scan.getScannedAt(), "REJECTED", "INVALID_STATUS",
+                "Vé có trạng thái không hợp lệ: " + status);
+        r.addProperty("currentStatus", status);
+        return r;
+    }
+
+    private static JsonObject result(int ticketId, String gateId, long scannedAt, String result, String reason, String message) {
+        JsonObject r = new JsonObject();
+        r.addProperty("ticketId", ticketId);
+        r.addProperty("gateId", gateId);
+        r.addProperty("scannedAt", scannedAt);
+        r.addProperty("result", result);
+        if (reason != null) {
+            r.addProperty("reason", reason);
+        }
+        r.addProperty("message", message);
+        return r;
+    }
+
+    // ===================== KHÓA KÝ =====================
+    private static Signature newSigner() {
+        try {
+            Signature sig = Signature.getInstance("SHA256withECDSA");
+            sig.initSign(KEYS.getPrivate());
+            return sig;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA256withECDSA unavailable", e);
+        }
+    }
+
+    /**
+     * JWKS chứa public key đang ký manifest (GET /api/staff/gate-keys).
+     */
+    public static Map<String, Object> getPublicJwks() {
+        List<Map<String, Object>> keys = new ArrayList<>();
+        keys.add(JWK);
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("keys", keys);
+        return m;
+    }
+
+    /**
+     * Cặp khóa EC P-256 từ cấu hình; không dùng lại khóa JWT nữa (máy quét chỉ
+     * cần public key). Cặp khóa cấu hình sai => lỗi ngay lúc nạp class.
+     */
+    private static KeyPair loadKeys() {
+        String priv = AppProps.get("gate.signingKey", null);
+        String pub = AppProps.get("gate.signingPublicKey", null);
+        try {
+            if (priv != null && pub != null) {
+                KeyFactory kf = KeyFactory.getInstance("EC");
+                KeyPair kp = new KeyPair(
+                        kf.generatePublic(new X509EncodedKeySpec(decodeKey(pub))),
+                        kf.generatePrivate(new PKCS8EncodedKeySpec(decodeKey(priv))));
+                // Ký thử để chắc 2 khóa là 1 cặp
+                byte[] probe = "gate-manifest".getBytes(StandardCharsets.UTF_8);
+                Signature s = Signature.getInstance("SHA256withECDSA");
+                s.initSign(kp.getPrivate());
+                s.update(probe);
+                byte[] sig = s.sign();
+                s.initVerify(kp.getPublic());
+                s.update(probe);
+                if (!s.verify(sig)) {
+                    throw new IllegalStateException("gate.signingKey và gate.signingPublicKey không phải 1 cặp");
+                }
+                return kp;
+            }
+            if (priv != null || pub != null) {
+                throw new IllegalStateException("Cần cấu hình cả gate.signingKey và gate.signingPublicKey");
+            }
+            System.err.println("[WARN] GateManifestService: gate.signingKey chưa cấu hình => dùng cặp khóa EC tạm "
+                    + "(đổi mỗi lần khởi động, mỗi node 1 khóa)");
+            KeyPairGenerator g = KeyPairGenerator.getInstance("EC");
+            g.initialize(new ECGenParameterSpec("secp256r1"));
+            return g.generateKeyPair();
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("Gate manifest signing key invalid: " + e.getMessage(), e);
+        }
+    }
+
+    // PEM (-----BEGIN ...-----) hoặc base64 trơn
+    private static byte[] decodeKey(String value) {
+        String b64 = value.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+        return Base64.getDecoder().decode(b64);
+    }
+
+    /**
+     * JWK (RFC 7517) của public key; kid = JWK thumbprint (RFC 7638).
+     */
+    private static Map<String, Object> toJwk(ECPublicKey key) {
+        String x = b64u(unsigned(key.getW().getAffineX(), 32));
+        String y = b64u(unsigned(key.getW().getAffineY(), 32));
+        String kid;
+        try {
+            String canonical = "{\"crv\":\"P-256\",\"kty\":\"EC\",\"x\":\"" + x + "\",\"y\":\"" + y + "\"}";
+            kid = b64u(MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        jwk.put("kty", "EC");
+        jwk.put("crv", "P-256");
+        jwk.put("x", x);
+        jwk.put("y", y);
+        jwk.put("kid", kid);
+        jwk.put("alg", "ES256");
+        jwk.put("use", "sig");
+        return jwk;
+    }
+
+    // Số nguyên không dấu big-endian, đủ len byte (bỏ byte dấu 0x00 / đệm 0 bên trái)
+    private static byte[] unsigned(BigInteger v, int len) {
+        byte[] b = v.toByteArray();
+        byte[] out = new byte[len];
+        int n = Math.min(b.length, len);
+        System.arraycopy(b, b.length - n, out, len - n, n);
+        return out;
+    }
+
+    /**
+     * Chữ ký DER (SEQUENCE { INTEGER r, INTEGER s }) của Java => r||s cố định
+     * 2 * n byte (định dạng JWS / WebCrypto dùng).
+     */
+    static byte[] derToP1363(byte[] der, int n) {
+        int off = (der[1] & 0x80) != 0 ? 2 + (der[1] & 0x7f) : 2;
+        byte[] out = new byte[2 * n];
+        int rLen = der[off + 1] & 0xff;
+        copyInteger(der, off + 2, rLen, out, 0, n);
+        int sOff = off + 2 + rLen;
+        int sLen = der[sOff + 1] & 0xff;
+        copyInteger(der, sOff + 2, sLen, out, n, n);
+        return out;
+    }
+
+    private static void copyInteger(byte[] src, int at, int len, byte[] dst, int dstAt, int n) {
+        while (len > n && src[at] == 0) {
+            at++;
+            len--;
+        }
+        System.arraycopy(src, at, dst, dstAt + n - len, len);
+    }
+
+    private static String b64u(byte[] b) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+    }
+
+    public static Map<String, Object> getStats() {
+        long manifests = MANIFESTS.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("keyId", KEY_ID);
+        m.put("manifestTtlMs", MANIFEST_TTL_MS);
+        m.put("manifests", manifests);
+        m.put("manifestTickets", MANIFEST_TICKETS.sum());
+        m.put("avgManifestMs", manifests > 0 ? MANIFEST_MS.sum() / manifests : 0);
+        m.put("syncBatches", SYNC_BATCHES.sum());
+        m.put("scans", SCANS.sum());
+        m.put("applied", APPLIED.sum());
+        m.put("alreadyApplied", ALREADY_APPLIED.sum());
+        m.put("conflicts", CONFLICTS.sum());
+        m.put("rejected", REJECTED.sum());
+        return m;
+    }
+}
@@ -0,0 +1,492 @@
+package service;
+
+import DAO.NotificationDAO;
+import mylib.AppProps;
+import utils.InMemoryNotificationService;
+import utils.InMemoryNotificationService.NotiItem;
+import utils.InMemoryNotificationService.Page;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: NotificationService - NOTIFICATION LƯU DB (WRITE-BEHIND) + CACHE RAM TRANG MỚI NHẤT
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ:
+ * - Notification chỉ nằm trong map static của InMemoryNotificationService
+ *   => redeploy là mất, nhiều node Tomcat không thấy của nhau
+ * - /api/notifications/my trả toàn bộ danh sách mỗi lần gọi
+ *
+ * CÁCH HOẠT ĐỘNG:
+ * - addNotification: cấp ID (theo block lấy từ Notification_Id_Block), thêm vào
+ *   cache RAM, xếp vào hàng đợi => request không chờ DB
+ * - Block ID được lấy NGOÀI lock hộp thư (giữ sẵn 1 block dự phòng khi block đang dùng
+ *   sắp hết); trong lock chỉ lấy số kế tiếp từ block đã giữ
+ * - Chỉ dùng ID đã giữ trong DB, không bao giờ tự bịa ID: lấy block lỗi (DB chập chờn)
+ *   => notification chờ ở hàng đợi "chưa có ID", thread nền lấy block lại rồi mới thêm
+ * - 1 thread nền gom hàng đợi ghi theo lô (JDBC batch) mỗi flushMs hoặc khi đủ batchSize;
+ *   lỗi thì trả lô về đầu hàng đợi, thử lại với backoff
+ * - Đọc: trang mới nhất + unread lấy từ cache (nạp lại sau refreshSec để thấy thay đổi
+ *   từ node khác); trang cũ hơn / cache thiếu => đọc DB theo cursor notification_id
+ * - Trước khi đọc DB / đánh dấu đã đọc: flushUser() ghi riêng các item đang chờ của
+ *   user đó (chờ tối đa 1 lô của thread nền), không ghi cả hàng đợi của mọi user
+ * - Không tạo được bảng: chạy như bản cũ (chỉ RAM)
+ *
+ * CẤU HÌNH (System property / biến môi trường):
+ * - notification.writeBehind.batchSize (200), notification.writeBehind.flushMs (200)
+ * - notification.writeBehind.maxQueue (10000), notification.idBlockSize (100)
+ * - notification.cache.refreshSec (60)
+ */
+public class NotificationService {
+
+    private static final int BATCH_SIZE = Math.max(1, AppProps.getInt("notification.writeBehind.batchSize", 200));
+    private static final long FLUSH_MS = Math.max(10L, AppProps.getLong("notification.writeBehind.flushMs", 200L));
+    private static final int MAX_QUEUE = Math.max(1, AppProps.getInt("notification.writeBehind.maxQueue", 10000));
+    private static final int ID_BLOCK = Math.max(1, AppProps.getInt("notification.idBlockSize", 100));
+    private static final long REFRESH_MS = Math.max(1L, AppProps.getLong("notification.cache.refreshSec", 60L)) * 1000L;
+    private static final long BACKOFF_MAX_MS = 30_000L;
+
+    private static final NotificationDAO notificationDAO = new NotificationDAO();
+
+    private static final LinkedBlockingDeque<NotiItem> QUEUE = new LinkedBlockingDeque<>(MAX_QUEUE);
+    // Chưa lấy được block ID (DB lỗi) => chờ thread nền thêm lại
+    private static final LinkedBlockingQueue<PendingAdd> WAITING_ID = new LinkedBlockingQueue<>(MAX_QUEUE);
+    private static final Object FLUSH_LOCK = new Object();
+    private static final Object WAKE = new Object();
+    private static Thread flusher;
+    private static volatile boolean running;
+    private static volatile boolean tableReady;
+
+    // ===== Cấp ID =====
+    private static final int ID_LOW_WATER = Math.max(1, ID_BLOCK / 4);
+    private static final Object ID_LOCK = new Object();      // giữ rất ngắn, không gọi DB
+    private static final Object ALLOC_LOCK = new Object();   // 1 thread gọi DB lấy block
+    private static long nextId;                               // [nextId, blockEnd): block đang dùng
+    private static long blockEnd;
+    private static long spareStart;                           // [spareStart, spareEnd): block dự phòng
+    private static long spareEnd;
+    private static final AtomicLong LOCAL_IDS = new AtomicLong();   // chế độ chỉ RAM
+
+    // ===== Thống kê =====
+    private static final LongAdder ADDED = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final LongAdder FLUSHED = new LongAdder();
+    private static final LongAdder FLUSH_BATCHES = new LongAdder();
+    private static final LongAdder FLUSH_FAILURES = new LongAdder();
+    private static final LongAdder ID_BLOCKS = new LongAdder();
+    private static final LongAdder ID_BLOCK_FAILURES = new LongAdder();
+    private static final LongAdder ID_RETRIES = new LongAdder();
+    private static final LongAdder USER_FLUSHES = new LongAdder();
+    private static final LongAdder DB_PAGES = new LongAdder();
+    private static final LongAdder CACHE_LOADS = new LongAdder();
+
+    // ================== VÒNG ĐỜI (AppContextListener) ==================
+    public static synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        try {
+            notificationDAO.ensureTable();
+            tableReady = true;
+        } catch (Exception e) {
+            tableReady = false;
+            System.err.println("[ERROR] NotificationService.start: Notification table unavailable, using RAM only: " + e.getMessage());
+        }
+        InMemoryNotificationService.setCacheOnly(!tableReady);
+        if (!tableReady) {
+            return;
+        }
+
+        running = true;
+        flusher = new Thread(NotificationService::flushLoop, "notification-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+        System.out.println("[NotificationService] Started: batchSize=" + BATCH_SIZE + ", flushMs=" + FLUSH_MS
+                + ", idBlockSize=" + ID_BLOCK);
+    }
+
+    public static synchronized void stop() {
+        running = false;
+        if (flusher != null) {
+            flusher.interrupt();
+            try {
+                flusher.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+        if (tableReady) {
+            drainWaitingForId();
+            if (!flushAll() || !WAITING_ID.isEmpty()) {
+                System.err.println("[ERROR] NotificationService.stop: " + (QUEUE.size() + WAITING_ID.size())
+                        + " notification(s) not persisted");
+            }
+        }
+        System.out.println("[NotificationService] Stopped");
+    }
+
+    // ================== GHI ==================
+    /**
+     * Thêm notification cho user: có ngay trong cache, ghi DB ở thread nền.
+     * Chưa lấy được block ID => chờ trong WAITING_ID, thread nền thêm lại sau.
+     */
+    public static void addNotification(int userId, String title, String content, String linkUrl) {
+        if (!tableReady) {
+            InMemoryNotificationService.add(userId, title, content, linkUrl, LOCAL_IDS::incrementAndGet);
+            ADDED.increment();
+            return;
+        }
+        // Còn item chờ ID => xếp sau để giữ thứ tự
+        NotiItem item = WAITING_ID.isEmpty() ? addWithReservedId(userId, title, content, linkUrl) : null;
+        if (item == null) {
+            if (!WAITING_ID.offer(new PendingAdd(userId, title, content, linkUrl))) {
+                DROPPED.increment();
+                System.err.println("[ERROR] NotificationService.addNotification: no notification id and waiting queue full, dropped for user " + userId);
+            }
+            return;
+        }
+        ADDED.increment();
+        enqueue(item);
+    }
+
+    private static void enqueue(NotiItem item) {
+        if (!QUEUE.offerLast(item)) {
+            // Hàng đợi đầy (DB chết lâu): vẫn còn trong cache nhưng không bền vững
+            DROPPED.increment();
+            System.err.println("[ERROR] NotificationService.addNotification: write-behind queue full, not persisted: " + item.id);
+            return;
+        }
+        if (QUEUE.size() >= BATCH_SIZE) {
+            synchronized (WAKE) {
+                WAKE.notify();
+            }
+        }
+    }
+
+    /**
+     * Thêm vào cache với ID đã giữ trong DB. null => không lấy được block ID.
+     */
+    private static NotiItem addWithReservedId(int userId, String title, String content, String linkUrl) {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            if (!reserveIds()) {
+                return null;
+            }
+            try {
+                return InMemoryNotificationService.add(userId, title, content, linkUrl, NotificationService::takeId);
+            } catch (IllegalStateException e) {
+                // Thread khác vừa dùng hết các ID đã giữ => lấy block mới
+                ID_RETRIES.increment();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Đảm bảo còn ID đã giữ; lấy block mới (gọi DB) khi còn ít hơn ID_LOW_WATER
+     * và chưa có block dự phòng. Gọi NGOÀI lock hộp thư.
+     * @return false nếu không còn ID nào và lấy block lỗi
+     */
+    private static boolean reserveIds() {
+        if (idsLeft() > ID_LOW_WATER) {
+            return true;
+        }
+        synchronized (ALLOC_LOCK) {
+            synchronized (ID_LOCK) {
+                if (spareEnd > spareStart || blockEnd - nextId > ID_LOW_WATER) {
+                    return true;
+                }
+            }
+            long start;
+            try {
+                start = notificationDAO.allocateIdBlock(ID_BLOCK);
+                ID_BLOCKS.increment();
+            } catch (Exception e) {
+                ID_BLOCK_FAILURES.increment();
+                System.err.println("[ERROR] NotificationService.reserveIds: " + e.getMessage());
+                return idsLeft() > 0;
+            }
+            synchronized (ID_LOCK) {
+                if (nextId >= blockEnd) {
+                    nextId = start;
+                    blockEnd = start + ID_BLOCK;
+                } else {
+                    spareStart = start;
+                    spareEnd = start + ID_BLOCK;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static long idsLeft() {
+        synchronized (ID_LOCK) {
+            return (blockEnd - nextId) + (spareEnd - spareStart);
+        }
+    }
+
+    // Gọi trong lock hộp thư của InMemoryNotificationService: không gọi DB
+    private static long takeId() {
+        synchronized (ID_LOCK) {
+            if (nextId >= blockEnd) {
+                if (spareEnd <= spareStart) {
+                    throw new IllegalStateException("no reserved notification id");
+                }
+                nextId = spareStart;
+                blockEnd = spareEnd;
+                spareStart = 0;
+                spareEnd = 0;
+            }
+            return nextId++;
+        }
+    }
+
+    // Thread nền: thêm lại các notification đang chờ ID. false nếu vẫn chưa lấy được block
+    private static boolean drainWaitingForId() {
+        PendingAdd p;
+        while ((p = WAITING_ID.peek()) != null) {
+            NotiItem item = addWithReservedId(p.userId, p.title, p.content, p.linkUrl);
+            if (item == null) {
+                return false;
+            }
+            WAITING_ID.poll();
+            ADDED.increment();
+            enqueue(item);
+        }
+        return true;
+    }
+
+    /**
+     * Ghi 1 lô đầu hàng đợi xuống DB.
+     * @return số item đã ghi, -1 nếu lỗi (lô đã trả về hàng đợi)
+     */
+    private static int flushBatch() {
+        synchronized (FLUSH_LOCK) {
+            List<NotiItem> batch = new ArrayList<>(Math.min(BATCH_SIZE, 256));
+            if (QUEUE.drainTo(batch, BATCH_SIZE) == 0) {
+                return 0;
+            }
+            if (!write(batch)) {
+                requeue(batch);
+                return -1;
+            }
+            return batch.size();
+        }
+    }
+
+    /**
+     * Ghi hết hàng đợi xuống DB (thread nền, stop()). Giữ FLUSH_LOCK từng lô
+     * => flushUser() chỉ phải chờ tối đa 1 lô.
+     * @return false nếu còn lô ghi lỗi (đã trả về hàng đợi)
+     */
+    public static boolean flushAll() {
+        if (!tableReady) {
+            return true;
+        }
+        int n;
+        while ((n = flushBatch()) > 0) {
+            // tiếp lô sau
+        }
+        return n == 0;
+    }
+
+    /**
+     * Chỉ ghi các item đang chờ của 1 user (trước khi đọc DB / đánh dấu đã đọc
+     * cho user đó). Item đã bị thread nền lấy ra thì FLUSH_LOCK đảm bảo lô đó
+     * commit xong trước.
+     * @return false nếu ghi lỗi (đã trả về hàng đợi)
+     */
+    public static boolean flushUser(int userId) {
+        if (!tableReady) {
+            return true;
+        }
+        synchronized (FLUSH_LOCK) {
+            List<NotiItem> mine = new ArrayList<>();
+            for (Iterator<NotiItem> it = QUEUE.iterator(); it.hasNext();) {
+                NotiItem n = it.next();
+                if (n.userId == userId) {
+                    it.remove();
+                    mine.add(n);
+                }
+            }
+            if (mine.isEmpty()) {
+                return true;
+            }
+            USER_FLUSHES.increment();
+            for (int from = 0; from < mine.size(); from += BATCH_SIZE) {
+                if (!write(mine.subList(from, Math.min(mine.size(), from + BATCH_SIZE)))) {
+                    requeue(mine.subList(from, mine.size()));
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Gọi trong FLUSH_LOCK
+    private static boolean write(List<NotiItem> batch) {
+        try {
+            notificationDAO.insertBatch(batch);
+        } catch (Exception e) {
+            FLUSH_FAILURES.increment();
+            System.err.println("[ERROR] NotificationService.flush: " + e.getMessage());
+            return false;
+        }
+        for (NotiItem n : batch) {
+            n.persisted = true;
+        }
+        FLUSHED.add(batch.size());
+        FLUSH_BATCHES.increment();
+        return true;
+    }
+
+    // Ghi lỗi => trả về đầu hàng đợi, giữ nguyên thứ tự
+    private static void requeue(List<NotiItem> items) {
+        for (int i = items.size() - 1; i >= 0; i--) {
+            if (!QUEUE.offerFirst(items.get(i))) {
+                DROPPED.increment();
+            }
+        }
+    }
+
+    private static void flushLoop() {
+        long backoff = 0;
+        while (running) {
+            try {
+                synchronized (WAKE) {
+                    if (QUEUE.size() < BATCH_SIZE) {
+                        WAKE.wait(backoff > 0 ? backoff : FLUSH_MS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            boolean idsOk = drainWaitingForId();
+            if (flushAll() && idsOk) {
+                backoff = 0;
+            } else {
+                backoff = backoff == 0 ? 1000L : Math.min(BACKOFF_MAX_MS, backoff * 2);
+            }
+        }
+    }
+
+    private static final class PendingAdd {
+
+        final int userId;
+        final String title;
+        final String content;
+        final String linkUrl;
+
+        PendingAdd(int userId, String title, String content, String linkUrl) {
+            this.userId = userId;
+            this.title = title;
+            this.content = content;
+            this.linkUrl = linkUrl;
+        }
+    }
+
+    // ================== ĐỌC ==================
+    /**
+     * Trang notification mới nhất trước. afterId = null => trang đầu, ngược
+     * lại là các notification cũ hơn afterId.
+     */
+    public static Page getPage(int userId, Long afterId, int limit) throws SQLException, ClassNotFoundException {
+        Page page = InMemoryNotificationService.getPage(userId, afterId, limit, REFRESH_MS);
+        if (page != null) {
+            return page;
+        }
+        if (afterId == null) {
+            loadRecent(userId);
+            page = InMemoryNotificationService.getPage(userId, null, limit, REFRESH_MS);
+            if (page != null) {
+                return page;
+            }
+        } else {
+            flushUser(userId);
+        }
+
+        // Ngoài phạm vi cache: đọc DB, lấy dư 1 dòng để biết còn trang sau
+        DB_PAGES.increment();
+        List<NotiItem> rows = notificationDAO.findPage(userId, afterId, limit + 1);
+        boolean hasMore = rows.size() > limit;
+        return new Page(hasMore ? new ArrayList<>(rows.subList(0, limit)) : rows, hasMore);
+    }
+
+    public static int getUnreadCount(int userId) throws SQLException, ClassNotFoundException {
+        Integer cached = InMemoryNotificationService.getUnreadCount(userId, REFRESH_MS);
+        if (cached != null) {
+            return cached;
+        }
+        loadRecent(userId);
+        cached = InMemoryNotificationService.getUnreadCount(userId, Long.MAX_VALUE);
+        return cached == null ? 0 : cached;
+    }
+
+    // Nạp trang mới nhất (tối đa maxPerUser) + số chưa đọc từ DB vào cache
+    private static void loadRecent(int userId) throws SQLException, ClassNotFoundException {
+        flushUser(userId);
+        int cap = InMemoryNotificationService.getMaxPerUser();
+        List<NotiItem> rows = notificationDAO.findPage(userId, null, cap + 1);
+        int unread = notificationDAO.countUnread(userId);
+        boolean complete = rows.size() <= cap;
+        InMemoryNotificationService.load(userId, complete ? rows : rows.subList(0, cap), unread, complete);
+        CACHE_LOADS.increment();
+    }
+
+    // ================== ĐÃ ĐỌC ==================
+    /**
+     * Đánh dấu đã đọc toàn bộ: 1 câu UPDATE trên DB + cập nhật cache. Item
+     * còn trong hàng đợi mang cờ read = true khi được ghi.
+     */
+    public static void markAllRead(int userId) throws SQLException, ClassNotFoundException {
+        flushUser(userId);
+        if (tableReady) {
+            notificationDAO.markAllRead(userId);
+        }
+        InMemoryNotificationService.markAllRead(userId);
+    }
+
+    public static boolean markOneRead(int userId, long notificationId) throws SQLException, ClassNotFoundException {
+        boolean inCache = InMemoryNotificationService.markOneRead(userId, notificationId);
+        if (!tableReady) {
+            return inCache;
+        }
+        flushUser(userId);
+        boolean inDb = notificationDAO.markOneRead(userId, notificationId);
+        if (inDb && !inCache) {
+            InMemoryNotificationService.decrementUnread(userId);
+        }
+        return inCache || inDb;
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("tableReady", tableReady);
+        m.put("added", ADDED.sum());
+        m.put("queued", QUEUE.size());
+        m.put("waitingForId", WAITING_ID.size());
+        m.put("maxQueue", MAX_QUEUE);
+        m.put("dropped", DROPPED.sum());
+        m.put("flushed", FLUSHED.sum());
+        m.put("flushBatches", FLUSH_BATCHES.sum());
+        m.put("flushFailures", FLUSH_FAILURES.sum());
+        m.put("idBlocks", ID_BLOCKS.sum());
+        m.put("idBlockFailures", ID_BLOCK_FAILURES.sum());
+        m.put("idRetries", ID_RETRIES.sum());
+        m.put("userFlushes", USER_FLUSHES.sum());
+        m.put("cacheLoads", CACHE_LOADS.sum());
+        m.put("dbPages", DB_PAGES.sum());
+        m.put("cache", InMemoryNotificationService.getStats());
+        return m;
+    }
+}
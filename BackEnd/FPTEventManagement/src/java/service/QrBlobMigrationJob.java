@@ -0,0 +1,107 @@
+package service;
+
+import DAO.TicketDAO;
+import mylib.AppProps;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * JOB: QrBlobMigrationJob - DỌN ẢNH BASE64 CŨ TRONG Ticket.qr_code_value
+ * ========================================================================================================
+ *
+ * - Chạy 1 lần lúc deploy (start từ AppContextListener), thread nền daemon
+ * - Đi theo khoảng ticket_id (batchSize id / lần) tới MAX(ticket_id) lúc bắt đầu,
+ *   thay Base64 bằng mã vé (TicketDAO.stripQrBlobs), nghỉ pauseMs giữa các batch
+ *   để không tranh lock với luồng mua vé / check-in
+ * - Idempotent: dòng đã là mã vé (LEN <= 64) không bị đụng => chạy lại an toàn
+ *
+ * CẤU HÌNH (System property / biến môi trường):
+ * - qr.migration.enabled (true), qr.migration.batchSize (500), qr.migration.pauseMs (200)
+ */
+public class QrBlobMigrationJob {
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(AppProps.get("qr.migration.enabled", "true"));
+    private static final int BATCH_SIZE = Math.max(1, AppProps.getInt("qr.migration.batchSize", 500));
+    private static final long PAUSE_MS = Math.max(0L, AppProps.getLong("qr.migration.pauseMs", 200L));
+
+    private static final TicketDAO ticketDAO = new TicketDAO();
+
+    private static Thread worker;
+
+    // ===== Thống kê =====
+    private static final LongAdder BATCHES = new LongAdder();
+    private static final LongAdder STRIPPED = new LongAdder();
+    private static volatile String state = "IDLE";
+    private static volatile int lastTicketId;
+    private static volatile int maxTicketId;
+    private static volatile long startedAt;
+    private static volatile long finishedAt;
+
+    public static synchronized void start() {
+        if (!ENABLED) {
+            state = "DISABLED";
+            return;
+        }
+        if (worker != null) {
+            return;
+        }
+        worker = new Thread(QrBlobMigrationJob::run, "qr-blob-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public static synchronized void stop() {
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+    }
+
+    private static void run() {
+        startedAt = System.currentTimeMillis();
+        state = "RUNNING";
+        try {
+            maxTicketId = ticketDAO.getMaxTicketId();
+            int from = 0;
+            while (from < maxTicketId && !Thread.currentThread().isInterrupted()) {
+                int to = Math.min(maxTicketId, from + BATCH_SIZE);
+                int rows = ticketDAO.stripQrBlobs(from, to);
+                BATCHES.increment();
+                STRIPPED.add(rows);
+                lastTicketId = to;
+                from = to;
+                if (rows > 0 && PAUSE_MS > 0) {
+                    Thread.sleep(PAUSE_MS);
+                }
+            }
+            state = Thread.currentThread().isInterrupted() ? "STOPPED" : "DONE";
+        } catch (InterruptedException e) {
+            state = "STOPPED";
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Lần deploy sau chạy lại từ đầu (idempotent)
+            state = "FAILED";
+            System.err.println("[ERROR] QrBlobMigrationJob at ticketId>" + lastTicketId + ": " + e.getMessage());
+        } finally {
+            finishedAt = System.currentTimeMillis();
+            System.out.println("[QrBlobMigrationJob] " + state + ": stripped=" + STRIPPED.sum()
+                    + ", batches=" + BATCHES.sum() + ", " + (finishedAt - startedAt) + "ms");
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("state", state);
+        m.put("batchSize", BATCH_SIZE);
+        m.put("batches", BATCHES.sum());
+        m.put("stripped", STRIPPED.sum());
+        m.put("lastTicketId", lastTicketId);
+        m.put("maxTicketId", maxTicketId);
+        m.put("startedAt", startedAt);
+        m.put("finishedAt", finishedAt);
+        return m;
+    }
+}
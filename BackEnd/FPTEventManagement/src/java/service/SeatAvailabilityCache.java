@@ -0,0 +1,671 @@
+package service;
+
+import DAO.EventSeatLayoutDAO;
+import DAO.TicketDAO;
+import DTO.Seat;
+import mylib.AppProps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: SeatAvailabilityCache - TRẠNG THÁI GHẾ THEO EVENT GIỮ TRONG RAM
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ:
+ * - GET /api/seats?eventId= gọi EventSeatLayoutDAO.getSeatsForEvent: mỗi dòng ghế chạy
+ *   2 subquery EXISTS trên Ticket, mỗi lần FE poll sơ đồ ghế
+ *
+ * CÁCH HOẠT ĐỘNG:
+ * - Mỗi event 1 EventSeatMap: thông tin ghế (code/row/col/type) + byte[] state
+ *   (AVAILABLE / HOLD / BOOKED) đánh index theo vị trí ghế
+ * - Nạp 1 lần từ DB (getSeatsForEvent + ticket_id theo ghế), sau đó cập nhật
+ *   write-through từ TicketDAO (insert / update sau thanh toán / delete / checkin / checkout
+ *   / reaper trả ghế) => steady state không query DB
+ * - ticketId -> (event, ghế) để các hàm DAO chỉ có ticketId vẫn cập nhật được
+ * - Hook chạy trong transaction chưa commit: caller rollback mà không xoá
+ *   ticket thì gọi invalidate(eventId) để lần đọc sau nạp lại
+ * - Hook tới đúng lúc đang nạp => writeCounter thay đổi => nạp lại. Counter được
+ *   kiểm tra lại SAU khi map đã vào MAPS: hook chạy trước lúc đó không thấy map
+ *   nhưng đã tăng counter => bỏ map vừa cài, nạp lại; hook chạy sau thì thấy map
+ * - Hết MAX_LOAD_ATTEMPTS mà vẫn bị ghi xen => không cache, caller query thẳng DB
+ * - WRITE_COUNTERS / LOAD_LOCKS chỉ sống cùng map: bị evict / invalidate là xoá
+ *
+ * KIỂM TRA NHẤT QUÁN: verify(eventId) nạp lại từ DB, đếm số ghế lệch, thay map
+ * (gọi qua /api/admin/seat-cache)
+ *
+ * VERSION + CHANGE LOG (cho ETag / ?sinceVersion=):
+ * - Mỗi lần ghế đổi trạng thái => version tăng, ghi (version, ghế) vào ring buffer có giới hạn
+ * - Version lấy từ 1 bộ đếm chung, khởi tạo theo thời gian lúc start => luôn tăng kể cả khi
+ *   event bị nạp lại / server restart, client cầm version cũ không bị nhận nhầm delta
+ * - sinceVersion cũ hơn phần log còn giữ => trả full list
+ *
+ * CẤU HÌNH: seatCache.maxEvents (500) - quá số event thì bỏ event lâu không đọc
+ * seatCache.changeLogSize (2048) - số thay đổi giữ lại mỗi event
+ */
+public class SeatAvailabilityCache {
+
+    public static final byte AVAILABLE = 0;
+    public static final byte HOLD = 1;
+    public static final byte BOOKED = 2;
+
+    private static final String[] STATE_NAMES = {"AVAILABLE", "HOLD", "BOOKED"};
+
+    private static final int MAX_EVENTS = Math.max(1, AppProps.getInt("seatCache.maxEvents", 500));
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+    private static final int CHANGE_LOG_SIZE = Math.max(16, AppProps.getInt("seatCache.changeLogSize", 2048));
+
+    // Bộ đếm version chung cho mọi event (x1000 để vẫn tăng sau khi restart)
+    private static final AtomicLong VERSIONS = new AtomicLong(System.currentTimeMillis() * 1000L);
+
+    private static final Map<Integer, EventSeatMap> MAPS = new ConcurrentHashMap<>();
+    // ticketId -> eventId (chỉ cho event đang có trong cache)
+    private static final Map<Integer, Integer> TICKET_EVENT = new ConcurrentHashMap<>();
+    // Đếm số lần ghi theo event để phát hiện ghi xen lúc đang nạp. Chỉ loader tạo entry,
+    // hook chỉ tăng entry đã có; xoá khi map bị evict / invalidate
+    private static final Map<Integer, AtomicLong> WRITE_COUNTERS = new ConcurrentHashMap<>();
+    // Hook theo ticketId mà chưa biết event (event chưa nạp) - cũng có thể xen lúc đang nạp
+    private static final AtomicLong UNKNOWN_WRITES = new AtomicLong();
+    private static final Map<Integer, Object> LOAD_LOCKS = new ConcurrentHashMap<>();
+
+    private static final EventSeatLayoutDAO eventSeatLayoutDAO = new EventSeatLayoutDAO();
+    private static final TicketDAO ticketDAO = new TicketDAO();
+
+    // ===== Thống kê =====
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder LOADS = new LongAdder();
+    private static final LongAdder HOOK_UPDATES = new LongAdder();
+    private static final LongAdder INVALIDATIONS = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+    private static final LongAdder VERIFY_RUNS = new LongAdder();
+    private static final LongAdder VERIFY_MISMATCHES = new LongAdder();
+    private static final LongAdder DELTA_SERVED = new LongAdder();
+    private static final LongAdder DELTA_FALLBACK_FULL = new LongAdder();
+    private static final LongAdder LOAD_RETRIES = new LongAdder();
+    private static final LongAdder LOAD_GAVE_UP = new LongAdder();
+
+    // ================== MAP CỦA 1 EVENT ==================
+    static final class EventSeatMap {
+
+        final int eventId;
+        final int[] seatIds;
+        final int[] areaIds;
+        final String[] seatCodes;
+        final String[] rowNos;
+        final String[] colNos;
+        final String[] seatTypes;
+        final byte[] states;
+        final Map<Integer, Integer> indexBySeat;
+        final Map<Integer, Integer> seatIdxByTicket = new HashMap<>();
+        volatile long lastAccess;
+
+        // version hiện tại + change log (ring buffer): logVersions[i] / logSeatIdx[i]
+        final long baseVersion;
+        long version;
+        final long[] logVersions = new long[CHANGE_LOG_SIZE];
+        final int[] logSeatIdx = new int[CHANGE_LOG_SIZE];
+        int logCount;
+        int logHead; // vị trí ghi tiếp theo
+        long lastDroppedVersion; // version của entry mới nhất đã bị ghi đè
+
+        EventSeatMap(int eventId, List<Seat> seats) {
+            int n = seats.size();
+            this.eventId = eventId;
+            this.seatIds = new int[n];
+            this.areaIds = new int[n];
+            this.seatCodes = new String[n];
+            this.rowNos = new String[n];
+            this.colNos = new String[n];
+            this.seatTypes = new String[n];
+            this.states = new byte[n];
+            this.indexBySeat = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                Seat s = seats.get(i);
+                seatIds[i] = s.getSeatId();
+                areaIds[i] = s.getAreaId();
+                seatCodes[i] = s.getSeatCode();
+                rowNos[i] = s.getRowNo();
+                colNos[i] = s.getColNo();
+                seatTypes[i] = s.getSeatType();
+                states[i] = stateOfLayoutStatus(s.getStatus());
+                indexBySeat.put(s.getSeatId(), i);
+            }
+            this.lastAccess = System.currentTimeMillis();
+            this.baseVersion = VERSIONS.incrementAndGet();
+            this.version = baseVersion;
+        }
+
+        /**
+         * Đổi trạng thái 1 ghế, trả về version mới (0 nếu trạng thái không đổi).
+         */
+        synchronized long setState(int seatIdx, byte state) {
+            if (states[seatIdx] == state) {
+                return 0;
+            }
+            states[seatIdx] = state;
+            version = VERSIONS.incrementAndGet();
+            if (logCount == CHANGE_LOG_SIZE) {
+                lastDroppedVersion = logVersions[logHead];
+            }
+            logVersions[logHead] = version;
+            logSeatIdx[logHead] = seatIdx;
+            logHead = (logHead + 1) % CHANGE_LOG_SIZE;
+            if (logCount < CHANGE_LOG_SIZE) {
+                logCount++;
+            }
+            return version;
+        }
+
+        /**
+         * Version nhỏ nhất mà log còn đủ để tính delta: sinceVersion >= giá trị
+         * này thì mọi thay đổi sau sinceVersion đều còn trong log.
+         */
+        private long oldestCoveredVersion() {
+            // log chưa từng đầy => còn đủ từ lúc nạp
+            return logCount < CHANGE_LOG_SIZE ? baseVersion : lastDroppedVersion;
+        }
+
+        /**
+         * Ghế đổi trạng thái sau sinceVersion (trạng thái hiện tại), null nếu log
+         * không còn đủ => caller trả full list.
+         */
+        synchronized List<Seat> changesSince(long sinceVersion, String seatTypeFilter) {
+            if (sinceVersion > version || sinceVersion < oldestCoveredVersion()) {
+                return null;
+            }
+            List<Seat> list = new ArrayList<>();
+            java.util.Set<Integer> seen = new java.util.HashSet<>();
+            for (int k = 0; k < logCount; k++) {
+                int pos = (logHead - 1 - k + CHANGE_LOG_SIZE) % CHANGE_LOG_SIZE; // mới -> cũ
+                if (logVersions[pos] <= sinceVersion) {
+                    break;
+                }
+                int i = logSeatIdx[pos];
+                if (seen.add(i) && matchesType(i, seatTypeFilter)) {
+                    list.add(toSeat(i));
+                }
+            }
+            return list;
+        }
+
+        private boolean matchesType(int i, String seatTypeFilter) {
+            return seatTypeFilter == null
+                    || (seatTypes[i] != null && seatTypes[i].trim().equalsIgnoreCase(seatTypeFilter));
+        }
+
+        private Seat toSeat(int i) {
+            Seat s = new Seat();
+            s.setSeatId(seatIds[i]);
+            s.setAreaId(areaIds[i]);
+            s.setSeatCode(seatCodes[i]);
+            s.setRowNo(rowNos[i]);
+            s.setColNo(colNos[i]);
+            s.setSeatType(seatTypes[i]);
+            s.setStatus(STATE_NAMES[states[i]]);
+            return s;
+        }
+
+        synchronized List<Seat> snapshot(String seatTypeFilter) {
+            List<Seat> list = new ArrayList<>(seatIds.length);
+            for (int i = 0; i < seatIds.length; i++) {
+                if (matchesType(i, seatTypeFilter)) {
+                    list.add(toSeat(i));
+                }
+            }
+            return list;
+        }
+
+        synchronized int[] counts() {
+            int[] c = new int[STATE_NAMES.length];
+            for (byte b : states) {
+                c[b]++;
+            }
+            return c;
+        }
+    }
+
+    // ================== ĐỌC ==================
+    /**
+     * Danh sách ghế của event (giống EventSeatLayoutDAO.getSeatsForEvent: status
+     * AVAILABLE / HOLD / BOOKED). Lần đầu nạp từ DB, các lần sau đọc từ RAM.
+     */
+    public static List<Seat> getSeatsForEvent(int eventId, String seatTypeFilter) {
+        String filter = (seatTypeFilter != null && !seatTypeFilter.trim().isEmpty()) ? seatTypeFilter.trim() : null;
+        EventSeatMap m = getOrLoad(eventId);
+        if (m == null) {
+            // Lỗi nạp => fallback query thẳng DB như cũ
+            return eventSeatLayoutDAO.getSeatsForEvent(eventId, filter);
+        }
+        return m.snapshot(filter);
+    }
+
+    /**
+     * Kết quả đọc sơ đồ ghế kèm version (cho ETag / delta).
+     * - delta = true: seats chỉ gồm ghế đổi trạng thái sau sinceVersion
+     * - version = -1: không nạp được cache (đã fallback query DB, không có version)
+     */
+    public static class SeatView {
+
+        private final long version;
+        private final boolean delta;
+        private final List<Seat> seats;
+
+        SeatView(long version, boolean delta, List<Seat> seats) {
+            this.version = version;
+            this.delta = delta;
+            this.seats = seats;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean isDelta() {
+            return delta;
+        }
+
+        public List<Seat> getSeats() {
+            return seats;
+        }
+    }
+
+    /**
+     * Version hiện tại của sơ đồ ghế event (nạp nếu chưa có), -1 nếu lỗi nạp.
+     * Dùng để trả 304 mà không phải dựng list ghế.
+     */
+    public static long getVersion(int eventId) {
+        EventSeatMap m = getOrLoad(eventId);
+        if (m == null) {
+            return -1;
+        }
+        synchronized (m) {
+            return m.version;
+        }
+    }
+
+    /**
+     * Đọc sơ đồ ghế: sinceVersion != null và log còn đủ => chỉ trả ghế thay
+     * đổi; ngược lại trả full list.
+     */
+    public static SeatView getSeatView(int eventId, String seatTypeFilter, Long sinceVersion) {
+        String filter = (seatTypeFilter != null && !seatTypeFilter.trim().isEmpty()) ? seatTypeFilter.trim() : null;
+        EventSeatMap m = getOrLoad(eventId);
+        if (m == null) {
+            return new SeatView(-1, false, eventSeatLayoutDAO.getSeatsForEvent(eventId, filter));
+        }
+        synchronized (m) {
+            if (sinceVersion != null) {
+                List<Seat> changed = m.changesSince(sinceVersion, filter);
+                if (changed != null) {
+                    DELTA_SERVED.increment();
+                    return new SeatView(m.version, true, changed);
+                }
+                DELTA_FALLBACK_FULL.increment();
+            }
+            return new SeatView(m.version, false, m.snapshot(filter));
+        }
+    }
+
+    private static EventSeatMap getOrLoad(int eventId) {
+        EventSeatMap m = MAPS.get(eventId);
+        if (m != null) {
+            HITS.increment();
+            m.lastAccess = System.currentTimeMillis();
+            return m;
+        }
+
+        Object lock = LOAD_LOCKS.computeIfAbsent(eventId, k -> new Object());
+        synchronized (lock) {
+            m = MAPS.get(eventId);
+            if (m != null) {
+                HITS.increment();
+                return m;
+            }
+            return loadAndInstall(eventId);
+        }
+    }
+
+    /**
+     * Nạp map từ DB và cài vào MAPS. Sau khi cài mới kiểm tra counter: hook
+     * chạy giữa lúc query và lúc cài không thấy map => counter đổi => bỏ map,
+     * nạp lại. Hết số lần thử thì trả null (caller query DB, không cache map
+     * đã biết là lệch). Gọi trong LOAD_LOCKS của event.
+     */
+    private static EventSeatMap loadAndInstall(int eventId) {
+        for (int attempt = 1; attempt <= MAX_LOAD_ATTEMPTS; attempt++) {
+            AtomicLong writes = WRITE_COUNTERS.computeIfAbsent(eventId, k -> new AtomicLong());
+            long before = writes.get();
+            long unknownBefore = UNKNOWN_WRITES.get();
+
+            EventSeatMap m = load(eventId);
+            if (m == null) {
+                return null;
+            }
+            install(m);
+
+            if (writes.get() == before && UNKNOWN_WRITES.get() == unknownBefore
+                    && WRITE_COUNTERS.get(eventId) == writes) {
+                return m;
+            }
+            // có ghi xen (hoặc counter bị xoá do invalidate) => map có thể đã lệch
+            if (MAPS.remove(eventId, m)) {
+                dropTicketIndex(m);
+            }
+            LOAD_RETRIES.increment();
+        }
+        LOAD_GAVE_UP.increment();
+        return null;
+    }
+
+    private static EventSeatMap load(int eventId) {
+        try {
+            List<Seat> seats = eventSeatLayoutDAO.querySeatsForEvent(eventId, null);
+            Map<Integer, Integer> ticketBySeat = ticketDAO.getSeatTicketIdsForEvent(eventId);
+            LOADS.increment();
+
+            EventSeatMap m = new EventSeatMap(eventId, seats);
+            for (Map.Entry<Integer, Integer> e : ticketBySeat.entrySet()) {
+                Integer idx = m.indexBySeat.get(e.getKey());
+                if (idx != null) {
+                    m.seatIdxByTicket.put(e.getValue(), idx);
+                }
+            }
+            return m;
+        } catch (Exception e) {
+            System.err.println("[ERROR] SeatAvailabilityCache.load: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void install(EventSeatMap m) {
+        synchronized (m) {
+            for (Integer ticketId : m.seatIdxByTicket.keySet()) {
+                TICKET_EVENT.put(ticketId, m.eventId);
+            }
+        }
+        EventSeatMap old = MAPS.put(m.eventId, m);
+        if (old != null) {
+            dropTicketIndex(old);
+        }
+        evictIfNeeded();
+    }
+
+    private static void evictIfNeeded() {
+        while (MAPS.size() > MAX_EVENTS) {
+            EventSeatMap oldest = null;
+            for (EventSeatMap m : MAPS.values()) {
+                if (oldest == null || m.lastAccess < oldest.lastAccess) {
+                    oldest = m;
+                }
+            }
+            if (oldest == null || !MAPS.remove(oldest.eventId, oldest)) {
+                return;
+            }
+            dropTicketIndex(oldest);
+            forgetEvent(oldest.eventId);
+            EVICTIONS.increment();
+        }
+    }
+
+    private static void dropTicketIndex(EventSeatMap m) {
+        synchronized (m) {
+            for (Integer ticketId : m.seatIdxByTicket.keySet()) {
+                TICKET_EVENT.remove(ticketId, m.eventId);
+            }
+        }
+    }
+
+    /**
+     * Bỏ counter + load lock của event không còn map. Counter tăng trước khi
+     * xoá => loader đang giữ counter cũ thấy đổi và không giữ map của mình.
+     */
+    private static void forgetEvent(int eventId) {
+        AtomicLong writes = WRITE_COUNTERS.remove(eventId);
+        if (writes != null) {
+            writes.incrementAndGet();
+        }
+        Object lock = LOAD_LOCKS.get(eventId);
+        if (lock != null) {
+            LOAD_LOCKS.remove(eventId, lock);
+        }
+    }
+
+    /**
+     * Hook báo có ghi cho event. Không tạo counter: event không đang nạp thì
+     * không cần phát hiện ghi xen.
+     */
+    private static void markWrite(int eventId) {
+        AtomicLong writes = WRITE_COUNTERS.get(eventId);
+        if (writes != null) {
+            writes.incrementAndGet();
+        }
+    }
+
+    // ================== HOOK TỪ TicketDAO ==================
+    /**
+     * Ticket mới (PENDING giữ ghế / BOOKED) cho ghế seatId của event.
+     */
+    public static void onTicketInserted(int ticketId, int eventId, Integer seatId, String status) {
+        markWrite(eventId);
+        if (seatId == null || ticketId <= 0) {
+            return;
+        }
+        EventSeatMap m = MAPS.get(eventId);
+        if (m == null) {
+            return;
+        }
+        Integer idx = m.indexBySeat.get(seatId);
+        if (idx == null) {
+            return;
+        }
+        synchronized (m) {
+            m.seatIdxByTicket.put(ticketId, idx);
+        }
+        TICKET_EVENT.put(ticketId, eventId);
+        apply(m, idx, stateOfTicketStatus(status));
+    }
+
+    /**
+     * Ticket đổi trạng thái (PENDING -> BOOKED, BOOKED -> CHECKED_IN, ...).
+     */
+    public static void onTicketStatusChanged(int ticketId, String newStatus) {
+        Integer eventId = TICKET_EVENT.get(ticketId);
+        if (eventId == null) {
+            UNKNOWN_WRITES.incrementAndGet();
+            return;
+        }
+        markWrite(eventId);
+        EventSeatMap m = MAPS.get(eventId);
+        if (m == null) {
+            return;
+        }
+        Integer idx;
+        synchronized (m) {
+            idx = m.seatIdxByTicket.get(ticketId);
+        }
+        if (idx != null) {
+            apply(m, idx, stateOfTicketStatus(newStatus));
+        }
+    }
+
+    /**
+     * Ticket bị xoá (thanh toán fail, rollback thủ công, reaper trả ghế).
+     */
+    public static void onTicketsDeleted(Collection<Integer> ticketIds) {
+        if (ticketIds == null) {
+            return;
+        }
+        for (Integer ticketId : ticketIds) {
+            if (ticketId == null) {
+                continue;
+            }
+            Integer eventId = TICKET_EVENT.remove(ticketId);
+            if (eventId == null) {
+                UNKNOWN_WRITES.incrementAndGet();
+                continue;
+            }
+            markWrite(eventId);
+            EventSeatMap m = MAPS.get(eventId);
+            if (m == null) {
+                continue;
+            }
+            Integer idx;
+            synchronized (m) {
+                idx = m.seatIdxByTicket.remove(ticketId);
+            }
+            if (idx != null) {
+                apply(m, idx, AVAILABLE);
+            }
+        }
+    }
+
+    private static void apply(EventSeatMap m, int idx, byte state) {
+        long newVersion = m.setState(idx, state);
+        if (newVersion != 0) {
+            HOOK_UPDATES.increment();
+            // Đẩy xuống browser đang mở /api/events/{id}/seat-stream (ngoài lock của map)
+            SeatStreamHub.publish(m.eventId, m.seatIds[idx], state, newVersion);
+        }
+    }
+
+    /**
+     * Bỏ map của event (layout đổi, transaction rollback mà hook đã chạy...).
+     * Lần đọc sau sẽ nạp lại từ DB.
+     */
+    public static void invalidate(int eventId) {
+        EventSeatMap m = MAPS.remove(eventId);
+        if (m != null) {
+            dropTicketIndex(m);
+            INVALIDATIONS.increment();
+        }
+        forgetEvent(eventId);
+        SeatStreamHub.resync(eventId);
+    }
+
+    // ================== KIỂM TRA NHẤT QUÁN ==================
+    /**
+     * Nạp lại event từ DB, so với map đang có, thay map mới. Trả về số ghế lệch.
+     */
+    public static Map<String, Object> verify(int eventId) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("eventId", eventId);
+
+        Object lock = LOAD_LOCKS.computeIfAbsent(eventId, k -> new Object());
+        synchronized (lock) {
+            EventSeatMap current = MAPS.get(eventId);
+            EventSeatMap fresh = loadAndInstall(eventId);
+            if (fresh == null) {
+                report.put("rebuilt", false);
+                report.put("error", "Could not load a consistent seat map (database error or concurrent writes)");
+                return report;
+            }
+
+            int mismatches = 0;
+            List<Integer> mismatchedSeatIds = new ArrayList<>();
+            if (current != null) {
+                synchronized (current) {
+                    for (int i = 0; i < fresh.seatIds.length; i++) {
+                        Integer idx = current.indexBySeat.get(fresh.seatIds[i]);
+                        byte cached = idx != null ? current.states[idx] : -1;
+                        if (cached != fresh.states[i]) {
+                            mismatches++;
+                            if (mismatchedSeatIds.size() < 50) {
+                                mismatchedSeatIds.add(fresh.seatIds[i]);
+                            }
+                        }
+                    }
+                    if (current.seatIds.length != fresh.seatIds.length) {
+                        mismatches += Math.abs(current.seatIds.length - fresh.seatIds.length);
+                    }
+                }
+            }
+
+            VERIFY_RUNS.increment();
+            VERIFY_MISMATCHES.add(mismatches);
+            if (mismatches > 0) {
+                SeatStreamHub.resync(eventId);
+            }
+
+            report.put("wasCached", current != null);
+            report.put("seats", fresh.seatIds.length);
+            report.put("mismatches", mismatches);
+            report.put("mismatchedSeatIds", mismatchedSeatIds);
+            report.put("rebuilt", true);
+            return report;
+        }
+    }
+
+    // ================== MAP TRẠNG THÁI ==================
+    // Giống CASE trong EventSeatLayoutDAO.getSeatsForEvent
+    static byte stateOfTicketStatus(String status) {
+        if (status == null) {
+            return AVAILABLE;
+        }
+        switch (status.trim().toUpperCase()) {
+            case "PENDING":
+                return HOLD;
+            case "BOOKED":
+            case "CHECKED_IN":
+            case "CHECKED_OUT":
+            case "REFUNDED":
+                return BOOKED;
+            default:
+                return AVAILABLE;
+        }
+    }
+
+    private static byte stateOfLayoutStatus(String layoutStatus) {
+        if ("BOOKED".equalsIgnoreCase(layoutStatus)) {
+            return BOOKED;
+        }
+        if ("HOLD".equalsIgnoreCase(layoutStatus)) {
+            return HOLD;
+        }
+        return AVAILABLE;
+    }
+
+    // ================== THỐNG KÊ ==================
+    public static Map<String, Object> getStats() {
+        long seats = 0;
+        long held = 0;
+        long booked = 0;
+        for (Iterator<EventSeatMap> it = MAPS.values().iterator(); it.hasNext();) {
+            int[] c = it.next().counts();
+            seats += c[AVAILABLE] + c[HOLD] + c[BOOKED];
+            held += c[HOLD];
+            booked += c[BOOKED];
+        }
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("events", MAPS.size());
+        m.put("maxEvents", MAX_EVENTS);
+        m.put("seats", seats);
+        m.put("held", held);
+        m.put("booked", booked);
+        m.put("trackedTickets", TICKET_EVENT.size());
+        m.put("hits", HITS.sum());
+        m.put("loads", LOADS.sum());
+        m.put("loadRetries", LOAD_RETRIES.sum());
+        m.put("loadGaveUp", LOAD_GAVE_UP.sum());
+        m.put("writeCounters", WRITE_COUNTERS.size());
+        m.put("loadLocks", LOAD_LOCKS.size());
+        m.put("hookUpdates", HOOK_UPDATES.sum());
+        m.put("invalidations", INVALIDATIONS.sum());
+        m.put("evictions", EVICTIONS.sum());
+        m.put("verifyRuns", VERIFY_RUNS.sum());
+        m.put("verifyMismatches", VERIFY_MISMATCHES.sum());
+        m.put("changeLogSize", CHANGE_LOG_SIZE);
+        m.put("deltaServed", DELTA_SERVED.sum());
+        m.put("deltaFallbackFull", DELTA_FALLBACK_FULL.sum());
+        return m;
+    }
+}
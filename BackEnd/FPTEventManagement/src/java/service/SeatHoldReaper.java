@@ -0,0 +1,157 @@
+package service;
+
+import DAO.TicketDAO;
+import DTO.Ticket;
+import mylib.AppProps;
+
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: SeatHoldReaper - DỌN TICKET PENDING QUÁ HẠN ĐỂ TRẢ GHẾ
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ:
+ * - Ticket PENDING (giữ ghế trước khi sang VNPay) chỉ bị xoá khi VNPay redirect về
+ *   BuyTicketController với kết quả fail
+ * - User đóng trình duyệt => không có redirect => ghế HOLD mãi, event "hết vé" giả
+ *
+ * CÁCH HOẠT ĐỘNG:
+ * - Hold TTL = 15 phút, khớp vnp_ExpireDate mà VnPayUtil.createPaymentUrl set
+ *   (+ grace vài phút để redirect thành công muộn vẫn kịp update PENDING -> BOOKED)
+ * - Thread nền (start từ AppContextListener) chạy mỗi reaperIntervalSec:
+ *   xoá theo batch (TicketDAO.releaseExpiredPendingTickets) tới khi hết ticket quá hạn
+ * - Ticket PENDING có qr_issued_at NULL (dữ liệu cũ): mỗi lượt gán mốc = bây giờ trước
+ *   (TicketDAO.stampPendingHoldsWithoutTime) => bị dọn sau 1 TTL như ghế giữ bình thường
+ * - start(): tạo index (status, qr_issued_at) nếu chưa có (TicketDAO.ensureHoldIndex)
+ * - Ghi lại số ghế đã trả + thời gian mỗi lượt quét cho /api/admin/metrics
+ *
+ * CẤU HÌNH (System property / biến môi trường):
+ * - seatHold.ttlMinutes (15), seatHold.graceMinutes (2)
+ * - seatHold.reaperIntervalSec (60), seatHold.reaperBatchSize (500)
+ */
+public class SeatHoldReaper {
+
+    // Giới hạn số batch mỗi lượt để 1 lượt quét không chiếm DB quá lâu
+    private static final int MAX_BATCHES_PER_SWEEP = 100;
+
+    private static final long TTL_MS = AppProps.getLong("seatHold.ttlMinutes", 15L) * 60_000L;
+    private static final long GRACE_MS = AppProps.getLong("seatHold.graceMinutes", 2L) * 60_000L;
+    private static final long INTERVAL_SEC = Math.max(5L, AppProps.getLong("seatHold.reaperIntervalSec", 60L));
+    private static final int BATCH_SIZE = Math.max(1, AppProps.getInt("seatHold.reaperBatchSize", 500));
+
+    private static final TicketDAO ticketDAO = new TicketDAO();
+
+    private static ScheduledExecutorService scheduler;
+
+    // ===== Thống kê =====
+    private static final LongAdder SWEEPS = new LongAdder();
+    private static final LongAdder SWEEP_ERRORS = new LongAdder();
+    private static final LongAdder TOTAL_RELEASED = new LongAdder();
+    private static final LongAdder TOTAL_STAMPED = new LongAdder();
+    private static final LongAdder TOTAL_SWEEP_MS = new LongAdder();
+    private static final AtomicLong MAX_SWEEP_MS = new AtomicLong();
+    private static volatile long lastSweepAt;
+    private static volatile long lastSweepMs;
+    private static volatile int lastReleased;
+
+    public static synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        try {
+            ticketDAO.ensureHoldIndex();
+        } catch (Exception e) {
+            // Không tạo được index => reaper vẫn chạy, chỉ chậm hơn
+            System.err.println("[ERROR] SeatHoldReaper.start: ensureHoldIndex: " + e.getMessage());
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "seat-hold-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(SeatHoldReaper::sweep, INTERVAL_SEC, INTERVAL_SEC, TimeUnit.SECONDS);
+        System.out.println("[SeatHoldReaper] Started: ttlMs=" + TTL_MS + ", graceMs=" + GRACE_MS
+                + ", intervalSec=" + INTERVAL_SEC + ", batchSize=" + BATCH_SIZE);
+    }
+
+    public static synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            System.out.println("[SeatHoldReaper] Stopped");
+        }
+    }
+
+    /**
+     * 1 lượt quét: xoá ticket PENDING có qr_issued_at (thời điểm giữ ghế) cũ hơn
+     * TTL + grace. Trả về số ghế đã trả.
+     */
+    public static int sweep() {
+        long start = System.currentTimeMillis();
+        Timestamp cutoff = new Timestamp(start - TTL_MS - GRACE_MS);
+        int released = 0;
+
+        try {
+            for (int batch = 0; batch < MAX_BATCHES_PER_SWEEP; batch++) {
+                int stamped = ticketDAO.stampPendingHoldsWithoutTime(BATCH_SIZE);
+                TOTAL_STAMPED.add(stamped);
+                if (stamped < BATCH_SIZE) {
+                    break;
+                }
+            }
+            for (int batch = 0; batch < MAX_BATCHES_PER_SWEEP; batch++) {
+                List<Ticket> tickets = ticketDAO.releaseExpiredPendingTickets(cutoff, BATCH_SIZE);
+                released += tickets.size();
+                if (tickets.size() < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            SWEEP_ERRORS.increment();
+            System.err.println("[ERROR] SeatHoldReaper.sweep: " + e.getMessage());
+        }
+
+        long took = System.currentTimeMillis() - start;
+        SWEEPS.increment();
+        TOTAL_RELEASED.add(released);
+        TOTAL_SWEEP_MS.add(took);
+        MAX_SWEEP_MS.accumulateAndGet(took, Math::max);
+        lastSweepAt = start;
+        lastSweepMs = took;
+        lastReleased = released;
+
+        if (released > 0) {
+            System.out.println("[SeatHoldReaper] Released " + released + " expired seat hold(s) in " + took + "ms");
+        }
+        return released;
+    }
+
+    public static Map<String, Object> getStats() {
+        long sweeps = SWEEPS.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("running", scheduler != null);
+        m.put("ttlMs", TTL_MS);
+        m.put("graceMs", GRACE_MS);
+        m.put("intervalSec", INTERVAL_SEC);
+        m.put("batchSize", BATCH_SIZE);
+        m.put("sweeps", sweeps);
+        m.put("sweepErrors", SWEEP_ERRORS.sum());
+        m.put("totalReleased", TOTAL_RELEASED.sum());
+        m.put("totalStampedWithoutHoldTime", TOTAL_STAMPED.sum());
+        m.put("lastSweepAt", lastSweepAt);
+        m.put("lastSweepMs", lastSweepMs);
+        m.put("lastReleased", lastReleased);
+        m.put("avgSweepMs", sweeps > 0 ? TOTAL_SWEEP_MS.sum() / sweeps : 0);
+        m.put("maxSweepMs", MAX_SWEEP_MS.get());
+        return m;
+    }
+}
@@ -0,0 +1,349 @@
+package service;
+
+import DAO.EventSeatLayoutDAO;
+import DAO.TicketDAO;
+import DTO.Event;
+import DTO.SeatHoldInfo;
+import mylib.DBUtils;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: SeatHoldService - GIỮ CHỖ NHIỀU GHẾ 1 LẦN (TẤT CẢ HOẶC KHÔNG GHẾ NÀO)
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ (PaymentTicketController / WalletPayController):
+ * - Mỗi ghế: getSeatForEvent + getActiveCategoryTicketByEventIdAndName (2 query)
+ * - Mỗi ghế: insertTicketAndReturnId mở 1 connection riêng
+ * - Đặt 10 ghế ~ 30 round-trip, lỗi giữa chừng phải xoá tay các ticket đã tạo
+ *
+ * CÁCH MỚI:
+ * 1) 1 query set-based (EventSeatLayoutDAO.lockSeatsForHold) validate toàn bộ ghế
+ *    + lấy CategoryTicket theo seatType + check ghế đã có Ticket, có khoá UPDLOCK/HOLDLOCK
+ * 2) 1 lệnh INSERT nhiều dòng (TicketDAO.insertPendingTicketsBatch) tạo Ticket PENDING
+ * 3) Tất cả trong 1 transaction: lỗi ở đâu cũng rollback => không còn ghế "giữ dở"
+ * 4) SeatAvailabilityCache chỉ được báo SAU commit (publishHold) => người khác
+ *    không thấy ghế HOLD của transaction có thể còn rollback
+ *
+ * KẾT QUẢ: HoldResult
+ * - OK: ticketIds (đúng thứ tự seatIds), categoryIdsForSeats, totalPrice
+ * - INVALID: input/ghế không hợp lệ (controller trả 400) - message giữ nguyên câu cũ
+ * - CONFLICT: ghế bị người khác giữ trước (controller trả 409)
+ * - ERROR: lỗi DB khác (controller trả 500)
+ *
+ * THỐNG KÊ: latency giữ chỗ theo số ghế (1, 2, 3-5, 6-10, 11+) cho /api/admin/metrics
+ */
+public class SeatHoldService {
+
+    // Chặn request giữ quá nhiều ghế 1 lần (IN list quá dài)
+    public static final int MAX_SEATS_PER_HOLD = 1000;
+
+    public enum HoldStatus {
+        OK, INVALID, CONFLICT, ERROR
+    }
+
+    public static class HoldResult {
+
+        private final HoldStatus status;
+        private final String message;
+        private final List<Integer> ticketIds;
+        private final List<Integer> categoryIdsForSeats;
+        private final BigDecimal totalPrice;
+
+        private HoldResult(HoldStatus status, String message, List<Integer> ticketIds,
+                List<Integer> categoryIdsForSeats, BigDecimal totalPrice) {
+            this.status = status;
+            this.message = message;
+            this.ticketIds = ticketIds;
+            this.categoryIdsForSeats = categoryIdsForSeats;
+            this.totalPrice = totalPrice;
+        }
+
+        static HoldResult fail(HoldStatus status, String message) {
+            return new HoldResult(status, message, new ArrayList<Integer>(), new ArrayList<Integer>(), BigDecimal.ZERO);
+        }
+
+        public boolean isOk() {
+            return status == HoldStatus.OK;
+        }
+
+        public HoldStatus getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public List<Integer> getTicketIds() {
+            return ticketIds;
+        }
+
+        public List<Integer> getCategoryIdsForSeats() {
+            return categoryIdsForSeats;
+        }
+
+        public BigDecimal getTotalPrice() {
+            return totalPrice;
+        }
+    }
+
+    private final EventSeatLayoutDAO eventSeatLayoutDAO = new EventSeatLayoutDAO();
+    private final TicketDAO ticketDAO = new TicketDAO();
+
+    /**
+     * Giữ chỗ với transaction riêng (PaymentTicketController: giữ ghế trước khi
+     * redirect VNPay). OK => đã commit; khác OK => đã rollback.
+     */
+    public HoldResult holdSeats(int userId, Event event, List<Integer> seatIds) {
+        long start = System.nanoTime();
+        HoldResult result;
+
+        try ( Connection conn = DBUtils.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                result = doHold(conn, userId, event, seatIds);
+                if (result.isOk()) {
+                    conn.commit();
+                    publishHold(event.getEventId(), seatIds, result);
+                } else {
+                    conn.rollback();
+                }
+            } catch (SQLException ex) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ignore) {
+                }
+                result = mapSqlException(ex);
+            }
+        } catch (Exception e) {
+            System.err.println("[ERROR] holdSeats: " + e.getMessage());
+            e.printStackTrace();
+            result = HoldResult.fail(HoldStatus.ERROR, "Error holding seats: " + e.toString());
+        }
+
+        record(seatIds == null ? 0 : seatIds.size(), start, result);
+        return result;
+    }
+
+    /**
+     * Giữ chỗ trong transaction CỦA CALLER (WalletPayController: giữ ghế + trừ
+     * ví + tạo bill trong cùng 1 transaction). Không commit/rollback ở đây.
+     * SQLException tranh ghế được đổi thành CONFLICT, caller tự rollback.
+     * Caller gọi publishHold SAU commit.
+     */
+    public HoldResult holdSeats(Connection conn, int userId, Event event, List<Integer> seatIds) {
+        long start = System.nanoTime();
+        HoldResult result;
+        try {
+            result = doHold(conn, userId, event, seatIds);
+        } catch (SQLException ex) {
+            result = mapSqlException(ex);
+        }
+        record(seatIds == null ? 0 : seatIds.size(), start, result);
+        return result;
+    }
+
+    /**
+     * Báo SeatAvailabilityCache các ghế vừa giữ (seatIds cùng thứ tự với
+     * result.getTicketIds()). Chỉ gọi sau khi transaction giữ ghế đã commit.
+     */
+    public static void publishHold(int eventId, List<Integer> seatIds, HoldResult result) {
+        if (result == null || !result.isOk()) {
+            return;
+        }
+        List<Integer> ticketIds = result.getTicketIds();
+        for (int i = 0; i < ticketIds.size() && i < seatIds.size(); i++) {
+            SeatAvailabilityCache.onTicketInserted(ticketIds.get(i), eventId, seatIds.get(i), "PENDING");
+        }
+    }
+
+    // ================== CORE ==================
+    private HoldResult doHold(Connection conn, int userId, Event event, List<Integer> seatIds) throws SQLException {
+
+        if (event == null) {
+            return HoldResult.fail(HoldStatus.INVALID, "Event not found or not OPEN");
+        }
+        if (seatIds == null || seatIds.isEmpty()) {
+            return HoldResult.fail(HoldStatus.INVALID, "seatIds is empty");
+        }
+        if (seatIds.size() > MAX_SEATS_PER_HOLD) {
+            return HoldResult.fail(HoldStatus.INVALID, "Too many seats (max " + MAX_SEATS_PER_HOLD + ")");
+        }
+
+        Set<Integer> seen = new HashSet<>();
+        for (Integer seatId : seatIds) {
+            if (!seen.add(seatId)) {
+                return HoldResult.fail(HoldStatus.INVALID, "Seat " + seatId + " is duplicated");
+            }
+        }
+
+        int eventId = event.getEventId();
+
+        // (1) Validate toàn bộ ghế bằng 1 query (có khoá tới hết transaction)
+        Map<Integer, SeatHoldInfo> infos = eventSeatLayoutDAO.lockSeatsForHold(conn, eventId, seatIds);
+
+        BigDecimal totalPrice = BigDecimal.ZERO;
+        List<Integer> categoryIdsForSeats = new ArrayList<>();
+        List<Integer> reservedSeatIds = new ArrayList<>();
+
+        // Duyệt theo thứ tự seatIds để báo lỗi giống hệt flow cũ (ghế đầu tiên sai)
+        for (Integer seatId : seatIds) {
+            SeatHoldInfo info = infos.get(seatId);
+
+            if (info == null) {
+                return HoldResult.fail(HoldStatus.INVALID, "Seat " + seatId + " not configured for this event");
+            }
+
+            if (event.getAreaId() != null && info.getAreaId() != event.getAreaId()) {
+                return HoldResult.fail(HoldStatus.INVALID, "Seat " + seatId + " does not belong to event area");
+            }
+
+            if (!"AVAILABLE".equalsIgnoreCase(info.getLayoutStatus())) {
+                return HoldResult.fail(HoldStatus.INVALID, "Seat " + seatId + " is not AVAILABLE for this event");
+            }
+
+            String seatType = info.getSeatType();
+            if (seatType == null || seatType.trim().isEmpty()) {
+                return HoldResult.fail(HoldStatus.INVALID, "Seat " + seatId + " has no seatType");
+            }
+
+            if (info.getCategoryTicketId() == null) {
+                return HoldResult.fail(HoldStatus.INVALID, "No active category ticket for seatType: " + seatType);
+            }
+
+            categoryIdsForSeats.add(info.getCategoryTicketId());
+            if (info.getPrice() != null) {
+                totalPrice = totalPrice.add(info.getPrice());
+            }
+
+            if (info.isReserved()) {
+                reservedSeatIds.add(seatId);
+            }
+        }
+
+        // (2) Ghế đã có Ticket (PENDING/BOOKED...) => không giữ được
+        if (!reservedSeatIds.isEmpty()) {
+            return HoldResult.fail(HoldStatus.INVALID, "Some seats already reserved/booked: " + reservedSeatIds);
+        }
+
+        // (3) Insert toàn bộ Ticket PENDING
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Integer> ticketIds = ticketDAO.insertPendingTicketsBatch(
+                conn, eventId, userId, seatIds, categoryIdsForSeats, now);
+
+        return new HoldResult(HoldStatus.OK, null, ticketIds, categoryIdsForSeats, totalPrice);
+    }
+
+    /**
+     * Unique constraint (2627/2601) hoặc deadlock (1205) khi 2 người cùng giữ
+     * ghế => CONFLICT. Lỗi khác => ERROR.
+     */
+    private HoldResult mapSqlException(SQLException ex) {
+        int code = ex.getErrorCode();
+        String state = ex.getSQLState();
+        boolean conflict = code == 2627 || code == 2601 || code == 1205
+                || (state != null && state.startsWith("23"));
+
+        System.err.println("[ERROR] holdSeats: " + ex.getMessage());
+        if (conflict) {
+            return HoldResult.fail(HoldStatus.CONFLICT,
+                    "Seat(s) already taken by another user. Please choose other seats.");
+        }
+        ex.printStackTrace();
+        return HoldResult.fail(HoldStatus.ERROR, "Error holding seats: " + ex.toString());
+    }
+
+    // ================== THỐNG KÊ LATENCY THEO SỐ GHẾ ==================
+    private static final String[] BUCKET_NAMES = {"1", "2", "3-5", "6-10", "11+"};
+    private static final LatencyBucket[] BUCKETS = new LatencyBucket[BUCKET_NAMES.length];
+    private static final LongAdder TOTAL_OK = new LongAdder();
+    private static final LongAdder TOTAL_INVALID = new LongAdder();
+    private static final LongAdder TOTAL_CONFLICT = new LongAdder();
+    private static final LongAdder TOTAL_ERROR = new LongAdder();
+
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            BUCKETS[i] = new LatencyBucket();
+        }
+    }
+
+    private static final class LatencyBucket {
+
+        final LongAdder count = new LongAdder();
+        final LongAdder totalMicros = new LongAdder();
+        final AtomicLong maxMicros = new AtomicLong();
+    }
+
+    private static int bucketIndex(int seatCount) {
+        if (seatCount <= 1) {
+            return 0;
+        }
+        if (seatCount == 2) {
+            return 1;
+        }
+        if (seatCount <= 5) {
+            return 2;
+        }
+        if (seatCount <= 10) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static void record(int seatCount, long startNanos, HoldResult result) {
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        LatencyBucket b = BUCKETS[bucketIndex(seatCount)];
+        b.count.increment();
+        b.totalMicros.add(micros);
+        b.maxMicros.accumulateAndGet(micros, Math::max);
+
+        switch (result.getStatus()) {
+            case OK:
+                TOTAL_OK.increment();
+                break;
+            case INVALID:
+                TOTAL_INVALID.increment();
+                break;
+            case CONFLICT:
+                TOTAL_CONFLICT.increment();
+                break;
+            default:
+                TOTAL_ERROR.increment();
+                break;
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> bySeatCount = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS.length; i++) {
+            long n = BUCKETS[i].count.sum();
+            long total = BUCKETS[i].totalMicros.sum();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("count", n);
+            row.put("avgMs", n > 0 ? Math.round(total / (double) n) / 1000.0 : 0.0);
+            row.put("maxMs", BUCKETS[i].maxMicros.get() / 1000.0);
+            bySeatCount.put(BUCKET_NAMES[i], row);
+        }
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("ok", TOTAL_OK.sum());
+        m.put("invalid", TOTAL_INVALID.sum());
+        m.put("conflict", TOTAL_CONFLICT.sum());
+        m.put("error", TOTAL_ERROR.sum());
+        m.put("latencyBySeatCount", bySeatCount);
+        return m;
+    }
+}
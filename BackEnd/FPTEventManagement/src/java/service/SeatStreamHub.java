@@ -0,0 +1,414 @@
+package service;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import mylib.AppProps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: SeatStreamHub - ĐẨY THAY ĐỔI TRẠNG THÁI GHẾ XUỐNG BROWSER QUA SERVER-SENT EVENTS
+ * ========================================================================================================
+ *
+ * NGUỒN SỰ KIỆN:
+ * - SeatAvailabilityCache gọi publish() mỗi khi 1 ghế đổi trạng thái (hook từ TicketDAO:
+ *   giữ ghế ở PaymentTicketController/WalletPayController, BOOKED ở BuyTicketController,
+ *   xoá ticket / reaper trả ghế) => HOLD / BOOKED / RELEASED
+ *
+ * KẾT NỐI (SeatStreamController /api/events/{id}/seat-stream):
+ * - Servlet async + non-blocking write (WriteListener): subscriber ngồi chờ không giữ thread Tomcat
+ * - Ghi dữ liệu chỉ khi ServletOutputStream.isReady(), phần còn lại chờ onWritePossible()
+ *
+ * BACKPRESSURE:
+ * - Mỗi subscriber có hàng đợi theo seatId: client chậm chỉ nhận trạng thái MỚI NHẤT của ghế
+ *   (gộp - coalesce), không tích luỹ vô hạn
+ * - Quá maxPending ghế chưa gửi => bỏ hết, gửi "resync" để client tải lại /api/seats
+ *
+ * LUỒNG: 1 thread "seat-stream-dispatcher" làm fan-out + heartbeat (": ping" mỗi 15s)
+ *
+ * THỐNG KÊ: subscribers, published, delivered, coalesced, resync, fan-out latency
+ * (từ lúc publish tới lúc ghi ra socket)
+ */
+public class SeatStreamHub {
+
+    private static final long HEARTBEAT_SEC = 15;
+    private static final int MAX_PENDING = Math.max(16, AppProps.getInt("seatStream.maxPending", 2000));
+    private static final long ASYNC_TIMEOUT_MS = AppProps.getLong("seatStream.timeoutMs", 30 * 60_000L);
+
+    private static final Map<Integer, Set<Subscriber>> SUBSCRIBERS = new ConcurrentHashMap<>();
+    private static final Map<Integer, AtomicBoolean> FLUSH_SCHEDULED = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService dispatcher;
+
+    // ===== Thống kê =====
+    private static final AtomicInteger CURRENT_SUBSCRIBERS = new AtomicInteger();
+    private static final AtomicInteger PEAK_SUBSCRIBERS = new AtomicInteger();
+    private static final LongAdder TOTAL_CONNECTIONS = new LongAdder();
+    private static final LongAdder PUBLISHED = new LongAdder();
+    private static final LongAdder DELIVERED = new LongAdder();
+    private static final LongAdder COALESCED = new LongAdder();
+    private static final LongAdder RESYNCS = new LongAdder();
+    private static final LongAdder WRITE_ERRORS = new LongAdder();
+    private static final LongAdder FANOUT_COUNT = new LongAdder();
+    private static final LongAdder FANOUT_TOTAL_MICROS = new LongAdder();
+    private static final AtomicLong FANOUT_MAX_MICROS = new AtomicLong();
+
+    // ================== VÒNG ĐỜI (AppContextListener) ==================
+    public static synchronized void start() {
+        if (dispatcher != null) {
+            return;
+        }
+        dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "seat-stream-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        dispatcher.scheduleWithFixedDelay(SeatStreamHub::heartbeat, HEARTBEAT_SEC, HEARTBEAT_SEC, TimeUnit.SECONDS);
+        System.out.println("[SeatStreamHub] Started: maxPending=" + MAX_PENDING + ", timeoutMs=" + ASYNC_TIMEOUT_MS);
+    }
+
+    public static synchronized void stop() {
+        if (dispatcher != null) {
+            dispatcher.shutdownNow();
+            dispatcher = null;
+        }
+        for (Set<Subscriber> subs : SUBSCRIBERS.values()) {
+            for (Subscriber s : subs) {
+                s.close();
+            }
+        }
+        SUBSCRIBERS.clear();
+        FLUSH_SCHEDULED.clear();
+        System.out.println("[SeatStreamHub] Stopped");
+    }
+
+    // ================== ĐĂNG KÝ SUBSCRIBER ==================
+    /**
+     * Gắn 1 kết nối SSE (đã startAsync) vào event. Gửi ngay "hello" kèm version
+     * hiện tại để client biết mốc (có thể gọi /api/seats?sinceVersion= nếu lỡ).
+     */
+    public static void subscribe(int eventId, AsyncContext ac, long currentVersion) throws IOException {
+        ac.setTimeout(ASYNC_TIMEOUT_MS);
+        Subscriber sub = new Subscriber(eventId, ac);
+        ac.addListener(sub);
+
+        sub.control.add("retry: 3000\nevent: hello\ndata: {\"eventId\":" + eventId
+                + ",\"version\":" + currentVersion + "}\n\n");
+
+        // setWriteListener TRƯỚC khi đưa vào SUBSCRIBERS: publish/heartbeat chỉ thấy subscriber
+        // đã có WriteListener (isReady()/write khi chưa có => IllegalStateException).
+        // Container gọi onWritePossible() ngay khi ghi được => gửi "hello"
+        sub.out.setWriteListener(sub);
+
+        SUBSCRIBERS.computeIfAbsent(eventId, k -> ConcurrentHashMap.newKeySet()).add(sub);
+        int now = CURRENT_SUBSCRIBERS.incrementAndGet();
+        PEAK_SUBSCRIBERS.accumulateAndGet(now, Math::max);
+        TOTAL_CONNECTIONS.increment();
+        if (sub.closed) {
+            remove(sub); // lỗi ghi / client đóng ngay trong lúc đăng ký
+        }
+    }
+
+    public static boolean hasSubscribers(int eventId) {
+        Set<Subscriber> subs = SUBSCRIBERS.get(eventId);
+        return subs != null && !subs.isEmpty();
+    }
+
+    // ================== PUBLISH (từ SeatAvailabilityCache) ==================
+    /**
+     * 1 ghế đổi trạng thái. Chỉ xếp hàng (nhanh, không I/O) rồi để dispatcher ghi.
+     */
+    public static void publish(int eventId, int seatId, byte state, long version) {
+        Set<Subscriber> subs = SUBSCRIBERS.get(eventId);
+        if (subs == null || subs.isEmpty()) {
+            return;
+        }
+        PUBLISHED.increment();
+        long now = System.nanoTime();
+        String status = state == SeatAvailabilityCache.HOLD ? "HOLD"
+                : state == SeatAvailabilityCache.BOOKED ? "BOOKED" : "RELEASED";
+        for (Subscriber s : subs) {
+            s.enqueue(seatId, status, version, now);
+        }
+        scheduleFlush(eventId);
+    }
+
+    /**
+     * Map ghế của event bị bỏ/nạp lại (rollback, đổi layout, verify) => client
+     * nên tải lại toàn bộ. Nạp lại map trên dispatcher để hook tiếp tục chạy.
+     */
+    public static void resync(int eventId) {
+        Set<Subscriber> subs = SUBSCRIBERS.get(eventId);
+        if (subs == null || subs.isEmpty()) {
+            return;
+        }
+        for (Subscriber s : subs) {
+            s.requestResync();
+        }
+        ScheduledExecutorService d = dispatcher;
+        if (d != null) {
+            d.execute(() -> {
+                SeatAvailabilityCache.getVersion(eventId);
+                flushEvent(eventId);
+            });
+        }
+    }
+
+    private static void scheduleFlush(int eventId) {
+        ScheduledExecutorService d = dispatcher;
+        if (d == null) {
+            return;
+        }
+        AtomicBoolean flag = FLUSH_SCHEDULED.computeIfAbsent(eventId, k -> new AtomicBoolean());
+        if (flag.compareAndSet(false, true)) {
+            d.execute(() -> {
+                flag.set(false);
+                flushEvent(eventId);
+            });
+        }
+    }
+
+    private static void flushEvent(int eventId) {
+        Set<Subscriber> subs = SUBSCRIBERS.get(eventId);
+        if (subs != null) {
+            for (Subscriber s : subs) {
+                s.flush();
+            }
+        }
+    }
+
+    private static void heartbeat() {
+        for (Set<Subscriber> subs : SUBSCRIBERS.values()) {
+            for (Subscriber s : subs) {
+                s.ping();
+            }
+        }
+    }
+
+    private static void remove(Subscriber s) {
+        Set<Subscriber> subs = SUBSCRIBERS.get(s.eventId);
+        if (subs != null && subs.remove(s)) {
+            CURRENT_SUBSCRIBERS.decrementAndGet();
+            if (subs.isEmpty()) {
+                SUBSCRIBERS.remove(s.eventId, subs);
+                // flush đang chờ giữ flag riêng => bỏ entry không ảnh hưởng, tối đa 1 flush thừa
+                FLUSH_SCHEDULED.remove(s.eventId);
+            }
+        }
+    }
+
+    private static void recordFanout(long enqueuedAtNanos) {
+        long micros = (System.nanoTime() - enqueuedAtNanos) / 1000;
+        FANOUT_COUNT.increment();
+        FANOUT_TOTAL_MICROS.add(micros);
+        FANOUT_MAX_MICROS.accumulateAndGet(micros, Math::max);
+    }
+
+    // ================== 1 KẾT NỐI SSE ==================
+    private static final class SeatUpdate {
+
+        final String status;
+        final long version;
+        final long enqueuedAt;
+
+        SeatUpdate(String status, long version, long enqueuedAt) {
+            this.status = status;
+            this.version = version;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private static final class Subscriber implements WriteListener, AsyncListener {
+
+        final int eventId;
+        final AsyncContext ac;
+        final ServletOutputStream out;
+
+        // seatId -> trạng thái mới nhất chưa gửi (gộp theo ghế)
+        final LinkedHashMap<Integer, SeatUpdate> pending = new LinkedHashMap<>();
+        final ArrayDeque<String> control = new ArrayDeque<>();
+        boolean resyncNeeded;
+        boolean needFlush;
+        volatile boolean closed;
+
+        Subscriber(int eventId, AsyncContext ac) throws IOException {
+            this.eventId = eventId;
+            this.ac = ac;
+            this.out = ac.getResponse().getOutputStream();
+        }
+
+        synchronized void enqueue(int seatId, String status, long version, long now) {
+            if (closed || resyncNeeded) {
+                return;
+            }
+            SeatUpdate prev = pending.remove(seatId);
+            if (prev != null) {
+                COALESCED.increment();
+                now = prev.enqueuedAt; // latency tính từ lần đổi đầu tiên chưa gửi
+            }
+            pending.put(seatId, new SeatUpdate(status, version, now));
+            if (pending.size() > MAX_PENDING) {
+                pending.clear();
+                resyncNeeded = true;
+            }
+        }
+
+        synchronized void requestResync() {
+            pending.clear();
+            resyncNeeded = true;
+        }
+
+        synchronized void ping() {
+            if (closed) {
+                return;
+            }
+            if (control.isEmpty()) {
+                control.add(": ping\n\n");
+            }
+            flush();
+        }
+
+        /**
+         * Ghi tối đa có thể mà không block: dừng khi isReady() = false, container
+         * sẽ gọi onWritePossible() để ghi tiếp.
+         */
+        synchronized void flush() {
+            if (closed) {
+                return;
+            }
+            try {
+                while (out.isReady()) {
+                    if (needFlush) {
+                        needFlush = false;
+                        out.flush();
+                        continue;
+                    }
+                    byte[] chunk = nextChunk();
+                    if (chunk == null) {
+                        return;
+                    }
+                    out.write(chunk);
+                    needFlush = true;
+                }
+            } catch (IOException | IllegalStateException e) {
+                WRITE_ERRORS.increment();
+                close();
+            }
+        }
+
+        private byte[] nextChunk() {
+            StringBuilder sb = new StringBuilder();
+            while (!control.isEmpty()) {
+                sb.append(control.poll());
+            }
+            if (resyncNeeded) {
+                resyncNeeded = false;
+                RESYNCS.increment();
+                sb.append("event: resync\ndata: {\"eventId\":").append(eventId).append("}\n\n");
+            }
+            if (!pending.isEmpty()) {
+                long maxVersion = 0;
+                sb.append("event: seats\ndata: [");
+                boolean first = true;
+                for (Iterator<Map.Entry<Integer, SeatUpdate>> it = pending.entrySet().iterator(); it.hasNext();) {
+                    Map.Entry<Integer, SeatUpdate> e = it.next();
+                    SeatUpdate u = e.getValue();
+                    if (!first) {
+                        sb.append(',');
+                    }
+                    first = false;
+                    sb.append("{\"seatId\":").append(e.getKey())
+                            .append(",\"status\":\"").append(u.status)
+                            .append("\",\"version\":").append(u.version).append('}');
+                    maxVersion = Math.max(maxVersion, u.version);
+                    recordFanout(u.enqueuedAt);
+                    DELIVERED.increment();
+                    it.remove();
+                }
+                sb.append("]\nid: ").append(maxVersion).append("\n\n");
+            }
+            return sb.length() == 0 ? null : sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            remove(this);
+            try {
+                ac.complete();
+            } catch (Exception ignore) {
+            }
+        }
+
+        // ===== WriteListener =====
+        @Override
+        public void onWritePossible() {
+            flush();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            WRITE_ERRORS.increment();
+            close();
+        }
+
+        // ===== AsyncListener =====
+        @Override
+        public void onComplete(AsyncEvent event) {
+            closed = true;
+            remove(this);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close(); // EventSource tự kết nối lại sau "retry"
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    // ================== THỐNG KÊ ==================
+    public static Map<String, Object> getStats() {
+        long n = FANOUT_COUNT.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("subscribers", CURRENT_SUBSCRIBERS.get());
+        m.put("peakSubscribers", PEAK_SUBSCRIBERS.get());
+        m.put("eventsWithSubscribers", SUBSCRIBERS.size());
+        m.put("totalConnections", TOTAL_CONNECTIONS.sum());
+        m.put("published", PUBLISHED.sum());
+        m.put("delivered", DELIVERED.sum());
+        m.put("coalesced", COALESCED.sum());
+        m.put("resyncs", RESYNCS.sum());
+        m.put("writeErrors", WRITE_ERRORS.sum());
+        m.put("fanoutAvgMs", n > 0 ? Math.round(FANOUT_TOTAL_MICROS.sum() / (double) n) / 1000.0 : 0.0);
+        m.put("fanoutMaxMs", FANOUT_MAX_MICROS.get() / 1000.0);
+        return m;
+    }
+}
@@ -2,6 +2,7 @@ package service;
 
 import com.google.gson.Gson;
 import jakarta.servlet.ServletContext;
+import mylib.AppProps;
 
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -9,27 +10,113 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Cấu hình hệ thống (SystemConfig.json) dùng cho check-in / check-out.
+ *
+ * - Giữ 1 snapshot bất biến trong biến volatile: load() chỉ đọc field, không đụng đĩa
+ * - Làm mới theo mtime của file runtime, tối đa 1 lần / systemConfig.checkMs (2000ms)
+ *   => sửa tay file trên server vẫn có hiệu lực sau vài giây
+ * - StaffSystemConfigController ghi file xong gọi invalidate() => có hiệu lực ngay
+ * - Không có file runtime: đọc classpath 1 lần; lỗi => default
+ */
 public class SystemConfigService {
 
     private static final String CONFIG_CLASSPATH = "config/SystemConfig.json";
     private static final String CONFIG_REALPATH  = "/WEB-INF/classes/config/SystemConfig.json";
 
-    private final Gson gson = new Gson();
+    private static final long CHECK_MS = Math.max(0L, AppProps.getLong("systemConfig.checkMs", 2000L));
+
+    private static final Gson gson = new Gson();
+
+    // Snapshot hiện tại (null = chưa nạp / vừa invalidate)
+    private static volatile Snapshot snapshot;
+    private static volatile long nextCheckAt;
+
+    private static final LongAdder RELOADS = new LongAdder();
+    private static final LongAdder MTIME_CHECKS = new LongAdder();
 
     public static class SystemConfig {
-        public int minMinutesAfterStart;                 // checkout
-        public int checkinAllowedBeforeStartMinutes;     // checkin
+        public final int minMinutesAfterStart;                 // checkout
+        public final int checkinAllowedBeforeStartMinutes;     // checkin
+
+        // Gson: field thiếu trong JSON giữ 0 như trước
+        private SystemConfig() {
+            this(0, 0);
+        }
+
+        public SystemConfig(int minMinutesAfterStart, int checkinAllowedBeforeStartMinutes) {
+            this.minMinutesAfterStart = minMinutesAfterStart;
+            this.checkinAllowedBeforeStartMinutes = checkinAllowedBeforeStartMinutes;
+        }
     }
 
-    private SystemConfig defaultCfg() {
-        SystemConfig cfg = new SystemConfig();
-        cfg.minMinutesAfterStart = 60;
-        cfg.checkinAllowedBeforeStartMinutes = 60;
-        return cfg;
+    private static final class Snapshot {
+        final SystemConfig cfg;
+        final Path path;          // file runtime đã đọc (null = classpath / default)
+        final long mtime;
+
+        Snapshot(SystemConfig cfg, Path path, long mtime) {
+            this.cfg = cfg;
+            this.path = path;
+            this.mtime = mtime;
+        }
+    }
+
+    private static SystemConfig defaultCfg() {
+        return new SystemConfig(60, 60);
+    }
+
+    // fill default nếu thiếu field / json cũ
+    private static SystemConfig sanitize(SystemConfig cfg) {
+        if (cfg == null) return defaultCfg();
+        int minAfter = cfg.minMinutesAfterStart;
+        int allowBefore = cfg.checkinAllowedBeforeStartMinutes;
+        if (minAfter < 0 || minAfter > 600) minAfter = 60;
+        if (allowBefore < 0 || allowBefore > 600) allowBefore = 60;
+        return new SystemConfig(minAfter, allowBefore);
     }
 
     public SystemConfig load(ServletContext ctx) {
+        Snapshot s = snapshot;
+        if (s != null) {
+            long now = System.currentTimeMillis();
+            if (s.path == null || now < nextCheckAt) {
+                return s.cfg;
+            }
+            nextCheckAt = now + CHECK_MS;
+            MTIME_CHECKS.increment();
+            if (lastModified(s.path) == s.mtime) {
+                return s.cfg;
+            }
+        }
+        return reload(ctx);
+    }
+
+    /**
+     * Bỏ snapshot hiện tại: lần load() tiếp theo đọc lại file.
+     */
+    public static void invalidate() {
+        snapshot = null;
+    }
+
+    private static synchronized SystemConfig reload(ServletContext ctx) {
+        Snapshot cur = snapshot;
+        if (cur != null && (cur.path == null || lastModified(cur.path) == cur.mtime)) {
+            return cur.cfg; // thread khác vừa nạp xong
+        }
+
+        Snapshot s = readSnapshot(ctx);
+        snapshot = s;
+        nextCheckAt = System.currentTimeMillis() + CHECK_MS;
+        RELOADS.increment();
+        return s.cfg;
+    }
+
+    private static Snapshot readSnapshot(ServletContext ctx) {
         // 1) Ưu tiên runtime file
         try {
             if (ctx != null) {
@@ -37,36 +124,43 @@ public class SystemConfigService {
                 if (realPath != null) {
                     Path path = Paths.get(realPath);
                     if (Files.exists(path)) {
+                        // mtime lấy trước khi đọc: file đổi giữa chừng thì lần sau nạp lại
+                        long mtime = lastModified(path);
                         String json = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
-                        SystemConfig cfg = gson.fromJson(json, SystemConfig.class);
-                        if (cfg == null) return defaultCfg();
-
-                        // fill default nếu thiếu field / json cũ
-                        if (cfg.minMinutesAfterStart < 0 || cfg.minMinutesAfterStart > 600) cfg.minMinutesAfterStart = 60;
-                        if (cfg.checkinAllowedBeforeStartMinutes < 0 || cfg.checkinAllowedBeforeStartMinutes > 600)
-                            cfg.checkinAllowedBeforeStartMinutes = 60;
-
-                        return cfg;
+                        return new Snapshot(sanitize(gson.fromJson(json, SystemConfig.class)), path, mtime);
                     }
                 }
             }
         } catch (Exception ignored) {}
 
         // 2) Fallback classpath
-        try (InputStream is = getClass().getClassLoader().getResourceAsStream(CONFIG_CLASSPATH)) {
-            if (is == null) return defaultCfg();
+        try (InputStream is = SystemConfigService.class.getClassLoader().getResourceAsStream(CONFIG_CLASSPATH)) {
+            if (is == null) return new Snapshot(defaultCfg(), null, 0);
 
             SystemConfig cfg = gson.fromJson(new InputStreamReader(is, StandardCharsets.UTF_8), SystemConfig.class);
-            if (cfg == null) return defaultCfg();
-
-            if (cfg.minMinutesAfterStart < 0 || cfg.minMinutesAfterStart > 600) cfg.minMinutesAfterStart = 60;
-            if (cfg.checkinAllowedBeforeStartMinutes < 0 || cfg.checkinAllowedBeforeStartMinutes > 600)
-                cfg.checkinAllowedBeforeStartMinutes = 60;
+            return new Snapshot(sanitize(cfg), null, 0);
 
-            return cfg;
+        } catch (Exception e) {
+            return new Snapshot(defaultCfg(), null, 0);
+        }
+    }
 
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
         } catch (Exception e) {
-            return defaultCfg();
+            return -1;
         }
     }
+
+    public static Map<String, Object> getStats() {
+        Snapshot s = snapshot;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("loaded", s != null);
+        m.put("source", s == null ? null : (s.path == null ? "classpath" : s.path.toString()));
+        m.put("reloads", RELOADS.sum());
+        m.put("mtimeChecks", MTIME_CHECKS.sum());
+        m.put("checkMs", CHECK_MS);
+        return m;
+    }
 }
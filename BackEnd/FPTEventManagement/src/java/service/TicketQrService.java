@@ -0,0 +1,135 @@
+package service;
+
+import mylib.AppProps;
+import utils.QRCodeUtil;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ========================================================================================================
+ * SERVICE: TicketQrService - ẢNH QR CỦA VÉ RENDER KHI CẦN + LRU CACHE
+ * ========================================================================================================
+ *
+ * VẤN ĐỀ CŨ:
+ * - Sau thanh toán, mỗi vé lưu ~10 KB Base64 PNG vào Ticket.qr_code_value
+ * - getTicketsByUserId / getTicketsByRole trả luôn blob đó trong mọi danh sách
+ *
+ * CÁCH HOẠT ĐỘNG:
+ * - Nội dung QR = ticket_id (giống QRCodeUtil.generateTicketQrBase64) => ảnh chỉ
+ *   phụ thuộc (ticketId, size) => ETag mạnh tính được không cần render
+ * - Cache LRU theo tổng số byte PNG (vé vừa mua / vé sắp tới cổng hay được mở lại)
+ *
+ * CẤU HÌNH (System property / biến môi trường):
+ * - qr.cache.maxBytes (8 MB), qr.defaultSize (300)
+ */
+public class TicketQrService {
+
+    // Tăng khi đổi cách render (màu, margin...) để client tải lại ảnh
+    private static final int RENDER_VERSION = 1;
+
+    public static final int MIN_SIZE = 100;
+    public static final int MAX_SIZE = 1000;
+    public static final int DEFAULT_SIZE = clampSize(AppProps.getInt("qr.defaultSize", 300));
+
+    private static final long MAX_BYTES = Math.max(64 * 1024L, AppProps.getLong("qr.cache.maxBytes", 8L * 1024 * 1024));
+
+    private static final LruBytes CACHE = new LruBytes();
+
+    // ===== Thống kê =====
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+    private static final LongAdder RENDER_NS = new LongAdder();
+
+    private TicketQrService() {
+    }
+
+    /**
+     * Làm tròn size về bội số 50 trong [MIN_SIZE, MAX_SIZE] => số biến thể
+     * trong cache có giới hạn.
+     */
+    public static int clampSize(int size) {
+        int s = Math.max(MIN_SIZE, Math.min(MAX_SIZE, size));
+        return (s + 25) / 50 * 50;
+    }
+
+    public static String etag(int ticketId, int size) {
+        return "\"qr-" + ticketId + "-" + size + "-v" + RENDER_VERSION + "\"";
+    }
+
+    /**
+     * PNG của QR vé (đã clampSize). Cache hit trả lại đúng mảng trong cache =>
+     * caller không được sửa mảng.
+     */
+    public static byte[] getPng(int ticketId, int size) throws Exception {
+        String key = ticketId + ":" + size;
+        byte[] png;
+        synchronized (CACHE) {
+            png = CACHE.get(key);
+        }
+        if (png != null) {
+            HITS.increment();
+            return png;
+        }
+
+        MISSES.increment();
+        long t0 = System.nanoTime();
+        png = QRCodeUtil.generateTicketQrPngBytes(ticketId, size, size);
+        RENDER_NS.add(System.nanoTime() - t0);
+
+        synchronized (CACHE) {
+            CACHE.putBytes(key, png);
+        }
+        return png;
+    }
+
+    /**
+     * LinkedHashMap access-order, giới hạn theo tổng byte (không theo số entry).
+     * Mọi truy cập đều nằm trong synchronized (CACHE).
+     */
+    private static final class LruBytes extends LinkedHashMap<String, byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private long bytes;
+
+        LruBytes() {
+            super(256, 0.75f, true);
+        }
+
+        void putBytes(String key, byte[] value) {
+            byte[] old = put(key, value);
+            bytes += value.length - (old != null ? old.length : 0);
+            Iterator<Map.Entry<String, byte[]>> it = entrySet().iterator();
+            while (bytes > MAX_BYTES && it.hasNext()) {
+                Map.Entry<String, byte[]> eldest = it.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                bytes -= eldest.getValue().length;
+                it.remove();
+                EVICTIONS.increment();
+            }
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        long misses = MISSES.sum();
+        long hits = HITS.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        synchronized (CACHE) {
+            m.put("entries", CACHE.size());
+            m.put("bytes", CACHE.bytes);
+        }
+        m.put("maxBytes", MAX_BYTES);
+        m.put("hits", hits);
+        m.put("misses", misses);
+        m.put("hitRate", hits + misses > 0 ? String.format("%.1f%%", hits * 100.0 / (hits + misses)) : "0.0%");
+        m.put("evictions", EVICTIONS.sum());
+        m.put("avgRenderMs", misses > 0 ? String.format("%.2f", RENDER_NS.sum() / 1_000_000.0 / misses) : "0.00");
+        return m;
+    }
+}
@@ -70,10 +70,9 @@ package utils;
  *    - Duplicate của EmailService.generateOtp()
  *    - Nên tạo Util chung cho OTP generation
  * 
- * 5. createSession():
- *    - Tạo SMTP session với Gmail
- *    - Config authentication và STARTTLS
- *    - Private helper method
+ * 5. Session / gửi:
+ *    - Dùng chung Session + pool kết nối SMTP của EmailService (SmtpTransportPool)
+ *    - Không mở kết nối + STARTTLS + AUTH mới cho mỗi email nữa
  * 
  * MIME MULTIPART:
  * - MimeMultipart "related": Chứa HTML + inline resources
@@ -109,32 +108,27 @@ package utils;
  * - Controller: RegisterSendOtpController (OTP đăng ký)
  */
 
-import java.util.Properties;
-
 import javax.activation.DataHandler;
 import javax.mail.Message;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
 import javax.mail.util.ByteArrayDataSource;
+import mylib.EmailService;
 
 /**
  * EmailUtils - helper for sending emails with inline images
  */
 public class EmailUtils {
 
-    // Reuse same SMTP config as existing EmailService (adjust if needed)
-    private static final String SMTP_HOST = "smtp.gmail.com";
-    private static final String SMTP_PORT = "587";
+    // Session + kết nối SMTP dùng chung với EmailService (SmtpTransportPool)
     private static final String EMAIL_FROM = "evbatteryswap.system@gmail.com"; // project email
-    private static final String EMAIL_PASSWORD = "mzqbrzycduxhvbnr"; // App Password - keep in sync with EmailService
 
     public static void sendEmailWithImage(String to, String subject, String htmlBody, byte[] imageBytes,
             String imageContentId) throws Exception {
-        Session session = createSession();
+        Session session = EmailService.getSession();
 
         MimeMessage message = new MimeMessage(session);
         message.setFrom(new InternetAddress(EMAIL_FROM, "FPT Event Management", "UTF-8"));
@@ -161,7 +155,7 @@ public class EmailUtils {
 
         message.setContent(multipart);
 
-        Transport.send(message);
+        EmailService.send(message);
         System.out.println("[EmailUtils] ✅ Email sent to: " + to + " (subject='" + subject + "')");
     }
 
@@ -169,7 +163,7 @@ public class EmailUtils {
     // hiện có)
     public static boolean sendRegistrationOtpEmail(String toEmail, String otp) {
         try {
-            Session session = createSession();
+            Session session = EmailService.getSession();
             MimeMessage message = new MimeMessage(session);
 
             message.setFrom(new InternetAddress(EMAIL_FROM, "FPT Event Management", "UTF-8"));
@@ -190,7 +184,7 @@ public class EmailUtils {
                     + "</body></html>";
 
             message.setContent(html, "text/html; charset=UTF-8");
-            Transport.send(message);
+            EmailService.send(message);
             System.out.println("[EmailUtils] ✅ Registration OTP sent to: " + toEmail);
             return true;
 
@@ -204,7 +198,7 @@ public class EmailUtils {
     // ================== 2) GỬI EMAIL TÙY CHỈNH (nếu cần dùng sau này)
     public static boolean sendCustomEmail(String toEmail, String subject, String htmlContent) {
         try {
-            Session session = createSession();
+            Session session = EmailService.getSession();
             MimeMessage message = new MimeMessage(session);
 
             message.setFrom(new InternetAddress(EMAIL_FROM, "FPT Event Management", "UTF-8"));
@@ -212,7 +206,7 @@ public class EmailUtils {
             message.setSubject(subject, "UTF-8");
             message.setContent(htmlContent, "text/html; charset=UTF-8");
 
-            Transport.send(message);
+            EmailService.send(message);
             System.out.println("[EmailUtils] ✅ Custom email sent to: " + toEmail);
             return true;
 
@@ -228,21 +222,4 @@ public class EmailUtils {
         int otp = 100000 + (int) (Math.random() * 900000);
         return String.valueOf(otp);
     }
-
-    private static Session createSession() {
-        Properties props = new Properties();
-        props.put("mail.smtp.auth", "true");
-        props.put("mail.smtp.starttls.enable", "true");
-        props.put("mail.smtp.host", SMTP_HOST);
-        props.put("mail.smtp.port", SMTP_PORT);
-        props.put("mail.smtp.ssl.protocols", "TLSv1.2");
-        props.put("mail.debug", "false");
-
-        return Session.getInstance(props, new javax.mail.Authenticator() {
-            @Override
-            protected javax.mail.PasswordAuthentication getPasswordAuthentication() {
-                return new javax.mail.PasswordAuthentication(EMAIL_FROM, EMAIL_PASSWORD);
-            }
-        });
-    }
 }
\ No newline at end of file
@@ -1,19 +1,53 @@
 package utils;
 
+import mylib.AppProps;
+
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 
+/**
+ * Cache RAM các notification mới nhất của từng user (hot cache phía trước bảng
+ * Notification - xem service.NotificationService).
+ *
+ * - Hộp thư = ring buffer cố định maxPerUser phần tử: thêm lên đầu O(1), đầy
+ *   thì ghi đè cái cũ nhất
+ * - ID cấp trong lock của hộp thư => trong 1 hộp thư ID giảm dần từ đầu tới
+ *   cuối, markOneRead / cursor ?after= tìm nhị phân
+ * - unread = tổng số chưa đọc của user (kể cả phần đã rơi khỏi cache, lấy từ DB
+ *   lúc nạp) => trả badge không phải duyệt / query
+ * - Hết hạn TTL / bị ghi đè chỉ rời cache (DB vẫn còn); hộp thư rỗng bị gỡ khỏi map
+ * - cacheOnly (không có DB): hộp thư là nguồn dữ liệu duy nhất, như bản cũ
+ *
+ * CẤU HÌNH (System property / biến môi trường):
+ * - notification.maxPerUser (100), notification.ttlDays (30)
+ */
 public class InMemoryNotificationService {
 
+    private static final int MAX_PER_USER = Math.max(1, AppProps.getInt("notification.maxPerUser", 100));
+    private static final long TTL_MS = Math.max(1L, AppProps.getLong("notification.ttlDays", 30L)) * 24L * 3600_000L;
+
+    // Cứ SWEEP_EVERY lần thêm thì quét cả map 1 lượt để gỡ hộp thư hết hạn của user không quay lại
+    private static final int SWEEP_EVERY = 1024;
+
+    // true: không có bảng Notification => cache là dữ liệu thật, không cần nạp
+    private static volatile boolean cacheOnly = true;
+
     public static class NotiItem {
-        public int id;
+        public long id;
         public String title;
         public String content;
         public String linkUrl;
         public long createdAt;
-        public boolean read;
+        public volatile boolean read;
+
+        // Không trả ra JSON
+        public transient int userId;
+        public transient volatile boolean persisted;   // đã ghi xuống bảng Notification
 
-        public NotiItem(int id, String title, String content, String linkUrl) {
+        public NotiItem(long id, String title, String content, String linkUrl) {
             this.id = id;
             this.title = title;
             this.content = content;
@@ -23,43 +57,341 @@ public class InMemoryNotificationService {
         }
     }
 
-    // userId -> list notifications
-    private static final Map<Integer, List<NotiItem>> USER_NOTIS = new ConcurrentHashMap<>();
-    private static int NEXT_ID = 1;
+    /**
+     * 1 trang kết quả: nextCursor = ID cuối trang (dùng cho ?after=), null khi
+     * hết.
+     */
+    public static class Page {
+        public final List<NotiItem> items;
+        public final boolean hasMore;
+
+        public Page(List<NotiItem> items, boolean hasMore) {
+            this.items = items;
+            this.hasMore = hasMore;
+        }
 
-    public static void addNotification(int userId, String title, String content, String linkUrl) {
-        NotiItem item = new NotiItem(NEXT_ID++, title, content, linkUrl);
-        USER_NOTIS.computeIfAbsent(userId, k -> new ArrayList<>())
-                  .add(0, item); // add lên đầu
+        public Long getNextCursor() {
+            return hasMore && !items.isEmpty() ? items.get(items.size() - 1).id : null;
+        }
     }
 
-    public static List<NotiItem> getNotifications(int userId) {
-        return new ArrayList<>(USER_NOTIS.getOrDefault(userId, Collections.emptyList()));
+    /**
+     * Ring buffer của 1 user. Mọi thao tác giữ lock trên chính Inbox; chỉ
+     * unread đọc không lock.
+     */
+    private static final class Inbox {
+
+        private final NotiItem[] buf = new NotiItem[MAX_PER_USER];
+        private int head;                 // vị trí phần tử mới nhất
+        private int size;
+        private volatile int unread;
+        private boolean retired;          // đã gỡ khỏi map => không nhận thêm
+        private volatile long loadedAt;   // 0 = chưa nạp từ DB
+        private boolean complete;         // cache đang giữ toàn bộ notification của user
+
+        Inbox() {
+            if (cacheOnly) {
+                loadedAt = Long.MAX_VALUE;
+                complete = true;
+            }
+        }
+
+        // phần tử thứ i tính từ mới nhất (0 = mới nhất)
+        private NotiItem at(int i) {
+            return buf[(head + i) % buf.length];
+        }
+
+        private void push(NotiItem item) {
+            head = (head - 1 + buf.length) % buf.length;
+            NotiItem old = buf[head];
+            if (size == buf.length) {
+                // Đầy: ô này đang giữ phần tử cũ nhất
+                dropped(old);
+                EVICTED_CAP.increment();
+            } else {
+                size++;
+            }
+            buf[head] = item;
+            if (!item.read) {
+                unread++;
+            }
+        }
+
+        private void expire(long now) {
+            while (size > 0) {
+                int tail = (head + size - 1) % buf.length;
+                NotiItem oldest = buf[tail];
+                if (now - oldest.createdAt < TTL_MS) {
+                    return;
+                }
+                dropped(oldest);
+                buf[tail] = null;
+                size--;
+                EVICTED_TTL.increment();
+            }
+        }
+
+        private void dropped(NotiItem n) {
+            if (cacheOnly) {
+                // Không có DB => mất hẳn
+                if (n != null && !n.read) {
+                    unread--;
+                }
+            } else {
+                complete = false;
+            }
+        }
+
+        private boolean fresh(long maxAgeMs) {
+            long at = loadedAt;
+            return at != 0 && (at == Long.MAX_VALUE || System.currentTimeMillis() - at <= maxAgeMs);
+        }
+
+        // Vị trí đầu tiên có id < afterId (ID giảm dần theo vị trí)
+        private int indexBelow(long afterId) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (at(mid).id >= afterId) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    // userId -> hộp thư
+    private static final Map<Integer, Inbox> USER_NOTIS = new ConcurrentHashMap<>();
+
+    // ===== Thống kê =====
+    private static final AtomicLong ADDED = new AtomicLong();
+    private static final LongAdder EVICTED_CAP = new LongAdder();
+    private static final LongAdder EVICTED_TTL = new LongAdder();
+    private static final LongAdder PAGE_HITS = new LongAdder();
+    private static final LongAdder PAGE_MISSES = new LongAdder();
+
+    public static void setCacheOnly(boolean value) {
+        cacheOnly = value;
+    }
+
+    public static boolean isCacheOnly() {
+        return cacheOnly;
+    }
+
+    public static int getMaxPerUser() {
+        return MAX_PER_USER;
+    }
+
+    /**
+     * Thêm lên đầu hộp thư. ID lấy từ ids ngay trong lock => thứ tự trong hộp
+     * thư luôn giảm dần.
+     */
+    public static NotiItem add(int userId, String title, String content, String linkUrl, LongSupplier ids) {
+        long now = System.currentTimeMillis();
+        NotiItem item;
+        while (true) {
+            Inbox inbox = USER_NOTIS.computeIfAbsent(userId, k -> new Inbox());
+            synchronized (inbox) {
+                if (inbox.retired) {
+                    continue; // vừa bị gỡ => lấy hộp thư mới
+                }
+                inbox.expire(now);
+                item = new NotiItem(ids.getAsLong(), title, content, linkUrl);
+                item.userId = userId;
+                inbox.push(item);
+                break;
+            }
+        }
+
+        if (ADDED.incrementAndGet() % SWEEP_EVERY == 0) {
+            sweep(now);
+        }
+        return item;
+    }
+
+    /**
+     * Trang từ cache nếu phục vụ được (đã nạp, chưa quá maxAgeMs, đủ dữ liệu).
+     * Trả về null => caller đọc DB.
+     */
+    public static Page getPage(int userId, Long afterId, int limit, long maxAgeMs) {
+        Inbox inbox = USER_NOTIS.get(userId);
+        if (inbox == null) {
+            if (cacheOnly) {
+                PAGE_HITS.increment();
+                return new Page(new ArrayList<>(), false);
+            }
+            PAGE_MISSES.increment();
+            return null;
+        }
+        synchronized (inbox) {
+            if (!inbox.fresh(maxAgeMs)) {
+                PAGE_MISSES.increment();
+                return null;
+            }
+            inbox.expire(System.currentTimeMillis());
+            int start = afterId == null ? 0 : inbox.indexBelow(afterId);
+            int end = Math.min(inbox.size, start + limit);
+            boolean full = end - start == limit;
+            if (!full && !inbox.complete) {
+                // Phần còn lại nằm ngoài cache
+                PAGE_MISSES.increment();
+                return null;
+            }
+            List<NotiItem> items = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                items.add(inbox.at(i));
+            }
+            boolean hasMore = end < inbox.size || !inbox.complete;
+            if (cacheOnly) {
+                retireIfEmpty(userId, inbox);
+            }
+            PAGE_HITS.increment();
+            return new Page(items, hasMore);
+        }
+    }
+
+    /**
+     * Nạp trang mới nhất từ DB vào cache. Notification vừa thêm nhưng chưa ghi
+     * DB (persisted = false) được giữ lại và cộng vào unread.
+     */
+    public static void load(int userId, List<NotiItem> newestFromDb, int unreadInDb, boolean complete) {
+        while (true) {
+            Inbox inbox = USER_NOTIS.computeIfAbsent(userId, k -> new Inbox());
+            synchronized (inbox) {
+                if (inbox.retired) {
+                    continue;
+                }
+                TreeMap<Long, NotiItem> merged = new TreeMap<>(Collections.reverseOrder());
+                for (NotiItem n : newestFromDb) {
+                    merged.put(n.id, n);
+                }
+                int unread = unreadInDb;
+                for (int i = 0; i < inbox.size; i++) {
+                    NotiItem n = inbox.at(i);
+                    if (!n.persisted && merged.put(n.id, n) == null && !n.read) {
+                        unread++;
+                    }
+                }
+
+                Arrays.fill(inbox.buf, null);
+                inbox.head = 0;
+                inbox.size = 0;
+                boolean truncated = false;
+                for (NotiItem n : merged.values()) {
+                    if (inbox.size == inbox.buf.length) {
+                        truncated = true;
+                        break;
+                    }
+                    inbox.buf[inbox.size++] = n;
+                }
+                inbox.unread = unread;
+                inbox.complete = complete && !truncated;
+                inbox.loadedAt = System.currentTimeMillis();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Số chưa đọc nếu cache còn mới, null => caller nạp lại.
+     */
+    public static Integer getUnreadCount(int userId, long maxAgeMs) {
+        Inbox inbox = USER_NOTIS.get(userId);
+        if (inbox == null) {
+            return cacheOnly ? 0 : null;
+        }
+        return inbox.fresh(maxAgeMs) ? Math.max(0, inbox.unread) : null;
     }
 
     public static void markAllRead(int userId) {
-        List<NotiItem> list = USER_NOTIS.get(userId);
-        if (list != null) {
-            for (NotiItem n : list) {
-                n.read = true;
+        Inbox inbox = USER_NOTIS.get(userId);
+        if (inbox == null) {
+            return;
+        }
+        synchronized (inbox) {
+            for (int i = 0; i < inbox.size; i++) {
+                inbox.at(i).read = true;
             }
+            inbox.unread = 0;
         }
     }
 
     /**
      * Đánh dấu 1 notification là read
-     * @return true nếu tìm thấy & set read, false nếu không tìm thấy
+     * @return true nếu tìm thấy trong cache & vừa đổi sang read
      */
-    public static boolean markOneRead(int userId, int notiId) {
-        List<NotiItem> list = USER_NOTIS.get(userId);
-        if (list == null) return false;
+    public static boolean markOneRead(int userId, long notiId) {
+        Inbox inbox = USER_NOTIS.get(userId);
+        if (inbox == null) return false;
 
-        for (NotiItem n : list) {
-            if (n.id == notiId) {
-                n.read = true;
-                return true;
+        synchronized (inbox) {
+            int i = inbox.indexBelow(notiId + 1);
+            if (i < inbox.size) {
+                NotiItem n = inbox.at(i);
+                if (n.id == notiId && !n.read) {
+                    n.read = true;
+                    inbox.unread--;
+                    return true;
+                }
             }
         }
         return false;
     }
+
+    /**
+     * Notification đã đọc nhưng không còn trong cache (đổi ở DB): giảm unread.
+     */
+    public static void decrementUnread(int userId) {
+        Inbox inbox = USER_NOTIS.get(userId);
+        if (inbox != null) {
+            synchronized (inbox) {
+                if (inbox.unread > 0) {
+                    inbox.unread--;
+                }
+            }
+        }
+    }
+
+    // Gọi trong synchronized (inbox)
+    private static void retireIfEmpty(int userId, Inbox inbox) {
+        if (inbox.size == 0) {
+            inbox.retired = true;
+            USER_NOTIS.remove(userId, inbox);
+        }
+    }
+
+    private static void sweep(long now) {
+        for (Map.Entry<Integer, Inbox> e : USER_NOTIS.entrySet()) {
+            Inbox inbox = e.getValue();
+            synchronized (inbox) {
+                inbox.expire(now);
+                retireIfEmpty(e.getKey(), inbox);
+            }
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        long items = 0;
+        long unread = 0;
+        for (Inbox inbox : USER_NOTIS.values()) {
+            items += inbox.size;
+            unread += Math.max(0, inbox.unread);
+        }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("cacheOnly", cacheOnly);
+        m.put("users", USER_NOTIS.size());
+        m.put("items", items);
+        m.put("unread", unread);
+        m.put("maxPerUser", MAX_PER_USER);
+        m.put("ttlMs", TTL_MS);
+        m.put("added", ADDED.get());
+        m.put("evictedByCap", EVICTED_CAP.sum());
+        m.put("evictedByTtl", EVICTED_TTL.sum());
+        m.put("pageHits", PAGE_HITS.sum());
+        m.put("pageMisses", PAGE_MISSES.sum());
+        return m;
+    }
 }
@@ -32,6 +32,17 @@ package utils;
  * 4. getEmailFromToken(token): Lấy email từ token
  * 5. getRoleFromToken(token): Lấy role từ token
  * 6. getIdFromToken(token): Lấy userId từ token
+ * 7. verify(token): Parse + verify chữ ký 1 LẦN, có cache theo SHA-256 của token
+ *    (2-6 đều đi qua đây => gọi nhiều lần cùng token không parse lại)
+ * 8. fromRequest(req): JwtUser mà JwtAuthFilter đã parse, gắn ở attribute "jwt_user"
+ * 
+ * VERIFIED-TOKEN CACHE:
+ * - Key: SHA-256(token), value: JwtUser kèm thời điểm hết hạn (exp)
+ * - Hit mà đã quá exp => bỏ khỏi cache, coi như token hết hạn (giống jjwt)
+ * - Token sai chữ ký / hết hạn KHÔNG được cache (lần sau vẫn verify đầy đủ)
+ * - Giới hạn jwt.cache.maxSize entry (mặc định 10000), đầy thì dọn entry hết hạn
+ *   rồi bỏ bớt entry bất kỳ
+ * - getStats(): số lần parse thật, cache hit/miss, token lỗi cho /api/admin/metrics
  * 
  * JWT CLAIMS:
  * - subject: email
@@ -63,22 +74,57 @@ package utils;
  */
 
 import io.jsonwebtoken.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class JwtUtils {
 
+    // Attribute JwtAuthFilter gắn vào request sau khi verify token
+    public static final String REQUEST_ATTR = "jwt_user";
+
+    private static final int CACHE_MAX_SIZE = Math.max(100, mylib.AppProps.getInt("jwt.cache.maxSize", 10000));
+
+    // SHA-256(token) -> JwtUser đã verify
+    private static final ConcurrentHashMap<String, JwtUser> VERIFIED = new ConcurrentHashMap<>();
+
+    // Parser dùng chung (JwtParser của jjwt 0.11 immutable, thread-safe)
+    private static final JwtParser PARSER = Jwts.parserBuilder()
+            .setSigningKey(JwtConfig.SECRET_KEY)
+            .build();
+
+    // ===== Thống kê =====
+    private static final LongAdder PARSES = new LongAdder();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+    private static final LongAdder INVALID = new LongAdder();
+    private static final LongAdder EXPIRED_IN_CACHE = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
     // ===== DTO nhỏ để dùng trong code =====
     public static class JwtUser {
         private final int userId;
         private final String email;
         private final String role;
+        private final long expiresAt; // epoch ms, 0 = không có exp
 
         public JwtUser(int userId, String email, String role) {
+            this(userId, email, role, 0L);
+        }
+
+        public JwtUser(int userId, String email, String role, long expiresAt) {
             this.userId = userId;
             this.email = email;
             this.role = role;
+            this.expiresAt = expiresAt;
         }
 
         public int getUserId() {
@@ -92,9 +138,16 @@ public class JwtUtils {
         public String getRole() {
             return role;
         }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public boolean isExpired(long now) {
+            return expiresAt > 0 && now >= expiresAt;
+        }
     }
 
-    // ✅ Tạo token cho user
     public static String generateToken(String email, String role, int id) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("role", role);
@@ -109,15 +162,63 @@ public class JwtUtils {
                 .compact();
     }
 
-    // ✅ Hàm mới: parse token ra JwtUser (dùng cho controller)
-    public static JwtUser parseToken(String token) {
-        try {
-            Jws<Claims> jws = Jwts.parserBuilder()
-                    .setSigningKey(JwtConfig.SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token);
+    /**
+     * Verify chữ ký + exp và đọc claims (email, role, id) đúng 1 lần cho mỗi
+     * token; các lần sau lấy từ cache. Trả về null nếu token sai / hết hạn /
+     * thiếu claim.
+     */
+    public static JwtUser verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        String key = sha256(token);
+        long now = System.currentTimeMillis();
 
-            Claims claims = jws.getBody();
+        JwtUser cached = VERIFIED.get(key);
+        if (cached != null) {
+            if (!cached.isExpired(now)) {
+                CACHE_HITS.increment();
+                return cached;
+            }
+            VERIFIED.remove(key, cached);
+            EXPIRED_IN_CACHE.increment();
+            INVALID.increment();
+            return null;
+        }
+
+        CACHE_MISSES.increment();
+        JwtUser user = parseClaims(token);
+        if (user == null) {
+            INVALID.increment();
+            return null;
+        }
+        if (VERIFIED.size() >= CACHE_MAX_SIZE) {
+            evict(now);
+        }
+        VERIFIED.put(key, user);
+        return user;
+    }
+
+    /**
+     * JwtUser JwtAuthFilter đã gắn vào request. Không có (path public...) thì
+     * đọc header Authorization qua verify() (cache). Null nếu không có token hợp lệ.
+     */
+    public static JwtUser fromRequest(jakarta.servlet.http.HttpServletRequest req) {
+        Object u = req.getAttribute(REQUEST_ATTR);
+        if (u instanceof JwtUser) {
+            return (JwtUser) u;
+        }
+        String auth = req.getHeader("Authorization");
+        if (auth == null || !auth.startsWith("Bearer ")) {
+            return null;
+        }
+        return verify(auth.substring(7).trim());
+    }
+
+    private static JwtUser parseClaims(String token) {
+        PARSES.increment();
+        try {
+            Claims claims = PARSER.parseClaimsJws(token).getBody();
 
             String email = claims.getSubject();
             String role = null;
@@ -142,80 +243,81 @@ public class JwtUtils {
                 return null;
             }
 
-            return new JwtUser(userId, email, role);
+            Date exp = claims.getExpiration();
+            return new JwtUser(userId, email, role, exp != null ? exp.getTime() : 0L);
 
-        } catch (JwtException e) {
+        } catch (JwtException | IllegalArgumentException e) {
             System.out.println("❌ JWT parse error: " + e.getMessage());
             return null;
         }
     }
 
-    // ✅ Kiểm tra token hợp lệ (nếu chỗ khác còn dùng)
-    public static boolean validateToken(String token) {
-        try {
-            Jwts.parserBuilder()
-                    .setSigningKey(JwtConfig.SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token);
-            return true;
-        } catch (JwtException e) {
-            System.out.println("❌ JWT validation error: " + e.getMessage());
-            return false;
+    // Dọn entry hết hạn; vẫn đầy thì bỏ bớt ~10% entry bất kỳ
+    private static synchronized void evict(long now) {
+        if (VERIFIED.size() < CACHE_MAX_SIZE) {
+            return;
+        }
+        Iterator<Map.Entry<String, JwtUser>> it = VERIFIED.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue().isExpired(now)) {
+                it.remove();
+                EVICTIONS.increment();
+            }
+        }
+        int toDrop = VERIFIED.size() - (CACHE_MAX_SIZE - CACHE_MAX_SIZE / 10);
+        it = VERIFIED.entrySet().iterator();
+        while (toDrop-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+            EVICTIONS.increment();
         }
     }
 
-    // ✅ Lấy email từ token (optional)
-    public static String getEmailFromToken(String token) {
+    private static String sha256(String token) {
         try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(JwtConfig.SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody()
-                    .getSubject();
-        } catch (Exception e) {
-            System.out.println("❌ Error getting email: " + e.getMessage());
-            return null;
+            byte[] d = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(d);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
 
-    // ✅ Lấy role từ token (optional)
-    public static String getRoleFromToken(String token) {
-        try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(JwtConfig.SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+    public static JwtUser parseToken(String token) {
+        return verify(token);
+    }
 
-            Object roleObj = claims.get("role");
-            return roleObj != null ? roleObj.toString() : null;
-        } catch (Exception e) {
-            System.out.println("❌ Error getting role: " + e.getMessage());
-            return null;
-        }
+    public static boolean validateToken(String token) {
+        return verify(token) != null;
+    }
+
+    public static String getEmailFromToken(String token) {
+        JwtUser u = verify(token);
+        return u != null ? u.getEmail() : null;
+    }
+
+    public static String getRoleFromToken(String token) {
+        JwtUser u = verify(token);
+        return u != null ? u.getRole() : null;
     }
 
-    // ✅ Lấy ID user từ token (optional)
     public static Integer getIdFromToken(String token) {
-        try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(JwtConfig.SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+        JwtUser u = verify(token);
+        return u != null ? u.getUserId() : null;
+    }
 
-            Object idObj = claims.get("id");
-            if (idObj instanceof Number) {
-                return ((Number) idObj).intValue();
-            }
-            if (idObj != null) {
-                return Integer.parseInt(idObj.toString());
-            }
-            return null;
-        } catch (Exception e) {
-            System.out.println("❌ Error getting id: " + e.getMessage());
-            return null;
-        }
+    public static Map<String, Object> getStats() {
+        long hits = CACHE_HITS.sum();
+        long lookups = hits + CACHE_MISSES.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("parses", PARSES.sum());
+        m.put("cacheHits", hits);
+        m.put("cacheMisses", CACHE_MISSES.sum());
+        m.put("hitRate", lookups > 0 ? Math.round(hits * 1000.0 / lookups) / 1000.0 : 0.0);
+        m.put("invalid", INVALID.sum());
+        m.put("expiredInCache", EXPIRED_IN_CACHE.sum());
+        m.put("evictions", EVICTIONS.sum());
+        m.put("cacheSize", VERIFIED.size());
+        m.put("cacheMaxSize", CACHE_MAX_SIZE);
+        return m;
     }
-}
\ No newline at end of file
+}
@@ -72,8 +72,9 @@ package utils;
  * 
  * ENCODING OPTIONS:
  * - ZXing default: UTF-8
- * - Error correction: Medium (Level M, 15% recovery)
- * - Format: PNG (lấy từ MatrixToImageWriter)
+ * - Error correction: mặc định của QRCodeWriter (Level L), quiet zone 4 module
+ * - Format: PNG indexed 1-bit ghi trực tiếp bởi QrPngWriter (không qua
+ *   BufferedImage / ImageIO); đường cũ còn ở generateQRCodePngBytesImageIO
  * 
  * EMAIL FLOW:
  * 1. User mua vé thành công
@@ -153,6 +154,19 @@ public class QRCodeUtil {
      * @throws java.lang.Exception
      */
     public static byte[] generateQRCodePngBytes(String text, int width, int height) throws Exception {
+        try {
+            return QrPngWriter.write(text, width, height);
+        } catch (WriterException e) {
+            throw new Exception("Error generating QR code: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Đường cũ: BitMatrix -> BufferedImage ARGB -> ImageIO. Ảnh từng pixel
+     * giống generateQRCodePngBytes nhưng cấp phát gấp nhiều lần; giữ lại để
+     * so sánh / dự phòng.
+     */
+    public static byte[] generateQRCodePngBytesImageIO(String text, int width, int height) throws Exception {
         QRCodeWriter qrCodeWriter = new QRCodeWriter();
         BitMatrix bitMatrix;
         try {
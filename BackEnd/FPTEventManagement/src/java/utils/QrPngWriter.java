@@ -0,0 +1,281 @@
+package utils;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
+import mylib.AppProps;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * ========================================================================================================
+ * UTILS: QrPngWriter - GHI QR THẲNG RA PNG 1-BIT (KHÔNG QUA BufferedImage / ImageIO)
+ * ========================================================================================================
+ *
+ * ĐƯỜNG CŨ (QRCodeUtil.generateQRCodePngBytesImageIO):
+ * - QRCodeWriter -> BitMatrix (size x size) -> BufferedImage ARGB (4 byte / pixel,
+ *   ~360 KB ở 300px) -> ImageIO PNG (Deflater + buffer mới mỗi lần) -> ByteArrayOutputStream
+ *
+ * ĐƯỜNG MỚI:
+ * - Encoder.encode -> ByteMatrix theo module (vd 21x21..57x57), tự phóng to + quiet zone
+ *   y hệt QRCodeWriter.renderResult => ảnh từng pixel giống đường cũ
+ * - PNG indexed 1-bit (PLTE: 0 = đen, 1 = trắng): mỗi dòng ảnh = size/8 byte,
+ *   các dòng trong cùng 1 hàng module giống nhau => pack 1 lần, deflate nhiều lần
+ * - Deflater, CRC32, buffer dòng + buffer nén lấy từ pool giới hạn (qr.pngPoolSize, mặc định
+ *   2 x số CPU), mỗi lần gọi chỉ cấp phát mảng kết quả (vài trăm byte)
+ * - Không dùng ThreadLocal: Deflater giữ native zlib memory, thread pool của Tomcat sống qua
+ *   redeploy => ThreadLocal không bao giờ end() được và giữ luôn classloader của webapp.
+ *   shutdown() (AppContextListener) end() mọi Deflater trong pool
+ *
+ * BENCHMARK: test/utils/QrPngWriterBench.java (main, so với đường ImageIO ở 150/300/600 px)
+ */
+public final class QrPngWriter {
+
+    // Giống QRCodeWriter (zxing) khi không truyền hint
+    private static final int QUIET_ZONE_SIZE = 4;
+    private static final ErrorCorrectionLevel EC_LEVEL = ErrorCorrectionLevel.L;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IHDR = "IHDR".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PLTE = "PLTE".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IDAT = "IDAT".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IEND = "IEND".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PALETTE = {0, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+
+    private static final int POOL_SIZE = Math.max(1, AppProps.getInt("qr.pngPoolSize",
+            2 * Runtime.getRuntime().availableProcessors()));
+    private static final ArrayBlockingQueue<State> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static volatile boolean shutdown;
+
+    private QrPngWriter() {
+    }
+
+    /**
+     * Buffer dùng lại qua POOL. Deflater giữ native memory => không tạo mới mỗi
+     * lần, và phải end() khi bỏ.
+     */
+    private static final class State {
+
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        final CRC32 crc = new CRC32();
+        byte[] row = new byte[64];        // 1 byte filter + dữ liệu dòng
+        byte[] idat = new byte[4096];     // dữ liệu đã nén
+        byte[] out = new byte[4096];      // file PNG hoàn chỉnh
+        int idatLen;
+        int outLen;
+    }
+
+    /**
+     * PNG của QR chứa text, kích thước width x height (giống
+     * QRCodeWriter.encode + MatrixToImageWriter).
+     */
+    public static byte[] write(String text, int width, int height) throws WriterException {
+        return write(text, width, height, null);
+    }
+
+    public static byte[] write(String text, int width, int height, Map<EncodeHintType, ?> hints) throws WriterException {
+        if (text == null || text.isEmpty()) {
+            throw new IllegalArgumentException("Found empty contents");
+        }
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Requested dimensions are too small: " + width + 'x' + height);
+        }
+
+        QRCode code = Encoder.encode(text, EC_LEVEL, hints);
+        ByteMatrix input = code.getMatrix();
+        if (input == null) {
+            throw new IllegalStateException();
+        }
+
+        // ===== Bố cục y hệt QRCodeWriter.renderResult =====
+        int inputWidth = input.getWidth();
+        int inputHeight = input.getHeight();
+        int qrWidth = inputWidth + (QUIET_ZONE_SIZE * 2);
+        int qrHeight = inputHeight + (QUIET_ZONE_SIZE * 2);
+        int outputWidth = Math.max(width, qrWidth);
+        int outputHeight = Math.max(height, qrHeight);
+
+        int multiple = Math.min(outputWidth / qrWidth, outputHeight / qrHeight);
+        int leftPadding = (outputWidth - (inputWidth * multiple)) / 2;
+        int topPadding = (outputHeight - (inputHeight * multiple)) / 2;
+
+        State st = borrow();
+        try {
+            return render(st, input, outputWidth, outputHeight, multiple, leftPadding, topPadding);
+        } finally {
+            giveBack(st);
+        }
+    }
+
+    private static byte[] render(State st, ByteMatrix input, int outputWidth, int outputHeight,
+            int multiple, int leftPadding, int topPadding) {
+        int inputWidth = input.getWidth();
+        int inputHeight = input.getHeight();
+        int rowBytes = (outputWidth + 7) >>> 3;
+        if (st.row.length < rowBytes + 1) {
+            st.row = new byte[rowBytes + 1];
+        }
+        byte[] row = st.row;
+
+        Deflater deflater = st.deflater;
+        deflater.reset();
+        st.idatLen = 0;
+
+        // Dòng trắng (quiet zone trên / dưới): toàn bit 1
+        fillWhite(row, rowBytes, outputWidth);
+        for (int y = 0; y < topPadding; y++) {
+            deflateRow(st, rowBytes + 1);
+        }
+
+        for (int inputY = 0; inputY < inputHeight; inputY++) {
+            fillWhite(row, rowBytes, outputWidth);
+            for (int inputX = 0, outputX = leftPadding; inputX < inputWidth; inputX++, outputX += multiple) {
+                if (input.get(inputX, inputY) == 1) {
+                    clearBits(row, outputX, multiple);
+                }
+            }
+            for (int k = 0; k < multiple; k++) {
+                deflateRow(st, rowBytes + 1);
+            }
+        }
+
+        fillWhite(row, rowBytes, outputWidth);
+        for (int y = topPadding + inputHeight * multiple; y < outputHeight; y++) {
+            deflateRow(st, rowBytes + 1);
+        }
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain(st);
+        }
+
+        // ===== Ghép file PNG =====
+        st.outLen = 0;
+        ensureOut(st, 8 + 25 + 18 + 12 + st.idatLen + 12);
+        put(st, PNG_SIGNATURE, 0, PNG_SIGNATURE.length);
+
+        int ihdrStart = beginChunk(st, IHDR, 13);
+        putInt(st, outputWidth);
+        putInt(st, outputHeight);
+        st.out[st.outLen++] = 1;   // bit depth
+        st.out[st.outLen++] = 3;   // color type: indexed
+        st.out[st.outLen++] = 0;   // compression
+        st.out[st.outLen++] = 0;   // filter
+        st.out[st.outLen++] = 0;   // interlace
+        endChunk(st, ihdrStart);
+
+        int plteStart = beginChunk(st, PLTE, PALETTE.length);
+        put(st, PALETTE, 0, PALETTE.length);
+        endChunk(st, plteStart);
+
+        int idatStart = beginChunk(st, IDAT, st.idatLen);
+        put(st, st.idat, 0, st.idatLen);
+        endChunk(st, idatStart);
+
+        int iendStart = beginChunk(st, IEND, 0);
+        endChunk(st, iendStart);
+
+        return Arrays.copyOf(st.out, st.outLen);
+    }
+
+    // ===================== POOL =====================
+    private static State borrow() {
+        State st = POOL.poll();
+        return st != null ? st : new State();
+    }
+
+    // Pool đầy / đã shutdown => end() Deflater ngay, không để chờ GC
+    private static void giveBack(State st) {
+        if (shutdown || !POOL.offer(st)) {
+            st.deflater.end();
+        }
+    }
+
+    /**
+     * Undeploy (AppContextListener): end() các Deflater trong pool; State đang
+     * được dùng sẽ end() khi trả về.
+     */
+    public static void shutdown() {
+        shutdown = true;
+        State st;
+        while ((st = POOL.poll()) != null) {
+            st.deflater.end();
+        }
+    }
+
+    // ===================== DÒNG ẢNH =====================
+    // row[0] = filter type 0 (None); bit 1 = trắng (PLTE[1]), bit 0 = đen
+    private static void fillWhite(byte[] row, int rowBytes, int width) {
+        row[0] = 0;
+        Arrays.fill(row, 1, rowBytes + 1, (byte) 0xFF);
+        int tail = width & 7;
+        if (tail != 0) {
+            // Bit thừa cuối dòng: để 0 cho gọn (decoder bỏ qua)
+            row[rowBytes] = (byte) (0xFF << (8 - tail));
+        }
+    }
+
+    private static void clearBits(byte[] row, int x, int count) {
+        for (int i = x, end = x + count; i < end; i++) {
+            row[1 + (i >>> 3)] &= (byte) ~(0x80 >>> (i & 7));
+        }
+    }
+
+    private static void deflateRow(State st, int len) {
+        st.deflater.setInput(st.row, 0, len);
+        while (!st.deflater.needsInput()) {
+            drain(st);
+        }
+    }
+
+    private static void drain(State st) {
+        if (st.idat.length - st.idatLen < 1024) {
+            st.idat = Arrays.copyOf(st.idat, st.idat.length * 2);
+        }
+        st.idatLen += st.deflater.deflate(st.idat, st.idatLen, st.idat.length - st.idatLen);
+    }
+
+    // ===================== CHUNK PNG =====================
+    private static int beginChunk(State st, byte[] type, int length) {
+        putInt(st, length);
+        int start = st.outLen;
+        put(st, type, 0, 4);
+        return start;
+    }
+
+    // CRC tính trên type + data
+    private static void endChunk(State st, int start) {
+        st.crc.reset();
+        st.crc.update(st.out, start, st.outLen - start);
+        putInt(st, (int) st.crc.getValue());
+    }
+
+    private static void ensureOut(State st, int size) {
+        if (st.out.length < size) {
+            st.out = new byte[Math.max(size, st.out.length * 2)];
+        }
+    }
+
+    private static void put(State st, byte[] b, int off, int len) {
+        System.arraycopy(b, off, st.out, st.outLen, len);
+        st.outLen += len;
+    }
+
+    private static void putInt(State st, int v) {
+        byte[] o = st.out;
+        int p = st.outLen;
+        o[p] = (byte) (v >>> 24);
+        o[p + 1] = (byte) (v >>> 16);
+        o[p + 2] = (byte) (v >>> 8);
+        o[p + 3] = (byte) v;
+        st.outLen = p + 4;
+    }
+}
@@ -0,0 +1,96 @@
+package utils;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import javax.imageio.ImageIO;
+
+/**
+ * Benchmark QrPngWriter (QRCodeUtil.generateQRCodePngBytes) so với đường cũ
+ * ImageIO (QRCodeUtil.generateQRCodePngBytesImageIO) ở 150 / 300 / 600 px.
+ *
+ * Không phải unit test: chạy bằng main (JMH không có trong classpath của
+ * project Ant). Mỗi kích thước: warm-up rồi đo thời gian / op và số byte cấp
+ * phát / op (com.sun.management.ThreadMXBean, -1 nếu JVM không hỗ trợ), kiểm
+ * tra 2 đường cho ra cùng pixel.
+ *
+ * CHẠY (sau khi build, từ thư mục project):
+ * java -cp "build/web/WEB-INF/classes:build/test/classes:lib/*" utils.QrPngWriterBench [ops] [text]
+ */
+public class QrPngWriterBench {
+
+    private static final int[] SIZES = {150, 300, 600};
+
+    public static void main(String[] args) throws Exception {
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String text = args.length > 1 ? args[1] : "TICKET:123456";
+
+        System.out.printf("ops=%d, text=\"%s\"%n", ops, text);
+        for (int size : SIZES) {
+            checkSamePixels(text, size);
+            Result fast = measure(ops, () -> QRCodeUtil.generateQRCodePngBytes(text, size, size));
+            Result old = measure(ops, () -> QRCodeUtil.generateQRCodePngBytesImageIO(text, size, size));
+            System.out.printf("%4dpx  QrPngWriter %7.0f us, %6.1f KB/op, %5d B | ImageIO %7.0f us, %6.1f KB/op, %5d B%n",
+                    size, fast.micros, fast.kbAllocated, fast.bytes, old.micros, old.kbAllocated, old.bytes);
+        }
+        QrPngWriter.shutdown();
+    }
+
+    private interface Op {
+
+        byte[] run() throws Exception;
+    }
+
+    private static final class Result {
+
+        double micros;
+        double kbAllocated;
+        int bytes;
+    }
+
+    private static Result measure(int ops, Op op) throws Exception {
+        int warmup = Math.max(200, ops / 2);
+        byte[] last = null;
+        for (int i = 0; i < warmup; i++) {
+            last = op.run();
+        }
+
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        long allocBefore = allocatedBytes(mx);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            last = op.run();
+        }
+        long elapsed = System.nanoTime() - t0;
+        long allocAfter = allocatedBytes(mx);
+
+        Result r = new Result();
+        r.micros = elapsed / 1000.0 / ops;
+        r.kbAllocated = allocBefore < 0 ? -1 : (allocAfter - allocBefore) / 1024.0 / ops;
+        r.bytes = last.length;
+        return r;
+    }
+
+    private static long allocatedBytes(ThreadMXBean mx) {
+        if (mx instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void checkSamePixels(String text, int size) throws Exception {
+        BufferedImage a = ImageIO.read(new ByteArrayInputStream(QRCodeUtil.generateQRCodePngBytes(text, size, size)));
+        BufferedImage b = ImageIO.read(new ByteArrayInputStream(QRCodeUtil.generateQRCodePngBytesImageIO(text, size, size)));
+        if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()) {
+            throw new IllegalStateException(size + "px: kích thước khác nhau");
+        }
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                if ((a.getRGB(x, y) & 0xFFFFFF) != (b.getRGB(x, y) & 0xFFFFFF)) {
+                    throw new IllegalStateException(size + "px: pixel khác nhau tại (" + x + "," + y + ")");
+                }
+            }
+        }
+    }
+}